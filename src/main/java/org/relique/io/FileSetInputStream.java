@@ -22,9 +22,16 @@ package org.relique.io;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,15 +43,37 @@ import org.relique.jdbc.csv.CsvResources;
  * a given pattern are collected, parts of the file name contains part of the
  * data, and the values in the file name are appended (or prepended) to each
  * data line.
+ *
+ * When reading in parallel, each file is read and has the values from its
+ * file name added on a separate thread, several files ahead, and the bytes
+ * for each file are then returned in the same order as when reading on a
+ * single thread.  Files are read ahead by a fixed number of threads, shared
+ * by all streams, in blocks of bytes.  Reading a file ahead stops when
+ * the blocks waiting to be returned reach a maximum size, and continues
+ * when they have been returned, so files of any size can be read.
  * 
  * @author Mario Frasca
  * 
  */
 public class FileSetInputStream extends InputStream
 {
+	/** Maximum total size of blocks read ahead by each stream. */
+	public static final long MAX_READ_AHEAD_BYTES = 32 * 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Size of each block of a file read on another thread. */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	/** Threads reading files ahead for all streams, created when first needed. */
+	private static ThreadPoolExecutor readAheadExecutor = null;
+
 	private String dirName;
 	private List<String> fileNames;
 	private EncryptedFileInputStream currentFile;
+	private byte[] readBuffer = null;
+	private int readBufferPos = 0;
+	private int readBufferLength = 0;
 	private boolean readingHeader;
 	private String tail;
 	private int pos;
@@ -64,6 +93,210 @@ public class FileSetInputStream extends InputStream
 	private String charset;
 	private boolean isClosed = false;
 
+	/*
+	 * Files being read on other threads, in order, when reading in parallel.
+	 */
+	private ArrayDeque<PendingFile> pendingFiles = null;
+	private byte[] fileBytes = null;
+	private int fileBytesPos = 0;
+
+	/**
+	 * A file read in blocks on another thread, or by the thread reading
+	 * the stream when it needs a block that no other thread is reading.
+	 */
+	private class PendingFile implements Runnable
+	{
+		private String fileName;
+		private boolean isFirstFile;
+		private int maxBlocks;
+		private FileSetInputStream in = null;
+
+		/*
+		 * State shared between threads, guarded by this object.
+		 */
+		private ArrayDeque<byte[]> blocks = new ArrayDeque<>();
+		private boolean scheduled = false;
+		private boolean reading = false;
+		private boolean finished = false;
+		private boolean cancelled = false;
+		private Exception error = null;
+
+		private PendingFile(String fileName, boolean isFirstFile, int maxBlocks)
+		{
+			this.fileName = fileName;
+			this.isFirstFile = isFirstFile;
+			this.maxBlocks = maxBlocks;
+		}
+
+		/**
+		 * Start reading blocks of the file on another thread.
+		 */
+		private synchronized void schedule()
+		{
+			scheduled = true;
+			getReadAheadExecutor().execute(this);
+		}
+
+		@Override
+		public void run()
+		{
+			synchronized (this)
+			{
+				scheduled = false;
+				if (reading || finished || cancelled)
+					return;
+				reading = true;
+			}
+			readBlocks(false);
+		}
+
+		/**
+		 * Read blocks of the file, until the maximum number of blocks are
+		 * waiting to be returned.  Only called by the thread that set
+		 * reading to true.
+		 * @param once true to read only a single block.
+		 */
+		private void readBlocks(boolean once)
+		{
+			while (true)
+			{
+				byte[] block = null;
+				Exception exception = null;
+				try
+				{
+					if (in == null)
+						in = new FileSetInputStream(FileSetInputStream.this, fileName, isFirstFile);
+					block = readBlock();
+				}
+				catch (IOException | RuntimeException e)
+				{
+					exception = e;
+				}
+				synchronized (this)
+				{
+					if (exception != null)
+					{
+						error = exception;
+						finished = true;
+					}
+					else if (block == null)
+					{
+						finished = true;
+					}
+					else if (!cancelled)
+					{
+						blocks.add(block);
+					}
+					if (finished || cancelled)
+						closeInput();
+					if (finished || cancelled || once || blocks.size() >= maxBlocks)
+					{
+						reading = false;
+						notifyAll();
+						return;
+					}
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * @return next block of bytes of file, or null at end of file.
+		 */
+		private byte[] readBlock() throws IOException
+		{
+			byte[] block = new byte[BLOCK_SIZE];
+			int length = 0;
+			int n;
+			while (length < block.length &&
+				(n = in.read(block, length, block.length - length)) > 0)
+			{
+				length += n;
+			}
+			if (length == 0)
+				return null;
+			return (length == block.length) ? block : Arrays.copyOf(block, length);
+		}
+
+		/**
+		 * Get next block of bytes of file, reading it now if no other
+		 * thread is reading the file.
+		 * @return bytes, or null at end of file.
+		 */
+		private byte[] takeBlock() throws IOException
+		{
+			boolean readNow = false;
+			synchronized (this)
+			{
+				while (blocks.isEmpty() && !finished && reading)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				if (blocks.isEmpty() && !finished)
+				{
+					reading = true;
+					readNow = true;
+				}
+			}
+			if (readNow)
+				readBlocks(true);
+			synchronized (this)
+			{
+				byte[] block = blocks.poll();
+				if (block == null)
+				{
+					if (error instanceof IOException)
+						throw (IOException)error;
+					if (error != null)
+						throw (RuntimeException)error;
+					return null;
+				}
+
+				/*
+				 * Continue reading ahead once half of the blocks waiting
+				 * have been returned.
+				 */
+				if (!reading && !scheduled && !finished && blocks.size() <= maxBlocks / 2)
+					schedule();
+				return block;
+			}
+		}
+
+		/**
+		 * Stop reading file, and close it if no other thread is reading it.
+		 */
+		private synchronized void cancel()
+		{
+			cancelled = true;
+			blocks.clear();
+			if (!reading)
+				closeInput();
+		}
+
+		private void closeInput()
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e)
+				{
+				}
+				in = null;
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * @param dirName
@@ -83,6 +316,7 @@ public class FileSetInputStream extends InputStream
 	 * @param headerless if true, then there is no header on first line of file.
 	 * @param filter filter for decoding bytes read from file.
 	 * @param skipLeadingDataLines number of lines to skip at start of file before header line.
+	 * @param charset character set of files, or null for default character set.
 	 * @throws IOException if a file cannot be opened or read.
 	 */
 	public FileSetInputStream(String dirName, String fileNamePattern,
@@ -90,6 +324,42 @@ public class FileSetInputStream extends InputStream
 			boolean headerless, CryptoFilter filter, int skipLeadingDataLines,
 			String charset)
 			throws IOException
+	{
+		this(dirName, fileNamePattern, fieldsInName, separator, quotechar, quoteStyle,
+			prepend, headerless, filter, skipLeadingDataLines, charset, false, null);
+	}
+
+	/**
+	 * 
+	 * @param dirName
+	 *            the containing directory
+	 * @param fileNamePattern
+	 *            the regular expression describing the file name and the extra
+	 *            fields.
+	 * @param fieldsInName
+	 *            the names of the fields contained in the file name.
+	 * @param separator
+	 *            the separator to use when faking output (typically the ",").
+	 * @param quotechar the character used to quote column values containing the separator, or null for no quoting.
+	 * @param quoteStyle either "SQL" or "C" for rule for escaping quote characters in column values.
+	 * @param prepend
+	 *            whether the extra fields should precede the ones from the file
+	 *            content.
+	 * @param headerless if true, then there is no header on first line of file.
+	 * @param filter filter for decoding bytes read from file.
+	 * @param skipLeadingDataLines number of lines to skip at start of file before header line.
+	 * @param charset character set of files, or null for default character set.
+	 * @param parallel if true, read several files ahead on other threads.
+	 *            Ignored when a filter or UTF-16LE charset is used.
+	 * @param fileFilter checks the values in each file name and returns
+	 *            false for files to skip, or null to read all files.
+	 * @throws IOException if a file cannot be opened or read.
+	 */
+	public FileSetInputStream(String dirName, String fileNamePattern,
+			String[] fieldsInName, String separator, Character quotechar, String quoteStyle, boolean prepend,
+			boolean headerless, CryptoFilter filter, int skipLeadingDataLines,
+			String charset, boolean parallel, Predicate<String[]> fileFilter)
+			throws IOException
 	{
 		this.dirName = dirName;
 		this.filter = filter;
@@ -160,6 +430,8 @@ public class FileSetInputStream extends InputStream
 		{
 			return;
 		}
+		if (fileFilter != null)
+			filterFileNames(fileFilter);
 
 		fileNameRE = Pattern.compile(".*" + fileNamePattern);
 		readingHeader = true;
@@ -167,19 +439,199 @@ public class FileSetInputStream extends InputStream
 		dataTail = getTailFromName(dirName + currentFileName);
 		if (headerless)
 			tail = dataTail;
+
+		// The filter decodes bytes with state carried from one file to the next,
+		// so files using a filter must be read one after another.
+		if (parallel && filter == null && !"UTF-16LE".equals(charset))
+		{
+			pendingFiles = new ArrayDeque<>();
+			submitFile(currentFileName, true);
+			submitFiles();
+			return;
+		}
+
+		openFirstFile(currentFileName);
+	}
+
+	/**
+	 * Remove files with values in their file name that are not wanted.
+	 * The first file is kept if all files are removed, so that the
+	 * header can still be read.
+	 */
+	private void filterFileNames(Predicate<String[]> fileFilter)
+	{
+		String firstFileName = fileNames.get(0);
+		ArrayList<String> matchingFileNames = new ArrayList<>();
+		for (String fileName : fileNames)
+		{
+			Matcher m = fileNameRE.matcher(fileName);
+			m.matches();
+			String[] values = new String[m.groupCount()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = m.group(i + 1);
+			if (fileFilter.test(values))
+				matchingFileNames.add(fileName);
+		}
+		if (matchingFileNames.isEmpty())
+			matchingFileNames.add(firstFileName);
+		fileNames = matchingFileNames;
+	}
+
+	/**
+	 * Create stream reading a single file from a set of files.
+	 * @param fileSet stream for the whole set of files.
+	 * @param fileName name of file to read.
+	 * @param isFirstFile true if this is the first file in the set of files.
+	 * @throws IOException if file cannot be opened or read.
+	 */
+	private FileSetInputStream(FileSetInputStream fileSet, String fileName,
+		boolean isFirstFile) throws IOException
+	{
+		this.dirName = fileSet.dirName;
+		this.fileNames = new ArrayList<>();
+		this.fileNameRE = fileSet.fileNameRE;
+		this.separator = fileSet.separator;
+		this.quotechar = fileSet.quotechar;
+		this.quoteStyle = fileSet.quoteStyle;
+		this.prepend = fileSet.prepend;
+		this.filter = fileSet.filter;
+		this.skipLeadingDataLines = fileSet.skipLeadingDataLines;
+		this.charset = fileSet.charset;
+		this.dataTail = fileSet.dataTail;
+		if (isFirstFile)
+		{
+			this.readingHeader = true;
+			this.tail = fileSet.tail;
+			openFirstFile(fileName);
+		}
+		else
+		{
+			openNextFile(fileName);
+		}
+	}
+
+	private void openFirstFile(String currentFileName) throws IOException
+	{
 		currentFile = new EncryptedFileInputStream(dirName + currentFileName, filter);
-		lookahead = currentFile.read();
+		readBufferPos = readBufferLength = 0;
+		lookahead = readFileByte();
 		if (lookahead == 0xFF && charset != null && charset.equals("UTF-16LE"))
 		{
 			// Skip any 0xFFFE Byte Order Mark at start of UTF-16LE file.
-			currentFile.read();
-			lookahead = currentFile.read();
+			readFileByte();
+			lookahead = readFileByte();
 		}
 		doingTail = prepend;
 		if (doingTail)
 			pos = 1;
 	}
 
+	private void openNextFile(String currentFileName) throws IOException
+	{
+		pos = 0;
+		tail = getTailFromName(dirName + currentFileName);
+		currentFile = new EncryptedFileInputStream(dirName + currentFileName, filter);
+		readBufferPos = readBufferLength = 0;
+		// if files do contain a header, skip it
+		for(int i = 0; i < this.skipLeadingDataLines; i++)
+		{
+			int ch2;
+			do
+			{
+				ch2 = readFileByte();
+
+				if (ch2 == '\n' && charset != null && charset.equals("UTF-16LE"))
+				{
+					// Skip '\n' and '\0' for UTF-16LE charset.
+					int skip = readFileByte();
+					if (skip != 0)
+					{
+						// Next char is not a newline, so keep reading.
+						ch2 = 0;
+					}
+				}
+			}
+			while (ch2 != '\n' && ch2 != -1);
+		}
+		quoteCountForRecord = 0;
+		doingTail = prepend;
+		if (doingTail)
+			pos = 1;
+		lookahead = readFileByte();
+		if (lookahead == 0xFF && skipLeadingDataLines == 0 &&
+			charset != null && charset.equals("UTF-16LE"))
+		{
+			// Skip any 0xFFFE Byte Order Mark at start of UTF-16LE file.
+			readFileByte();
+			lookahead = readFileByte();
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getReadAheadExecutor()
+	{
+		if (readAheadExecutor == null)
+		{
+			int nThreads = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+			readAheadExecutor = new ThreadPoolExecutor(nThreads, nThreads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "CsvJdbc file reader");
+					thread.setDaemon(true);
+					return thread;
+				});
+			readAheadExecutor.allowCoreThreadTimeOut(true);
+		}
+		return readAheadExecutor;
+	}
+
+	/**
+	 * Start reading a file on another thread.
+	 */
+	private void submitFile(String fileName, boolean isFirstFile)
+	{
+		/*
+		 * Share the bytes that can be read ahead between all files
+		 * that are read ahead at the same time.
+		 */
+		int readAhead = getReadAheadExecutor().getMaximumPoolSize();
+		int maxBlocks = (int)Math.max(MAX_READ_AHEAD_BYTES / ((long)BLOCK_SIZE * readAhead), 1);
+		PendingFile pendingFile = new PendingFile(fileName, isFirstFile, maxBlocks);
+		pendingFiles.add(pendingFile);
+		pendingFile.schedule();
+	}
+
+	/**
+	 * Start reading following files on other threads, up to the maximum
+	 * number of files to read ahead.
+	 */
+	private void submitFiles()
+	{
+		int readAhead = getReadAheadExecutor().getMaximumPoolSize();
+		while (fileNames.size() > 0 && pendingFiles.size() < readAhead)
+			submitFile(fileNames.remove(0), false);
+	}
+
+	/**
+	 * Move to next block of bytes read on another thread.
+	 * @return false if there are no more files.
+	 */
+	private boolean nextFileBytes() throws IOException
+	{
+		fileBytes = null;
+		while (!pendingFiles.isEmpty())
+		{
+			byte[] block = pendingFiles.peek().takeBlock();
+			if (block != null)
+			{
+				fileBytes = block;
+				fileBytesPos = 0;
+				return true;
+			}
+			pendingFiles.poll();
+			submitFiles();
+		}
+		return false;
+	}
+
 	@Override
 	public void close() throws IOException
 	{
@@ -189,6 +641,13 @@ public class FileSetInputStream extends InputStream
 			currentFile.close();
 			currentFile = null;
 		}
+		if (pendingFiles != null)
+		{
+			for (PendingFile pendingFile : pendingFiles)
+				pendingFile.cancel();
+			pendingFiles.clear();
+		}
+		fileBytes = null;
 	}
 
 	/**
@@ -213,6 +672,16 @@ public class FileSetInputStream extends InputStream
 		if (isClosed)
 			throw new IOException(CsvResources.getString("streamClosed"));
 
+		if (pendingFiles != null)
+		{
+			while (fileBytes == null || fileBytesPos == fileBytes.length)
+			{
+				if (!nextFileBytes())
+					return -1;
+			}
+			return fileBytes[fileBytesPos++] & 0xFF;
+		}
+
 		// run out of input on all subfiles
 		if (currentFile == null)
 			return -1;
@@ -241,7 +710,7 @@ public class FileSetInputStream extends InputStream
 			}
 			else
 			{
-				lookahead = currentFile.read();
+				lookahead = readFileByte();
 			}
 			// we ignore \r, which breaks things on files created with MacOS9
 			if (lookahead == '\r')
@@ -249,7 +718,7 @@ public class FileSetInputStream extends InputStream
 				if (charset != null && charset.equals("UTF-16LE"))
 				{
 					// Skip '\r' and '\0' for UTF-16LE charset.
-					int skip = currentFile.read();
+					int skip = readFileByte();
 					if (skip != 0)
 					{
 						// Next char is some other valid UTF-16LE character,
@@ -309,7 +778,7 @@ public class FileSetInputStream extends InputStream
 					charset != null && charset.equals("UTF-16LE"))
 				{
 					// Skip '\n' and '\0' for UTF-16LE charset.
-					lookahead = currentFile.read();
+					lookahead = readFileByte();
 				}
 
 				ch = readFromTail();
@@ -320,7 +789,6 @@ public class FileSetInputStream extends InputStream
 		{
 			currentFile.close();
 			// open next file and possibly skip header
-			pos = 0;
 			String currentFileName;
 			if (fileNames.size() > 0)
 			{
@@ -331,41 +799,7 @@ public class FileSetInputStream extends InputStream
 				currentFile = null;
 				return -1;
 			}
-			tail = getTailFromName(dirName + currentFileName);
-			currentFile = new EncryptedFileInputStream(dirName + currentFileName, filter);
-			// if files do contain a header, skip it
-			for(int i = 0; i < this.skipLeadingDataLines; i++)
-			{
-				int ch2;
-				do
-				{
-					ch2 = currentFile.read();
-
-					if (ch2 == '\n' && charset != null && charset.equals("UTF-16LE"))
-					{
-						// Skip '\n' and '\0' for UTF-16LE charset.
-						int skip = currentFile.read();
-						if (skip != 0)
-						{
-							// Next char is not a newline, so keep reading.
-							ch2 = 0;
-						}
-					}
-				}
-				while (ch2 != '\n' && ch2 != -1);
-			}
-			quoteCountForRecord = 0;
-			doingTail = prepend;
-			if (doingTail)
-				pos = 1;
-			lookahead = currentFile.read();
-			if (lookahead == 0xFF && skipLeadingDataLines == 0 &&
-				charset != null && charset.equals("UTF-16LE"))
-			{
-				// Skip any 0xFFFE Byte Order Mark at start of UTF-16LE file.
-				currentFile.read();
-				lookahead = currentFile.read();
-			}
+			openNextFile(currentFileName);
 			ch = read();
 			return ch;
 		}
@@ -373,6 +807,29 @@ public class FileSetInputStream extends InputStream
 		return ch;
 	}
 
+	/**
+	 * Read the next byte of the current file, reading a block of bytes
+	 * at a time when there is no filter decoding each byte.
+	 */
+	private int readFileByte() throws IOException
+	{
+		if (filter != null)
+			return currentFile.read();
+		if (readBufferPos == readBufferLength)
+		{
+			if (readBuffer == null)
+				readBuffer = new byte[BUFFER_SIZE];
+			readBufferPos = 0;
+			readBufferLength = currentFile.read(readBuffer, 0, readBuffer.length);
+			if (readBufferLength <= 0)
+			{
+				readBufferLength = 0;
+				return -1;
+			}
+		}
+		return readBuffer[readBufferPos++] & 0xFF;
+	}
+
 	private String getTailFromName(String currentName)
 	{
 		Matcher m = fileNameRE.matcher(currentName);
@@ -428,6 +885,24 @@ public class FileSetInputStream extends InputStream
 		return -1;
 	}
 
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (pendingFiles == null || len == 0)
+			return super.read(b, off, len);
+		if (isClosed)
+			throw new IOException(CsvResources.getString("streamClosed"));
+		while (fileBytes == null || fileBytesPos == fileBytes.length)
+		{
+			if (!nextFileBytes())
+				return -1;
+		}
+		int n = Math.min(len, fileBytes.length - fileBytesPos);
+		System.arraycopy(fileBytes, fileBytesPos, b, off, n);
+		fileBytesPos += n;
+		return n;
+	}
+
 	@Override
 	public synchronized void reset() throws IOException
 	{
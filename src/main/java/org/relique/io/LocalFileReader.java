@@ -0,0 +1,500 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.io;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.relique.jdbc.csv.CsvResources;
+
+/**
+ * Reads lines from a local file, keeping track of the byte position in
+ * the file of each line so that reading can later continue from there.
+ *
+ * Each line is found by searching the bytes of the file for a line
+ * terminator, and is then decoded to a String in a single step, instead
+ * of decoding every byte to a char and copying it into a line one char
+ * at a time.  This is only possible for character sets where the bytes
+ * of a line terminator never occur inside another character, so only
+ * UTF-8, US-ASCII and ISO-8859-1 are supported.
+ *
+ * The file is read in chunks at a byte position, or optionally mapped
+ * into memory.  A mapped file is only released by the garbage collector
+ * some time after it is closed, and on some operating systems cannot be
+ * deleted until then.
+ *
+ * Lines and line numbers are the same as those of a LineNumberReader
+ * reading the file through an InputStreamReader.
+ */
+public class LocalFileReader extends LineNumberReader
+{
+	/** Size of part of file mapped into memory at one time. */
+	private static final int MAP_SIZE = 64 * 1024 * 1024;
+
+	/** Number of bytes copied from mapped part of file at one time. */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private FileChannel channel;
+	private boolean memoryMapped;
+	private Charset charset;
+	private CharsetDecoder decoder;
+	private long fileSize;
+	private MappedByteBuffer buffer = null;
+	private long bufferStart = 0;
+	private byte[] chunk = new byte[CHUNK_SIZE];
+	private long chunkStart = 0;
+	private int chunkLength = 0;
+	private long position = 0;
+	private byte[] lineBytes = new byte[256];
+	private int lineNumber = 0;
+	private int pendingChar = -1;
+
+	/*
+	 * Last char read: '\n' after a line terminator, -1 at end of file.
+	 * As with LineNumberReader, the line number is incremented at the end
+	 * of the file if the last line does not end with a line terminator.
+	 */
+	private int prevChar = '\n';
+	private long markPosition = 0;
+	private int markLineNumber = 0;
+	private int markPendingChar = -1;
+	private int markPrevChar = '\n';
+
+	/**
+	 * Check whether files in a character set can be read by this class.
+	 * @param charsetName name of character set, or null for the default character set.
+	 * @return true if files in this character set can be read.
+	 */
+	public static boolean isSupportedCharset(String charsetName)
+	{
+		Charset charset;
+		try
+		{
+			charset = (charsetName != null) ? Charset.forName(charsetName) : Charset.defaultCharset();
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+		return charset.equals(StandardCharsets.UTF_8) ||
+			charset.equals(StandardCharsets.US_ASCII) ||
+			charset.equals(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param fileName name of file to read.
+	 * @param charsetName name of character set of file, or null for the default character set.
+	 * @param memoryMapped true to map the file into memory instead of reading it.
+	 * @throws IOException if file cannot be opened.
+	 */
+	public LocalFileReader(String fileName, String charsetName, boolean memoryMapped) throws IOException
+	{
+		super(Reader.nullReader());
+		this.memoryMapped = memoryMapped;
+		this.charset = (charsetName != null) ? Charset.forName(charsetName) : Charset.defaultCharset();
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).
+			onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		this.fileSize = channel.size();
+	}
+
+	/**
+	 * Map part of the file containing a byte into memory.
+	 * @param filePosition position of byte in file.
+	 * @return index of byte in buffer.
+	 */
+	private int map(long filePosition) throws IOException
+	{
+		if (buffer == null || filePosition < bufferStart ||
+			filePosition >= bufferStart + buffer.limit())
+		{
+			if (channel == null)
+				throw new IOException(CsvResources.getString("streamClosed"));
+			long size = Math.min(MAP_SIZE, fileSize - filePosition);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, filePosition, size);
+			bufferStart = filePosition;
+		}
+		return (int)(filePosition - bufferStart);
+	}
+
+	/**
+	 * Read or copy bytes from the file, so that they can be searched quickly.
+	 * @param filePosition position of byte in file.
+	 * @return index of byte in chunk.
+	 */
+	private int fill(long filePosition) throws IOException
+	{
+		if (filePosition < chunkStart || filePosition >= chunkStart + chunkLength)
+		{
+			if (memoryMapped)
+			{
+				int index = map(filePosition);
+				chunkLength = Math.min(chunk.length, buffer.limit() - index);
+
+				/*
+				 * Copying from a mapped part of the file that no longer exists
+				 * crashes the JVM on some operating systems, so check first.
+				 */
+				if (channel.size() < filePosition + chunkLength)
+				{
+					chunkLength = 0;
+					throw new IOException(CsvResources.getString("fileTruncated"));
+				}
+				buffer.get(index, chunk, 0, chunkLength);
+			}
+			else
+			{
+				if (channel == null)
+					throw new IOException(CsvResources.getString("streamClosed"));
+				chunkLength = (int)Math.min(chunk.length, fileSize - filePosition);
+				ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk, 0, chunkLength);
+				while (chunkBuffer.hasRemaining())
+				{
+					if (channel.read(chunkBuffer, filePosition + chunkBuffer.position()) < 0)
+					{
+						chunkLength = 0;
+						throw new IOException(CsvResources.getString("fileTruncated"));
+					}
+				}
+			}
+			chunkStart = filePosition;
+		}
+		return (int)(filePosition - chunkStart);
+	}
+
+	private int byteAt(long filePosition) throws IOException
+	{
+		int index = fill(filePosition);
+		return chunk[index] & 0xFF;
+	}
+
+	@Override
+	public String readLine() throws IOException
+	{
+		synchronized (lock)
+		{
+			try
+			{
+				if (pendingChar >= 0)
+				{
+					/*
+					 * Line starts with the second half of a character
+					 * already returned by read().
+					 */
+					String line = (char)pendingChar + readLineBytes();
+					pendingChar = -1;
+					return line;
+				}
+				if (position >= fileSize)
+				{
+					if (channel == null)
+						throw new IOException(CsvResources.getString("streamClosed"));
+					atEndOfFile();
+					return null;
+				}
+				return readLineBytes();
+			}
+			catch (InternalError e)
+			{
+				throw truncatedException(e);
+			}
+		}
+	}
+
+	/**
+	 * When the file becomes shorter after it was checked but before bytes
+	 * are copied from the mapped part of it, the copy fails with an error
+	 * that may only be thrown a little later.
+	 * @param e error thrown.
+	 * @return exception to throw instead.
+	 */
+	private IOException truncatedException(InternalError e)
+	{
+		if (!memoryMapped)
+			throw e;
+		chunkLength = 0;
+		return new IOException(CsvResources.getString("fileTruncated"), e);
+	}
+
+	private String readLineBytes() throws IOException
+	{
+		int length = 0;
+		while (position < fileSize)
+		{
+			int start = fill(position);
+			int i = start;
+			byte b = 0;
+			while (i < chunkLength)
+			{
+				b = chunk[i];
+				if (b == '\n' || b == '\r')
+					break;
+				i++;
+			}
+			int count = i - start;
+			String line = null;
+			if (i < chunkLength && length == 0)
+			{
+				/*
+				 * Whole line is in chunk, so decode it directly.
+				 */
+				line = new String(chunk, start, count, charset);
+			}
+			else
+			{
+				if (length + count > lineBytes.length)
+				{
+					byte[] newLineBytes = new byte[Math.max(lineBytes.length * 2, length + count)];
+					System.arraycopy(lineBytes, 0, newLineBytes, 0, length);
+					lineBytes = newLineBytes;
+				}
+				System.arraycopy(chunk, start, lineBytes, length, count);
+				length += count;
+			}
+			position += count;
+			if (i < chunkLength)
+			{
+				position++;
+				if (b == '\r' && position < fileSize && byteAt(position) == '\n')
+					position++;
+				prevChar = '\n';
+				lineNumber++;
+				if (line == null)
+					line = new String(lineBytes, 0, length, charset);
+				return line;
+			}
+		}
+		prevChar = -1;
+		lineNumber++;
+		return new String(lineBytes, 0, length, charset);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		synchronized (lock)
+		{
+			try
+			{
+				return readChar();
+			}
+			catch (InternalError e)
+			{
+				throw truncatedException(e);
+			}
+		}
+	}
+
+	private int readChar() throws IOException
+	{
+		if (pendingChar >= 0)
+		{
+			int c = pendingChar;
+			pendingChar = -1;
+			return c;
+		}
+		if (channel == null)
+			throw new IOException(CsvResources.getString("streamClosed"));
+		if (position >= fileSize)
+		{
+			atEndOfFile();
+			return -1;
+		}
+
+		int b = byteAt(position);
+		if (b == '\r' || b == '\n')
+		{
+			position++;
+			if (b == '\r' && position < fileSize && byteAt(position) == '\n')
+				position++;
+			prevChar = '\n';
+			lineNumber++;
+			return '\n';
+		}
+		prevChar = b;
+		if (b < 0x80 || charset.equals(StandardCharsets.ISO_8859_1))
+		{
+			position++;
+			return b;
+		}
+		if (charset.equals(StandardCharsets.US_ASCII))
+		{
+			position++;
+			return '\uFFFD';
+		}
+
+		/*
+		 * Decode one multi-byte UTF-8 character, which may need two chars.
+		 */
+		int length = (int)Math.min(4, fileSize - position);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte)byteAt(position + i);
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		CharBuffer out = CharBuffer.allocate(4);
+		decoder.reset();
+		int n = 0;
+		while (n < length && out.position() == 0)
+		{
+			/*
+			 * Add one byte at a time until a char is decoded, so
+			 * that only the bytes of the first char are used.
+			 */
+			n++;
+			in.limit(n);
+			decoder.decode(in, out, n == length && position + n == fileSize);
+		}
+		int consumed = in.position();
+		if (out.position() >= 2 && !Character.isHighSurrogate(out.get(0)))
+		{
+			/*
+			 * The last byte added was not part of the first char.
+			 */
+			consumed = n - 1;
+		}
+		position += Math.max(1, consumed);
+		int c = out.get(0);
+		if (Character.isHighSurrogate((char)c) && out.position() >= 2)
+			pendingChar = out.get(1);
+		return c;
+	}
+
+	private void atEndOfFile()
+	{
+		if (prevChar != '\n' && prevChar != -1)
+			lineNumber++;
+		prevChar = -1;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		synchronized (lock)
+		{
+			int count = 0;
+			while (count < len)
+			{
+				int c = read();
+				if (c < 0)
+					break;
+				cbuf[off + count] = (char)c;
+				count++;
+			}
+			if (count == 0 && len > 0)
+				return -1;
+			return count;
+		}
+	}
+
+	@Override
+	public boolean ready() throws IOException
+	{
+		return pendingChar >= 0 || position < fileSize;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException
+	{
+		synchronized (lock)
+		{
+			markPosition = position;
+			markLineNumber = lineNumber;
+			markPendingChar = pendingChar;
+			markPrevChar = prevChar;
+		}
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		synchronized (lock)
+		{
+			position = markPosition;
+			lineNumber = markLineNumber;
+			pendingChar = markPendingChar;
+			prevChar = markPrevChar;
+		}
+	}
+
+	/**
+	 * @return byte position in file of the next line to be read.
+	 */
+	public long getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * Move to a byte position in the file where a line starts.
+	 * @param position byte position in file.
+	 * @param lineNumber number of lines before position.
+	 */
+	public void seek(long position, int lineNumber)
+	{
+		synchronized (lock)
+		{
+			this.position = Math.min(position, fileSize);
+			this.lineNumber = lineNumber;
+			pendingChar = -1;
+			prevChar = '\n';
+		}
+	}
+
+	@Override
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	@Override
+	public void setLineNumber(int lineNumber)
+	{
+		this.lineNumber = lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (lock)
+		{
+			buffer = null;
+			chunkLength = 0;
+			if (channel != null)
+			{
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+}
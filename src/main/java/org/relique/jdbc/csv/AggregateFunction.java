@@ -31,6 +31,59 @@ abstract class AggregateFunction extends Expression
 	 */
 	public static final String GROUPING_COLUMN_NAME = "@GROUPROWS";
 
+	/**
+	 * Value of an aggregate function, accumulated one row at a time
+	 * for the rows in a query or in one GROUP BY group.
+	 */
+	public interface Accumulator
+	{
+		public void processRow(Map<String, Object> env) throws SQLException;
+		public Object getValue(Map<String, Object> env) throws SQLException;
+	}
+
+	/** Accumulated value for all rows of a query without GROUP BY. */
+	private Accumulator accumulator = null;
+
 	public abstract List<String> aggregateColumns(Set<String> availableColumns);
-	public abstract void processRow(Map<String, Object> env) throws SQLException;
+
+	/**
+	 * Create an empty accumulator for this aggregate function.
+	 * @return accumulator.
+	 */
+	public abstract Accumulator createAccumulator();
+
+	private Accumulator getAccumulator()
+	{
+		if (accumulator == null)
+			accumulator = createAccumulator();
+		return accumulator;
+	}
+
+	public void processRow(Map<String, Object> env) throws SQLException
+	{
+		getAccumulator().processRow(env);
+	}
+
+	@Override
+	public Object eval(Map<String, Object> env) throws SQLException
+	{
+		Object o = env.get(GROUPING_COLUMN_NAME);
+		if (o != null)
+		{
+			/*
+			 * Use the value accumulated for the group of rows
+			 * from the GROUP BY clause.
+			 */
+			Accumulator groupAccumulator = ((Map<AggregateFunction, Accumulator>)o).get(this);
+			if (groupAccumulator != null)
+				return groupAccumulator.getValue(env);
+		}
+		return getAccumulator().getValue(env);
+	}
+
+	@Override
+	public void resetAggregateFunctions()
+	{
+		accumulator = null;
+	}
 }
@@ -86,6 +86,11 @@ class AndExpression extends LogicalExpression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return left.isDeterministic() && right.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -69,6 +69,11 @@ class BetweenExpression extends LogicalExpression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return obj.isDeterministic() && left.isDeterministic() && right.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -21,6 +21,7 @@ package org.relique.jdbc.csv;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
+import java.math.RoundingMode;
 import java.sql.Date;
 import java.sql.SQLException;
 import java.sql.Time;
@@ -34,6 +35,7 @@ import java.util.Set;
 class BinaryOperation extends Expression
 {
 	private static final long MILLISECONDS_PER_DAY = 24 * 60 * 60 * 1000;
+	private static final MathContext DIVIDE_CONTEXT = new MathContext(14, RoundingMode.HALF_UP);
 	String operation;
 	char op;
 	Expression left, right;
@@ -53,93 +55,61 @@ class BinaryOperation extends Expression
 		if (leftEval == null || rightEval == null)
 			return null;
 
-		try
+		if (op != '|' && isIntegerValue(leftEval) && isIntegerValue(rightEval))
 		{
-			Integer leftInt;
-			BigInteger bil;
-			boolean isLongExpression = false;
-
-			if (leftEval instanceof Short)
+			boolean isLongExpression = (leftEval instanceof Long || rightEval instanceof Long);
+			long leftLong = ((Number)leftEval).longValue();
+			long rightLong = ((Number)rightEval).longValue();
+			try
 			{
-				leftInt = Integer.valueOf(((Short)leftEval).intValue());
-				bil = new BigInteger(leftInt.toString());
+				/*
+				 * A result too large for an integer is returned as a long.
+				 */
+				long result = calculate(leftLong, rightLong);
+				if (isLongExpression || result != (int)result)
+					return Long.valueOf(result);
+				return Integer.valueOf((int)result);
 			}
-			else if (leftEval instanceof Long)
+			catch (ArithmeticException e)
 			{
-				bil = new BigInteger(leftEval.toString());
-				isLongExpression = true;
+				/*
+				 * Overflow or divide by zero, so calculate again using BigInteger.
+				 */
 			}
-			else
+
+			try
 			{
-				leftInt = (Integer)leftEval;
-				bil = new BigInteger(leftInt.toString());
+				return new BigDecimal(calculate(BigInteger.valueOf(leftLong), BigInteger.valueOf(rightLong)));
 			}
-			Integer rightInt;
-			BigInteger bir;
-			if (rightEval instanceof Short)
+			catch (ArithmeticException e)
 			{
-				rightInt = Integer.valueOf(((Short)rightEval).intValue());
-				bir = new BigInteger(rightInt.toString());
+				/* probably a divide by zero */
+				throw new SQLException(e.getMessage());
 			}
-			else if (rightEval instanceof Long)
+		}
+
+		if (op != '|' && leftEval instanceof Number && rightEval instanceof Number)
+		{
+			try
 			{
-				bir = new BigInteger(rightEval.toString());
-				isLongExpression = true;
+				BigDecimal bdl = toBigDecimal((Number)leftEval);
+				BigDecimal bdr = toBigDecimal((Number)rightEval);
+				if (op == '+')
+					return Double.valueOf(bdl.add(bdr).doubleValue());
+				if (op == '-')
+					return Double.valueOf(bdl.subtract(bdr).doubleValue());
+				if (op == '*')
+					return Double.valueOf(bdl.multiply(bdr).doubleValue());
+				if (op == '/')
+					return Double.valueOf(bdl.divide(bdr, DIVIDE_CONTEXT.getPrecision(), DIVIDE_CONTEXT.getRoundingMode()).doubleValue());
+				if (op == '%')
+					return Double.valueOf(bdl.remainder(bdr, DIVIDE_CONTEXT).doubleValue());
 			}
-			else
+			catch (ArithmeticException e)
 			{
-				rightInt = (Integer)rightEval;
-				bir = new BigInteger(rightInt.toString());
+				/* probably a divide by zero */
+				throw new SQLException(e.getMessage());
 			}
-			if (op == '+')
-				bil = bil.add(bir);
-			else if (op == '-')
-				bil = bil.subtract(bir);
-			else if (op == '*')
-				bil = bil.multiply(bir);
-			else if (op == '/')
-				bil = bil.divide(bir);
-			else if (op == '%')
-				bil = bil.remainder(bir);
-			if (isLongExpression)
-				return Long.valueOf(bil.toString());
-			else
-				return Integer.valueOf(bil.toString());
-		}
-		catch (ClassCastException e)
-		{
-		}
-		catch (ArithmeticException e)
-		{
-			/* probably a divide by zero */
-			throw new SQLException(e.getMessage());
-		}
-
-		try
-		{
-			Number leftN = (Number)leftEval;
-			BigDecimal bdl = new BigDecimal(leftN.toString());
-			Number rightN = (Number)rightEval;
-			BigDecimal bdr = new BigDecimal(rightN.toString());
-			if (op == '+')
-				return Double.valueOf(bdl.add(bdr).toString());
-			if (op == '-')
-				return Double.valueOf(bdl.subtract(bdr).toString());
-			if (op == '*')
-				return Double.valueOf(bdl.multiply(bdr).toString());
-			MathContext mc = new MathContext("precision=14 roundingMode=HALF_UP");
-			if (op == '/')
-				return Double.valueOf(bdl.divide(bdr, mc.getPrecision(), mc.getRoundingMode()).toString());
-			if (op == '%')
-				return Double.valueOf(bdl.remainder(bdr, mc).toString());
-		}
-		catch (ClassCastException e)
-		{
-		}
-		catch (ArithmeticException e)
-		{
-			/* probably a divide by zero */
-			throw new SQLException(e.getMessage());
 		}
 
 		try
@@ -225,46 +195,118 @@ class BinaryOperation extends Expression
 		catch (ClassCastException e)
 		{
 		}
-		try
+		if ((op == '+' || op == '-') && leftEval instanceof Timestamp && rightEval instanceof Number)
 		{
-			if (op == '+' || op == '-')
+			Timestamp leftD = (Timestamp)leftEval;
+			long time = leftD.getTime();
+			Number rightN = (Number)rightEval;
+			BigDecimal bdr = new BigDecimal(rightN.toString());
+			if (op == '+')
+				return new Timestamp(time + bdr.longValue());
+			else
+				return new Timestamp(time - bdr.longValue());
+		}
+		else if ((op == '+' || op == '-') && leftEval instanceof Time)
+		{
+			Time leftT = (Time)leftEval;
+
+			if (rightEval instanceof Number)
 			{
-				Timestamp leftD = (Timestamp)leftEval;
-				long time = leftD.getTime();
 				Number rightN = (Number)rightEval;
-				BigDecimal bdr = new BigDecimal(rightN.toString());
-				if (op == '+')
-					return new Timestamp(time + bdr.longValue());
+				long rightMillis = rightN.longValue();
 				if (op == '-')
-					return new Timestamp(time - bdr.longValue());
+					rightMillis = -rightMillis;
+				Time result = Time.valueOf(leftT.toLocalTime().plus(rightMillis, ChronoUnit.MILLIS));
+				return result;
 			}
-		}
-		catch (ClassCastException e)
-		{
-			if ((op == '+' || op == '-') && leftEval instanceof Time)
+			if (op == '-' && rightEval instanceof Time)
 			{
-				Time leftT = (Time)leftEval;
-
-				if (rightEval instanceof Number)
-				{
-					Number rightN = (Number)rightEval;
-					long rightMillis = rightN.longValue();
-					if (op == '-')
-						rightMillis = -rightMillis;
-					Time result = Time.valueOf(leftT.toLocalTime().plus(rightMillis, ChronoUnit.MILLIS));
-					return result;
-				}
-				if (op == '-' && rightEval instanceof Time)
-				{
-					Time rightT = (Time)rightEval;
-					return Long.valueOf(leftT.getTime() - rightT.getTime());
-				}
+				Time rightT = (Time)rightEval;
+				return Long.valueOf(leftT.getTime() - rightT.getTime());
 			}
 		}
 		if(op == '+' || op == '|')
 			return ""+leftEval+rightEval;
 		return null;
 	}
+
+	/**
+	 * Check whether value is one of the types that are calculated as
+	 * integers, without any decimal places.
+	 */
+	private static boolean isIntegerValue(Object o)
+	{
+		return (o instanceof Integer || o instanceof Long || o instanceof Short);
+	}
+
+	/**
+	 * Calculate integer operation.
+	 * @param leftLong left operand.
+	 * @param rightLong right operand.
+	 * @return result of operation.
+	 * @throws ArithmeticException if result overflows a long or on divide by zero.
+	 */
+	private long calculate(long leftLong, long rightLong)
+	{
+		switch (op)
+		{
+		case '+':
+			return Math.addExact(leftLong, rightLong);
+		case '-':
+			return Math.subtractExact(leftLong, rightLong);
+		case '*':
+			return Math.multiplyExact(leftLong, rightLong);
+		case '/':
+			if (leftLong == Long.MIN_VALUE && rightLong == -1)
+				throw new ArithmeticException("long overflow");
+			return leftLong / rightLong;
+		case '%':
+			return leftLong % rightLong;
+		default:
+			throw new IllegalStateException(CsvResources.getString("invalidQueryExpression") + ": " + operation);
+		}
+	}
+
+	/**
+	 * Calculate integer operation, for results that overflow a long.
+	 * @param left left operand.
+	 * @param right right operand.
+	 * @return result of operation.
+	 * @throws ArithmeticException on divide by zero.
+	 */
+	private BigInteger calculate(BigInteger left, BigInteger right)
+	{
+		switch (op)
+		{
+		case '+':
+			return left.add(right);
+		case '-':
+			return left.subtract(right);
+		case '*':
+			return left.multiply(right);
+		case '/':
+			return left.divide(right);
+		case '%':
+			return left.remainder(right);
+		default:
+			throw new IllegalStateException(CsvResources.getString("invalidQueryExpression") + ": " + operation);
+		}
+	}
+
+	/**
+	 * Convert number to BigDecimal with the same value as its string representation.
+	 */
+	private static BigDecimal toBigDecimal(Number n)
+	{
+		if (isIntegerValue(n) || n instanceof Byte)
+			return BigDecimal.valueOf(n.longValue());
+		if (n instanceof Double)
+			return BigDecimal.valueOf(n.doubleValue());
+		if (n instanceof BigDecimal)
+			return (BigDecimal)n;
+		return new BigDecimal(n.toString());
+	}
+
 	private Date incrementDate(Date date, long nDays)
 	{
 		long newTime = date.getTime() +
@@ -288,6 +330,11 @@ class BinaryOperation extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return left.isDeterministic() && right.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -0,0 +1,172 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column names and parsed column values of all rows of a CSV file, kept
+ * in a TableCache so that later queries do not read the file again.
+ */
+class CachedTable
+{
+	/** Estimated memory used by each object and array. */
+	private static final int OBJECT_SIZE = 16;
+
+	private String fileName;
+	private String signature;
+	private long fileSize;
+	private long lastModified;
+	private String[] columnNames;
+	private int[] columnSizes;
+	private int startLineNumber;
+	private List<String[]> rows = new ArrayList<>();
+	private int[] lineNumbers = new int[64];
+	private int endLineNumber;
+	private long size;
+
+	/**
+	 * Create an empty table, before the rows of a CSV file are read.
+	 * @param fileName name of CSV file.
+	 * @param signature properties used to read the CSV file.
+	 * @param fileSize size of CSV file.
+	 * @param lastModified modification time of CSV file.
+	 * @param columnNames column names read from header.
+	 * @param columnSizes column sizes.
+	 * @param startLineNumber number of lines before first row.
+	 */
+	public CachedTable(String fileName, String signature, long fileSize, long lastModified,
+		String[] columnNames, int[] columnSizes, int startLineNumber)
+	{
+		this.fileName = fileName;
+		this.signature = signature;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.columnNames = columnNames;
+		this.columnSizes = columnSizes;
+		this.startLineNumber = startLineNumber;
+		this.endLineNumber = startLineNumber;
+		this.size = OBJECT_SIZE * 4;
+	}
+
+	/**
+	 * Add the values of the next row read from the file.
+	 * @param values column values.
+	 * @param lineNumber number of lines read, including the row.
+	 */
+	public void addRow(String[] values, int lineNumber)
+	{
+		int row = rows.size();
+		if (row == lineNumbers.length)
+			lineNumbers = Arrays.copyOf(lineNumbers, row * 2);
+		lineNumbers[row] = lineNumber;
+		size += OBJECT_SIZE + 8 + 4L * values.length;
+
+		/*
+		 * Strings that are repeated from the previous row are shared
+		 * and only counted once.
+		 */
+		String[] previousValues = (row > 0) ? rows.get(row - 1) : null;
+		for (int i = 0; i < values.length; i++)
+		{
+			String value = values[i];
+			if (value != null && (previousValues == null || i >= previousValues.length ||
+				previousValues[i] != value))
+			{
+				size += OBJECT_SIZE * 2 + value.length();
+			}
+		}
+		rows.add(values);
+	}
+
+	/**
+	 * Mark table as complete, when all rows of the file have been read.
+	 * @param lineNumber number of lines in file.
+	 */
+	public void finish(int lineNumber)
+	{
+		endLineNumber = lineNumber;
+		lineNumbers = Arrays.copyOf(lineNumbers, rows.size());
+		((ArrayList<String[]>)rows).trimToSize();
+	}
+
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+	public String getSignature()
+	{
+		return signature;
+	}
+
+	public long getFileSize()
+	{
+		return fileSize;
+	}
+
+	public long getLastModified()
+	{
+		return lastModified;
+	}
+
+	public String[] getColumnNames()
+	{
+		return columnNames;
+	}
+
+	public int[] getColumnSizes()
+	{
+		return columnSizes;
+	}
+
+	public int getRowCount()
+	{
+		return rows.size();
+	}
+
+	/**
+	 * @param row row number.
+	 * @return column values of row, that must not be modified.
+	 */
+	public String[] getRow(int row)
+	{
+		return rows.get(row);
+	}
+
+	/**
+	 * @param row row number, or -1 for the start of the file, or the
+	 *        number of rows for the end of the file.
+	 * @return number of lines read, including the row.
+	 */
+	public int getLineNumber(int row)
+	{
+		if (row < 0)
+			return startLineNumber;
+		return (row < rows.size()) ? lineNumbers[row] : endLineNumber;
+	}
+
+	/**
+	 * @return estimated number of bytes of memory used by table.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+}
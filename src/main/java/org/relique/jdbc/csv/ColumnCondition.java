@@ -0,0 +1,302 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comparison of a column with constant values, taken from the parts of
+ * an SQL WHERE clause joined with AND.  Every row matching the WHERE
+ * clause also matches each of these comparisons, so rows that do not
+ * match a comparison can be skipped without being read.
+ */
+class ColumnCondition
+{
+	/** Operator for BETWEEN, with lower and upper values. */
+	public static final String BETWEEN = "B";
+
+	/** Operator for IN, with a list of values. */
+	public static final String IN = "IN";
+
+	private int column;
+	private String op;
+	private List<Object> values;
+
+	private ColumnCondition(int column, String op, List<Object> values)
+	{
+		this.column = column;
+		this.op = op;
+		this.values = values;
+	}
+
+	/**
+	 * Find comparisons of columns with constant values in a WHERE clause.
+	 * @param whereClause WHERE clause of query.
+	 * @param reader reader for table.
+	 * @param env environment to add prepared statement parameters to.
+	 * @return comparisons, each with values already evaluated.
+	 */
+	public static List<ColumnCondition> find(LogicalExpression whereClause, CsvReader reader,
+		Map<String, Object> env)
+	{
+		List<ColumnCondition> conditions = new ArrayList<>();
+		if (whereClause != null)
+		{
+			try
+			{
+				addConditions(whereClause, reader, env, conditions);
+			}
+			catch (SQLException e)
+			{
+				conditions.clear();
+			}
+		}
+		return conditions;
+	}
+
+	private static void addConditions(LogicalExpression expression, CsvReader reader,
+		Map<String, Object> env, List<ColumnCondition> conditions) throws SQLException
+	{
+		if (expression instanceof ParsedExpression)
+		{
+			ParsedExpression parsedExpression = (ParsedExpression)expression;
+			if (parsedExpression.content instanceof LogicalExpression)
+			{
+				env.putAll(parsedExpression.getPlaceholders());
+				addConditions((LogicalExpression)parsedExpression.content, reader, env, conditions);
+			}
+		}
+		else if (expression instanceof AndExpression)
+		{
+			AndExpression andExpression = (AndExpression)expression;
+			addConditions(andExpression.left, reader, env, conditions);
+			addConditions(andExpression.right, reader, env, conditions);
+		}
+		else if (expression instanceof RelopExpression)
+		{
+			RelopExpression relop = (RelopExpression)expression;
+			if (isConstant(relop.right))
+			{
+				add(conditions, getColumn(relop.left, reader), relop.op, relop.right.eval(env));
+			}
+			else if (isConstant(relop.left))
+			{
+				/*
+				 * Swap sides so that the column is always on the left.
+				 */
+				add(conditions, getColumn(relop.right, reader), swapOperator(relop.op),
+					relop.left.eval(env));
+			}
+		}
+		else if (expression instanceof BetweenExpression)
+		{
+			BetweenExpression between = (BetweenExpression)expression;
+			if (isConstant(between.left) && isConstant(between.right))
+			{
+				add(conditions, getColumn(between.obj, reader), BETWEEN,
+					between.left.eval(env), between.right.eval(env));
+			}
+		}
+		else if (expression instanceof InExpression)
+		{
+			InExpression in = (InExpression)expression;
+			if (in.inList != null)
+			{
+				List<Object> values = new ArrayList<>();
+				for (Expression inValue : in.inList)
+				{
+					if (!isConstant(inValue))
+						return;
+					Object value = inValue.eval(env);
+
+					/*
+					 * NULL never matches, so it can be left out.
+					 */
+					if (value != null)
+						values.add(value);
+				}
+				add(conditions, getColumn(in.obj, reader), IN, values.toArray());
+			}
+		}
+	}
+
+	private static void add(List<ColumnCondition> conditions, int column, String op,
+		Object... values)
+	{
+		if (column < 0 || op == null)
+			return;
+		for (Object value : values)
+		{
+			if (!(value instanceof Comparable))
+				return;
+		}
+		conditions.add(new ColumnCondition(column, op, List.of(values)));
+	}
+
+	private static boolean isConstant(Expression expression)
+	{
+		return expression instanceof NumericConstant ||
+			expression instanceof StringConstant ||
+			expression instanceof Placeholder;
+	}
+
+	private static int getColumn(Expression expression, CsvReader reader)
+	{
+		if (expression instanceof ColumnName)
+		{
+			Integer index = reader.getColumnIndex(((ColumnName)expression).getColumnName());
+			if (index != null)
+				return index.intValue();
+		}
+		return -1;
+	}
+
+	private static String swapOperator(String op)
+	{
+		switch (op)
+		{
+		case "=":
+		case "<>":
+		case "!=":
+			return op;
+		case "<":
+			return ">";
+		case ">":
+			return "<";
+		case "<=":
+		case "=<":
+			return ">=";
+		case ">=":
+		case "=>":
+			return "<=";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return index of column that is compared.
+	 */
+	public int getColumn()
+	{
+		return column;
+	}
+
+	/**
+	 * @return comparison operator, BETWEEN or IN.
+	 */
+	public String getOperator()
+	{
+		return op;
+	}
+
+	/**
+	 * @return values column is compared with.
+	 */
+	public List<Object> getValues()
+	{
+		return values;
+	}
+
+	/**
+	 * Check whether comparing values of a column with the values of this
+	 * condition gives results in the same order as the column values, so
+	 * that sorted column values or their minimum and maximum can be used.
+	 * @param columnValue any non-null value of column.
+	 * @return true if comparisons are in the same order as column values.
+	 */
+	public boolean isOrdered(Object columnValue)
+	{
+		for (Object value : values)
+		{
+			if (!(columnValue.getClass() == value.getClass() ||
+				(columnValue instanceof Number && value instanceof Number) ||
+				columnValue instanceof java.util.Date ||
+				columnValue instanceof Boolean))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether any column value between a minimum and maximum value
+	 * can match this condition.
+	 * @param minValue minimum column value.
+	 * @param maxValue maximum column value.
+	 * @param env environment containing converter for comparing values.
+	 * @return false if no value between minValue and maxValue matches.
+	 * @throws SQLException if values cannot be compared.
+	 */
+	public boolean mayMatch(Comparable minValue, Comparable maxValue, Map<String, Object> env)
+		throws SQLException
+	{
+		if (op.equals(IN))
+		{
+			for (Object value : values)
+			{
+				Integer comparedMin = RelopExpression.compare(minValue, (Comparable)value, env);
+				Integer comparedMax = RelopExpression.compare(maxValue, (Comparable)value, env);
+				if (comparedMin == null || comparedMax == null ||
+					(comparedMin.intValue() <= 0 && comparedMax.intValue() >= 0))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		if (op.equals(BETWEEN))
+		{
+			Integer comparedMax = RelopExpression.compare((Comparable)values.get(0), maxValue, env);
+			Integer comparedMin = RelopExpression.compare((Comparable)values.get(1), minValue, env);
+			return comparedMax == null || comparedMin == null ||
+				(comparedMax.intValue() <= 0 && comparedMin.intValue() >= 0);
+		}
+
+		Comparable value = (Comparable)values.get(0);
+		Integer comparedMin = RelopExpression.compare(minValue, value, env);
+		Integer comparedMax = RelopExpression.compare(maxValue, value, env);
+		if (comparedMin == null || comparedMax == null)
+			return true;
+		int min = comparedMin.intValue();
+		int max = comparedMax.intValue();
+		switch (op)
+		{
+		case "=":
+			return min <= 0 && max >= 0;
+		case "<>":
+		case "!=":
+			return min != 0 || max != 0;
+		case "<":
+			return min < 0;
+		case "<=":
+		case "=<":
+			return min <= 0;
+		case ">":
+			return max > 0;
+		case ">=":
+		case "=>":
+			return max >= 0;
+		default:
+			return true;
+		}
+	}
+}
@@ -0,0 +1,628 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of one column of a CSV file in sorted order, with the position
+ * in the file of the row containing each value, so that rows with
+ * particular values can be read without reading the whole file.
+ *
+ * The index is created while the whole file is read and is saved in a
+ * file next to the CSV file, so that it can be used by later queries.
+ * The file is ignored and replaced if the size or modification time of
+ * the CSV file changes, or if it was created with different properties
+ * or column type for reading the file.
+ */
+class ColumnIndex
+{
+	/** File name suffix of column index files. */
+	public static final String FILE_SUFFIX = ".cix";
+
+	private static final int MAGIC = 0x43534349;
+	private static final int VERSION = 2;
+
+	/** Estimated number of bytes of memory used by each object. */
+	private static final int OBJECT_SIZE = 16;
+
+	private String fileName;
+	private File indexFile;
+	private String columnName;
+	private long fileSize;
+	private long lastModified;
+	private String signature;
+	private String columnType = null;
+
+	/** Non-null column values, sorted, with the row of each value. */
+	private Object[] keys = new Object[16];
+	private int[] rows = new int[16];
+	private long[] offsets = new long[16];
+	private int[] lineNumbers = new int[16];
+	private int count = 0;
+
+	private int rowCount;
+	private long endOffset;
+	private int endLineNumber;
+	private boolean complete = false;
+	private boolean changed = false;
+
+	/** Set if column contains values that cannot be compared with each other. */
+	private boolean unusable = false;
+
+	private ColumnIndex(String fileName, File indexFile, String columnName, long fileSize,
+		long lastModified, String signature)
+	{
+		this.fileName = fileName;
+		this.indexFile = indexFile;
+		this.columnName = columnName;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.signature = signature;
+	}
+
+	/**
+	 * Open the index of a column of a CSV file, reading any saved index.
+	 * @param fileName name of CSV file.
+	 * @param columnName name of column, in upper case.
+	 * @param signature properties used to read the CSV file.
+	 * @return index for column.
+	 */
+	public static ColumnIndex open(String fileName, String columnName, String signature)
+	{
+		File file = new File(fileName);
+		ColumnIndex columnIndex = new ColumnIndex(fileName, new File(fileName + "." + columnName + FILE_SUFFIX),
+			columnName, file.length(), file.lastModified(), signature);
+		if (columnIndex.indexFile.exists())
+		{
+			try
+			{
+				columnIndex.load();
+			}
+			catch (IOException e)
+			{
+				CsvDriver.writeLog("Ignoring column index " + columnIndex.indexFile + ": " + e);
+				columnIndex.clear();
+			}
+		}
+		return columnIndex;
+	}
+
+	private void load() throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+				in.readLong() != fileSize || in.readLong() != lastModified ||
+				!in.readUTF().equals(signature) || !in.readUTF().equals(columnName))
+			{
+				/*
+				 * CSV file has changed since the index was saved.
+				 */
+				return;
+			}
+			columnType = in.readUTF();
+			unusable = in.readBoolean();
+			count = in.readInt();
+			if (count < 0)
+				throw new IOException("invalid value count " + count);
+			String keyClassName = in.readUTF();
+			keys = new Object[count];
+			rows = new int[count];
+			offsets = new long[count];
+			lineNumbers = new int[count];
+			for (int i = 0; i < count; i++)
+			{
+				keys[i] = readKey(in, keyClassName);
+				rows[i] = in.readInt();
+				offsets[i] = in.readLong();
+				lineNumbers[i] = in.readInt();
+			}
+			rowCount = in.readInt();
+			endOffset = in.readLong();
+			endLineNumber = in.readInt();
+			complete = true;
+		}
+	}
+
+	private static Object readKey(DataInputStream in, String keyClassName) throws IOException
+	{
+		switch (keyClassName)
+		{
+		case "java.lang.String":
+			byte[] b = new byte[in.readInt()];
+			in.readFully(b);
+			return new String(b, StandardCharsets.UTF_8);
+		case "java.lang.Boolean":
+			return Boolean.valueOf(in.readBoolean());
+		case "java.lang.Byte":
+			return Byte.valueOf(in.readByte());
+		case "java.lang.Short":
+			return Short.valueOf(in.readShort());
+		case "java.lang.Integer":
+			return Integer.valueOf(in.readInt());
+		case "java.lang.Long":
+			return Long.valueOf(in.readLong());
+		case "java.lang.Float":
+			return Float.valueOf(in.readFloat());
+		case "java.lang.Double":
+			return Double.valueOf(in.readDouble());
+		case "java.math.BigDecimal":
+			return new BigDecimal(in.readUTF());
+		case "java.sql.Date":
+			return new Date(in.readLong());
+		case "java.sql.Time":
+			return new Time(in.readLong());
+		case "java.sql.Timestamp":
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		default:
+			throw new IOException(CsvResources.getString("invalidColumnType") + ": " + keyClassName);
+		}
+	}
+
+	private static void writeKey(DataOutputStream out, Object key) throws IOException
+	{
+		if (key instanceof String)
+		{
+			byte[] b = ((String)key).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+		else if (key instanceof Boolean)
+		{
+			out.writeBoolean(((Boolean)key).booleanValue());
+		}
+		else if (key instanceof Byte)
+		{
+			out.writeByte(((Byte)key).byteValue());
+		}
+		else if (key instanceof Short)
+		{
+			out.writeShort(((Short)key).shortValue());
+		}
+		else if (key instanceof Integer)
+		{
+			out.writeInt(((Integer)key).intValue());
+		}
+		else if (key instanceof Long)
+		{
+			out.writeLong(((Long)key).longValue());
+		}
+		else if (key instanceof Float)
+		{
+			out.writeFloat(((Float)key).floatValue());
+		}
+		else if (key instanceof Double)
+		{
+			out.writeDouble(((Double)key).doubleValue());
+		}
+		else if (key instanceof BigDecimal)
+		{
+			out.writeUTF(key.toString());
+		}
+		else if (key.getClass() == Date.class || key.getClass() == Time.class)
+		{
+			out.writeLong(((java.util.Date)key).getTime());
+		}
+		else if (key.getClass() == Timestamp.class)
+		{
+			out.writeLong(((Timestamp)key).getTime());
+			out.writeInt(((Timestamp)key).getNanos());
+		}
+		else
+		{
+			throw new IOException(CsvResources.getString("invalidColumnType") + ": " + key.getClass().getName());
+		}
+	}
+
+	/**
+	 * Save index in file, if it was created by reading all rows of the CSV file.
+	 */
+	public void save()
+	{
+		if (!complete || !changed)
+			return;
+		changed = false;
+		File tempFile = null;
+		try
+		{
+			tempFile = File.createTempFile("csvjdbc", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(fileSize);
+				out.writeLong(lastModified);
+				out.writeUTF(signature);
+				out.writeUTF(columnName);
+				out.writeUTF(columnType);
+				out.writeBoolean(unusable);
+				out.writeInt(count);
+				out.writeUTF(count > 0 ? keys[0].getClass().getName() : "");
+				for (int i = 0; i < count; i++)
+				{
+					writeKey(out, keys[i]);
+					out.writeInt(rows[i]);
+					out.writeLong(offsets[i]);
+					out.writeInt(lineNumbers[i]);
+				}
+				out.writeInt(rowCount);
+				out.writeLong(endOffset);
+				out.writeInt(endLineNumber);
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			tempFile = null;
+		}
+		catch (IOException | SecurityException e)
+		{
+			/*
+			 * Index files are optional, so continue without one if the
+			 * directory is not writable.
+			 */
+			CsvDriver.writeLog("Cannot save column index " + indexFile + ": " + e);
+		}
+		finally
+		{
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Remove all values, so that the index is created again.
+	 */
+	public void clear()
+	{
+		keys = new Object[16];
+		rows = new int[16];
+		offsets = new long[16];
+		lineNumbers = new int[16];
+		count = 0;
+		complete = false;
+		changed = false;
+		unusable = false;
+	}
+
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+	public String getColumnName()
+	{
+		return columnName;
+	}
+
+	public String getColumnType()
+	{
+		return columnType;
+	}
+
+	public String getSignature()
+	{
+		return signature;
+	}
+
+	/**
+	 * @return size of CSV file when the index was created.
+	 */
+	public long getFileSize()
+	{
+		return fileSize;
+	}
+
+	/**
+	 * @return modification time of CSV file when the index was created.
+	 */
+	public long getLastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * Set the type used to convert the values in the index, discarding
+	 * any saved index with values converted to another type.
+	 * @param columnType data type of column.
+	 */
+	public void setColumnType(String columnType)
+	{
+		if (complete && !columnType.equals(this.columnType))
+			clear();
+		this.columnType = columnType;
+	}
+
+	/**
+	 * @return true if the index contains all rows in the file.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * Add the value of a row, when creating the index.
+	 * @param row row number.
+	 * @param offset byte position of row in file.
+	 * @param lineNumber number of lines before row.
+	 * @param value column value, converted to the column type.
+	 */
+	public void addRow(int row, long offset, int lineNumber, Object value)
+	{
+		if (value == null || unusable)
+			return;
+		if (!(value instanceof Comparable) || (count > 0 && keys[0].getClass() != value.getClass()))
+		{
+			unusable = true;
+			return;
+		}
+		if (count == keys.length)
+		{
+			keys = Arrays.copyOf(keys, count * 2);
+			rows = Arrays.copyOf(rows, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+			lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+		}
+		keys[count] = value;
+		rows[count] = row;
+		offsets[count] = offset;
+		lineNumbers[count] = lineNumber;
+		count++;
+	}
+
+	/**
+	 * Sort the values, when all rows of the file have been read.
+	 * @param rowCount number of rows in file.
+	 * @param offset byte position of end of file.
+	 * @param lineNumber number of lines in file.
+	 */
+	public void finish(int rowCount, long offset, int lineNumber)
+	{
+		if (unusable)
+			count = 0;
+
+		/*
+		 * Sort positions of values, keeping rows with equal values in
+		 * the order they are in the file.
+		 */
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++)
+			order[i] = Integer.valueOf(i);
+		Arrays.sort(order, (i1, i2) -> ((Comparable)keys[i1.intValue()]).compareTo(keys[i2.intValue()]));
+
+		Object[] sortedKeys = new Object[count];
+		int[] sortedRows = new int[count];
+		long[] sortedOffsets = new long[count];
+		int[] sortedLineNumbers = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			int j = order[i].intValue();
+			sortedKeys[i] = keys[j];
+			sortedRows[i] = rows[j];
+			sortedOffsets[i] = offsets[j];
+			sortedLineNumbers[i] = lineNumbers[j];
+		}
+		keys = sortedKeys;
+		rows = sortedRows;
+		offsets = sortedOffsets;
+		lineNumbers = sortedLineNumbers;
+		this.rowCount = rowCount;
+		endOffset = offset;
+		endLineNumber = lineNumber;
+		complete = true;
+		changed = true;
+	}
+
+	/**
+	 * Find the rows that match a condition on this column.
+	 * @param condition comparison of column with constant values.
+	 * @param env environment containing converter for comparing values.
+	 * @return positions in index of matching rows, sorted by row number,
+	 *         or null if the index cannot be used for the condition.
+	 */
+	public int[] find(ColumnCondition condition, Map<String, Object> env)
+	{
+		if (unusable || (count > 0 && !condition.isOrdered(keys[0])))
+			return null;
+
+		List<Object> values = condition.getValues();
+		try
+		{
+			int[] ranges;
+			switch (condition.getOperator())
+			{
+			case "=":
+				ranges = new int[]{lowerBound(values.get(0), env), upperBound(values.get(0), env)};
+				break;
+			case "<":
+				ranges = new int[]{0, lowerBound(values.get(0), env)};
+				break;
+			case "<=":
+			case "=<":
+				ranges = new int[]{0, upperBound(values.get(0), env)};
+				break;
+			case ">":
+				ranges = new int[]{upperBound(values.get(0), env), count};
+				break;
+			case ">=":
+			case "=>":
+				ranges = new int[]{lowerBound(values.get(0), env), count};
+				break;
+			case ColumnCondition.BETWEEN:
+				ranges = new int[]{lowerBound(values.get(0), env), upperBound(values.get(1), env)};
+				break;
+			case ColumnCondition.IN:
+				ranges = new int[values.size() * 2];
+				for (int i = 0; i < values.size(); i++)
+				{
+					ranges[i * 2] = lowerBound(values.get(i), env);
+					ranges[i * 2 + 1] = upperBound(values.get(i), env);
+				}
+				break;
+			default:
+				return null;
+			}
+
+			/*
+			 * Sort matching rows into the order they are in the file,
+			 * leaving out rows matching more than one value in an IN list.
+			 */
+			long[] matches = new long[0];
+			int nMatches = 0;
+			for (int i = 0; i < ranges.length; i += 2)
+			{
+				int n = ranges[i + 1] - ranges[i];
+				if (n <= 0)
+					continue;
+				matches = Arrays.copyOf(matches, nMatches + n);
+				for (int j = ranges[i]; j < ranges[i + 1]; j++)
+					matches[nMatches++] = ((long)rows[j] << 32) | j;
+			}
+			Arrays.sort(matches, 0, nMatches);
+			int[] positions = new int[nMatches];
+			int nPositions = 0;
+			for (int i = 0; i < nMatches; i++)
+			{
+				if (i == 0 || (matches[i] >>> 32) != (matches[i - 1] >>> 32))
+					positions[nPositions++] = (int)matches[i];
+			}
+			return Arrays.copyOf(positions, nPositions);
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			/*
+			 * Read all rows, so that any error is reported for its rows.
+			 */
+			return null;
+		}
+	}
+
+	/**
+	 * @return position of first value not less than value.
+	 */
+	private int lowerBound(Object value, Map<String, Object> env) throws SQLException
+	{
+		int low = 0;
+		int high = count;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (compare(keys[middle], value, env) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * @return position of first value greater than value.
+	 */
+	private int upperBound(Object value, Map<String, Object> env) throws SQLException
+	{
+		int low = 0;
+		int high = count;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (compare(keys[middle], value, env) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private int compare(Object key, Object value, Map<String, Object> env) throws SQLException
+	{
+		Integer compared = RelopExpression.compare((Comparable)key, (Comparable)value, env);
+		if (compared == null)
+			throw new SQLException(CsvResources.getString("invalidColumnType") + ": " + columnType);
+		return compared.intValue();
+	}
+
+	public int getRow(int position)
+	{
+		return rows[position];
+	}
+
+	public long getOffset(int position)
+	{
+		return offsets[position];
+	}
+
+	public int getLineNumber(int position)
+	{
+		return lineNumbers[position];
+	}
+
+	/**
+	 * @return number of rows in file.
+	 */
+	public int getRowCount()
+	{
+		return rowCount;
+	}
+
+	public long getEndOffset()
+	{
+		return endOffset;
+	}
+
+	public int getEndLineNumber()
+	{
+		return endLineNumber;
+	}
+
+	/**
+	 * @return estimated number of bytes of memory used by index.
+	 */
+	public long getSize()
+	{
+		long size = OBJECT_SIZE * 5 + (4L + 4 + 8 + 4) * keys.length;
+		for (int i = 0; i < count; i++)
+		{
+			Object key = keys[i];
+			if (key instanceof String)
+				size += OBJECT_SIZE * 2 + ((String)key).length();
+			else if (key != null)
+				size += OBJECT_SIZE + 8;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Column indexes used by earlier queries of a connection, kept in memory
+ * so that the index file is not read again for each query.
+ *
+ * Only complete indexes are kept, and they are not changed after they
+ * are added, so an index can be used by several queries at once.  When
+ * the estimated memory used by all indexes is more than the maximum size,
+ * the least recently used indexes are removed.  An index is removed when
+ * the size or modification time of its CSV file changes.
+ */
+class ColumnIndexCache
+{
+	/** Estimated number of bytes of memory used by indexes of each connection. */
+	public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+	private long maxSize;
+	private long size = 0;
+
+	/** Indexes in order of use, least recently used first. */
+	private LinkedHashMap<String, ColumnIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Create cache.
+	 * @param maxSize maximum estimated number of bytes of memory used by indexes.
+	 */
+	public ColumnIndexCache(long maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+
+	private static String getKey(String fileName, String columnName, String signature,
+		String columnType)
+	{
+		return fileName + "|" + columnName + "|" + columnType + "|" + signature;
+	}
+
+	/**
+	 * Get the index of a column, if it has already been read or created.
+	 * @param fileName name of CSV file.
+	 * @param columnName name of column, in upper case.
+	 * @param signature properties used to read the CSV file.
+	 * @param columnType data type of column.
+	 * @return index, or null if index is not in cache.
+	 */
+	public synchronized ColumnIndex get(String fileName, String columnName, String signature,
+		String columnType)
+	{
+		String key = getKey(fileName, columnName, signature, columnType);
+		ColumnIndex index = indexes.get(key);
+		if (index != null)
+		{
+			File file = new File(fileName);
+			if (file.length() != index.getFileSize() || file.lastModified() != index.getLastModified())
+			{
+				/*
+				 * File has changed since the index was created.
+				 */
+				indexes.remove(key);
+				size -= index.getSize();
+				index = null;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Add an index, after it has been read or created from all rows of the file.
+	 * @param index index to add.
+	 */
+	public synchronized void put(ColumnIndex index)
+	{
+		if (!index.isComplete())
+			return;
+		long indexSize = index.getSize();
+		if (indexSize > maxSize)
+			return;
+		ColumnIndex previous = indexes.put(getKey(index.getFileName(), index.getColumnName(),
+			index.getSignature(), index.getColumnType()), index);
+		if (previous != null)
+			size -= previous.getSize();
+		size += indexSize;
+
+		Iterator<Map.Entry<String, ColumnIndex>> it = indexes.entrySet().iterator();
+		while (size > maxSize && it.hasNext())
+		{
+			ColumnIndex leastRecentlyUsed = it.next().getValue();
+			size -= leastRecentlyUsed.getSize();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove all indexes.
+	 */
+	public synchronized void clear()
+	{
+		indexes.clear();
+		size = 0;
+	}
+}
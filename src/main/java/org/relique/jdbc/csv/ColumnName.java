@@ -25,8 +25,37 @@ import java.util.Set;
 
 class ColumnName extends Expression
 {
+	/**
+	 * Slot of a column in the rows with one particular layout.
+	 */
+	private static class ColumnSlot
+	{
+		final Map<String, Integer> slots;
+		final int slot;
+
+		ColumnSlot(Map<String, Integer> slots, String columnName)
+		{
+			this.slots = slots;
+			Integer index = slots.get(columnName);
+			this.slot = (index != null) ? index.intValue() : -1;
+		}
+	}
+
+	/**
+	 * Maximum number of row layouts to keep the slot of this column for.
+	 */
+	private static final int MAX_LAYOUTS = 4;
+
 	private String columnName;
 
+	/**
+	 * Slot of this column in each row layout it was evaluated with, most
+	 * recently added first.  A query evaluates a column in rows of a few
+	 * layouts, such as rows read from a table and rows of the SELECT list,
+	 * so the slot in each layout is kept instead of only the latest one.
+	 */
+	private ColumnSlot[] columnSlots = new ColumnSlot[0];
+
 	public ColumnName(String columnName)
 	{
 		this.columnName = columnName.toUpperCase();
@@ -40,9 +69,49 @@ class ColumnName extends Expression
 	@Override
 	public Object eval(Map<String, Object> env)
 	{
+		if (env instanceof SlotMap)
+		{
+			/*
+			 * Find the slot of this column once for each row layout,
+			 * then read each row directly by slot.
+			 */
+			SlotMap row = (SlotMap)env;
+			int slot = getSlot(row);
+			if (slot >= 0)
+				return row.getSlot(slot);
+		}
 		return env.get(columnName);
 	}
 
+	/**
+	 * Find the slot of this column once for each row layout,
+	 * so that each row can then be read directly by slot.
+	 * @param row row to read this column from.
+	 * @return slot of this column in row, or -1 if row has no slot for it.
+	 */
+	public int getSlot(SlotMap row)
+	{
+		Map<String, Integer> slots = row.getSlots();
+		ColumnSlot[] cached = columnSlots;
+		for (ColumnSlot columnSlot : cached)
+		{
+			if (columnSlot.slots == slots)
+				return columnSlot.slot;
+		}
+
+		/*
+		 * Replace the array instead of changing it, so that it is never
+		 * seen partly updated.
+		 */
+		ColumnSlot columnSlot = new ColumnSlot(slots, columnName);
+		int nKept = Math.min(cached.length, MAX_LAYOUTS - 1);
+		ColumnSlot[] updated = new ColumnSlot[nKept + 1];
+		updated[0] = columnSlot;
+		System.arraycopy(cached, 0, updated, 1, nKept);
+		columnSlots = updated;
+		return columnSlot.slot;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -56,4 +125,9 @@ class ColumnName extends Expression
 		result.add(columnName);
 		return result;
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
 }
@@ -101,6 +101,9 @@ public class CsvConnection implements Connection
 	/** Lookup table with column data types for each table */
 	private HashMap<String, String> columnTypes = new HashMap<>();
 
+	/** Lookup table with names of columns to create indexes for in each table */
+	private HashMap<String, String> indexColumns = new HashMap<>();
+
 	/** Collection of all created Statements */
 	private Vector<Statement> statements = new Vector<>();
 
@@ -152,6 +155,25 @@ public class CsvConnection implements Connection
 
 	private Long randomSeed = null;
 
+	private boolean lazyScrollBuffer;
+
+	private boolean memoryMappedFiles;
+
+	private int sortBufferRows = Integer.parseInt(CsvDriver.DEFAULT_SORT_BUFFER_ROWS);
+
+	private int rowIndexInterval = 0;
+
+	private int zoneMapInterval = 0;
+
+	/** Column indexes read or created by earlier queries. */
+	private ColumnIndexCache columnIndexCache = new ColumnIndexCache(ColumnIndexCache.DEFAULT_MAX_SIZE);
+
+	private TableCache tableCache = null;
+
+	private PlanCache planCache = null;
+
+	private boolean parallelScan;
+
 	/**
 	 * Set defaults for connection.
 	 */
@@ -366,6 +388,13 @@ public class CsvConnection implements Connection
 		}
 		columnTypes.putAll(getMatchingProperties(info, CsvDriver.COLUMN_TYPES + "."));
 
+		// set global indexColumns and indexColumns.tablename values.
+		if (info.getProperty(CsvDriver.INDEX_COLUMNS) != null)
+		{
+			indexColumns.put(null, info.getProperty(CsvDriver.INDEX_COLUMNS));
+		}
+		indexColumns.putAll(getMatchingProperties(info, CsvDriver.INDEX_COLUMNS + "."));
+
 		// are files indexed? ()
 		if (info.getProperty(CsvDriver.INDEXED_FILES) != null)
 		{
@@ -509,6 +538,25 @@ public class CsvConnection implements Connection
 			prop = info.getProperty(CsvDriver.RANDOM_SEED);
 			randomSeed = Long.valueOf(prop);
 		}
+		setLazyScrollBuffer(Boolean.parseBoolean(info.getProperty(
+			CsvDriver.LAZY_SCROLL_BUFFER,
+			CsvDriver.DEFAULT_LAZY_SCROLL_BUFFER)));
+		setSortBufferRows(info.getProperty(CsvDriver.SORT_BUFFER_ROWS,
+			CsvDriver.DEFAULT_SORT_BUFFER_ROWS));
+		setMemoryMappedFiles(Boolean.parseBoolean(info.getProperty(
+			CsvDriver.MEMORY_MAPPED_FILES,
+			CsvDriver.DEFAULT_MEMORY_MAPPED_FILES)));
+		setParallelScan(Boolean.parseBoolean(info.getProperty(
+			CsvDriver.PARALLEL_SCAN,
+			CsvDriver.DEFAULT_PARALLEL_SCAN)));
+		setRowIndexInterval(info.getProperty(CsvDriver.ROW_INDEX_INTERVAL,
+			CsvDriver.DEFAULT_ROW_INDEX_INTERVAL));
+		setZoneMapInterval(info.getProperty(CsvDriver.ZONE_MAP_INTERVAL,
+			CsvDriver.DEFAULT_ZONE_MAP_INTERVAL));
+		setTableCacheSize(info.getProperty(CsvDriver.TABLE_CACHE_SIZE,
+			CsvDriver.DEFAULT_TABLE_CACHE_SIZE));
+		setPlanCacheSize(info.getProperty(CsvDriver.PLAN_CACHE_SIZE,
+			CsvDriver.DEFAULT_PLAN_CACHE_SIZE));
 	}
 
 	/**
@@ -682,6 +730,11 @@ public class CsvConnection implements Connection
 	public void close() throws SQLException
 	{
 		closeStatements();
+		columnIndexCache.clear();
+		if (tableCache != null)
+			tableCache.clear();
+		if (planCache != null)
+			planCache.clear();
 
 		// set this Connection as closed
 		closed = true;
@@ -1167,6 +1220,22 @@ public class CsvConnection implements Connection
 		return retval;
 	}
 
+	/**
+	 * Get names of columns to create indexes for in a table.
+	 * @param tableName name of table.
+	 * @return comma-separated list of column names, or null for no indexes.
+	 */
+	public String getIndexColumns(String tableName)
+	{
+		String retval = indexColumns.get(tableName);
+		if (retval == null)
+		{
+			// Use default if no indexColumns defined for this table.
+			retval = indexColumns.get(null);
+		}
+		return retval;
+	}
+
 	/**
 	 * Set flag for reading indexed files.
 	 * 
@@ -1513,4 +1582,169 @@ public class CsvConnection implements Connection
 	{
 		return randomSeed;
 	}
+
+	public boolean isLazyScrollBuffer()
+	{
+		return lazyScrollBuffer;
+	}
+
+	/**
+	 * @param lazyScrollBuffer
+	 *            true if scrollable result sets should not buffer rows
+	 *            until the first scrolling method is called.
+	 */
+	public void setLazyScrollBuffer(boolean lazyScrollBuffer)
+	{
+		this.lazyScrollBuffer = lazyScrollBuffer;
+	}
+
+	public boolean isMemoryMappedFiles()
+	{
+		return memoryMappedFiles;
+	}
+
+	/**
+	 * @param memoryMappedFiles
+	 *            true if local files should be mapped into memory
+	 *            instead of being read.
+	 */
+	public void setMemoryMappedFiles(boolean memoryMappedFiles)
+	{
+		this.memoryMappedFiles = memoryMappedFiles;
+	}
+
+	private void setSortBufferRows(String property)
+	{
+		try
+		{
+			sortBufferRows = Integer.parseInt(property);
+		}
+		catch (NumberFormatException e)
+		{
+			sortBufferRows = Integer.parseInt(CsvDriver.DEFAULT_SORT_BUFFER_ROWS);
+		}
+	}
+
+	/**
+	 * @return maximum number of rows to sort in memory before writing
+	 *         them to a temporary file, or 0 to always sort in memory.
+	 */
+	public int getSortBufferRows()
+	{
+		return sortBufferRows;
+	}
+
+	private void setRowIndexInterval(String property)
+	{
+		try
+		{
+			rowIndexInterval = Integer.parseInt(property);
+		}
+		catch (NumberFormatException e)
+		{
+			rowIndexInterval = 0;
+		}
+	}
+
+	/**
+	 * @return number of rows between positions saved in the row index file
+	 *         created next to each CSV file, or 0 for no row index files.
+	 */
+	public int getRowIndexInterval()
+	{
+		return rowIndexInterval;
+	}
+
+	private void setZoneMapInterval(String property)
+	{
+		try
+		{
+			zoneMapInterval = Integer.parseInt(property);
+		}
+		catch (NumberFormatException e)
+		{
+			zoneMapInterval = 0;
+		}
+	}
+
+	/**
+	 * @return number of rows in each block of the zone map file created
+	 *         next to each CSV file, or 0 for no zone map files.
+	 */
+	public int getZoneMapInterval()
+	{
+		return zoneMapInterval;
+	}
+
+	private void setTableCacheSize(String property)
+	{
+		int tableCacheSize;
+		try
+		{
+			tableCacheSize = Integer.parseInt(property);
+		}
+		catch (NumberFormatException e)
+		{
+			tableCacheSize = 0;
+		}
+		if (tableCacheSize > 0)
+			tableCache = new TableCache(tableCacheSize * 1024L);
+	}
+
+	/**
+	 * @return cache of tables read by earlier queries of this connection,
+	 *         or null if tables are not cached.
+	 */
+	TableCache getTableCache()
+	{
+		return tableCache;
+	}
+
+	private void setPlanCacheSize(String property)
+	{
+		int planCacheSize;
+		try
+		{
+			planCacheSize = Integer.parseInt(property);
+		}
+		catch (NumberFormatException e)
+		{
+			planCacheSize = 0;
+		}
+		if (planCacheSize > 0)
+			planCache = new PlanCache(planCacheSize);
+	}
+
+	/**
+	 * @return cache of SQL statements parsed by earlier queries of this
+	 *         connection, or null if parsed statements are not cached.
+	 */
+	PlanCache getPlanCache()
+	{
+		return planCache;
+	}
+
+	/**
+	 * @return cache of column indexes read or created by earlier queries
+	 *         of this connection.
+	 */
+	ColumnIndexCache getColumnIndexCache()
+	{
+		return columnIndexCache;
+	}
+
+	/**
+	 * @param parallelScan
+	 *            true if the WHERE clause should be evaluated for rows
+	 *            on several threads.
+	 */
+	public void setParallelScan(boolean parallelScan)
+	{
+		this.parallelScan = parallelScan;
+	}
+
+	public boolean isParallelScan()
+	{
+		return parallelScan;
+	}
 }
@@ -920,7 +920,7 @@ public class CsvDatabaseMetaData implements DatabaseMetaData
 	@Override
 	public boolean supportsFullOuterJoins() throws SQLException
 	{
-		return false;
+		return true;
 	}
 
 	@Override
@@ -962,7 +962,7 @@ public class CsvDatabaseMetaData implements DatabaseMetaData
 	@Override
 	public boolean supportsLimitedOuterJoins() throws SQLException
 	{
-		return false;
+		return true;
 	}
 
 	@Override
@@ -1046,7 +1046,7 @@ public class CsvDatabaseMetaData implements DatabaseMetaData
 	@Override
 	public boolean supportsOuterJoins() throws SQLException
 	{
-		return false;
+		return true;
 	}
 
 	@Override
@@ -69,6 +69,14 @@ public class CsvDriver implements Driver
 	public static final String DEFAULT_FILE_TAIL_PREPEND = "False";
 	public static final String DEFAULT_DEFECTIVE_HEADERS = "False";
 	public static final String DEFAULT_SKIP_LEADING_DATA_LINES = "0";
+	public static final String DEFAULT_LAZY_SCROLL_BUFFER = "False";
+	public static final String DEFAULT_SORT_BUFFER_ROWS = "100000";
+	public static final String DEFAULT_MEMORY_MAPPED_FILES = "False";
+	public static final String DEFAULT_PARALLEL_SCAN = "False";
+	public static final String DEFAULT_ROW_INDEX_INTERVAL = "0";
+	public static final String DEFAULT_ZONE_MAP_INTERVAL = "0";
+	public static final String DEFAULT_TABLE_CACHE_SIZE = "0";
+	public static final String DEFAULT_PLAN_CACHE_SIZE = "0";
 
 	public static final String FILE_EXTENSION = "fileExtension";
 	public static final String SEPARATOR = "separator";
@@ -117,6 +125,24 @@ public class CsvDriver implements Driver
 
 	public static final String RANDOM_SEED = "randomSeed";
 
+	public static final String LAZY_SCROLL_BUFFER = "lazyScrollBuffer";
+
+	public static final String SORT_BUFFER_ROWS = "sortBufferRows";
+
+	public static final String MEMORY_MAPPED_FILES = "memoryMappedFiles";
+
+	public static final String PARALLEL_SCAN = "parallelScan";
+
+	public static final String ROW_INDEX_INTERVAL = "rowIndexInterval";
+
+	public static final String ZONE_MAP_INTERVAL = "zoneMapInterval";
+
+	public static final String INDEX_COLUMNS = "indexColumns";
+
+	public static final String TABLE_CACHE_SIZE = "tableCacheSize";
+
+	public static final String PLAN_CACHE_SIZE = "planCacheSize";
+
 	@Override
 	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
 		throws SQLException
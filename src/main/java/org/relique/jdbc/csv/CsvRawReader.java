@@ -18,15 +18,17 @@ package org.relique.jdbc.csv;
 
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.Vector;
 
 import org.relique.io.DataReader;
+import org.relique.io.LocalFileReader;
 
 /**
  * This class is a helper class that handles the reading and parsing of data
@@ -43,6 +45,24 @@ import org.relique.io.DataReader;
 
 public class CsvRawReader
 {
+	/**
+	 * Lines of one record, read but not yet split into fields.
+	 */
+	static class Record
+	{
+		/** First line of record, followed by lines of any multi-line value. */
+		String[] lines;
+
+		/** Line number of the last line of record. */
+		int lineNumber;
+
+		Record(String[] lines, int lineNumber)
+		{
+			this.lines = lines;
+			this.lineNumber = lineNumber;
+		}
+	}
+
 	private static final String EMPTY_STRING = "";
 	private static final String ZERO_STRING = "0";
 
@@ -67,6 +87,29 @@ public class CsvRawReader
 	private boolean readingAhead;
 	private String[] previousFieldValues = null;
 
+	/** Saved file positions of rows, used to skip rows without reading them. */
+	private RowIndex rowIndex = null;
+
+	/** Number of rows read, not including the header. */
+	private int rowNumber = 0;
+
+	/** Rows read by an earlier query, read instead of the file. */
+	private CachedTable cachedTable = null;
+	private int cachedLineNumber;
+
+	/** Rows read from the file so far, added to tableCache at end of file. */
+	private CachedTable recordedTable = null;
+	private TableCache tableCache = null;
+
+	/** Reusable buffer holding the line being parsed, followed by the separator. */
+	private char[] lineBuffer = new char[1024];
+
+	/** Value being parsed is valueBuilder, followed by lineBuffer[valueStart..valueEnd). */
+	private StringBuilder valueBuilder = new StringBuilder(32);
+	private int valueStart;
+	private int valueEnd;
+	private char[] valueChars = new char[32];
+
 	public CsvRawReader(LineNumberReader in,
 		String tableName,
 		String tableAlias,
@@ -151,6 +194,45 @@ public class CsvRawReader
 		}
 	}
 
+	/**
+	 * Create a reader that splits records read by another reader into fields,
+	 * so that records can be split on another thread.
+	 * @param reader reader with the same settings.
+	 */
+	CsvRawReader(CsvRawReader reader)
+	{
+		this.tableName = reader.tableName;
+		this.tableAlias = reader.tableAlias;
+		this.columnNames = reader.columnNames;
+		this.separator = reader.separator;
+		this.suppressHeaders = reader.suppressHeaders;
+		this.isHeaderFixedWidth = reader.isHeaderFixedWidth;
+		this.quoteChar = reader.quoteChar;
+		this.trimValues = reader.trimValues;
+		this.missingValue = reader.missingValue;
+		this.quoteStyle = reader.quoteStyle;
+		this.fixedWidthColumns = reader.fixedWidthColumns;
+		this.readAheadLines = new LinkedList<>();
+		this.readingAhead = false;
+		this.input = new LineNumberReader(Reader.nullReader());
+	}
+
+	/**
+	 * Create a reader for rows already read from a file by an earlier query.
+	 * @param cachedTable column names and values of all rows of file.
+	 * @param tableName table name.
+	 * @param tableAlias table alias, or null.
+	 */
+	public CsvRawReader(CachedTable cachedTable, String tableName, String tableAlias)
+	{
+		this.cachedTable = cachedTable;
+		this.tableName = tableName;
+		this.tableAlias = tableAlias;
+		this.columnNames = cachedTable.getColumnNames();
+		this.cachedLineNumber = cachedTable.getLineNumber(-1);
+		this.readAheadLines = new LinkedList<>();
+	}
+
 	private void fixDefectiveHeaders()
 	{
 		Set<String> uniqueNames = new HashSet<>();
@@ -175,6 +257,19 @@ public class CsvRawReader
 
 	public boolean next() throws SQLException
 	{
+		if (cachedTable != null)
+		{
+			if (rowNumber >= cachedTable.getRowCount())
+			{
+				cachedLineNumber = cachedTable.getLineNumber(rowNumber);
+				return false;
+			}
+			fieldValues = cachedTable.getRow(rowNumber);
+			cachedLineNumber = cachedTable.getLineNumber(rowNumber);
+			rowNumber++;
+			return true;
+		}
+
 		/*
 		 * Remember String values from previous row so we can reuse them
 		 * if they occur in this row too.
@@ -182,6 +277,12 @@ public class CsvRawReader
 		previousFieldValues = fieldValues;
 		fieldValues = new String[columnNames.length];
 		String dataLine = null;
+		if (rowIndex != null)
+		{
+			long position = getRowPosition();
+			if (position >= 0)
+				rowIndex.add(rowNumber, position, input.getLineNumber());
+		}
 		try
 		{
 			if (suppressHeaders && (firstLineBuffer != null))
@@ -198,6 +299,12 @@ public class CsvRawReader
 			if (dataLine == null)
 			{
 				input.close();
+				if (recordedTable != null)
+				{
+					recordedTable.finish(input.getLineNumber());
+					tableCache.put(recordedTable);
+					recordedTable = null;
+				}
 				return false;
 			}
 		}
@@ -220,11 +327,366 @@ public class CsvRawReader
 		{
 			fieldValues = parsedFieldValues;
 		}
+		rowNumber++;
+		if (recordedTable != null)
+		{
+			recordedTable.addRow(fieldValues, input.getLineNumber());
+			if (recordedTable.getSize() > tableCache.getMaxSize())
+				recordedTable = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether records can be read with readRecord() and split into
+	 * fields with parseRecord().
+	 * @return true if records can be split into fields on other threads.
+	 */
+	boolean canParseInParallel()
+	{
+		/*
+		 * Unparseable lines are only found by splitting them into fields.
+		 * Cached rows are already split, and rows being added to the
+		 * cache must be split in the order they are read.
+		 */
+		return !ignoreUnparseableLines && readAheadLines.isEmpty() &&
+			cachedTable == null && recordedTable == null;
+	}
+
+	/**
+	 * Read the lines of the next record, without splitting it into fields.
+	 * Lines are only scanned for quote characters, to find where a value
+	 * continuing over several lines ends.
+	 * @return next record, or null if there are no more records.
+	 * @throws SQLException if reading fails.
+	 */
+	Record readRecord() throws SQLException
+	{
+		if (rowIndex != null)
+		{
+			long position = getRowPosition();
+			if (position >= 0)
+				rowIndex.add(rowNumber, position, input.getLineNumber());
+		}
+		try
+		{
+			String line;
+			if (suppressHeaders && (firstLineBuffer != null))
+			{
+				line = firstLineBuffer;
+				firstLineBuffer = null;
+			}
+			else
+			{
+				line = getNextDataLine();
+			}
+			if (line == null)
+			{
+				input.close();
+				return null;
+			}
+			rowNumber++;
+			if (!endsInQuotedValue(line, false))
+				return new Record(new String[]{line}, input.getLineNumber());
+
+			ArrayList<String> lines = new ArrayList<>();
+			lines.add(line);
+			do
+			{
+				line = input.readLine();
+				if (line == null)
+					break;
+				lines.add(line);
+			}
+			while (endsInQuotedValue(line, true));
+			return new Record(lines.toArray(new String[lines.size()]), input.getLineNumber());
+		}
+		catch (IOException e)
+		{
+			throw new SQLException(e.toString());
+		}
+	}
+
+	/**
+	 * Keep all rows read from the file in memory, and add them to a
+	 * cache when the end of the file is reached.
+	 * @param tableCache cache to add rows to.
+	 * @param fileName name of file.
+	 * @param signature properties used to read the file.
+	 * @param fileSize size of file.
+	 * @param lastModified modification time of file.
+	 */
+	public void setTableCache(TableCache tableCache, String fileName, String signature,
+		long fileSize, long lastModified)
+	{
+		if (rowNumber == 0 && fieldValues == null)
+		{
+			this.tableCache = tableCache;
+			this.recordedTable = new CachedTable(fileName, signature, fileSize, lastModified,
+				columnNames, getColumnSizes(), input.getLineNumber());
+		}
+	}
+
+	/**
+	 * Split a record read by another reader into fields, exactly as next()
+	 * would have.
+	 * @param record record from readRecord().
+	 * @return field values of record.
+	 * @throws SQLException if record cannot be parsed.
+	 */
+	String[] parseRecord(Record record) throws SQLException
+	{
+		String[] lines = record.lines;
+		if (lines.length > 1)
+		{
+			/*
+			 * parseCsvLine() reads the remaining lines of the record itself.
+			 */
+			StringBuilder sb = new StringBuilder();
+			for (int i = 1; i < lines.length; i++)
+			{
+				if (i > 1)
+					sb.append('\n');
+				sb.append(lines[i]);
+			}
+			input = new LineNumberReader(new StringReader(sb.toString()));
+		}
+		input.setLineNumber(record.lineNumber - lines.length + 1);
+
+		previousFieldValues = fieldValues;
+		fieldValues = new String[columnNames.length];
+		String[] parsedFieldValues = parseLine(lines[0], trimValues);
+		if (parsedFieldValues.length < fieldValues.length && missingValue != null)
+		{
+			System.arraycopy(parsedFieldValues, 0, fieldValues, 0, parsedFieldValues.length);
+			for (int i = parsedFieldValues.length; i < fieldValues.length; i++)
+				fieldValues[i] = missingValue;
+		}
+		else
+		{
+			fieldValues = parsedFieldValues;
+		}
+		return fieldValues;
+	}
+
+	/**
+	 * Check whether a line ends inside a quoted value, so that the record
+	 * continues on the next line.  Quote characters, separators and
+	 * whitespace are handled with the same rules as in parseCsvLine().
+	 * @param line line to check.
+	 * @param inQuotedString true if line continues a quoted value.
+	 * @return true if the record continues on the next line.
+	 */
+	private boolean endsInQuotedValue(String line, boolean inQuotedString)
+	{
+		if (fixedWidthColumns != null || quoteChar == null)
+			return false;
+		if (line.indexOf(quoteChar.charValue()) < 0)
+			return inQuotedString;
+
+		boolean isCStyle = "C".equals(quoteStyle);
+		boolean isSQLStyle = "SQL".equals(quoteStyle);
+		int separatorLength = separator.length();
+		int lineLength = line.length() + separatorLength;
+
+		/*
+		 * A continued value already contains the line break before this line.
+		 */
+		boolean isValueEmpty = !inQuotedString;
+		int currentPos = 0;
+		while (currentPos < lineLength)
+		{
+			char currentChar = lineCharAt(line, currentPos);
+			if (!inQuotedString && isQuoteChar(currentChar) && isValueEmpty)
+			{
+				inQuotedString = true;
+			}
+			else if (currentChar == '\\' && isCStyle)
+			{
+				isValueEmpty = false;
+				currentPos++;
+			}
+			else if (isQuoteChar(currentChar))
+			{
+				char nextChar = lineCharAt(line, currentPos + 1);
+				if (!inQuotedString)
+				{
+					isValueEmpty = false;
+				}
+				else if (isQuoteChar(nextChar))
+				{
+					isValueEmpty = false;
+					if (isSQLStyle)
+						currentPos++;
+				}
+				else
+				{
+					while (trimValues && !atLineSeparator(line, currentPos + 1) &&
+						Character.isWhitespace(nextChar) &&
+						currentPos + 2 < lineLength)
+					{
+						nextChar = lineCharAt(line, currentPos + 2);
+						currentPos++;
+					}
+
+					/*
+					 * parseCsvLine() fails at this line, so the record ends here.
+					 */
+					if (!atLineSeparator(line, currentPos + 1))
+						return false;
+
+					isValueEmpty = true;
+					inQuotedString = false;
+					currentPos += separatorLength;
+				}
+			}
+			else if (atLineSeparator(line, currentPos))
+			{
+				if (inQuotedString)
+				{
+					isValueEmpty = false;
+				}
+				else
+				{
+					isValueEmpty = true;
+					currentPos += separatorLength - 1;
+				}
+			}
+			else if (!(trimValues && Character.isWhitespace(currentChar) &&
+				!inQuotedString && isValueEmpty))
+			{
+				isValueEmpty = false;
+			}
+			currentPos++;
+		}
+		return inQuotedString;
+	}
+
+	/**
+	 * @return character at a position in line followed by the separator,
+	 * the same as in lineBuffer in parseCsvLine().
+	 */
+	private char lineCharAt(String line, int pos)
+	{
+		int len = line.length();
+		if (pos < len)
+			return line.charAt(pos);
+		pos -= len;
+		if (pos < separator.length())
+			return separator.charAt(pos);
+		return 0;
+	}
+
+	private boolean atLineSeparator(String line, int currentPos)
+	{
+		int separatorLength = separator.length();
+		if (currentPos + separatorLength > line.length() + separatorLength)
+			return false;
+		for (int i = 0; i < separatorLength; i++)
+		{
+			if (lineCharAt(line, currentPos + i) != separator.charAt(i))
+				return false;
+		}
 		return true;
 	}
 
+	/**
+	 * Save file positions of rows while reading the file, and use them
+	 * to skip rows.  Only possible for files read with a LocalFileReader.
+	 * @param rowIndex saved file positions of rows.
+	 */
+	public void setRowIndex(RowIndex rowIndex)
+	{
+		if (input instanceof LocalFileReader)
+			this.rowIndex = rowIndex;
+	}
+
+	public boolean hasRowIndex()
+	{
+		return rowIndex != null || cachedTable != null;
+	}
+
+	/**
+	 * Skip rows, moving directly to the last saved row position before
+	 * the row to skip to, and then reading the remaining rows.
+	 * @param count number of rows to skip.
+	 * @return number of rows skipped, less than count at end of file.
+	 * @throws SQLException if reading fails.
+	 */
+	public int skipRows(int count) throws SQLException
+	{
+		int skipped = 0;
+		if (cachedTable != null)
+		{
+			skipped = Math.max(0, Math.min(count, cachedTable.getRowCount() - rowNumber));
+			rowNumber += skipped;
+			fieldValues = null;
+			cachedLineNumber = cachedTable.getLineNumber(rowNumber - 1);
+			return skipped;
+		}
+		if (rowIndex != null && getRowPosition() >= 0)
+		{
+			int i = rowIndex.find(rowNumber + count);
+			if (i >= 0 && rowIndex.getRow(i) > rowNumber)
+			{
+				skipped = rowIndex.getRow(i) - rowNumber;
+				seekRow(rowIndex.getRow(i), rowIndex.getOffset(i), rowIndex.getLineNumber(i));
+			}
+		}
+		while (skipped < count && next())
+			skipped++;
+		return skipped;
+	}
+
+	/**
+	 * @return number of rows read, not including the header.
+	 */
+	public int getRowNumber()
+	{
+		return rowNumber;
+	}
+
+	/**
+	 * @return byte position in file of the next row, or -1 if the position
+	 * is not known because the file is not read with a LocalFileReader or
+	 * lines have already been read ahead.
+	 */
+	public long getRowPosition()
+	{
+		if (input instanceof LocalFileReader && firstLineBuffer == null && readAheadLines.isEmpty())
+			return ((LocalFileReader)input).getPosition();
+		return -1;
+	}
+
+	/**
+	 * Move directly to a row at a position returned by getRowPosition().
+	 * @param row row number, as returned by getRowNumber().
+	 * @param position byte position in file of row.
+	 * @param lineNumber number of lines before row.
+	 */
+	public void seekRow(int row, long position, int lineNumber)
+	{
+		((LocalFileReader)input).seek(position, lineNumber);
+		rowNumber = row;
+		recordedTable = null;
+
+		/*
+		 * Comment lines are only skipped before the first row.
+		 */
+		comment = null;
+		fieldValues = null;
+	}
+
 	public void close()
 	{
+		if (rowIndex != null)
+		{
+			rowIndex.save();
+			rowIndex = null;
+		}
+		recordedTable = null;
+		if (cachedTable != null)
+			return;
 		try
 		{
 			readAheadLines.clear();
@@ -307,6 +769,8 @@ public class CsvRawReader
 
 	public int getLineNumber()
 	{
+		if (cachedTable != null)
+			return cachedLineNumber;
 		return input.getLineNumber();
 	}
 
@@ -323,7 +787,11 @@ public class CsvRawReader
 	public int[] getColumnSizes()
 	{
 		int []retval;
-		if (fixedWidthColumns != null)
+		if (cachedTable != null)
+		{
+			retval = cachedTable.getColumnSizes().clone();
+		}
+		else if (fixedWidthColumns != null)
 		{
 			retval = new int[fixedWidthColumns.size()];
 			for (int i = 0; i < retval.length; i++)
@@ -417,64 +885,147 @@ public class CsvRawReader
 		return values;
 	}
 
-	private String rtrim(String s)
+	private boolean isQuoteChar(char c)
 	{
-		int origLen = s.length();
-		int len = origLen;
-		while (len > 0 && Character.isWhitespace(s.charAt(len - 1)))
+		return quoteChar != null && c == quoteChar.charValue();
+	}
+
+	/**
+	 * Append the character at a position in lineBuffer to the value being parsed.
+	 * Characters that follow each other in lineBuffer are only remembered as a
+	 * range, and are not copied until the value is complete.
+	 */
+	private void appendValueChar(int pos)
+	{
+		if (valueEnd == pos && valueEnd > valueStart)
 		{
-			len--;
+			valueEnd++;
 		}
-		if (len == origLen)
-			return s;
 		else
-			return s.substring(0, len);
+		{
+			flushValueChars();
+			valueStart = pos;
+			valueEnd = pos + 1;
+		}
 	}
 
-	private boolean isQuoteChar(char c)
+	/**
+	 * Copy the range of characters in lineBuffer for the value being parsed
+	 * into valueBuilder, before lineBuffer is overwritten.
+	 */
+	private void flushValueChars()
 	{
-		return quoteChar != null && c == quoteChar.charValue();
+		if (valueEnd > valueStart)
+			valueBuilder.append(lineBuffer, valueStart, valueEnd - valueStart);
+		valueStart = valueEnd = 0;
 	}
 
-	private String createStringValue(StringBuilder columnValue, int columnIndex)
+	private int getValueLength()
+	{
+		return valueBuilder.length() + valueEnd - valueStart;
+	}
+
+	private void clearValue()
+	{
+		valueBuilder.setLength(0);
+		valueStart = valueEnd = 0;
+	}
+
+	private String createStringValue(int columnIndex, boolean rtrim)
 	{
 		String s;
 
+		char[] chars;
+		int offset;
+		int len;
+		if (valueBuilder.length() == 0)
+		{
+			chars = lineBuffer;
+			offset = valueStart;
+			len = valueEnd - valueStart;
+		}
+		else
+		{
+			flushValueChars();
+			len = valueBuilder.length();
+			if (valueChars.length < len)
+				valueChars = new char[len];
+			valueBuilder.getChars(0, len, valueChars, 0);
+			chars = valueChars;
+			offset = 0;
+		}
+		if (rtrim)
+		{
+			while (len > 0 && Character.isWhitespace(chars[offset + len - 1]))
+				len--;
+		}
+
 		/*
 		 * Optimise for the two most frequent values in CSV files to avoid
 		 * creating unnecessary String objects.
 		 */
-		int len = columnValue.length();
 		if (len == 0)
 		{
 			s = EMPTY_STRING;
 		}
-		else if (len == 1 && columnValue.charAt(0) == '0')
+		else if (len == 1 && chars[offset] == '0')
 		{
 			s = ZERO_STRING;
 		}
 		else
 		{
-			s = columnValue.toString();
+			s = null;
 			if (previousFieldValues != null && previousFieldValues.length > columnIndex)
 			{
-				if (previousFieldValues[columnIndex] != null && previousFieldValues[columnIndex].equals(s))
+				String previous = previousFieldValues[columnIndex];
+				if (previous != null && previous.length() == len)
 				{
 					/*
 					 * Reuse String from previous row with same value to reduce number of
 					 * allocated java.lang.String objects.
 					 */
-					s = previousFieldValues[columnIndex];
+					int i = 0;
+					while (i < len && previous.charAt(i) == chars[offset + i])
+						i++;
+					if (i == len)
+						s = previous;
 				}
 			}
+			if (s == null)
+				s = new String(chars, offset, len);
 		}
+		clearValue();
 		return s;
 	}
 
+	/**
+	 * Copy a line into lineBuffer, followed by the separator so that all
+	 * fields are separator-terminated.
+	 * @param prefix character to add before line, or 0 for none.
+	 * @param line line to copy.
+	 * @return number of characters in lineBuffer.
+	 */
+	private int fillLineBuffer(char prefix, String line)
+	{
+		int prefixLength = (prefix != 0) ? 1 : 0;
+		int len = prefixLength + line.length() + separator.length();
+		if (lineBuffer.length < len)
+			lineBuffer = new char[Math.max(len, lineBuffer.length * 2)];
+		if (prefixLength > 0)
+			lineBuffer[0] = prefix;
+		line.getChars(0, line.length(), lineBuffer, prefixLength);
+		separator.getChars(0, separator.length(), lineBuffer, prefixLength + line.length());
+		return len;
+	}
+
 	/**
 	 * splits <b>line</b> into the String[] it contains.
 	 * Stuart Mottram added the code for handling line breaks in fields.
 	 * 
+	 * Each line is copied into a reusable character buffer and split in a
+	 * single pass.  Fields spanning several lines continue in the same pass
+	 * over each following line.
+	 * 
 	 * @param line the line to parse
 	 * @param trimValues tells whether to remove leading and trailing spaces
 	 * @return line split into fields.
@@ -484,48 +1035,48 @@ public class CsvRawReader
 			throws SQLException
 	{
 		// TODO: quoteChar should be recognized ONLY when close to separator. 
-		Vector<String> values = new Vector<>();
+		ArrayList<String> values = new ArrayList<>(columnNames != null ? columnNames.length : 16);
 		boolean inQuotedString = false;
 		int quotedLineNumber = 0;
-		StringBuilder value = new StringBuilder(32);
 		String orgLine = line;
-		int currentPos = 0;
-		int fullLine = 0;
+		boolean isCStyle = "C".equals(quoteStyle);
+		boolean isSQLStyle = "SQL".equals(quoteStyle);
+		int separatorLength = separator.length();
+		clearValue();
 
-		while (fullLine == 0)
+		int lineLength = fillLineBuffer((char)0, String.valueOf(line));
+		while (true)
 		{
-			currentPos = 0;
-			line += separator; // this way all fields are separator-terminated
-			while (currentPos < line.length())
+			char[] buf = lineBuffer;
+			int currentPos = 0;
+			while (currentPos < lineLength)
 			{
-				char currentChar = line.charAt(currentPos);
-				if (value.length() == 0 && isQuoteChar(currentChar)
-						&& !inQuotedString)
+				char currentChar = buf[currentPos];
+				if (!inQuotedString && isQuoteChar(currentChar) && getValueLength() == 0)
 				{
 					// acknowledge quoteChar only at beginning of value.
 					inQuotedString = true;
 					quotedLineNumber = input.getLineNumber();
 				}
-				else if (currentChar == '\\' && "C".equals(quoteStyle))
+				else if (currentChar == '\\' && isCStyle)
 				{
 					// in C quoteStyle \\ escapes any character.
-					char nextChar = line.charAt(currentPos + 1);
-					value.append(nextChar);
+					appendValueChar(currentPos + 1);
 					currentPos++;
 				}
 				else if (isQuoteChar(currentChar))
 				{
-					char nextChar = line.charAt(currentPos + 1);
+					char nextChar = buf[currentPos + 1];
 					if (!inQuotedString)
 					{
 						// accepting the single quoteChar because the whole
 						// value is not quoted.
-						value.append(quoteChar.charValue());
+						appendValueChar(currentPos);
 					}
 					else if (isQuoteChar(nextChar))
 					{
-						value.append(quoteChar.charValue());
-						if ("SQL".equals(quoteStyle))
+						appendValueChar(currentPos);
+						if (isSQLStyle)
 						{
 							// doubled quoteChar in quoted strings collapse to
 							// one single quoteChar in SQL quotestyle
@@ -534,141 +1085,128 @@ public class CsvRawReader
 					}
 					else
 					{
-						while (trimValues && !atSeparator(line, currentPos + 1) &&
+						while (trimValues && !atSeparator(buf, lineLength, currentPos + 1) &&
 							Character.isWhitespace(nextChar) &&
-							currentPos + 2 < line.length())
+							currentPos + 2 < lineLength)
 						{
 							// Skip trailing whitespace after quoted value before next separator
-							nextChar = line.charAt(currentPos + 2);
+							nextChar = buf[currentPos + 2];
 							currentPos++;
 						}
-						if (!atSeparator(line, currentPos + 1))
+						if (!atSeparator(buf, lineLength, currentPos + 1))
 						{
 							throw new SQLException(CsvResources.getString("expectedSeparator") + ": " +
 								input.getLineNumber() + " " + (currentPos + 1) +
 								": " + orgLine);
 						}
 
-						values.add(createStringValue(value, values.size()));
-						value.setLength(0);
+						values.add(createStringValue(values.size(), false));
 						inQuotedString = false;
-						currentPos += separator.length();
+						currentPos += separatorLength;
 					}
 				}
 				else
 				{
-					if (atSeparator(line, currentPos))
+					if (atSeparator(buf, lineLength, currentPos))
 					{
 						if (inQuotedString)
 						{
-							value.append(currentChar);
+							appendValueChar(currentPos);
 						}
 						else
 						{
-							if (trimValues)
-							{
-								values.add(rtrim(createStringValue(value, values.size())));
-							}
-							else
-							{
-								values.add(createStringValue(value, values.size()));
-							}
-							value.setLength(0);
-
-							if (separator.length() > 1)
-							{
-								/*
-								 * Skip other characters in separator too.
-								 */
-								currentPos += separator.length() - 1;
-							}
+							values.add(createStringValue(values.size(), trimValues));
+
+							/*
+							 * Skip other characters in separator too.
+							 */
+							currentPos += separatorLength - 1;
 						}
 					}
 					else if (trimValues &&
 						Character.isWhitespace(currentChar) &&
-						value.length() == 0 && !inQuotedString)
+						!inQuotedString && getValueLength() == 0)
 					{
 						// Skip leading whitespace in field
 					}
 					else
 					{
 						// default action
-						value.append(currentChar);
+						appendValueChar(currentPos);
 					}
 				}
 				currentPos++;
 			}
-			if (inQuotedString)
+			if (!inQuotedString)
+				break;
+
+			// Line ended while looking for matching quoteChar. This means
+			// we are inside of a field (not yet fullLine).
+			// Keep the value so far before the buffer is reused for the
+			// next line, then remove extra separator added at end of line.
+			flushValueChars();
+			valueBuilder.setLength(valueBuilder.length() - separatorLength);
+			try
 			{
-				// Line ended while looking for matching quoteChar. This means
-				// we are inside of a field (not yet fullLine).
-				// Remove extra separator added at start.
-				value = new StringBuilder(value.substring(0, value.length() - 1));
-				try
+				String additionalLine;
+				if (readingAhead)
 				{
-					String additionalLine;
-					if (readingAhead)
-					{
-						additionalLine = input.readLine();
+					additionalLine = input.readLine();
 
-						/*
-						 * Remember each line we read ahead -- we may have to re-read
-						 * these lines later.
-						 */
-						if (additionalLine != null)
-							readAheadLines.addLast(additionalLine);
-					}
+					/*
+					 * Remember each line we read ahead -- we may have to re-read
+					 * these lines later.
+					 */
+					if (additionalLine != null)
+						readAheadLines.addLast(additionalLine);
+				}
+				else
+				{
+					if (!readAheadLines.isEmpty())
+						additionalLine = readAheadLines.removeFirst();
 					else
-					{
-						if (!readAheadLines.isEmpty())
-							additionalLine = readAheadLines.removeFirst();
-						else
-							additionalLine = input.readLine();
-					}
+						additionalLine = input.readLine();
+				}
 
-					if (additionalLine == null)
-					{
-						throw new SQLException(CsvResources.getString("eofInQuotes") + ": " +
-							quotedLineNumber);
-					}
-					line = "\n" + additionalLine;
-					if (orgLine == firstLineBuffer)
-					{
-						// We are reading and remembering the first record to
-						// determine the number of columns in the file.
-						// Append any extra lines we read for first record to
-						// the buffer too.
-						firstLineBuffer += "\n" + additionalLine;
-					}
+				if (additionalLine == null)
+				{
+					throw new SQLException(CsvResources.getString("eofInQuotes") + ": " +
+						quotedLineNumber);
 				}
-				catch (IOException e)
+				lineLength = fillLineBuffer('\n', additionalLine);
+				if (orgLine == firstLineBuffer)
 				{
-					throw new SQLException(e.toString());
+					// We are reading and remembering the first record to
+					// determine the number of columns in the file.
+					// Append any extra lines we read for first record to
+					// the buffer too.
+					firstLineBuffer += "\n" + additionalLine;
 				}
 			}
-			else
+			catch (IOException e)
 			{
-				fullLine = 1;
+				throw new SQLException(e.toString());
 			}
-
 		}
-		String[] retVal = new String[values.size()];
-		values.copyInto(retVal);
-		return retVal;
+		return values.toArray(new String[values.size()]);
 	}
 
-	private boolean atSeparator(String line, int currentPos)
+	private boolean atSeparator(char[] buf, int lineLength, int currentPos)
 	{
-		boolean matchesSeparator;
-		
 		/*
 		 * Quicker to compare just the current character for the
 		 * normal case of a single character separator.
 		 */
-		if (separator.length() == 1)
-			matchesSeparator = (line.charAt(currentPos) == separator.charAt(0));
-		else
-			matchesSeparator = line.regionMatches(currentPos, separator, 0, separator.length());
-		return matchesSeparator;
+		int separatorLength = separator.length();
+		if (separatorLength == 1)
+			return currentPos < lineLength && buf[currentPos] == separator.charAt(0);
+		if (currentPos + separatorLength > lineLength)
+			return false;
+		for (int i = 0; i < separatorLength; i++)
+		{
+			if (buf[currentPos + i] != separator.charAt(i))
+				return false;
+		}
+		return true;
 	}
 }
@@ -18,8 +18,12 @@ package org.relique.jdbc.csv;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.relique.io.DataReader;
 
@@ -33,14 +37,36 @@ public class CsvReader extends DataReader
 	private String[] aliasedColumnNames;
 	private String[] columnTypes;
 	private String[] upperColumnNames;
+	private Map<String, Integer> columnIndexes;
 	private Vector<String[]> firstTable;
 	private int joiningValueNo;
 	private int valuesToJoin;
 	private String[] joiningValues;
 	private StringConverter converter;
+
+	/** Converter for each column, for the current column types. */
+	private StringConverter.ColumnConverter[] columnConverters;
 	private String[] fieldValues;
 	private int lineNumber;
 
+	/** Readers that split records into fields, used by parseRecord(). */
+	private ConcurrentLinkedQueue<CsvRawReader> recordParsers = null;
+	/** Statistics of blocks of rows, used to skip rows that cannot match. */
+	private ZoneMap zoneMap = null;
+	private ZoneMapFilter zoneMapFilter = null;
+
+	/** Sorted column values, used to read only rows that can match. */
+	private String indexFileName;
+	private List<String> indexColumnNames = null;
+	private String indexSignature;
+	private ColumnIndexCache indexCache;
+	private List<ColumnIndex> indexes = null;
+	private int[] indexColumns;
+	private ColumnIndex lookupIndex = null;
+	private int[] lookupPositions;
+	private int lookupPosition;
+	private int skippedRows = 0;
+
 	public CsvReader(CsvRawReader rawReader, int transposedLines,
 		int transposedFieldsToSkip, String headerline) throws SQLException
 	{
@@ -81,6 +107,14 @@ public class CsvReader extends DataReader
 	public void setConverter(StringConverter converter)
 	{
 		this.converter = converter;
+		columnConverters = null;
+	}
+
+	private StringConverter.ColumnConverter[] getColumnConverters() throws SQLException
+	{
+		if (columnConverters == null)
+			columnConverters = converter.getColumnConverters(getColumnTypes());
+		return columnConverters;
 	}
 
 	private int getTransposedFieldsToSkip()
@@ -93,9 +127,185 @@ public class CsvReader extends DataReader
 		return transposedLines == 0 && transposedFieldsToSkip == 0;
 	}
 
+	/**
+	 * @return true if rows can be skipped using saved file positions of rows.
+	 */
+	public boolean hasRowIndex()
+	{
+		return isPlainReader() && rawReader.hasRowIndex();
+	}
+
+	/**
+	 * Skip rows without converting their values.
+	 * @param count number of rows to skip.
+	 * @return number of rows skipped, less than count at end of file.
+	 * @throws SQLException if reading fails.
+	 */
+	public int skipRows(int count) throws SQLException
+	{
+		if (isCreatingStatistics())
+		{
+			/*
+			 * Zone maps and indexes can only be created from every row in the file.
+			 */
+			zoneMap = null;
+			indexes = null;
+		}
+		int skipped = rawReader.skipRows(count);
+		lineNumber = rawReader.getLineNumber();
+		return skipped;
+	}
+
+	/**
+	 * Use statistics of blocks of rows to skip rows, creating them if
+	 * they have not been saved in a file.
+	 * @param zoneMap statistics of blocks of rows.
+	 */
+	public void setZoneMap(ZoneMap zoneMap)
+	{
+		if (isPlainReader())
+			this.zoneMap = zoneMap;
+	}
+
+	/**
+	 * Use indexes of column values to read only rows with particular
+	 * values, creating them if they have not been saved in files.
+	 * An index is only opened when the WHERE clause has a condition on
+	 * its column.
+	 * @param fileName name of CSV file.
+	 * @param columnNames names of indexed columns, in upper case.
+	 * @param signature properties used to read the CSV file.
+	 * @param indexCache indexes read or created by earlier queries.
+	 */
+	public void setColumnIndexes(String fileName, List<String> columnNames,
+		String signature, ColumnIndexCache indexCache)
+	{
+		if (!isPlainReader())
+			return;
+		this.indexFileName = fileName;
+		this.indexColumnNames = columnNames;
+		this.indexSignature = signature;
+		this.indexCache = indexCache;
+	}
+
+	/**
+	 * Open the index of each indexed column that has a condition,
+	 * using any index already in the cache.
+	 * @param conditions conditions of WHERE clause.
+	 */
+	private void openColumnIndexes(List<ColumnCondition> conditions)
+	{
+		indexes = new ArrayList<>();
+		List<Integer> columns = new ArrayList<>();
+		for (String columnName : indexColumnNames)
+		{
+			Integer column = getColumnIndex(columnName);
+			if (column == null || columns.contains(column))
+				continue;
+			boolean hasCondition = false;
+			for (ColumnCondition condition : conditions)
+			{
+				if (condition.getColumn() == column.intValue())
+					hasCondition = true;
+			}
+			if (!hasCondition)
+				continue;
+
+			String columnType = columnTypes[column.intValue()];
+			ColumnIndex index = indexCache.get(indexFileName, columnName, indexSignature, columnType);
+			if (index == null)
+			{
+				index = ColumnIndex.open(indexFileName, columnName, indexSignature);
+				index.setColumnType(columnType);
+			}
+			indexes.add(index);
+			columns.add(column);
+		}
+		indexColumns = new int[columns.size()];
+		for (int i = 0; i < indexColumns.length; i++)
+			indexColumns[i] = columns.get(i).intValue();
+		if (indexes.isEmpty())
+			indexes = null;
+	}
+
+	/**
+	 * Set the WHERE clause of the query reading this table, so that zone
+	 * maps and indexes can be used to skip rows that cannot match it.
+	 * @param whereClause WHERE clause, or null.
+	 */
+	public void setWhereClause(LogicalExpression whereClause)
+	{
+		zoneMapFilter = null;
+		lookupIndex = null;
+		if (whereClause == null || columnTypes == null ||
+			(zoneMap == null && indexColumnNames == null))
+		{
+			return;
+		}
+		if (zoneMap != null)
+			zoneMapFilter = ZoneMapFilter.create(whereClause, this, converter);
+		if (indexColumnNames != null)
+		{
+			Map<String, Object> env = new HashMap<>();
+			List<ColumnCondition> conditions = ColumnCondition.find(whereClause, this, env);
+			env.put(StringConverter.COLUMN_NAME, converter);
+			openColumnIndexes(conditions);
+			if (indexes == null)
+				return;
+
+			/*
+			 * Use the index that finds the fewest rows.
+			 */
+			for (ColumnCondition condition : conditions)
+			{
+				for (int i = 0; i < indexes.size(); i++)
+				{
+					ColumnIndex index = indexes.get(i);
+					if (indexColumns[i] == condition.getColumn() && index.isComplete())
+					{
+						int[] positions = index.find(condition, env);
+						if (positions != null &&
+							(lookupIndex == null || positions.length < lookupPositions.length))
+						{
+							lookupIndex = index;
+							lookupPositions = positions;
+							lookupPosition = 0;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of rows skipped because they cannot match the WHERE
+	 * clause, and reset it to zero.
+	 * @return number of rows skipped since this method was last called.
+	 */
+	public int takeSkippedRows()
+	{
+		int count = skippedRows;
+		skippedRows = 0;
+		return count;
+	}
+
+	/**
+	 * Get index of a column.
+	 * @param columnName column name, in upper case, that may include
+	 *        the table name or alias.
+	 * @return column index, or null if there is no such column.
+	 */
+	Integer getColumnIndex(String columnName)
+	{
+		return getColumnIndexes().get(columnName);
+	}
+
 	@Override
 	public boolean next() throws SQLException
 	{
+		if (zoneMap != null || indexes != null)
+			return nextWithStatistics();
+
 		if (this.isPlainReader())
 		{
 			boolean result = rawReader.next();
@@ -142,6 +352,242 @@ public class CsvReader extends DataReader
 		}
 	}
 
+	/**
+	 * Prepare for records to be read with readRecord() and converted to rows
+	 * by parseRecord() on other threads.
+	 * @return true if records can be parsed on other threads.
+	 * @throws SQLException if column types are invalid.
+	 */
+	boolean startParallelParse() throws SQLException
+	{
+		if (!isPlainReader() || columnTypes == null || !rawReader.canParseInParallel())
+			return false;
+
+		/*
+		 * Rows are only skipped using a zone map or index when reading
+		 * rows one at a time with next().
+		 */
+		if (zoneMap != null || indexes != null)
+			return false;
+
+		/*
+		 * Create lookup tables now, so that threads only read them.
+		 */
+		getColumnIndexes();
+		getColumnConverters();
+		recordParsers = new ConcurrentLinkedQueue<>();
+		return true;
+	}
+
+	/**
+	 * Read the next record, without splitting it into fields.
+	 * @return next record, or null if there are no more records.
+	 * @throws SQLException if reading fails.
+	 */
+	CsvRawReader.Record readRecord() throws SQLException
+	{
+		CsvRawReader.Record record = rawReader.readRecord();
+		if (record != null)
+			lineNumber = record.lineNumber;
+		return record;
+	}
+
+	/**
+	 * Split a record into fields and create the row for it.  Can be called
+	 * by several threads at the same time, after startParallelParse().
+	 * @param record record from readRecord().
+	 * @return row for record.
+	 * @throws SQLException if record cannot be parsed.
+	 */
+	Map<String, Object> parseRecord(CsvRawReader.Record record) throws SQLException
+	{
+		CsvRawReader parser = recordParsers.poll();
+		if (parser == null)
+			parser = new CsvRawReader(rawReader);
+		String[] values;
+		try
+		{
+			values = parser.parseRecord(record);
+		}
+		finally
+		{
+			recordParsers.offer(parser);
+		}
+		checkColumnCount(values, record.lineNumber);
+
+		Map<String, Object> result = new LazyConversionMap(getColumnIndexes(),
+			columnTypes, getColumnConverters(), values);
+		result.put(StringConverter.COLUMN_NAME, converter);
+		return result;
+	}
+
+	/**
+	 * @return true if a zone map or index is being created from the rows read.
+	 */
+	private boolean isCreatingStatistics()
+	{
+		if (zoneMap != null && !zoneMap.isComplete())
+			return true;
+		if (indexes != null)
+		{
+			for (ColumnIndex index : indexes)
+			{
+				if (!index.isComplete())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Read the next row, skipping rows that cannot match the WHERE clause,
+	 * or adding the row to any zone map or index that is not complete.
+	 */
+	private boolean nextWithStatistics() throws SQLException
+	{
+		int row = rawReader.getRowNumber();
+		long position = -1;
+		int rowLineNumber = rawReader.getLineNumber();
+		boolean creating = false;
+		if (columnTypes == null)
+		{
+			/*
+			 * Column types are only inferred after the first row is read.
+			 */
+			zoneMap = null;
+			indexes = null;
+		}
+		else if (isCreatingStatistics())
+		{
+			/*
+			 * The first row is never moved to, so its position need not be known.
+			 */
+			position = rawReader.getRowPosition();
+			if (position >= 0 || row == 0)
+			{
+				creating = true;
+				if (zoneMap != null && !zoneMap.isComplete() && row % zoneMap.getInterval() == 0)
+					zoneMap.addBlock(position, rowLineNumber);
+			}
+			else
+			{
+				zoneMap = null;
+				indexes = null;
+			}
+		}
+		else
+		{
+			skipNonMatchingRows();
+		}
+
+		boolean result = rawReader.next();
+		lineNumber = rawReader.getLineNumber();
+		fieldValues = rawReader.getFieldValues();
+		if (creating)
+		{
+			if (!result)
+			{
+				long endPosition = rawReader.getRowPosition();
+				if (endPosition >= 0)
+				{
+					if (zoneMap != null && !zoneMap.isComplete())
+						zoneMap.finish(endPosition, lineNumber);
+					if (indexes != null)
+					{
+						for (ColumnIndex index : indexes)
+						{
+							if (!index.isComplete())
+								index.finish(row, endPosition, lineNumber);
+						}
+					}
+				}
+				else
+				{
+					zoneMap = null;
+					indexes = null;
+				}
+			}
+			else if (fieldValues.length != columnTypes.length)
+			{
+				zoneMap = null;
+				indexes = null;
+			}
+			else
+			{
+				if (zoneMap != null && !zoneMap.isComplete())
+				{
+					StringConverter.ColumnConverter[] converters = getColumnConverters();
+					Object[] values = new Object[fieldValues.length];
+					for (int i = 0; i < values.length; i++)
+						values[i] = converters[i].convert(fieldValues[i]);
+					zoneMap.addRow(values);
+				}
+				if (indexes != null)
+				{
+					for (int i = 0; i < indexes.size(); i++)
+					{
+						ColumnIndex index = indexes.get(i);
+						if (!index.isComplete())
+						{
+							int column = indexColumns[i];
+							index.addRow(row, position, rowLineNumber,
+								getColumnConverters()[column].convert(fieldValues[column]));
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Move past blocks of rows that cannot match the WHERE clause, and
+	 * then to the next row found by an index.
+	 */
+	private void skipNonMatchingRows()
+	{
+		int row = rawReader.getRowNumber();
+		if (zoneMap != null && zoneMapFilter != null && row % zoneMap.getInterval() == 0)
+		{
+			int block = row / zoneMap.getInterval();
+			while (block < zoneMap.getBlockCount() && !zoneMapFilter.mayMatch(zoneMap, block))
+			{
+				skippedRows += zoneMap.getRowCount(block);
+				row += zoneMap.getRowCount(block);
+				block++;
+				rawReader.seekRow(row, zoneMap.getOffset(block), zoneMap.getLineNumber(block));
+			}
+		}
+		if (lookupIndex != null)
+		{
+			while (lookupPosition < lookupPositions.length &&
+				lookupIndex.getRow(lookupPositions[lookupPosition]) < row)
+			{
+				lookupPosition++;
+			}
+			if (lookupPosition < lookupPositions.length)
+			{
+				int position = lookupPositions[lookupPosition];
+				int nextRow = lookupIndex.getRow(position);
+				if (nextRow > row)
+				{
+					skippedRows += nextRow - row;
+					rawReader.seekRow(nextRow, lookupIndex.getOffset(position),
+						lookupIndex.getLineNumber(position));
+				}
+			}
+			else if (row < lookupIndex.getRowCount())
+			{
+				/*
+				 * No more rows can match, so move to the end of the file.
+				 */
+				skippedRows += lookupIndex.getRowCount() - row;
+				rawReader.seekRow(lookupIndex.getRowCount(), lookupIndex.getEndOffset(),
+					lookupIndex.getEndLineNumber());
+			}
+		}
+	}
+
 	@Override
 	public String[] getColumnNames()
 	{
@@ -205,53 +651,84 @@ public class CsvReader extends DataReader
 		return this.aliasedColumnNames;
 	}
 
+	/**
+	 * Get lookup table from each name that a column can be accessed with
+	 * (COL, TABLE.COL or ALIAS.COL) to the index of that column.
+	 */
+	private Map<String, Integer> getColumnIndexes()
+	{
+		if (this.columnIndexes == null)
+		{
+			String[] columnNames = getUpperColumnNames();
+			String[] tableAndColumnNames = getTableAndColumnNames();
+			String[] columnAliases = getAliasedColumnNames();
+
+			this.columnIndexes = new HashMap<>();
+			for (int i = 0; i < columnNames.length; i++)
+			{
+				Integer index = Integer.valueOf(i);
+				this.columnIndexes.put(columnNames[i], index);
+				this.columnIndexes.put(tableAndColumnNames[i], index);
+				if (columnAliases != null)
+				{
+					/*
+					 * Also allow column value to be accessed as S.ID if table alias
+					 * S is set.
+					 */
+					this.columnIndexes.put(columnAliases[i], index);
+				}
+			}
+		}
+		return this.columnIndexes;
+	}
+
 	@Override
 	public void close()
 	{
+		if (zoneMap != null)
+		{
+			zoneMap.save();
+			zoneMap = null;
+		}
+		if (indexes != null)
+		{
+			for (ColumnIndex index : indexes)
+			{
+				index.save();
+				indexCache.put(index);
+			}
+			indexes = null;
+		}
 		rawReader.close();
 	}
 
 	@Override
 	public Map<String, Object> getEnvironment() throws SQLException
 	{
-		if (fieldValues.length != getColumnNames().length)
-		{
-			throw new SQLException(CsvResources.getString("wrongColumnCount") + ": " +
-				lineNumber + " " +
-				CsvResources.getString("columnsRead") + ": " + fieldValues.length + " " +
-				CsvResources.getString("columnsExpected") + ": " + getColumnNames().length);
-		}
+		checkColumnCount(fieldValues, lineNumber);
 		if (columnTypes == null)
 			getColumnTypes();
-		String[] columnNames = getUpperColumnNames();
-		String[] tableAndColumnNames = getTableAndColumnNames();
-		String[] columnAliases = getAliasedColumnNames();
 
-		int initialSize = columnNames.length * 2;
-		if (columnAliases != null)
-			initialSize += columnNames.length;
-		if (initialSize == 0)
-			initialSize = 1;
+		/*
+		 * Transposed readers reuse the same array for each row, so keep a copy.
+		 */
+		String[] rowValues = isPlainReader() ? fieldValues : fieldValues.clone();
 
-		Map<String, Object> result = new MinimumMemoryMap<>(initialSize);
+		Map<String, Object> result = new LazyConversionMap(getColumnIndexes(),
+			columnTypes, getColumnConverters(), rowValues);
 		result.put(StringConverter.COLUMN_NAME, converter);
+		return result;
+	}
 
-		for (int i = 0; i < columnNames.length; i++)
+	private void checkColumnCount(String[] values, int lineNumber) throws SQLException
+	{
+		if (values.length != getColumnNames().length)
 		{
-			String key = columnNames[i];
-			Object value = converter.convert(columnTypes[i], fieldValues[i]);
-			result.put(key, value);
-			result.put(tableAndColumnNames[i], value);
-			if (columnAliases != null)
-			{
-				/*
-				 * Also allow column value to be accessed as S.ID if table alias
-				 * S is set.
-				 */
-				result.put(columnAliases[i], value);
-			}
+			throw new SQLException(CsvResources.getString("wrongColumnCount") + ": " +
+				lineNumber + " " +
+				CsvResources.getString("columnsRead") + ": " + values.length + " " +
+				CsvResources.getString("columnsExpected") + ": " + getColumnNames().length);
 		}
-		return result;
 	}
 
 	public void setColumnTypes(String line) throws SQLException
@@ -275,6 +752,9 @@ public class CsvReader extends DataReader
 		{
 			columnTypes[i] = typeNamesLoc[typeNamesLoc.length - 1].trim();
 		}
+		columnConverters = null;
+		if (zoneMap != null)
+			zoneMap.setColumnTypes(columnTypes);
 	}
 
 	@Override
@@ -293,6 +773,7 @@ public class CsvReader extends DataReader
 			throw new SQLException(CsvResources.getString("cannotInferColumns"));
 
 		columnTypes = converter.inferColumnTypes(fieldValues);
+		columnConverters = null;
 	}
 
 	@Override
@@ -41,17 +41,22 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import org.relique.io.DataReader;
+import org.relique.io.TableReader;
 
 /**
  * This class implements the java.sql.ResultSet JDBC interface for the
@@ -81,6 +86,9 @@ public class CsvResultSet implements ResultSet
 	/** Last column name index read */
 	private int lastIndexRead = -1;
 
+	/** Whether the value of the last column read was NULL, for wasNull() */
+	private boolean lastValueNull = false;
+
 	private LogicalExpression whereClause;
 
 	private List<Expression> groupByColumns;
@@ -99,14 +107,108 @@ public class CsvResultSet implements ResultSet
 
 	private Map<String, Object> parentObjectEnvironment;
 
+	/** Column names and aliases that can be used in expressions in this query. */
+	private Set<String> readerColumns;
+
 	private Map<String, Object> recordEnvironment;
 
+	/** Marks values of query expressions that have not yet been evaluated. */
+	private static final Object UNEVALUATED = new Object();
+
+	/**
+	 * Column data types that each primitive getter can parse directly from
+	 * the text read from the file, giving the same value as converting the
+	 * column first.
+	 */
+	private static final String[] INT_TYPES = {"Int", "Integer", "String"};
+	private static final String[] LONG_TYPES = {"Long", "String"};
+	private static final String[] FLOAT_TYPES = {"Float", "String"};
+	private static final String[] DOUBLE_TYPES = {"Double", "String"};
+
+	/**
+	 * Values of query expressions for the row in rowValuesEnvironment,
+	 * each evaluated only once, the first time it is needed.
+	 */
+	private Object[] rowValues;
+
+	private Map<String, Object> rowValuesEnvironment;
+
+	/** Lookup from upper-case column label to column number, for findColumn(). */
+	private Map<String, Integer> columnLabelIndexes;
+
 	private List<String> usedColumns;
 
+	/**
+	 * Slot in each row environment created by updateRecordEnvironment()
+	 * for every key that the environment contains.
+	 */
+	private Map<String, Integer> environmentSlots;
+
+	private int environmentSlotCount;
+
+	private int[] queryEnvironmentSlots;
+
+	private String[] usedColumnKeys;
+
+	private int[] usedColumnSlots;
+
+	private int groupingSlot;
+
+	private int converterSlot;
+
+	private int statementSlot;
+
 	private StringConverter converter;
 
 	private ArrayList<Map<String, Object>> bufferedRecordEnvironments = null;
 
+	/**
+	 * For ORDER BY with LIMIT or setMaxRows, only the first topRowLimit rows in
+	 * sorted order are kept while reading, with the last of them at the head.
+	 */
+	private PriorityQueue<Object[]> topRows = null;
+
+	private int topRowLimit;
+
+	private long topRowSequence;
+
+	/**
+	 * For ORDER BY on a forward only ResultSet with many rows, each
+	 * sortBufferRows rows are sorted and written to a temporary file,
+	 * and the files are then merged together.
+	 */
+	private ExternalSort externalSort = null;
+
+	private int sortBufferRows;
+
+	/**
+	 * When the parallelScan property is set, evaluates the WHERE clause
+	 * for rows on several threads.
+	 */
+	private ParallelRowFilter parallelFilter = null;
+
+	private int parallelLineNumber;
+
+	/** Query expressions that the WHERE clause may use, and so are evaluated by parallelFilter. */
+	private boolean[] parallelQueryExpressions;
+
+	/** Files skipped by the WHERE clause when the table is read with property indexedFiles. */
+	private FileNameFilter fileNameFilter = null;
+
+	/**
+	 * True while rows of a scrollable ResultSet are being read without
+	 * buffering, because no scrolling method has been called yet.
+	 */
+	private boolean streamingRows = false;
+
+	/**
+	 * True while all rows are being read to calculate aggregate functions,
+	 * so that rows do not need to be buffered.
+	 */
+	private boolean aggregatingRows = false;
+
+	private String columnTypes;
+
 	private int currentRow;
 
 	/** Number of rows that have not matched the where clause and have been skipped */
@@ -150,51 +252,109 @@ public class CsvResultSet implements ResultSet
 		@Override
 		public int compare(Map<String, Object> recordEnvironment1, Map<String, Object> recordEnvironment2)
 		{
-			int retval = 0;
-			
 			try
 			{
-				int i = 0;
-				while (i < orderByColumns.size() && retval == 0)
-				{
-					Object []o = orderByColumns.get(i);
-					Integer direction = (Integer)o[0];
-					Expression expr = (Expression)o[1];
-					recordEnvironment = recordEnvironment1;
-					Map<String, Object> objectEnvironment1 = updateRecordEnvironment(true);
-					if (converter != null)
-						objectEnvironment1.put(StringConverter.COLUMN_NAME, converter);
-					Comparable<Object> result1 = (Comparable<Object>)expr.eval(objectEnvironment1);
-					recordEnvironment = recordEnvironment2;
-					Map<String, Object> objectEnvironment2 = updateRecordEnvironment(true);
-					if (converter != null)
-						objectEnvironment2.put(StringConverter.COLUMN_NAME, converter);
-					Comparable<Object> result2 = (Comparable<Object>)expr.eval(objectEnvironment2);
-					if (result1 == null)
-					{
-						if (result2 == null)
-							retval = 0;
-						else
-							retval = -1;
-					}
-					else if (result2 == null)
-					{
-						retval = 1;
-					}
-					else
-					{
-						retval = result1.compareTo(result2);
-					}
-					if (direction.intValue() < 0)
-						retval = -retval;
-					i++;
-				}
+				return compareSortKeys(getSortKey(recordEnvironment1), getSortKey(recordEnvironment2));
 			}
 			catch (SQLException e)
 			{
 				throw new OrderByException(e.getMessage());
 			}
-			return retval;
+		}
+	}
+
+	/**
+	 * Evaluate the SQL ORDER BY expressions for a record.
+	 * @param record record environment to evaluate.
+	 * @return array containing value of each ORDER BY expression, followed by the record itself
+	 *         and an element for the row number used by topRows.
+	 * @throws SQLException if evaluating an expression fails.
+	 */
+	private Object[] getSortKey(Map<String, Object> record) throws SQLException
+	{
+		Object[] sortKey = new Object[orderByColumns.size() + 2];
+		recordEnvironment = record;
+		Map<String, Object> objectEnvironment = updateRecordEnvironment(true);
+		if (converter != null)
+			objectEnvironment.put(StringConverter.COLUMN_NAME, converter);
+		for (int i = 0; i < orderByColumns.size(); i++)
+		{
+			Object []o = orderByColumns.get(i);
+			Expression expr = (Expression)o[1];
+			sortKey[i] = expr.eval(objectEnvironment);
+		}
+		sortKey[orderByColumns.size()] = record;
+		return sortKey;
+	}
+
+	/**
+	 * Compares the ORDER BY expression values of two records.
+	 */
+	private int compareSortKeys(Object[] sortKey1, Object[] sortKey2)
+	{
+		int retval = 0;
+		int i = 0;
+		while (i < orderByColumns.size() && retval == 0)
+		{
+			Object []o = orderByColumns.get(i);
+			Integer direction = (Integer)o[0];
+			Comparable<Object> result1 = (Comparable<Object>)sortKey1[i];
+			Comparable<Object> result2 = (Comparable<Object>)sortKey2[i];
+			if (result1 == null)
+			{
+				if (result2 == null)
+					retval = 0;
+				else
+					retval = -1;
+			}
+			else if (result2 == null)
+			{
+				retval = 1;
+			}
+			else
+			{
+				retval = result1.compareTo(result2);
+			}
+			if (direction.intValue() < 0)
+				retval = -retval;
+			i++;
+		}
+		return retval;
+	}
+
+	/**
+	 * Compares the ORDER BY expression values of two records, then the order
+	 * in which they were read, so that rows with equal values keep their order.
+	 */
+	private int compareTopRows(Object[] sortKey1, Object[] sortKey2)
+	{
+		int retval = compareSortKeys(sortKey1, sortKey2);
+		if (retval == 0)
+		{
+			int rowIndex = orderByColumns.size() + 1;
+			retval = ((Long)sortKey1[rowIndex]).compareTo((Long)sortKey2[rowIndex]);
+		}
+		return retval;
+	}
+
+	/**
+	 * Add a row to topRows, dropping the last row in sorted order
+	 * if there are then too many rows.
+	 */
+	private void addTopRow(Map<String, Object> record) throws SQLException
+	{
+		if (topRowLimit == 0)
+			return;
+		Object[] sortKey = getSortKey(record);
+		sortKey[orderByColumns.size() + 1] = Long.valueOf(topRowSequence++);
+		if (topRows.size() < topRowLimit)
+		{
+			topRows.add(sortKey);
+		}
+		else if (compareTopRows(sortKey, topRows.peek()) < 0)
+		{
+			topRows.poll();
+			topRows.add(sortKey);
 		}
 	}
 
@@ -254,7 +414,15 @@ public class CsvResultSet implements ResultSet
 			this.groupByColumns = null;
 		this.havingClause = havingClause;
 		if (orderByColumns != null)
-			this.orderByColumns = new ArrayList<>(orderByColumns);
+		{
+			/*
+			 * Copy each entry, so that "order by 2" is replaced in the copy
+			 * and not in the parsed statement, which may be executed again.
+			 */
+			this.orderByColumns = new ArrayList<>();
+			for (Object[] o : orderByColumns)
+				this.orderByColumns.add(o.clone());
+		}
 		else
 			this.orderByColumns = null;
 		if (isDistinct)
@@ -269,12 +437,8 @@ public class CsvResultSet implements ResultSet
 		Locale locale = ((CsvConnection)statement.getConnection()).getLocale();
 		boolean useDateTimeFormatter = ((CsvConnection)statement.getConnection()).getUseDateTimeFormatter();
 		this.converter = new StringConverter(dateFormat, timeFormat, timestampFormat, timeZone, locale, useDateTimeFormatter);
-		if (reader instanceof CsvReader)
-		{
-			((CsvReader) reader).setConverter(converter);
-			if(!"".equals(columnTypes))
-				((CsvReader) reader).setColumnTypes(columnTypes);
-		}
+		this.columnTypes = columnTypes;
+		initReader();
 
 		String[] columnNames = reader.getColumnNames();
 
@@ -282,6 +446,15 @@ public class CsvResultSet implements ResultSet
 		HashSet<String> allReaderColumns = new HashSet<>();
 		for (int i = 0; i < columnNames.length; i++)
 		{
+			if (reader instanceof JoinedDataReader)
+			{
+				/*
+				 * Column names that are in more than one joined table are
+				 * only valid with a table name or alias.
+				 */
+				allReaderColumns.addAll(Arrays.asList(((JoinedDataReader)reader).getColumnKeys(i)));
+				continue;
+			}
 			String columnName = columnNames[i].toUpperCase();
 			allReaderColumns.add(columnName);
 			if (tableName != null)
@@ -315,6 +488,30 @@ public class CsvResultSet implements ResultSet
 				 * Check that any table alias is valid.
 				 */
 				String asterisk = asteriskExpression.toString();
+				if (reader instanceof JoinedDataReader)
+				{
+					/*
+					 * Select columns of all joined tables, or only the columns of one table
+					 * for "select T.*", using the table name or alias so that columns
+					 * with the same name in different tables are not mixed up.
+					 */
+					JoinedDataReader joinedReader = (JoinedDataReader)reader;
+					String[] qualifiers = joinedReader.getColumnQualifiers();
+					String[] qualifiedColumnNames = joinedReader.getQualifiedColumnNames();
+					this.queryEnvironment.remove(i);
+					int nColumns = 0;
+					for (int j = 0; j < columnNames.length; j++)
+					{
+						if (asterisk.equals("*") || asterisk.equalsIgnoreCase(qualifiers[j] + ".*"))
+						{
+							this.queryEnvironment.add(i + nColumns, new Object[]{columnNames[j], new ColumnName(qualifiedColumnNames[j])});
+							nColumns++;
+						}
+					}
+					if (nColumns == 0)
+						throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + asterisk);
+					continue;
+				}
 				if (!(asterisk.equals("*") || (tableAlias != null && asterisk.equalsIgnoreCase(tableAlias + ".*"))))
 					throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + asterisk);
 				this.queryEnvironment.remove(i);
@@ -470,7 +667,7 @@ public class CsvResultSet implements ResultSet
 						for (Object usedColumn : exprUsedColumns)
 						{
 							if (!allReaderColumns.contains(usedColumn))
-								throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + usedColumn);
+								throw invalidColumnException(usedColumn.toString());
 						}
 					}
 				}
@@ -489,7 +686,7 @@ public class CsvResultSet implements ResultSet
 			{
 				if (!allReaderColumns.contains(usedColumn) && !parentObjectEnvironment.containsKey(usedColumn))
 				{
-					throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + usedColumn);
+					throw invalidColumnException(usedColumn);
 				}
 			}
 
@@ -523,7 +720,7 @@ public class CsvResultSet implements ResultSet
 					{
 						if (!allReaderColumns.contains(usedColumn) && !parentObjectEnvironment.containsKey(usedColumn))
 						{
-							throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + usedColumn);
+							throw invalidColumnException(usedColumn);
 						}
 					}
 
@@ -548,6 +745,9 @@ public class CsvResultSet implements ResultSet
 			}
 		}
 
+		this.readerColumns = allReaderColumns;
+		compileEnvironmentSlots();
+
 		if (this.groupByColumns != null ||
 		this.orderByColumns != null || this.aggregateFunctions.size() > 0 ||
 			isScrollable())
@@ -556,6 +756,21 @@ public class CsvResultSet implements ResultSet
 			currentRow = 0;
 		}
 
+		/*
+		 * Simple queries on a scrollable ResultSet can be read forward without
+		 * buffering every row, until the application first scrolls the cursor.
+		 * Joined tables are always buffered, as they cannot be opened again.
+		 */
+		if (isScrollable() && this.groupByColumns == null &&
+			this.orderByColumns == null && this.aggregateFunctions.isEmpty() &&
+			((CsvConnection)statement.getConnection()).isLazyScrollBuffer() &&
+			canReadRowsAgain())
+		{
+			streamingRows = true;
+		}
+
+		startParallelFilter();
+
 		if (this.groupByColumns != null)
 		{
 			/*
@@ -565,8 +780,13 @@ public class CsvResultSet implements ResultSet
 			int savedLimit = limit;
 			maxRows = 0;
 			limit = -1;
-			ArrayList<ArrayList<Object>> groupOrder = new ArrayList<>();
-			Map<ArrayList<Object>, ArrayList<Map<String, Object>>> groups = new MinimumMemoryMap<>();
+			List<AggregateFunction> groupAggregateFunctions = getGroupAggregateFunctions();
+
+			/*
+			 * First row of each group, in the order that groups are found.
+			 */
+			LinkedHashMap<ArrayList<Object>, Map<String, Object>> groups = new LinkedHashMap<>();
+			aggregatingRows = true;
 			try
 			{
 				while (next())
@@ -579,31 +799,35 @@ public class CsvResultSet implements ResultSet
 					{
 						groupByKeys.add(expr.eval(objectEnvironment));
 					}
-					ArrayList<Map<String, Object>> groupByValues = groups.get(groupByKeys);
-					if (groupByValues == null)
+					Map<String, Object> firstRow = groups.get(groupByKeys);
+					if (firstRow == null)
 					{
-						groupByValues = new ArrayList<>();
-						groups.put(groupByKeys, groupByValues);
-						groupOrder.add(groupByKeys);
+						/*
+						 * Create a row in the ResultSet for each group, with an
+						 * accumulator for each aggregate function that is updated
+						 * with each row in the group, so that rows do not need
+						 * to be kept in memory.
+						 */
+						HashMap<AggregateFunction, AggregateFunction.Accumulator> accumulators = new HashMap<>();
+						for (AggregateFunction func : groupAggregateFunctions)
+							accumulators.put(func, func.createAccumulator());
+						firstRow = recordEnvironment;
+						firstRow.put(AggregateFunction.GROUPING_COLUMN_NAME, accumulators);
+						groups.put(groupByKeys, firstRow);
 					}
-					groupByValues.add(recordEnvironment);
+					Map<AggregateFunction, AggregateFunction.Accumulator> accumulators =
+						(Map<AggregateFunction, AggregateFunction.Accumulator>)firstRow.get(AggregateFunction.GROUPING_COLUMN_NAME);
+					for (AggregateFunction.Accumulator accumulator : accumulators.values())
+						accumulator.processRow(recordEnvironment);
 				}
+				aggregatingRows = false;
 				bufferedRecordEnvironments.clear();
-				for (ArrayList<Object> groupByKey : groupOrder)
+				for (Map<String, Object> firstRow : groups.values())
 				{
-					ArrayList<Map<String, Object>> values = groups.get(groupByKey);
-
-					/*
-					 * Create a row in the ResultSet for each group with a
-					 * reference to all the rows in that group so we can
-					 * later calculate any aggregate functions for each group.
-					 */
-					Map<String, Object> firstRow = new MinimumMemoryMap<>(values.get(0));
-					firstRow.put(AggregateFunction.GROUPING_COLUMN_NAME, values);
-
 					if (this.havingClause == null || Boolean.TRUE.equals(this.havingClause.isTrue(firstRow)))
 						bufferedRecordEnvironments.add(firstRow);
 				}
+				groups = null;
 
 				if (this.orderByColumns != null)
 				{
@@ -614,6 +838,7 @@ public class CsvResultSet implements ResultSet
 			{
 				maxRows = savedMaxRows;
 				limit = savedLimit;
+				aggregatingRows = false;
 			}
 
 			/*
@@ -636,16 +861,19 @@ public class CsvResultSet implements ResultSet
 			int savedLimit = limit;
 			maxRows = 0;
 			limit = -1;
+			for (AggregateFunction func : this.aggregateFunctions)
+				func.resetAggregateFunctions();
+			aggregatingRows = true;
 			try
 			{
 				while (next())
 				{
-					for (Object o : this.aggregateFunctions)
+					for (AggregateFunction func : this.aggregateFunctions)
 					{
-						AggregateFunction func = (AggregateFunction)o;
 						func.processRow(recordEnvironment);
 					}
 				}
+				aggregatingRows = false;
 
 				/*
 				 * Create a single row ResultSet from the aggregate functions.
@@ -658,6 +886,7 @@ public class CsvResultSet implements ResultSet
 			{
 				maxRows = savedMaxRows;
 				limit = savedLimit;
+				aggregatingRows = false;
 			}
 
 			/*
@@ -674,9 +903,28 @@ public class CsvResultSet implements ResultSet
 		{
 			/*
 			 * Read all rows into memory and sort them based on SQL ORDER BY expressions.
+			 * If the number of rows is limited, only keep the rows that will be returned.
 			 */
 			int savedMaxRows = maxRows;
 			int savedLimit = limit;
+			topRowLimit = -1;
+			if (maxRows != 0)
+				topRowLimit = maxRows;
+			if (limit >= 0 && (topRowLimit < 0 || sqlOffset + limit < topRowLimit))
+				topRowLimit = sqlOffset + limit;
+			if (topRowLimit >= 0)
+			{
+				topRows = new PriorityQueue<>(Math.min(topRowLimit, 1024) + 1,
+					(sortKey1, sortKey2) -> compareTopRows(sortKey2, sortKey1));
+				topRowSequence = 0;
+			}
+			else if (!isScrollable())
+			{
+				sortBufferRows = ((CsvConnection)statement.getConnection()).getSortBufferRows();
+				if (sortBufferRows > 0)
+					externalSort = new ExternalSort(this::compareSortKeys, orderByColumns.size(),
+						getSortRecordKeys());
+			}
 			maxRows = 0;
 			limit = -1;
 			try
@@ -701,33 +949,328 @@ public class CsvResultSet implements ResultSet
 		}
 		else if (sqlOffset > 0)
 		{
-			int savedMaxRows = maxRows;
-			int savedLimit = limit;
-			maxRows = 0;
-			limit = -1;
+			/*
+			 * Skipped rows are read on a single thread, as line numbers
+			 * are counted again from the first row after them.
+			 */
+			parallelFilter = null;
+			skipOffsetRows(sqlOffset);
+			startParallelFilter();
+		}
+	}
+
+	/**
+	 * Set filter used to skip files when the table is read again.
+	 * @param fileNameFilter filter used when the table was first opened, or null.
+	 */
+	void setFileNameFilter(FileNameFilter fileNameFilter)
+	{
+		this.fileNameFilter = fileNameFilter;
+	}
 
+	/**
+	 * Start evaluating the WHERE clause on several threads, if the parallelScan
+	 * property is set and the WHERE clause and query expressions can be
+	 * evaluated by several threads at the same time.
+	 */
+	private void startParallelFilter() throws SQLException
+	{
+		if (!((CsvConnection)statement.getConnection()).isParallelScan() ||
+			whereClause == null || distinctValues != null || distinctColumns != null || streamingRows)
+		{
+			return;
+		}
+		if (!ParallelRowFilter.isThreadSafe(whereClause))
+			return;
+		List<String> whereColumns = whereClause.usedColumns(readerColumns);
+		boolean[] evaluateQueryExpressions = new boolean[queryEnvironment.size()];
+		for (int i = 0; i < queryEnvironment.size(); i++)
+		{
+			Object[] o = queryEnvironment.get(i);
+			Expression expr = (Expression)o[1];
+			if (!expr.aggregateFunctions().isEmpty() &&
+				!whereColumns.contains(((String)o[0]).toUpperCase()))
+			{
+				/*
+				 * Aggregate functions do not have a value until all rows are read.
+				 */
+				continue;
+			}
+			if (!ParallelRowFilter.isThreadSafe(expr))
+				return;
+			evaluateQueryExpressions[i] = true;
+		}
+
+		parallelQueryExpressions = evaluateQueryExpressions;
+		parallelLineNumber = getLineNumber();
+		ParallelRowFilter.RowMatcher matcher = row ->
+			Boolean.TRUE.equals(whereClause.isTrue(createObjectEnvironment(row, parallelQueryExpressions, null)));
+		if (reader instanceof CsvReader && ((CsvReader)reader).startParallelParse())
+		{
 			/*
-			 * Skip the first n rows.
+			 * Records are also split into fields on several threads.
 			 */
-			try
+			parallelFilter = new ParallelRowFilter(this::readParallelRecord,
+				this::parseParallelRecord, matcher);
+		}
+		else
+		{
+			parallelFilter = new ParallelRowFilter(this::readParallelRow, null, matcher);
+		}
+	}
+
+	/**
+	 * Read the next row for parallelFilter.
+	 * @return next row, or null if there are no more rows.
+	 * @throws SQLException if reading fails.
+	 */
+	private Map<String, Object> readParallelRow() throws SQLException
+	{
+		if (!reader.next())
+			return null;
+		if (reader instanceof CsvReader)
+			parallelLineNumber += ((CsvReader)reader).takeSkippedRows();
+		Map<String, Object> row = reader.getEnvironment();
+		row.put(CsvStatement.STATEMENT_COLUMN_NAME, statement);
+		if (this.groupByColumns == null)
+			row.put(SQLLineNumberFunction.LINE_NUMBER_COLUMN_NAME, Integer.valueOf(parallelLineNumber));
+		parallelLineNumber++;
+		return row;
+	}
+
+	/**
+	 * Read the next record for parallelFilter, without splitting it into fields.
+	 * @return record and its line number, or null if there are no more records.
+	 * @throws SQLException if reading fails.
+	 */
+	private Object readParallelRecord() throws SQLException
+	{
+		CsvRawReader.Record record = ((CsvReader)reader).readRecord();
+		if (record == null)
+			return null;
+		Object[] result = new Object[]{record, Integer.valueOf(parallelLineNumber)};
+		parallelLineNumber++;
+		return result;
+	}
+
+	/**
+	 * Create the row for a record read by readParallelRecord(), on any thread.
+	 */
+	private Map<String, Object> parseParallelRecord(Object o) throws SQLException
+	{
+		Object[] recordAndLineNumber = (Object[])o;
+		Map<String, Object> row = ((CsvReader)reader).parseRecord((CsvRawReader.Record)recordAndLineNumber[0]);
+		row.put(CsvStatement.STATEMENT_COLUMN_NAME, statement);
+		if (this.groupByColumns == null)
+			row.put(SQLLineNumberFunction.LINE_NUMBER_COLUMN_NAME, recordAndLineNumber[1]);
+		return row;
+	}
+
+	/**
+	 * Read the next row from the table, counting any rows that the reader
+	 * skipped because they cannot match the WHERE clause.
+	 * @return false if there are no more rows.
+	 * @throws SQLException if reading fails.
+	 */
+	private boolean readNextRow() throws SQLException
+	{
+		boolean result = reader.next();
+		if (reader instanceof CsvReader)
+			this.nonMatchingRows += ((CsvReader)reader).takeSkippedRows();
+		return result;
+	}
+
+	private void initReader() throws SQLException
+	{
+		if (reader instanceof CsvReader)
+		{
+			CsvReader csvReader = (CsvReader)reader;
+			csvReader.setConverter(converter);
+			if(!"".equals(columnTypes))
+				csvReader.setColumnTypes(columnTypes);
+			csvReader.setWhereClause(whereClause);
+		}
+		else if (reader instanceof JoinedDataReader)
+		{
+			((JoinedDataReader) reader).setConverter(converter, (CsvConnection)statement.getConnection());
+		}
+	}
+
+	/**
+	 * Skip the first rows of the query, for an SQL OFFSET clause.
+	 * @param sqlOffset number of rows to skip.
+	 * @throws SQLException if reading rows fails.
+	 */
+	private void skipOffsetRows(int sqlOffset) throws SQLException
+	{
+		if (whereClause == null && distinctValues == null && distinctColumns == null &&
+			maxDataLines == 0 && !"".equals(columnTypes) &&
+			reader instanceof CsvReader && ((CsvReader)reader).hasRowIndex())
+		{
+			/*
+			 * Every row is in the result, so skip rows in the file directly.
+			 */
+			if (((CsvReader)reader).skipRows(sqlOffset) < sqlOffset)
+				hitTail = true;
+			return;
+		}
+
+		int savedMaxRows = maxRows;
+		int savedLimit = limit;
+		maxRows = 0;
+		limit = -1;
+
+		/*
+		 * Skip the first n rows.
+		 */
+		try
+		{
+			while (sqlOffset > 0)
 			{
-				while (sqlOffset > 0)
-				{
-					if (!next())
-						break;
-					sqlOffset--;
-				}
+				if (!next())
+					break;
+				sqlOffset--;
 			}
-			finally
+		}
+		finally
+		{
+			maxRows = savedMaxRows;
+			limit = savedLimit;
+			currentRow = 0;
+			nextResult = true;
+			if (bufferedRecordEnvironments != null)
+				bufferedRecordEnvironments.clear();
+		}
+	}
+
+	/**
+	 * Create exception for a column that is not in the table, or that is in
+	 * more than one joined table and is used without a table name or alias.
+	 */
+	private SQLException invalidColumnException(String columnName)
+	{
+		if (reader instanceof JoinedDataReader &&
+			((JoinedDataReader)reader).getAmbiguousColumnNames().contains(columnName))
+		{
+			return new SQLException(CsvResources.getString("ambiguousColumnName") + ": " + columnName);
+		}
+		return new SQLException(CsvResources.getString("invalidColumnName") + ": " + columnName);
+	}
+
+	/**
+	 * Check whether the table can be read again from the start and give
+	 * the same rows, so that rows need not be buffered until the cursor
+	 * is scrolled.
+	 * @return true if rows can be read again.
+	 * @throws SQLException if connection is closed.
+	 */
+	private boolean canReadRowsAgain() throws SQLException
+	{
+		/*
+		 * Joined tables cannot be opened again, and a TableReader
+		 * provided by the application may not give the same rows again.
+		 */
+		if (reader instanceof JoinedDataReader)
+			return false;
+		TableReader tableReader = ((CsvConnection)statement.getConnection()).getTableReader();
+		if (tableReader != null && !(tableReader instanceof ZipFileTableReader) &&
+			!(tableReader instanceof ClasspathTableReader))
+		{
+			return false;
+		}
+
+		/*
+		 * Functions such as RANDOM() give a different result each time, so
+		 * could match different rows.
+		 */
+		if (whereClause != null && !whereClause.isDeterministic())
+			return false;
+		if (distinctValues != null)
+		{
+			for (Object[] o : queryEnvironment)
 			{
-				maxRows = savedMaxRows;
-				limit = savedLimit;
-				currentRow = 0;
-				nextResult = true;
-				if (bufferedRecordEnvironments != null)
-					bufferedRecordEnvironments.clear();
+				if (!((Expression)o[1]).isDeterministic())
+					return false;
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Stop streaming rows and start buffering them, so that the cursor
+	 * can be scrolled.  Rows that were already read without being buffered
+	 * are read again from the start of the table.
+	 * @throws SQLException if reading rows fails.
+	 */
+	private void startBuffering() throws SQLException
+	{
+		if (!streamingRows)
+			return;
+
+		streamingRows = false;
+		if (currentRow == 0 && !hitTail)
+		{
+			/*
+			 * Nothing read yet, so rows can be buffered from here.
+			 */
+			return;
+		}
+		if (currentRow == 1 && nextResult)
+		{
+			bufferedRecordEnvironments.add(recordEnvironment);
+			return;
+		}
+
+		boolean readAllRows = hitTail;
+		int rowsRead = currentRow;
+
+		String tableAlias = reader.getTableAlias();
+		reader.close();
+		reader = statement.createDataReader(tableName, tableAlias, fileNameFilter);
+		initReader();
+
+		currentRow = 0;
+		nonMatchingRows = 0;
+		hitTail = false;
+		nextResult = true;
+		recordEnvironment = null;
+		bufferedRecordEnvironments.clear();
+		if (distinctValues != null)
+			distinctValues.clear();
+		if (offset > 0)
+			skipOffsetRows(offset);
+
+		if (readAllRows)
+		{
+			while (next())
+				;
+		}
+		else
+		{
+			while (currentRow < rowsRead && next())
+				;
+		}
+	}
+
+	/**
+	 * Find all aggregate functions that are evaluated for each GROUP BY group.
+	 * @return aggregate functions in query, HAVING clause and ORDER BY clause.
+	 */
+	private List<AggregateFunction> getGroupAggregateFunctions()
+	{
+		List<AggregateFunction> retval = new ArrayList<>(this.aggregateFunctions);
+		if (this.havingClause != null)
+			retval.addAll(this.havingClause.aggregateFunctions());
+		if (this.orderByColumns != null)
+		{
+			for (Object []o : this.orderByColumns)
+			{
+				Expression expr = (Expression)o[1];
+				if (!(expr instanceof SubQueryExpression))
+					retval.addAll(expr.aggregateFunctions());
+			}
+		}
+		return retval;
 	}
 
 	private boolean isScrollable()
@@ -851,24 +1394,70 @@ public class CsvResultSet implements ResultSet
 
 	private void sortRows(int sqlOffset) throws SQLException
 	{
-		ArrayList<Map<String, Object>> allRows = new ArrayList<>(bufferedRecordEnvironments);
-		bufferedRecordEnvironments.clear();
-		try
+		ArrayList<Object[]> sortKeys;
+		if (externalSort != null)
 		{
-			allRows.sort(new OrderByComparator());
+			sortKeys = sortBufferedRows();
+			if (externalSort.getRunCount() == 0)
+			{
+				/*
+				 * All rows fitted in memory.
+				 */
+				externalSort.close();
+				externalSort = null;
+			}
+			else
+			{
+				externalSort.startMerge(sortKeys);
+				for (int i = 0; i < sqlOffset; i++)
+				{
+					if (externalSort.next() == null)
+						break;
+				}
+				return;
+			}
 		}
-		catch (OrderByException e)
+		else if (topRows != null)
 		{
-			throw new SQLException(e.getMessage());
+			/*
+			 * Only the rows to be returned were kept while reading.
+			 */
+			sortKeys = new ArrayList<>(topRows);
+			topRows = null;
+			sortKeys.sort(this::compareTopRows);
 		}
-		int rowLimit = allRows.size();
+		else
+		{
+			sortKeys = sortBufferedRows();
+		}
+
+		int rowLimit = sortKeys.size();
 		if (maxRows != 0 && maxRows < rowLimit)
 			rowLimit = maxRows;
 		if (limit >= 0 && sqlOffset + limit < rowLimit)
 			rowLimit = sqlOffset + limit;
 
+		int recordIndex = orderByColumns.size();
 		for (int i = sqlOffset; i < rowLimit; i++)
-			bufferedRecordEnvironments.add(allRows.get(i));
+			bufferedRecordEnvironments.add((Map<String, Object>)sortKeys.get(i)[recordIndex]);
+	}
+
+	/**
+	 * Sort the rows that are buffered in memory, and remove them from the buffer.
+	 * @return sort key of each row, in sorted order.
+	 * @throws SQLException if evaluating an ORDER BY expression fails.
+	 */
+	private ArrayList<Object[]> sortBufferedRows() throws SQLException
+	{
+		/*
+		 * Evaluate ORDER BY expressions once for each row, not each time rows are compared.
+		 */
+		ArrayList<Object[]> sortKeys = new ArrayList<>(bufferedRecordEnvironments.size());
+		for (Map<String, Object> record : bufferedRecordEnvironments)
+			sortKeys.add(getSortKey(record));
+		sortKeys.sort(this::compareSortKeys);
+		bufferedRecordEnvironments.clear();
+		return sortKeys;
 	}
 
 	private void checkOpen() throws SQLException
@@ -900,7 +1489,23 @@ public class CsvResultSet implements ResultSet
 		if (statement.isCancelled())
 			throw new SQLException(CsvResources.getString("statementCancelled"));
 
-		if ((this.groupByColumns != null ||
+		if (externalSort != null && externalSort.isMerging())
+		{
+			recordEnvironment = externalSort.next();
+			thereWasAnAnswer = (recordEnvironment != null);
+			if (thereWasAnAnswer)
+			{
+				currentRow++;
+				updateRecordEnvironment(true);
+			}
+			else
+			{
+				externalSort.close();
+				externalSort = null;
+				hitTail = true;
+			}
+		}
+		else if ((this.groupByColumns != null ||
 		this.aggregateFunctions.size() > 0 ||
 			this.orderByColumns != null || isScrollable()) &&
 			currentRow < bufferedRecordEnvironments.size())
@@ -930,12 +1535,28 @@ public class CsvResultSet implements ResultSet
 			{
 				thereWasAnAnswer = false;
 			}
+			else if (parallelFilter != null)
+			{
+				/*
+				 * WHERE clause has already been evaluated for the row.
+				 */
+				thereWasAnAnswer = parallelFilter.next();
+				while (thereWasAnAnswer && !parallelFilter.isMatch())
+				{
+					this.nonMatchingRows++;
+					thereWasAnAnswer = parallelFilter.next();
+				}
+			}
 			else
 			{
-				thereWasAnAnswer = reader.next();
+				thereWasAnAnswer = readNextRow();
 			}
 
-			if(thereWasAnAnswer)
+			if (parallelFilter != null)
+			{
+				recordEnvironment = thereWasAnAnswer ? parallelFilter.getRow() : null;
+			}
+			else if(thereWasAnAnswer)
 			{
 				recordEnvironment = reader.getEnvironment();
 				recordEnvironment.put(CsvStatement.STATEMENT_COLUMN_NAME, statement);
@@ -951,7 +1572,7 @@ public class CsvResultSet implements ResultSet
 			}
 
 			// We have a where clause or DISTINCT keyword, honor it
-			if (whereClause != null || distinctValues != null)
+			if ((whereClause != null || distinctValues != null) && parallelFilter == null)
 			{
 				Map<String, Object> objectEnvironment = updateRecordEnvironment(thereWasAnAnswer);
 				while (thereWasAnAnswer)
@@ -972,7 +1593,7 @@ public class CsvResultSet implements ResultSet
 						}
 					}
 					this.nonMatchingRows++;
-					thereWasAnAnswer = reader.next();
+					thereWasAnAnswer = readNextRow();
 					if(thereWasAnAnswer)
 					{
 						recordEnvironment = reader.getEnvironment();
@@ -990,19 +1611,24 @@ public class CsvResultSet implements ResultSet
 					objectEnvironment = updateRecordEnvironment(thereWasAnAnswer);
 				}
 			}
-			if (this.orderByColumns != null || isScrollable())
+			if ((this.orderByColumns != null || (isScrollable() && !streamingRows)) && !aggregatingRows)
 			{
 				if(thereWasAnAnswer)
 				{
-					Map<String, Object> env = reader.getEnvironment();
-					env.put(CsvStatement.STATEMENT_COLUMN_NAME, statement);
-
 					/*
-					 * Always include line number in CSV file, so it can be evaluated later.
+					 * Buffer the environment of the current row, which already
+					 * contains the statement and line number.
 					 */
-					addLineNumberEnvironment(env);
-
-					bufferedRecordEnvironments.add(env);
+					if (topRows != null)
+					{
+						addTopRow(recordEnvironment);
+					}
+					else
+					{
+						bufferedRecordEnvironments.add(recordEnvironment);
+						if (externalSort != null && bufferedRecordEnvironments.size() >= sortBufferRows)
+							externalSort.writeRun(sortBufferedRows());
+					}
 					currentRow++;
 				}
 				else
@@ -1021,65 +1647,169 @@ public class CsvResultSet implements ResultSet
 		}
 
 		nextResult = thereWasAnAnswer;
+
+		/*
+		 * A forward-only ResultSet cannot go back to rows already read,
+		 * so no more expressions are evaluated after the last row.
+		 */
+		if (!thereWasAnAnswer && !isScrollable())
+			statement.resultSetFinished(this);
 		return thereWasAnAnswer;
 	}
 
+	/**
+	 * Check whether a sub-query uses any columns from the parent SQL statement,
+	 * so that it gives different results for each row of the parent.
+	 *
+	 * @param columnNames names of columns used in this query.
+	 * @return true if any column is not in this table but is in the parent.
+	 */
+	boolean usesParentColumns(List<String> columnNames)
+	{
+		for (String columnName : columnNames)
+		{
+			if (!readerColumns.contains(columnName) && parentObjectEnvironment.containsKey(columnName))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Assign a slot to each key in the row environments created by
+	 * updateRecordEnvironment(), so that each row can be built as an array
+	 * and column names in expressions can be found by slot.
+	 */
+	private void compileEnvironmentSlots()
+	{
+		environmentSlots = new HashMap<>();
+		statementSlot = addEnvironmentSlot(CsvStatement.STATEMENT_COLUMN_NAME);
+		queryEnvironmentSlots = new int[queryEnvironment.size()];
+		for (int i = 0; i < queryEnvironment.size(); i++)
+		{
+			Object[] o = queryEnvironment.get(i);
+			String key = (String) o[0];
+			queryEnvironmentSlots[i] = addEnvironmentSlot(key.toUpperCase());
+		}
+
+		/*
+		 * Each column only needs to be copied once, even if it is used several times.
+		 */
+		LinkedHashSet<String> uniqueUsedColumns = new LinkedHashSet<>();
+		for (String usedColumn : usedColumns)
+			uniqueUsedColumns.add(usedColumn.toUpperCase());
+		usedColumnKeys = uniqueUsedColumns.toArray(new String[0]);
+		usedColumnSlots = new int[usedColumnKeys.length];
+		for (int i = 0; i < usedColumnKeys.length; i++)
+			usedColumnSlots[i] = addEnvironmentSlot(usedColumnKeys[i]);
+
+		groupingSlot = addEnvironmentSlot(AggregateFunction.GROUPING_COLUMN_NAME);
+		converterSlot = addEnvironmentSlot(StringConverter.COLUMN_NAME);
+	}
+
+	/**
+	 * Get keys of the values in each row that are needed after sorting,
+	 * so that other columns are not written to sort files.
+	 */
+	private String[] getSortRecordKeys()
+	{
+		LinkedHashSet<String> keys = new LinkedHashSet<>(Arrays.asList(usedColumnKeys));
+		for (Object[] o : queryEnvironment)
+		{
+			for (String usedColumn : ((Expression)o[1]).usedColumns(readerColumns))
+				keys.add(usedColumn.toUpperCase());
+		}
+		keys.add(SQLLineNumberFunction.LINE_NUMBER_COLUMN_NAME);
+		keys.add(AggregateFunction.GROUPING_COLUMN_NAME);
+		keys.add(StringConverter.COLUMN_NAME);
+		keys.add(CsvStatement.STATEMENT_COLUMN_NAME);
+		return keys.toArray(new String[0]);
+	}
+
+	private int addEnvironmentSlot(String key)
+	{
+		Integer slot = environmentSlots.get(key);
+		if (slot == null)
+		{
+			slot = Integer.valueOf(environmentSlots.size());
+			environmentSlots.put(key, slot);
+		}
+		environmentSlotCount = environmentSlots.size();
+		return slot.intValue();
+	}
+
 	private Map<String, Object> updateRecordEnvironment(boolean thereWasAnAnswer) throws SQLException
 	{
-		Map<String, Object> objectEnvironment = new MinimumMemoryMap<>();
 		if(!thereWasAnAnswer)
 		{
 			recordEnvironment = null;
-			return objectEnvironment;
+			return new SlotMap(environmentSlots, environmentSlotCount);
 		}
+		rowValues = new Object[queryEnvironment.size()];
+		rowValuesEnvironment = recordEnvironment;
+		return createObjectEnvironment(recordEnvironment, null, rowValues);
+	}
+
+	/**
+	 * Create the environment for evaluating expressions for a row.
+	 * Does not change any state of this ResultSet, so can be called
+	 * by several threads at the same time.
+	 * @param recordEnvironment row read from table.
+	 * @param evaluateQueryExpressions query expressions to evaluate, or null for all.
+	 * @param queryValues array to copy value of each query expression into, or null.
+	 * @return environment containing values of query expressions and columns.
+	 * @throws SQLException if evaluating a query expression fails.
+	 */
+	private Map<String, Object> createObjectEnvironment(Map<String, Object> recordEnvironment,
+		boolean[] evaluateQueryExpressions, Object[] queryValues) throws SQLException
+	{
+		SlotMap objectEnvironment = new SlotMap(environmentSlots, environmentSlotCount);
 
 		/*
 		 * Set any parent environment first so it is overridden by current environment.
 		 */
-		objectEnvironment.put(CsvStatement.STATEMENT_COLUMN_NAME, this.statement);
+		objectEnvironment.setSlot(statementSlot, this.statement);
 		objectEnvironment.putAll(this.parentObjectEnvironment);
 
 		for (int i = 0; i < queryEnvironment.size(); i++)
 		{
+			if (evaluateQueryExpressions != null && !evaluateQueryExpressions[i])
+				continue;
 			Object[] o = queryEnvironment.get(i);
-			String key = (String) o[0];
 			Object value = ((Expression) o[1]).eval(recordEnvironment);
-			objectEnvironment.put(key.toUpperCase(), value);
+			objectEnvironment.setSlot(queryEnvironmentSlots[i], value);
+			if (queryValues != null)
+				queryValues[i] = value;
 		}
-		for (int i=0; i<usedColumns.size(); i++)
+		for (int i = 0; i < usedColumnKeys.length; i++)
 		{
-			String key = usedColumns.get(i);
-			key = key.toUpperCase();
+			String key = usedColumnKeys[i];
 			if (recordEnvironment.containsKey(key))
-					objectEnvironment.put(key, recordEnvironment.get(key));
+				objectEnvironment.setSlot(usedColumnSlots[i], recordEnvironment.get(key));
 		}
 
 		/*
 		 * Always include any group of rows so we have assembled so we can evaluate
 		 * any aggregate functions.
 		 */
-		String key = AggregateFunction.GROUPING_COLUMN_NAME;
-		Object groupRows = recordEnvironment.get(key);
+		Object groupRows = recordEnvironment.get(AggregateFunction.GROUPING_COLUMN_NAME);
 		if (groupRows != null)
-			objectEnvironment.put(key, groupRows);
+			objectEnvironment.setSlot(groupingSlot, groupRows);
 
 		/*
 		 * Always include the data type converter object so we can correctly
 		 * convert data types when evaluating expressions such as MYDATE > '2012-06-31'.
 		 */
-		key = StringConverter.COLUMN_NAME;
-		Object stringConverter = recordEnvironment.get(key);
+		Object stringConverter = recordEnvironment.get(StringConverter.COLUMN_NAME);
 		if (stringConverter != null)
-			objectEnvironment.put(key, stringConverter);
+			objectEnvironment.setSlot(converterSlot, stringConverter);
 
 		/*
 		 * Always include the java.sql.Statement object that user-defined
 		 * SQL functions can refer back to.
 		 */
-		key = CsvStatement.STATEMENT_COLUMN_NAME;
-		Object statement = recordEnvironment.get(key);
+		Object statement = recordEnvironment.get(CsvStatement.STATEMENT_COLUMN_NAME);
 		if (statement != null)
-			objectEnvironment.put(key, statement);
+			objectEnvironment.setSlot(statementSlot, statement);
 
 		return objectEnvironment;
 	}
@@ -1093,10 +1823,18 @@ public class CsvResultSet implements ResultSet
 			return;
 
 		String key = SQLLineNumberFunction.LINE_NUMBER_COLUMN_NAME;
+		recordEnvironment.put(key, Integer.valueOf(getLineNumber()));
+	}
+
+	/**
+	 * @return line number of the next row read from the table.
+	 */
+	private int getLineNumber()
+	{
 		int lineNumber = this.currentRow + this.nonMatchingRows + 1;
 		if (this.offset > 0)
 			lineNumber += this.offset;
-		recordEnvironment.put(key, Integer.valueOf(lineNumber));
+		return lineNumber;
 	}
 
 	private boolean addDistinctEnvironment(Map<String, Object> objectEnvironment) throws SQLException
@@ -1139,7 +1877,17 @@ public class CsvResultSet implements ResultSet
 	public void close() throws SQLException
 	{
 		isClosed = true;
+		if (parallelFilter != null)
+		{
+			parallelFilter.close();
+			parallelFilter = null;
+		}
 		reader.close();
+		if (externalSort != null)
+		{
+			externalSort.close();
+			externalSort = null;
+		}
 
 		/*
 		 * Ensure that long row lists for this query can now be GC'ed
@@ -1149,6 +1897,9 @@ public class CsvResultSet implements ResultSet
 		parentObjectEnvironment = null;
 		bufferedRecordEnvironments = null;
 		recordEnvironment = null;
+		rowValues = null;
+		rowValuesEnvironment = null;
+		statement.resultSetFinished(this);
 	}
 
 	@Override
@@ -1156,7 +1907,7 @@ public class CsvResultSet implements ResultSet
 	{
 		if(lastIndexRead >= 0)
 		{
-			return getString(lastIndexRead) == null;
+			return lastValueNull;
 		}
 		else
 		{
@@ -1180,10 +1931,12 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public boolean getBoolean(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		Object o = getObject(columnIndex);
+		if (o instanceof Boolean)
+			return ((Boolean)o).booleanValue();
+		if (o != null)
 		{
-			Boolean b = converter.parseBoolean(s);
+			Boolean b = converter.parseBoolean(o.toString());
 			if (b != null)
 				return b.booleanValue();
 		}
@@ -1193,10 +1946,12 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public byte getByte(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		Object o = getObject(columnIndex);
+		if (o instanceof Byte)
+			return ((Byte)o).byteValue();
+		if (o != null)
 		{
-			Byte b = converter.parseByte(s);
+			Byte b = converter.parseByte(o.toString());
 			if (b != null)
 				return b.byteValue();
 		}
@@ -1206,10 +1961,12 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public short getShort(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		Object o = getObject(columnIndex);
+		if (o instanceof Short || o instanceof Byte)
+			return ((Number)o).shortValue();
+		if (o != null)
 		{
-			Short n = converter.parseShort(s);
+			Short n = converter.parseShort(o.toString());
 			if (n != null)
 				return n.shortValue();
 		}
@@ -1219,10 +1976,28 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public int getInt(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		String text = getUnconvertedText(columnIndex, INT_TYPES);
+		if (text != null)
 		{
-			Integer i = converter.parseInt(s);
+			try
+			{
+				int i = Integer.parseInt(text);
+				lastValueNull = false;
+				return i;
+			}
+			catch (NumberFormatException e)
+			{
+				/*
+				 * Convert value in the usual way instead.
+				 */
+			}
+		}
+		Object o = getObject(columnIndex);
+		if (o instanceof Integer || o instanceof Short || o instanceof Byte)
+			return ((Number)o).intValue();
+		if (o != null)
+		{
+			Integer i = converter.parseInt(o.toString());
 			if (i != null)
 				return i.intValue();
 		}
@@ -1232,10 +2007,28 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public long getLong(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		String text = getUnconvertedText(columnIndex, LONG_TYPES);
+		if (text != null)
 		{
-			Long l = converter.parseLong(s);
+			try
+			{
+				long l = Long.parseLong(text);
+				lastValueNull = false;
+				return l;
+			}
+			catch (NumberFormatException e)
+			{
+				/*
+				 * Convert value in the usual way instead.
+				 */
+			}
+		}
+		Object o = getObject(columnIndex);
+		if (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte)
+			return ((Number)o).longValue();
+		if (o != null)
+		{
+			Long l = converter.parseLong(o.toString());
 			if (l != null)
 				return l.longValue();
 		}
@@ -1245,10 +2038,31 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public float getFloat(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		String text = getUnconvertedText(columnIndex, FLOAT_TYPES);
+		if (text != null)
+		{
+			try
+			{
+				float f = Float.parseFloat(text.replace(',', '.'));
+				lastValueNull = false;
+				return f;
+			}
+			catch (NumberFormatException e)
+			{
+				/*
+				 * Convert value in the usual way instead.
+				 */
+			}
+		}
+		Object o = getObject(columnIndex);
+		if (o instanceof Float || o instanceof Long || o instanceof Integer ||
+			o instanceof Short || o instanceof Byte)
 		{
-			Float f = converter.parseFloat(s);
+			return ((Number)o).floatValue();
+		}
+		if (o != null)
+		{
+			Float f = converter.parseFloat(o.toString());
 			if (f != null)
 				return f.floatValue();
 		}
@@ -1258,10 +2072,31 @@ public class CsvResultSet implements ResultSet
 	@Override
 	public double getDouble(int columnIndex) throws SQLException
 	{
-		String s = getString(columnIndex);
-		if (s != null)
+		String text = getUnconvertedText(columnIndex, DOUBLE_TYPES);
+		if (text != null)
+		{
+			try
+			{
+				double d = Double.parseDouble(text.replace(',', '.'));
+				lastValueNull = false;
+				return d;
+			}
+			catch (NumberFormatException e)
+			{
+				/*
+				 * Convert value in the usual way instead.
+				 */
+			}
+		}
+		Object o = getObject(columnIndex);
+		if (o instanceof Double || o instanceof Long || o instanceof Integer ||
+			o instanceof Short || o instanceof Byte)
+		{
+			return ((Number)o).doubleValue();
+		}
+		if (o != null)
 		{
-			Double d = converter.parseDouble(s);
+			Double d = converter.parseDouble(o.toString());
 			if (d != null)
 				return d.doubleValue();
 		}
@@ -1494,6 +2329,14 @@ public class CsvResultSet implements ResultSet
 					env.put(tableAlias + "." + columnName, literal);
 					allReaderColumns.add(tableAlias + "." + columnName);
 				}
+				if (reader instanceof JoinedDataReader)
+				{
+					for (String key : ((JoinedDataReader)reader).getColumnKeys(i))
+					{
+						env.put(key, literal);
+						allReaderColumns.add(key);
+					}
+				}
 			}
 			if (converter != null)
 				env.put(StringConverter.COLUMN_NAME, converter);
@@ -1562,9 +2405,61 @@ public class CsvResultSet implements ResultSet
 		// perform pre-accessor method processing
 		preAccessor(columnIndex);
 
-		Object[] o = queryEnvironment.get(columnIndex-1);
-		if (recordEnvironment != null)
-			return ((Expression) o[1]).eval(recordEnvironment);
+		if (recordEnvironment == null)
+		{
+			lastValueNull = true;
+			return null;
+		}
+		if (rowValuesEnvironment != recordEnvironment)
+		{
+			/*
+			 * First value read from this row.
+			 */
+			rowValues = new Object[queryEnvironment.size()];
+			Arrays.fill(rowValues, UNEVALUATED);
+			rowValuesEnvironment = recordEnvironment;
+		}
+		Object value = rowValues[columnIndex - 1];
+		if (value == UNEVALUATED)
+		{
+			Object[] o = queryEnvironment.get(columnIndex - 1);
+			value = ((Expression) o[1]).eval(recordEnvironment);
+			rowValues[columnIndex - 1] = value;
+		}
+		lastValueNull = (value == null);
+		return value;
+	}
+
+	/**
+	 * Get the text read from the file for a query expression that is only
+	 * a column name, so that primitive getters can parse it without first
+	 * converting it to an Integer, Double, ... object.
+	 * @param columnIndex the first column is 1, the second is 2, ...
+	 * @param columnTypes data types of column that can be parsed directly.
+	 * @return text read from file, or null if the value must be read using getObject.
+	 * @throws SQLException if columnIndex is not valid or there is no current row.
+	 */
+	private String getUnconvertedText(int columnIndex, String[] columnTypes) throws SQLException
+	{
+		preAccessor(columnIndex);
+
+		if (!(recordEnvironment instanceof LazyConversionMap))
+			return null;
+		Object[] o = queryEnvironment.get(columnIndex - 1);
+		if (!(o[1] instanceof ColumnName))
+			return null;
+		LazyConversionMap row = (LazyConversionMap)recordEnvironment;
+		int slot = ((ColumnName)o[1]).getSlot(row);
+		if (slot < 0 || row.isConverted(slot))
+			return null;
+		String columnType = row.getColumnType(slot);
+		if (columnType == null)
+			columnType = "String";
+		for (String type : columnTypes)
+		{
+			if (type.equalsIgnoreCase(columnType))
+				return row.getFieldValue(slot);
+		}
 		return null;
 	}
 
@@ -1644,7 +2539,7 @@ public class CsvResultSet implements ResultSet
 	{
 		checkOpen();
 
-		if (isScrollable())
+		if (isScrollable() && !streamingRows)
 		{
 			return currentRow == bufferedRecordEnvironments.size() + 1;
 		}
@@ -1679,6 +2574,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			if (!hitTail && currentRow != 0)
 			{
 				next();
@@ -1715,6 +2611,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			while(next());
 		}
 		else
@@ -1730,6 +2627,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			currentRow = 0;
 			boolean thereWasAnAnswer = next();
 			updateRecordEnvironment(thereWasAnAnswer);
@@ -1763,7 +2661,7 @@ public class CsvResultSet implements ResultSet
 	{
 		checkOpen();
 
-		if (!isScrollable() && !nextResult)
+		if ((!isScrollable() || streamingRows) && !nextResult)
 			return 0;
 		else
 			return currentRow;
@@ -1776,6 +2674,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			boolean found;
 			if(row < 0)
 			{
@@ -1819,6 +2718,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			if(currentRow + rows >= 0)
 				return absolute(currentRow + rows);
 			currentRow = 0;
@@ -1838,6 +2738,7 @@ public class CsvResultSet implements ResultSet
 
 		if (isScrollable())
 		{
+			startBuffering();
 			if(currentRow > 1)
 			{
 				currentRow--;
@@ -2745,12 +3646,22 @@ public class CsvResultSet implements ResultSet
 
 		if (columnLabel.equals(""))
 			throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + columnLabel);
-		for (int i = 0; i < this.queryEnvironment.size(); i++)
+		if (columnLabelIndexes == null)
 		{
-			Object[] queryEnvEntry = this.queryEnvironment.get(i);
-			if(((String)queryEnvEntry[0]).equalsIgnoreCase(columnLabel))
-				return i+1;
+			/*
+			 * The first column with a label is found if several columns have the same label.
+			 */
+			columnLabelIndexes = new HashMap<>();
+			for (int i = this.queryEnvironment.size() - 1; i >= 0; i--)
+			{
+				Object[] queryEnvEntry = this.queryEnvironment.get(i);
+				columnLabelIndexes.put(((String)queryEnvEntry[0]).toUpperCase(Locale.ROOT),
+					Integer.valueOf(i + 1));
+			}
 		}
+		Integer index = columnLabelIndexes.get(columnLabel.toUpperCase(Locale.ROOT));
+		if (index != null)
+			return index.intValue();
 		throw new SQLException(CsvResources.getString("invalidColumnName") + ": " + columnLabel);
 	}
 
@@ -37,6 +37,7 @@ import org.relique.io.DataReader;
 import org.relique.io.EncryptedFileInputStream;
 import org.relique.io.FileSetInputStream;
 import org.relique.io.ListDataReader;
+import org.relique.io.LocalFileReader;
 import org.relique.io.TableReader;
 import org.relique.jdbc.dbf.DbfReader;
 
@@ -61,6 +62,15 @@ public class CsvStatement implements Statement
 	private int fetchDirection = ResultSet.FETCH_FORWARD;
 	private boolean closed;
 	protected boolean cancelled;
+	private int executionCount = 0;
+
+	/**
+	 * SQL statement last executed, its parsed statement taken from the plan cache
+	 * and the ResultSet using the parsed statement.
+	 */
+	private String cachedSql = null;
+	private SqlParser cachedParser = null;
+	private ResultSet cachedParserResultSet = null;
 
 	protected int resultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
 
@@ -212,6 +222,7 @@ public class CsvStatement implements Statement
 		finally
 		{
 			lastResultSet = null;
+			releaseCachedParser();
 		}
 		boolean retval;
 		if (multipleParsers != null && multipleParsers.size() > 0)
@@ -288,27 +299,74 @@ public class CsvStatement implements Statement
 		{
 			lastResultSet = null;
 			multipleParsers = null;
+			releaseCachedParser();
 		}
 
 		setTimeoutMillis();
 		cancelled = false;
 
-		SqlParser parser = new SqlParser();
-		try
+		PlanCache planCache = connection.getPlanCache();
+		SqlParser parser = null;
+		if (planCache != null)
+			parser = planCache.take(sql);
+		if (parser == null)
 		{
-			parser.parse(sql);
+			parser = new SqlParser();
+			try
+			{
+				parser.parse(sql);
+			}
+			catch (Exception e)
+			{
+				throw new SQLException(CsvResources.getString("syntaxError") + ": " + e.getMessage());
+			}
 		}
-		catch (Exception e)
+		if (planCache != null)
 		{
-			throw new SQLException(CsvResources.getString("syntaxError") + ": " + e.getMessage());
+			/*
+			 * Keep parsed statement until the ResultSet is closed, then
+			 * put it back in the cache for the next query using the same SQL.
+			 */
+			cachedSql = sql;
+			cachedParser = parser;
 		}
 
-		return executeParsedQuery(parser);
+		ResultSet resultSet = executeParsedQuery(parser);
+		if (cachedParser != null)
+			cachedParserResultSet = resultSet;
+		return resultSet;
+	}
+
+	/**
+	 * Called by a ResultSet when it is closed or has returned all its rows,
+	 * so that its parsed statement can be used again by other statements.
+	 * @param resultSet ResultSet that no longer evaluates any expressions.
+	 */
+	void resultSetFinished(ResultSet resultSet)
+	{
+		if (resultSet == cachedParserResultSet)
+			releaseCachedParser();
+	}
+
+	/**
+	 * Put parsed statement of the last query back into the plan cache,
+	 * when it is no longer used by a ResultSet.
+	 */
+	private void releaseCachedParser()
+	{
+		if (cachedParser != null)
+		{
+			connection.getPlanCache().put(cachedSql, cachedParser);
+			cachedSql = null;
+			cachedParser = null;
+			cachedParserResultSet = null;
+		}
 	}
 
 	protected ResultSet executeParsedQuery(SqlParser parser)
 			throws SQLException
 	{
+		executionCount++;
 		HashMap<String, Object> parentobjectEnvironment = new HashMap<>();
 		ResultSet resultSet = executeParsedQuery(parser, parentobjectEnvironment);
 		lastResultSet = resultSet;
@@ -318,8 +376,6 @@ public class CsvStatement implements Statement
 	protected ResultSet executeParsedQuery(SqlParser parser, Map<String, Object> parentobjectEnvironment)
 			throws SQLException
 	{
-		if (parser.getTableNames().size() > 1)
-			throw new SQLException(CsvResources.getString("joinNotSupported"));
 		String tableName = null;
 		if (parser.getTableNames().size() > 0)
 			tableName = parser.getTableNames().get(0);
@@ -327,6 +383,129 @@ public class CsvStatement implements Statement
 		if (parser.getTableAliases().size() > 0)
 			tableAlias = parser.getTableAliases().get(0);
 
+		FileNameFilter fileNameFilter = FileNameFilter.create(connection, parser);
+		DataReader reader = createDataReader(tableName, tableAlias, fileNameFilter);
+		if (parser.getTableNames().size() > 1)
+		{
+			reader = createJoinedDataReader(reader, parser);
+
+			/*
+			 * Columns of joined tables are accessed through the joined
+			 * reader and not through the name of the first table.
+			 */
+			tableName = null;
+		}
+
+		CsvResultSet resultSet = null;
+		try
+		{
+			resultSet = new CsvResultSet(this,
+				reader,
+				tableName,
+				parser.getColumns(),
+				parser.isDistinct(),
+				this.resultSetType,
+				parser.getWhereClause(),
+				parser.getGroupByColumns(),
+				parser.getHavingClause(),
+				parser.getOrderByColumns(),
+				parser.getLimit(),
+				parser.getOffset(),
+				connection.getColumnTypes(tableName),
+				connection.getSkipLeadingLines(),
+				connection.getMaxDataLines(),
+				parentobjectEnvironment);
+			resultSet.setFileNameFilter(fileNameFilter);
+			lastResultSet = resultSet;
+		}
+		catch (ClassNotFoundException e)
+		{
+			CsvDriver.writeLog("" + e);
+		}
+
+		return resultSet;
+	}
+
+	/**
+	 * Get number of SQL statements executed, so that results of sub-queries
+	 * can be kept until the statement is executed again.
+	 *
+	 * @return number of executions.
+	 */
+	int getExecutionCount()
+	{
+		return executionCount;
+	}
+
+	/**
+	 * Open readers for each table in a JOIN and join them together, one table at a time.
+	 *
+	 * @param firstReader reader for first table in FROM clause.
+	 * @param parser parsed SQL statement.
+	 * @return reader for joined rows.
+	 * @throws SQLException if a table cannot be opened.
+	 */
+	private DataReader createJoinedDataReader(DataReader firstReader, SqlParser parser)
+			throws SQLException
+	{
+		List<ParsedTable> tableEntries = parser.getTableEntries();
+		DataReader reader = firstReader;
+		String leftTableName = tableEntries.get(0).getTableName();
+		try
+		{
+			for (int i = 1; i < tableEntries.size(); i++)
+			{
+				ParsedTable parsedTable = tableEntries.get(i);
+				DataReader rightReader = createDataReader(parsedTable.getTableName(),
+					parsedTable.getTableAlias());
+				try
+				{
+					reader = new JoinedDataReader(reader, leftTableName,
+						rightReader, parsedTable.getTableName(),
+						parsedTable.getJoinType(), parsedTable.getJoinClause());
+				}
+				catch (SQLException e)
+				{
+					rightReader.close();
+					throw e;
+				}
+				leftTableName = null;
+			}
+		}
+		catch (SQLException e)
+		{
+			reader.close();
+			throw e;
+		}
+		return reader;
+	}
+
+	/**
+	 * Open a reader for the rows of a table.
+	 *
+	 * @param tableName name of table to read, or null for a query without any table.
+	 * @param tableAlias alias of table in SQL statement, or null.
+	 * @return reader for table rows, positioned before the first row.
+	 * @throws SQLException if table cannot be opened.
+	 */
+	protected DataReader createDataReader(String tableName, String tableAlias)
+			throws SQLException
+	{
+		return createDataReader(tableName, tableAlias, null);
+	}
+
+	/**
+	 * Open a reader for the rows of a table.
+	 *
+	 * @param tableName name of table to read, or null for a query without any table.
+	 * @param tableAlias alias of table in SQL statement, or null.
+	 * @param fileNameFilter filter for skipping files with property indexedFiles, or null.
+	 * @return reader for table rows, positioned before the first row.
+	 * @throws SQLException if table cannot be opened.
+	 */
+	DataReader createDataReader(String tableName, String tableAlias,
+			FileNameFilter fileNameFilter) throws SQLException
+	{
 		String path = connection.getPath();
 		TableReader tableReader = connection.getTableReader();
 		if (path != null)
@@ -371,16 +550,53 @@ public class CsvStatement implements Statement
 				}
 			}
 
+			String headerline = connection.getHeaderline(tableName);
+			TableCache tableCache = connection.getTableCache();
+			String cacheSignature = null;
+			CachedTable cachedTable = null;
+			long fileSize = 0;
+			long lastModified = 0;
+			if (tableCache != null && fileName != null && tableReader == null &&
+				connection.getDecryptingCodec() == null &&
+				!connection.getExtension().equalsIgnoreCase(".dbf") &&
+				connection.getTransposedLines() == 0 &&
+				connection.getTransposedFieldsToSkip() == 0)
+			{
+				cacheSignature = getTableCacheSignature(headerline);
+				File file = new File(fileName);
+				fileSize = file.length();
+				lastModified = file.lastModified();
+				cachedTable = tableCache.get(fileName, cacheSignature);
+			}
+
 			try
 			{
 				if (connection.getExtension().equalsIgnoreCase(".dbf"))
 				{
 					reader = new DbfReader(fileName, tableName, tableAlias, connection.getCharset());
 				}
+				else if (cachedTable != null)
+				{
+					/*
+					 * Rows of file were already read by an earlier query.
+					 */
+					reader = new CsvReader(new CsvRawReader(cachedTable, tableName, tableAlias),
+						0, 0, headerline);
+				}
 				else
 				{
 					LineNumberReader input;
-					if (tableReader == null)
+					if (tableReader == null && !connection.isIndexedFiles() &&
+						connection.getDecryptingCodec() == null &&
+						LocalFileReader.isSupportedCharset(connection.getCharset()))
+					{
+						/*
+						 * Plain local file, read directly as bytes.
+						 */
+						input = new LocalFileReader(fileName, connection.getCharset(),
+							connection.isMemoryMappedFiles());
+					}
+					else if (tableReader == null)
 					{
 						InputStream in;
 						CryptoFilter filter = connection.getDecryptingCodec();
@@ -401,7 +617,9 @@ public class CsvStatement implements Statement
 								connection.isSuppressHeaders(),
 								filter,
 								connection.getSkipLeadingDataLines() + connection.getTransposedLines(),
-								connection.getCharset());
+								connection.getCharset(),
+								connection.isParallelScan(),
+								fileNameFilter);
 						}
 						else if (filter == null)
 						{
@@ -455,7 +673,6 @@ public class CsvStatement implements Statement
 						}
 					}
 
-					String headerline = connection.getHeaderline(tableName);
 					CsvRawReader rawReader = new CsvRawReader(input,
 						tableName,
 						tableAlias,
@@ -474,10 +691,40 @@ public class CsvStatement implements Statement
 						connection.getSkipLeadingDataLines(),
 						connection.getQuoteStyle(),
 						connection.getFixedWidthColumns());
+					if (cacheSignature != null)
+					{
+						rawReader.setTableCache(tableCache, fileName, cacheSignature,
+							fileSize, lastModified);
+					}
+					if (input instanceof LocalFileReader && connection.getRowIndexInterval() > 0)
+					{
+						rawReader.setRowIndex(RowIndex.open(fileName,
+							getRowIndexSignature(headerline),
+							connection.getRowIndexInterval()));
+					}
 					reader = new CsvReader(rawReader,
 						connection.getTransposedLines(),
 						connection.getTransposedFieldsToSkip(),
 						headerline);
+					if (input instanceof LocalFileReader && connection.getZoneMapInterval() > 0)
+					{
+						((CsvReader)reader).setZoneMap(ZoneMap.open(fileName,
+							getConversionSignature(headerline),
+							connection.getZoneMapInterval()));
+					}
+					String indexColumns = connection.getIndexColumns(tableName);
+					if (input instanceof LocalFileReader && indexColumns != null)
+					{
+						List<String> columnNames = new ArrayList<>();
+						for (String columnName : indexColumns.split(","))
+						{
+							columnName = columnName.trim().toUpperCase();
+							if (!columnName.isEmpty())
+								columnNames.add(columnName);
+						}
+						((CsvReader)reader).setColumnIndexes(fileName, columnNames,
+							getConversionSignature(headerline), connection.getColumnIndexCache());
+					}
 				}
 			}
 			catch (IOException e)
@@ -495,33 +742,65 @@ public class CsvStatement implements Statement
 			}
 		}
 
-		CsvResultSet resultSet = null;
-		try
-		{
-			resultSet = new CsvResultSet(this,
-				reader,
-				tableName,
-				parser.getColumns(),
-				parser.isDistinct(),
-				this.resultSetType,
-				parser.getWhereClause(),
-				parser.getGroupByColumns(),
-				parser.getHavingClause(),
-				parser.getOrderByColumns(),
-				parser.getLimit(),
-				parser.getOffset(),
-				connection.getColumnTypes(tableName),
-				connection.getSkipLeadingLines(),
-				connection.getMaxDataLines(),
-				parentobjectEnvironment);
-			lastResultSet = resultSet;
-		}
-		catch (ClassNotFoundException e)
+		return reader;
+	}
+
+	/**
+	 * Describe the properties used to read the lines of a file, so that a
+	 * saved row index is not used with different properties.
+	 */
+	private String getRowIndexSignature(String headerline)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(connection.getSeparator()).append('|');
+		sb.append(connection.getQuotechar()).append('|');
+		sb.append(connection.getQuoteStyle()).append('|');
+		sb.append(connection.getCommentChar()).append('|');
+		sb.append(connection.getCharset()).append('|');
+		sb.append(connection.isSuppressHeaders()).append('|');
+		sb.append(headerline).append('|');
+		sb.append(connection.getSkipLeadingLines()).append('|');
+		sb.append(connection.getSkipLeadingDataLines()).append('|');
+		sb.append(connection.isIgnoreUnparseableLines()).append('|');
+		sb.append(connection.getMissingValue()).append('|');
+		ArrayList<int[]> fixedWidthColumns = connection.getFixedWidthColumns();
+		if (fixedWidthColumns != null)
 		{
-			CsvDriver.writeLog("" + e);
+			for (int[] columnRange : fixedWidthColumns)
+				sb.append(columnRange[0]).append('-').append(columnRange[1]).append(',');
 		}
+		return sb.toString();
+	}
 
-		return resultSet;
+	/**
+	 * Describe the properties used to read the column names and values
+	 * of a file, so that rows in the table cache are only used by queries
+	 * reading the file with the same properties.
+	 */
+	private String getTableCacheSignature(String headerline)
+	{
+		StringBuilder sb = new StringBuilder(getRowIndexSignature(headerline));
+		sb.append(connection.isHeaderFixedWidth()).append('|');
+		sb.append(connection.getTrimHeaders()).append('|');
+		sb.append(connection.getTrimValues()).append('|');
+		sb.append(connection.isDefectiveHeaders()).append('|');
+		return sb.toString();
+	}
+
+	/**
+	 * Describe the properties used to read a file and convert its values,
+	 * so that saved zone maps and indexes are not used with different properties.
+	 */
+	private String getConversionSignature(String headerline)
+	{
+		StringBuilder sb = new StringBuilder(getRowIndexSignature(headerline));
+		sb.append(connection.getDateFormat()).append('|');
+		sb.append(connection.getTimeFormat()).append('|');
+		sb.append(connection.getTimestampFormat()).append('|');
+		sb.append(connection.getTimeZoneName()).append('|');
+		sb.append(connection.getLocale()).append('|');
+		sb.append(connection.getUseDateTimeFormatter()).append('|');
+		return sb.toString();
 	}
 
 	@Override
@@ -542,6 +821,7 @@ public class CsvStatement implements Statement
 		{
 			lastResultSet = null;
 			multipleParsers = null;
+			releaseCachedParser();
 			closed = true;
 			connection.removeStatement(this);
 		}
@@ -607,6 +887,7 @@ public class CsvStatement implements Statement
 		{
 			lastResultSet = null;
 			multipleParsers = null;
+			releaseCachedParser();
 		}
 
 		setTimeoutMillis();
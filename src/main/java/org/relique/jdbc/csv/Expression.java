@@ -51,6 +51,17 @@ public abstract class Expression
 		return true;
 	}
 
+	/**
+	 * Does this expression always give the same value when evaluated
+	 * again for the same row.  Functions such as RANDOM(), user-defined
+	 * functions and sub-queries may not.
+	 * @return true if expression gives the same value each time.
+	 */
+	public boolean isDeterministic()
+	{
+		return false;
+	}
+
 	/**
 	 * Reset aggregate function each time it is used in a subquery.
 	 */
@@ -0,0 +1,516 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Sorts more rows than can be kept in memory, for an SQL ORDER BY clause.
+ *
+ * Each sorted run of rows is written to a temporary file and the runs
+ * are then merged together, reading one row at a time from each file.
+ * Rows are given as sort keys, containing the value of each ORDER BY
+ * expression, followed by the row itself and one spare element.
+ *
+ * Only the columns that the query uses are written, and column values
+ * that have not been converted to their data type are written as the
+ * strings read from the CSV file and converted when read back.  Values
+ * of common data types are written in a compact binary format.  The
+ * Statement and StringConverter objects that every row refers to are
+ * kept in memory and only a reference to them is written.  If a row
+ * contains a value of any other type, that run and all following runs
+ * are kept in memory instead.
+ */
+class ExternalSort
+{
+	private static final int TAG_NULL = 0;
+	private static final int TAG_STRING = 1;
+	private static final int TAG_INTEGER = 2;
+	private static final int TAG_LONG = 3;
+	private static final int TAG_DOUBLE = 4;
+	private static final int TAG_FLOAT = 5;
+	private static final int TAG_SHORT = 6;
+	private static final int TAG_BYTE = 7;
+	private static final int TAG_BOOLEAN = 8;
+	private static final int TAG_BIG_DECIMAL = 9;
+	private static final int TAG_DATE = 10;
+	private static final int TAG_TIME = 11;
+	private static final int TAG_TIMESTAMP = 12;
+	private static final int TAG_BYTES = 13;
+	private static final int TAG_OBJECT = 14;
+	private static final int TAG_UNCONVERTED = 15;
+
+	/** Keys of values that are the same object in every row. */
+	private static final Set<String> SHARED_KEYS = Set.of(CsvStatement.STATEMENT_COLUMN_NAME,
+		StringConverter.COLUMN_NAME);
+
+	/**
+	 * Thrown when a row contains a value that cannot be written to a file.
+	 */
+	private static class UnwritableValueException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private UnwritableValueException(Object value)
+		{
+			super("Cannot write value of " + value.getClass().getName());
+		}
+	}
+
+	private Comparator<Object[]> comparator;
+	private int keyCount;
+	private String[] recordKeys;
+
+	/** Values that are not written to files, replaced by their index in this list. */
+	private List<Object> objects = new ArrayList<>();
+	private Map<Object, Integer> objectIndexes = new IdentityHashMap<>();
+
+	private List<File> runFiles = new ArrayList<>();
+	private List<DataInputStream> runInputs = new ArrayList<>();
+
+	/** Runs kept in memory, after all runs written to files. */
+	private List<List<Object[]>> memoryRuns = new ArrayList<>();
+	private int[] memoryRunPositions;
+	private boolean writable = true;
+
+	/** Next row from each run, with the row first in sorted order at the head. */
+	private PriorityQueue<Object[]> mergeRows = null;
+
+	/**
+	 * Create an external sort.
+	 * @param comparator compares the ORDER BY values of two sort keys.
+	 * @param keyCount number of ORDER BY values in each sort key.
+	 * @param recordKeys keys of the values in each row that the query uses.
+	 */
+	public ExternalSort(Comparator<Object[]> comparator, int keyCount, String[] recordKeys)
+	{
+		this.comparator = comparator;
+		this.keyCount = keyCount;
+		this.recordKeys = recordKeys;
+	}
+
+	public int getRunCount()
+	{
+		return runFiles.size() + memoryRuns.size();
+	}
+
+	public boolean isMerging()
+	{
+		return mergeRows != null;
+	}
+
+	/**
+	 * Write a run of sorted rows to a temporary file, or keep it in memory
+	 * if the rows contain values that cannot be written.
+	 * @param sortKeys sort keys of rows, already in sorted order.
+	 * @throws SQLException if writing the file fails.
+	 */
+	public void writeRun(List<Object[]> sortKeys) throws SQLException
+	{
+		if (!writable)
+		{
+			memoryRuns.add(sortKeys);
+			return;
+		}
+
+		File file = null;
+		try
+		{
+			file = File.createTempFile("csvjdbc", ".tmp");
+
+			/*
+			 * Files are deleted when the ResultSet, its Statement or its
+			 * Connection is closed, or when the JVM exits if none is closed.
+			 */
+			file.deleteOnExit();
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file))))
+			{
+				for (Object[] sortKey : sortKeys)
+				{
+					out.writeBoolean(true);
+					for (int i = 0; i < keyCount; i++)
+						writeValue(out, sortKey[i]);
+					writeRecord(out, (Map<String, Object>)sortKey[keyCount]);
+				}
+				out.writeBoolean(false);
+			}
+			runFiles.add(file);
+			file = null;
+		}
+		catch (UnwritableValueException e)
+		{
+			CsvDriver.writeLog("Sorting rows in memory: " + e.getMessage());
+			writable = false;
+			memoryRuns.add(sortKeys);
+		}
+		catch (IOException e)
+		{
+			throw new SQLException(CsvResources.getString("sortFileError") + ": " + e);
+		}
+		finally
+		{
+			if (file != null)
+				file.delete();
+		}
+	}
+
+	/**
+	 * Write the values of a row that the query uses.
+	 */
+	private void writeRecord(DataOutputStream out, Map<String, Object> record) throws IOException
+	{
+		LazyConversionMap lazyRecord = null;
+		if (record instanceof LazyConversionMap)
+			lazyRecord = (LazyConversionMap)record;
+		for (int i = 0; i < recordKeys.length; i++)
+		{
+			String key = recordKeys[i];
+			if (!record.containsKey(key))
+				continue;
+			out.writeInt(i);
+			Integer slot = (lazyRecord != null) ? lazyRecord.getSlots().get(key) : null;
+			if (slot != null && !lazyRecord.isConverted(slot.intValue()))
+			{
+				/*
+				 * Write value as read from file, without converting it.
+				 */
+				out.writeByte(TAG_UNCONVERTED);
+				out.writeInt(getObjectIndex(lazyRecord.getColumnConverter(slot.intValue())));
+				writeValue(out, lazyRecord.getFieldValue(slot.intValue()));
+			}
+			else if (SHARED_KEYS.contains(key))
+			{
+				writeObject(out, record.get(key));
+			}
+			else
+			{
+				writeValue(out, record.get(key));
+			}
+		}
+		out.writeInt(-1);
+	}
+
+	/**
+	 * Start merging the runs written to temporary files and kept in memory.
+	 * @param sortKeys sort keys of the final run of rows, already in sorted order.
+	 * @throws SQLException if reading the files fails.
+	 */
+	public void startMerge(List<Object[]> sortKeys) throws SQLException
+	{
+		/*
+		 * When rows are equal, take them from the earlier run so
+		 * that they are returned in the order they were read.
+		 */
+		int runIndexPosition = keyCount + 1;
+		mergeRows = new PriorityQueue<>(runFiles.size() + 1, (sortKey1, sortKey2) ->
+		{
+			int retval = comparator.compare(sortKey1, sortKey2);
+			if (retval == 0)
+				retval = ((Integer)sortKey1[runIndexPosition]).compareTo((Integer)sortKey2[runIndexPosition]);
+			return retval;
+		});
+
+		try
+		{
+			for (int i = 0; i < runFiles.size(); i++)
+			{
+				runInputs.add(new DataInputStream(new BufferedInputStream(
+					new FileInputStream(runFiles.get(i)))));
+				readRow(i);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new SQLException(CsvResources.getString("sortFileError") + ": " + e);
+		}
+
+		memoryRuns.add(sortKeys);
+		memoryRunPositions = new int[memoryRuns.size()];
+		for (int i = 0; i < memoryRuns.size(); i++)
+			addMemoryRow(i);
+	}
+
+	/**
+	 * Get the next row in sorted order.
+	 * @return next row, or null if there are no more rows.
+	 * @throws SQLException if reading the files fails.
+	 */
+	public Map<String, Object> next() throws SQLException
+	{
+		Object[] sortKey = mergeRows.poll();
+		if (sortKey == null)
+			return null;
+
+		int runIndex = ((Integer)sortKey[keyCount + 1]).intValue();
+		if (runIndex >= runFiles.size())
+		{
+			addMemoryRow(runIndex - runFiles.size());
+		}
+		else
+		{
+			try
+			{
+				readRow(runIndex);
+			}
+			catch (IOException e)
+			{
+				throw new SQLException(CsvResources.getString("sortFileError") + ": " + e);
+			}
+		}
+		return (Map<String, Object>)sortKey[keyCount];
+	}
+
+	/**
+	 * Close and delete all temporary files.
+	 */
+	public void close()
+	{
+		for (DataInputStream in : runInputs)
+		{
+			try
+			{
+				if (in != null)
+					in.close();
+			}
+			catch (IOException e)
+			{
+			}
+		}
+		for (File file : runFiles)
+			file.delete();
+		runInputs.clear();
+		mergeRows = null;
+		memoryRuns.clear();
+	}
+
+	private void addMemoryRow(int memoryRunIndex)
+	{
+		List<Object[]> run = memoryRuns.get(memoryRunIndex);
+		int position = memoryRunPositions[memoryRunIndex];
+		if (position < run.size())
+		{
+			Object[] sortKey = run.get(position);
+			run.set(position, null);
+			memoryRunPositions[memoryRunIndex]++;
+			sortKey[keyCount + 1] = Integer.valueOf(runFiles.size() + memoryRunIndex);
+			mergeRows.add(sortKey);
+		}
+	}
+
+	private void readRow(int runIndex) throws IOException
+	{
+		DataInputStream in = runInputs.get(runIndex);
+		if (!in.readBoolean())
+		{
+			in.close();
+			runInputs.set(runIndex, null);
+			runFiles.get(runIndex).delete();
+			return;
+		}
+		Object[] sortKey = new Object[keyCount + 2];
+		for (int i = 0; i < keyCount; i++)
+			sortKey[i] = readValue(in);
+		HashMap<String, Object> record = new HashMap<>();
+		int keyIndex;
+		while ((keyIndex = in.readInt()) >= 0)
+			record.put(recordKeys[keyIndex], readValue(in));
+		sortKey[keyCount] = record;
+		sortKey[keyCount + 1] = Integer.valueOf(runIndex);
+		mergeRows.add(sortKey);
+	}
+
+	private int getObjectIndex(Object value)
+	{
+		Integer index = objectIndexes.get(value);
+		if (index == null)
+		{
+			index = Integer.valueOf(objects.size());
+			objects.add(value);
+			objectIndexes.put(value, index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Write a reference to a value that is kept in memory.
+	 */
+	private void writeObject(DataOutputStream out, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte(TAG_NULL);
+		}
+		else
+		{
+			out.writeByte(TAG_OBJECT);
+			out.writeInt(getObjectIndex(value));
+		}
+	}
+
+	private void writeValue(DataOutputStream out, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte(TAG_NULL);
+		}
+		else if (value instanceof String)
+		{
+			byte[] b = ((String)value).getBytes(StandardCharsets.UTF_8);
+			out.writeByte(TAG_STRING);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+		else if (value instanceof Integer)
+		{
+			out.writeByte(TAG_INTEGER);
+			out.writeInt(((Integer)value).intValue());
+		}
+		else if (value instanceof Long)
+		{
+			out.writeByte(TAG_LONG);
+			out.writeLong(((Long)value).longValue());
+		}
+		else if (value instanceof Double)
+		{
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble(((Double)value).doubleValue());
+		}
+		else if (value instanceof Float)
+		{
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat(((Float)value).floatValue());
+		}
+		else if (value instanceof Short)
+		{
+			out.writeByte(TAG_SHORT);
+			out.writeShort(((Short)value).shortValue());
+		}
+		else if (value instanceof Byte)
+		{
+			out.writeByte(TAG_BYTE);
+			out.writeByte(((Byte)value).byteValue());
+		}
+		else if (value instanceof Boolean)
+		{
+			out.writeByte(TAG_BOOLEAN);
+			out.writeBoolean(((Boolean)value).booleanValue());
+		}
+		else if (value instanceof BigDecimal)
+		{
+			out.writeByte(TAG_BIG_DECIMAL);
+			out.writeUTF(value.toString());
+		}
+		else if (value.getClass() == Date.class)
+		{
+			out.writeByte(TAG_DATE);
+			out.writeLong(((Date)value).getTime());
+		}
+		else if (value.getClass() == Time.class)
+		{
+			out.writeByte(TAG_TIME);
+			out.writeLong(((Time)value).getTime());
+		}
+		else if (value.getClass() == Timestamp.class)
+		{
+			out.writeByte(TAG_TIMESTAMP);
+			out.writeLong(((Timestamp)value).getTime());
+			out.writeInt(((Timestamp)value).getNanos());
+		}
+		else if (value instanceof byte[])
+		{
+			out.writeByte(TAG_BYTES);
+			out.writeInt(((byte[])value).length);
+			out.write((byte[])value);
+		}
+		else
+		{
+			throw new UnwritableValueException(value);
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException
+	{
+		int tag = in.readByte();
+		switch (tag)
+		{
+		case TAG_NULL:
+			return null;
+		case TAG_STRING:
+			byte[] b = new byte[in.readInt()];
+			in.readFully(b);
+			return new String(b, StandardCharsets.UTF_8);
+		case TAG_INTEGER:
+			return Integer.valueOf(in.readInt());
+		case TAG_LONG:
+			return Long.valueOf(in.readLong());
+		case TAG_DOUBLE:
+			return Double.valueOf(in.readDouble());
+		case TAG_FLOAT:
+			return Float.valueOf(in.readFloat());
+		case TAG_SHORT:
+			return Short.valueOf(in.readShort());
+		case TAG_BYTE:
+			return Byte.valueOf(in.readByte());
+		case TAG_BOOLEAN:
+			return Boolean.valueOf(in.readBoolean());
+		case TAG_BIG_DECIMAL:
+			return new BigDecimal(in.readUTF());
+		case TAG_DATE:
+			return new Date(in.readLong());
+		case TAG_TIME:
+			return new Time(in.readLong());
+		case TAG_TIMESTAMP:
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case TAG_BYTES:
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return bytes;
+		case TAG_OBJECT:
+			return objects.get(in.readInt());
+		case TAG_UNCONVERTED:
+			StringConverter.ColumnConverter columnConverter =
+				(StringConverter.ColumnConverter)objects.get(in.readInt());
+			return columnConverter.convert((String)readValue(in));
+		default:
+			throw new IOException("Invalid value type: " + tag);
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Checks the values taken from a file name with property indexedFiles
+ * against the SQL WHERE clause, so that files containing no matching rows
+ * are skipped without being read.
+ *
+ * Only the parts of the WHERE clause joined with AND that use nothing but
+ * the columns from the file name are checked.  Rows from files that are
+ * not skipped are still checked against the whole WHERE clause.
+ */
+class FileNameFilter implements Predicate<String[]>
+{
+	/**
+	 * Environment with values from one file name that remembers whether
+	 * any other value was needed.
+	 */
+	private static class FileNameEnvironment extends HashMap<String, Object>
+	{
+		boolean missingValue = false;
+
+		@Override
+		public Object get(Object key)
+		{
+			Object value = super.get(key);
+			if (value == null && !containsKey(key))
+				missingValue = true;
+			return value;
+		}
+	}
+
+	private List<LogicalExpression> conditions;
+	private String[] keys;
+	private String columnType;
+	private Map<String, Object> placeholders;
+	private StringConverter converter;
+
+	private FileNameFilter(List<LogicalExpression> conditions, String[] keys,
+		String columnType, Map<String, Object> placeholders, StringConverter converter)
+	{
+		this.conditions = conditions;
+		this.keys = keys;
+		this.columnType = columnType;
+		this.placeholders = placeholders;
+		this.converter = converter;
+	}
+
+	/**
+	 * Create filter for the files read for a query.
+	 * @param connection connection query is executed on.
+	 * @param parser parsed SQL statement.
+	 * @return filter, or null if no files can be skipped for this query.
+	 */
+	public static FileNameFilter create(CsvConnection connection, SqlParser parser)
+	{
+		String[] nameParts = connection.getNameParts();
+		LogicalExpression whereClause = parser.getWhereClause();
+		if (!connection.isIndexedFiles() || nameParts == null || whereClause == null ||
+			parser.getTableNames().size() != 1)
+		{
+			return null;
+		}
+
+		String tableName = parser.getTableNames().get(0);
+		String tableAlias = null;
+		if (parser.getTableAliases().size() > 0)
+			tableAlias = parser.getTableAliases().get(0);
+
+		/*
+		 * Column names and types must be known before any file is read.
+		 * With a single column type, the columns from the file name have
+		 * that type, wherever they are in the header.
+		 */
+		String columnType = connection.getColumnTypes(tableName);
+		if (columnType == null || columnType.isEmpty() || columnType.contains(",") ||
+			connection.isSuppressHeaders() || connection.getHeaderline(tableName) != null ||
+			connection.getTransposedLines() > 0)
+		{
+			return null;
+		}
+
+		/*
+		 * Line numbers count the rows in skipped files too.
+		 */
+		if (usesLineNumber(parser))
+			return null;
+
+		Set<String> fileNameColumns = new HashSet<>();
+		String[] keys = new String[nameParts.length * 3];
+		for (int i = 0; i < nameParts.length; i++)
+		{
+			String columnName = nameParts[i].trim().toUpperCase(Locale.US);
+			keys[i * 3] = columnName;
+			keys[i * 3 + 1] = tableName.toUpperCase() + "." + columnName;
+			keys[i * 3 + 2] = (tableAlias != null) ? tableAlias + "." + columnName : null;
+			for (int j = 0; j < 3; j++)
+			{
+				if (keys[i * 3 + j] != null)
+					fileNameColumns.add(keys[i * 3 + j]);
+			}
+		}
+
+		Map<String, Object> placeholders = new HashMap<>();
+		List<LogicalExpression> conditions = new ArrayList<>();
+		addConditions(whereClause, fileNameColumns, placeholders, conditions);
+		if (conditions.isEmpty())
+			return null;
+
+		StringConverter converter = new StringConverter(connection.getDateFormat(),
+			connection.getTimeFormat(), connection.getTimestampFormat(),
+			connection.getTimeZoneName(), connection.getLocale(),
+			connection.getUseDateTimeFormatter());
+		return new FileNameFilter(conditions, keys, columnType.trim(), placeholders, converter);
+	}
+
+	private static boolean usesLineNumber(SqlParser parser)
+	{
+		List<Object> expressions = new ArrayList<>();
+		for (Object[] column : parser.getColumns())
+			expressions.add(column[1]);
+		expressions.add(parser.getWhereClause());
+		if (parser.getGroupByColumns() != null)
+			expressions.addAll(parser.getGroupByColumns());
+		expressions.add(parser.getHavingClause());
+		if (parser.getOrderByColumns() != null)
+		{
+			for (Object[] orderBy : parser.getOrderByColumns())
+				expressions.add(orderBy[1]);
+		}
+		for (Object expression : expressions)
+		{
+			if (expression != null && expression.toString().contains("LINE_NUMBER()"))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Find conditions joined with AND that only use columns from the file name.
+	 */
+	private static void addConditions(LogicalExpression expression, Set<String> fileNameColumns,
+		Map<String, Object> placeholders, List<LogicalExpression> conditions)
+	{
+		if (expression instanceof ParsedExpression)
+		{
+			ParsedExpression parsedExpression = (ParsedExpression)expression;
+			if (parsedExpression.content instanceof LogicalExpression)
+			{
+				placeholders.putAll(parsedExpression.getPlaceholders());
+				addConditions((LogicalExpression)parsedExpression.content, fileNameColumns,
+					placeholders, conditions);
+			}
+		}
+		else if (expression instanceof AndExpression)
+		{
+			AndExpression andExpression = (AndExpression)expression;
+			addConditions(andExpression.left, fileNameColumns, placeholders, conditions);
+			addConditions(andExpression.right, fileNameColumns, placeholders, conditions);
+		}
+		else
+		{
+			/*
+			 * Conditions with functions such as RANDOM() or sub-queries
+			 * cannot be checked once for a whole file.
+			 */
+			List<String> usedColumns = expression.usedColumns(fileNameColumns);
+			if (!usedColumns.isEmpty() && fileNameColumns.containsAll(usedColumns) &&
+				expression.aggregateFunctions().isEmpty() &&
+				expression.isDeterministic())
+			{
+				conditions.add(expression);
+			}
+		}
+	}
+
+	/**
+	 * Check whether a file may contain rows matching the WHERE clause.
+	 * @param values values from file name, one for each name in fileTailParts.
+	 * @return false if no rows in the file can match.
+	 */
+	@Override
+	public boolean test(String[] values)
+	{
+		if (values.length * 3 != keys.length)
+			return true;
+
+		FileNameEnvironment env = new FileNameEnvironment();
+		env.putAll(placeholders);
+		env.put(StringConverter.COLUMN_NAME, converter);
+		for (int i = 0; i < values.length; i++)
+		{
+			Object value = converter.convert(columnType, values[i]);
+			for (int j = 0; j < 3; j++)
+			{
+				if (keys[i * 3 + j] != null)
+					env.put(keys[i * 3 + j], value);
+			}
+		}
+		for (LogicalExpression condition : conditions)
+		{
+			try
+			{
+				Boolean matches = condition.isTrue(env);
+				if (env.missingValue)
+				{
+					env.missingValue = false;
+					continue;
+				}
+				if (matches == null || !matches.booleanValue())
+					return false;
+			}
+			catch (SQLException | RuntimeException e)
+			{
+				/*
+				 * Read the file, so that the error is reported for its rows.
+				 */
+				return true;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values stored in a hash table, so that a value can be found without
+ * comparing it with every value, for IN expressions and join keys.
+ *
+ * Values that compare as equal in SQL, such as numbers of different types,
+ * always have the same hash value.  Values that are not equal, such as two
+ * long values that are the same when converted to a double, can also have
+ * the same hash value, so each value found in the hash table is checked
+ * again using RelopExpression.compare.
+ */
+class HashedValues
+{
+	private List<Object> values;
+	private Map<Object, List<Object>> valuesByHash;
+	private boolean valuesHashable;
+
+	/**
+	 * Create hash table.
+	 * @param values values to store, NULL values are ignored.
+	 */
+	public HashedValues(List<Object> values)
+	{
+		this.values = values;
+		this.valuesByHash = new HashMap<>();
+		this.valuesHashable = true;
+		for (Object value : values)
+		{
+			if (value != null)
+			{
+				if (!isHashable(value))
+					valuesHashable = false;
+				valuesByHash.computeIfAbsent(getHashValue(value), k -> new ArrayList<>()).add(value);
+			}
+		}
+	}
+
+	/**
+	 * Check whether a value is equal to any value in the list.
+	 * @param value value to find.
+	 * @param env environment containing converter for comparing values.
+	 * @return true if value is in list.
+	 * @throws SQLException if values cannot be compared.
+	 */
+	public boolean contains(Comparable value, Map<String, Object> env) throws SQLException
+	{
+		List<Object> sameHashValues = valuesByHash.get(getHashValue(value));
+		if (sameHashValues != null)
+		{
+			for (Object o : sameHashValues)
+			{
+				if (isEqual(value, o, env))
+					return true;
+			}
+		}
+		if (valuesHashable && isHashable(value))
+			return false;
+
+		/*
+		 * Values such as dates can match strings that are in a different format,
+		 * so check each value in turn.
+		 */
+		for (Object o : values)
+		{
+			if (isEqual(value, o, env))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compare two values in the same way as the SQL = operator.
+	 * @param value1 first value.
+	 * @param value2 second value.
+	 * @param env environment containing converter for comparing values.
+	 * @return true if values are equal.
+	 * @throws SQLException if values cannot be compared.
+	 */
+	public static boolean isEqual(Object value1, Object value2, Map<String, Object> env)
+		throws SQLException
+	{
+		Integer compared = RelopExpression.compare((Comparable)value1, (Comparable)value2, env);
+		return (compared != null && compared.intValue() == 0);
+	}
+
+	/**
+	 * Strings and numbers only match other values of the same type,
+	 * so can be found in a hash table.
+	 */
+	public static boolean isHashable(Object value)
+	{
+		return value instanceof String || value instanceof Number;
+	}
+
+	/**
+	 * Get value to store in hash table, the same for all values that
+	 * compare as equal in SQL.
+	 * @param value a value.
+	 * @return hash table key for value.
+	 */
+	public static Object getHashValue(Object value)
+	{
+		/*
+		 * Numbers of different types are compared as doubles in SQL, so
+		 * use the same type for all numbers in the hash table.
+		 */
+		if (value instanceof Double)
+			return value;
+		if (value instanceof Integer || value instanceof Long ||
+			value instanceof Short || value instanceof Byte)
+		{
+			return Double.valueOf(((Number)value).longValue());
+		}
+		if (value instanceof Number)
+		{
+			try
+			{
+				return Double.valueOf(value.toString());
+			}
+			catch (NumberFormatException e)
+			{
+				return value;
+			}
+		}
+		return value;
+	}
+}
@@ -19,6 +19,7 @@
 package org.relique.jdbc.csv;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -26,14 +27,48 @@ import java.util.Set;
 
 class InExpression extends LogicalExpression
 {
+	/**
+	 * Values of an IN list containing only constants and prepared statement
+	 * parameters, evaluated once each time the SQL statement is executed.
+	 */
+	private static class InListValues
+	{
+		final CsvStatement statement;
+		final int executionCount;
+		final HashedValues values;
+
+		InListValues(CsvStatement statement, int executionCount, List<Object> values)
+		{
+			this.statement = statement;
+			this.executionCount = executionCount;
+			this.values = new HashedValues(values);
+		}
+	}
+
 	Expression obj;
 	List<Expression> inList = null;
 	SubQueryExpression subQuery = null;
+	private boolean isConstantList = false;
+	private boolean hasPlaceholders = false;
+	private volatile InListValues cachedValues = null;
 
 	public InExpression(Expression obj, List<Expression> inList)
 	{
 		this.obj = obj;
 		this.inList = inList;
+
+		/*
+		 * Long lists of constant values are found in a hash table instead
+		 * of comparing each value in turn.
+		 */
+		this.isConstantList = true;
+		for (Expression expr: inList)
+		{
+			if (expr instanceof Placeholder)
+				this.hasPlaceholders = true;
+			else if (!(expr instanceof NumericConstant || expr instanceof StringConstant))
+				this.isConstantList = false;
+		}
 	}
 	public InExpression(Expression obj, SubQueryExpression subQuery)
 	{
@@ -48,6 +83,10 @@ class InExpression extends LogicalExpression
 			return null;
 		if (inList != null)
 		{
+			InListValues inListValues = getInListValues(env);
+			if (inListValues != null)
+				return Boolean.valueOf(inListValues.values.contains(objValue, env));
+
 			for (Expression expr: inList)
 			{
 				Comparable exprValue = (Comparable)expr.eval(env);
@@ -58,11 +97,50 @@ class InExpression extends LogicalExpression
 		}
 		else
 		{
-			boolean matches = subQuery.evalList(env, new InExpressionSubQueryRowMatcher(env, objValue));
+			boolean matches = subQuery.evalIn(env, objValue);
 			return Boolean.valueOf(matches);
 		}
 		return Boolean.FALSE;
 	}
+	/**
+	 * Get values of IN list, evaluating them the first time the IN expression
+	 * is evaluated each time the SQL statement is executed.
+	 *
+	 * @param env environment of row.
+	 * @return values of IN list, or null if IN list must be evaluated for each row.
+	 * @throws SQLException if evaluating IN list fails.
+	 */
+	private InListValues getInListValues(Map<String, Object> env) throws SQLException
+	{
+		if (!isConstantList)
+			return null;
+
+		CsvStatement statement = null;
+		int executionCount = 0;
+		if (hasPlaceholders)
+		{
+			/*
+			 * Prepared statement parameters may change each time the statement is executed.
+			 */
+			Object o = env.get(CsvStatement.STATEMENT_COLUMN_NAME);
+			if (!(o instanceof CsvStatement))
+				return null;
+			statement = (CsvStatement)o;
+			executionCount = statement.getExecutionCount();
+		}
+
+		InListValues inListValues = cachedValues;
+		if (inListValues == null || inListValues.statement != statement ||
+			inListValues.executionCount != executionCount)
+		{
+			List<Object> values = new ArrayList<>(inList.size());
+			for (Expression expr: inList)
+				values.add(expr.eval(env));
+			inListValues = new InListValues(statement, executionCount, values);
+			cachedValues = inListValues;
+		}
+		return inListValues;
+	}
 	@Override
 	public String toString()
 	{
@@ -107,6 +185,18 @@ class InExpression extends LogicalExpression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		if (subQuery != null || !obj.isDeterministic())
+			return false;
+		for (Expression expression : inList)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		return true;
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
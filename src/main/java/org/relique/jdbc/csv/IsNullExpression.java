@@ -53,6 +53,11 @@ class IsNullExpression extends LogicalExpression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return arg.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -0,0 +1,640 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.relique.io.DataReader;
+
+/**
+ * Reader for the rows of two tables joined together by a JOIN clause.
+ *
+ * All rows of the right table are read into memory first, so the smaller
+ * table should be given on the right.  When the JOIN condition compares
+ * columns of the two tables with =, the rows are stored in a hash table so
+ * each row of the left table only has to be compared with the right table
+ * rows that have the same values.  Otherwise each row of the left table is
+ * compared with every row of the right table, as are left rows with values
+ * of a different type to the right table values, such as dates compared
+ * with strings, that are equal after conversion.
+ *
+ * The left table is read one row at a time, so several tables are joined
+ * by using another JoinedDataReader as the left table.  Rows of both tables
+ * are kept as read, and each joined row reads a column from them only when
+ * the column is used, so that columns are not converted unless needed.
+ */
+class JoinedDataReader extends DataReader
+{
+	private DataReader leftReader;
+	private DataReader rightReader;
+	private String leftTableName;
+	private String rightTableName;
+	private JoinType joinType;
+	private LogicalExpression joinClause;
+	private StringConverter converter;
+
+	private String[] columnNames;
+	private String[] columnQualifiers;
+	private String[][] columnKeys;
+	private Set<String> leftKeys;
+	private Set<String> rightKeys;
+
+	/** Column names that are in both tables, so must be given with a table name or alias. */
+	private Set<String> ambiguousKeys;
+
+	/** Key of each column in the rows read from its own table. */
+	private String[] rowKeys;
+	private int leftColumnCount;
+
+	/** Slot of each column name in joined rows, shared by all joined rows. */
+	private Map<String, Integer> joinedSlots;
+
+	/** Expressions from JOIN condition giving key for hash table, or null. */
+	private List<Expression> leftKeyExpressions;
+	private List<Expression> rightKeyExpressions;
+
+	private List<JoinedRow> rightRows;
+	private List<Integer> allRightRows;
+	private Map<List<Object>, List<Integer>> rightRowsByKey;
+
+	/** Type of each value in hash table keys, or null if no keys were found. */
+	private Class<?>[] rightKeyClasses;
+	private boolean[] rightRowMatched;
+
+	private JoinedRow leftRow;
+	private List<Integer> candidateRows;
+	private int candidateIndex;
+	private boolean leftRowMatched;
+	private boolean leftRowsFinished;
+	private int unmatchedRightIndex;
+	private JoinedRow environment;
+
+	/**
+	 * Row of the joined tables, with the values of each column read from the
+	 * row of its table the first time the column is used.
+	 */
+	private class JoinedRow extends SlotMap
+	{
+		private Map<String, Object> left;
+		private Map<String, Object> right;
+
+		JoinedRow(Map<String, Object> left, Map<String, Object> right)
+		{
+			super(joinedSlots, columnKeys.length + 1);
+			this.left = left;
+			this.right = right;
+			if (converter != null)
+				setSlot(columnKeys.length, converter);
+		}
+
+		@Override
+		public boolean isSlotSet(int slot)
+		{
+			return slot < columnKeys.length || super.isSlotSet(slot);
+		}
+
+		@Override
+		public Object getSlot(int slot)
+		{
+			if (slot < columnKeys.length && !super.isSlotSet(slot))
+			{
+				/*
+				 * A table with no matching row in an OUTER JOIN has NULL values.
+				 */
+				Map<String, Object> row = (slot < leftColumnCount) ? left : right;
+				setSlot(slot, (row != null) ? row.get(rowKeys[slot]) : null);
+			}
+			return super.getSlot(slot);
+		}
+	}
+
+	/**
+	 * Create reader for JOIN of two tables.
+	 *
+	 * @param leftReader reader for left table, or for other tables already joined.
+	 * @param leftTableName name of left table, or null if leftReader is already a join.
+	 * @param rightReader reader for right table.
+	 * @param rightTableName name of right table.
+	 * @param joinType type of JOIN.
+	 * @param joinClause condition in ON clause, or null for a CROSS JOIN.
+	 * @throws SQLException if column names of tables cannot be read.
+	 */
+	public JoinedDataReader(DataReader leftReader, String leftTableName,
+		DataReader rightReader, String rightTableName,
+		JoinType joinType, LogicalExpression joinClause) throws SQLException
+	{
+		this.leftReader = leftReader;
+		this.leftTableName = leftTableName;
+		this.rightReader = rightReader;
+		this.rightTableName = rightTableName;
+		this.joinType = joinType;
+		this.joinClause = (joinType == JoinType.CROSS) ? null : joinClause;
+
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<String> qualifiers = new ArrayList<>();
+		ArrayList<String[]> keys = new ArrayList<>();
+		ArrayList<String> sideRowKeys = new ArrayList<>();
+		addColumns(leftReader, leftTableName, names, qualifiers, keys, sideRowKeys);
+		this.leftColumnCount = names.size();
+		addColumns(rightReader, rightTableName, names, qualifiers, keys, sideRowKeys);
+		this.columnNames = names.toArray(new String[0]);
+		this.columnQualifiers = qualifiers.toArray(new String[0]);
+		this.rowKeys = sideRowKeys.toArray(new String[0]);
+
+		this.leftKeys = new HashSet<>();
+		this.rightKeys = new HashSet<>();
+		for (int i = 0; i < keys.size(); i++)
+		{
+			Set<String> sideKeys = (i < leftColumnCount) ? leftKeys : rightKeys;
+			sideKeys.addAll(Arrays.asList(keys.get(i)));
+		}
+
+		/*
+		 * Column names that are in both tables cannot be used without
+		 * a table name or alias.
+		 */
+		this.ambiguousKeys = new HashSet<>(leftKeys);
+		ambiguousKeys.retainAll(rightKeys);
+		if (leftReader instanceof JoinedDataReader)
+			ambiguousKeys.addAll(((JoinedDataReader)leftReader).ambiguousKeys);
+		leftKeys.removeAll(ambiguousKeys);
+		rightKeys.removeAll(ambiguousKeys);
+
+		this.columnKeys = new String[keys.size()][];
+		this.joinedSlots = new HashMap<>();
+		for (int i = 0; i < columnKeys.length; i++)
+		{
+			ArrayList<String> columnKeyList = new ArrayList<>(Arrays.asList(keys.get(i)));
+			columnKeyList.removeAll(ambiguousKeys);
+			if (columnKeyList.isEmpty())
+			{
+				throw new SQLException(CsvResources.getString("ambiguousColumnName") + ": " +
+					keys.get(i)[0]);
+			}
+			columnKeys[i] = columnKeyList.toArray(new String[0]);
+			for (String key : columnKeys[i])
+				joinedSlots.put(key, Integer.valueOf(i));
+		}
+		joinedSlots.put(StringConverter.COLUMN_NAME, Integer.valueOf(columnKeys.length));
+
+		if (this.joinClause != null)
+		{
+			for (String usedColumn : this.joinClause.usedColumns(leftKeys))
+			{
+				if (ambiguousKeys.contains(usedColumn))
+				{
+					throw new SQLException(CsvResources.getString("ambiguousColumnName") + ": " +
+						usedColumn);
+				}
+			}
+		}
+
+		findHashKeys();
+	}
+
+	private static void addColumns(DataReader reader, String tableName,
+		List<String> names, List<String> qualifiers, List<String[]> keys,
+		List<String> rowKeys) throws SQLException
+	{
+		if (reader instanceof JoinedDataReader)
+		{
+			JoinedDataReader joinedReader = (JoinedDataReader)reader;
+			names.addAll(Arrays.asList(joinedReader.columnNames));
+			qualifiers.addAll(Arrays.asList(joinedReader.columnQualifiers));
+			keys.addAll(Arrays.asList(joinedReader.columnKeys));
+			for (String[] columnKeys : joinedReader.columnKeys)
+				rowKeys.add(columnKeys[0]);
+			return;
+		}
+
+		String tableAlias = reader.getTableAlias();
+		String upperTableName = (tableName != null) ? tableName.toUpperCase() : null;
+		for (String columnName : reader.getColumnNames())
+		{
+			String upperColumnName = columnName.toUpperCase();
+			LinkedHashSet<String> columnKeys = new LinkedHashSet<>();
+			if (tableAlias != null)
+				columnKeys.add(tableAlias + "." + upperColumnName);
+			if (upperTableName != null)
+				columnKeys.add(upperTableName + "." + upperColumnName);
+			columnKeys.add(upperColumnName);
+			names.add(columnName);
+			qualifiers.add(tableAlias != null ? tableAlias : upperTableName);
+			keys.add(columnKeys.toArray(new String[0]));
+			rowKeys.add(upperColumnName);
+		}
+	}
+
+	/**
+	 * Find any conditions of the form left.X = right.Y, joined with AND,
+	 * in the JOIN condition that can be used to build a hash table.
+	 */
+	private void findHashKeys()
+	{
+		List<Expression> leftExpressions = new ArrayList<>();
+		List<Expression> rightExpressions = new ArrayList<>();
+		if (joinClause != null)
+			findHashKeys(joinClause, leftExpressions, rightExpressions);
+		if (!leftExpressions.isEmpty())
+		{
+			this.leftKeyExpressions = leftExpressions;
+			this.rightKeyExpressions = rightExpressions;
+		}
+	}
+
+	private void findHashKeys(LogicalExpression expression,
+		List<Expression> leftExpressions, List<Expression> rightExpressions)
+	{
+		if (expression instanceof ParsedExpression)
+		{
+			Expression content = ((ParsedExpression)expression).content;
+			if (content instanceof LogicalExpression)
+				findHashKeys((LogicalExpression)content, leftExpressions, rightExpressions);
+		}
+		else if (expression instanceof AndExpression)
+		{
+			AndExpression andExpression = (AndExpression)expression;
+			findHashKeys(andExpression.left, leftExpressions, rightExpressions);
+			findHashKeys(andExpression.right, leftExpressions, rightExpressions);
+		}
+		else if (expression instanceof RelopExpression)
+		{
+			RelopExpression relopExpression = (RelopExpression)expression;
+			if (relopExpression.op.equals("="))
+			{
+				if (isFromOneSide(relopExpression.left, leftKeys, rightKeys) &&
+					isFromOneSide(relopExpression.right, rightKeys, leftKeys))
+				{
+					leftExpressions.add(relopExpression.left);
+					rightExpressions.add(relopExpression.right);
+				}
+				else if (isFromOneSide(relopExpression.right, leftKeys, rightKeys) &&
+					isFromOneSide(relopExpression.left, rightKeys, leftKeys))
+				{
+					leftExpressions.add(relopExpression.right);
+					rightExpressions.add(relopExpression.left);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check that an expression only uses columns from one of the joined tables.
+	 */
+	private boolean isFromOneSide(Expression expression, Set<String> sideKeys,
+		Set<String> otherSideKeys)
+	{
+		if (expression instanceof SubQueryExpression || !expression.aggregateFunctions().isEmpty())
+			return false;
+		List<String> usedColumns = expression.usedColumns(sideKeys);
+		if (usedColumns.isEmpty())
+			return false;
+		for (String usedColumn : usedColumns)
+		{
+			if (!sideKeys.contains(usedColumn) || otherSideKeys.contains(usedColumn))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Set converter and column types for each table in the JOIN.
+	 *
+	 * @param converter converter for column values.
+	 * @param connection connection with column types for each table.
+	 * @throws SQLException if column types are invalid.
+	 */
+	public void setConverter(StringConverter converter, CsvConnection connection)
+		throws SQLException
+	{
+		this.converter = converter;
+		setConverter(leftReader, leftTableName, converter, connection);
+		setConverter(rightReader, rightTableName, converter, connection);
+	}
+
+	private static void setConverter(DataReader reader, String tableName,
+		StringConverter converter, CsvConnection connection) throws SQLException
+	{
+		if (reader instanceof JoinedDataReader)
+		{
+			((JoinedDataReader)reader).setConverter(converter, connection);
+		}
+		else if (reader instanceof CsvReader)
+		{
+			((CsvReader) reader).setConverter(converter);
+			String columnTypes = connection.getColumnTypes(tableName);
+			if (!"".equals(columnTypes))
+				((CsvReader) reader).setColumnTypes(columnTypes);
+		}
+	}
+
+	/**
+	 * Get the table alias, or table name if there is no alias, of each column.
+	 *
+	 * @return upper case table alias or name for each column.
+	 */
+	public String[] getColumnQualifiers()
+	{
+		return columnQualifiers;
+	}
+
+	/**
+	 * Get the name that each column can be uniquely accessed with,
+	 * as ALIAS.COL or TABLE.COL.
+	 *
+	 * @return qualified column name for each column.
+	 */
+	public String[] getQualifiedColumnNames()
+	{
+		String[] retval = new String[columnKeys.length];
+		for (int i = 0; i < columnKeys.length; i++)
+			retval[i] = columnKeys[i][0];
+		return retval;
+	}
+
+	/**
+	 * Get column names that are in more than one of the joined tables, so
+	 * must be used with a table name or alias.
+	 *
+	 * @return upper case column names.
+	 */
+	public Set<String> getAmbiguousColumnNames()
+	{
+		return ambiguousKeys;
+	}
+
+	/**
+	 * Get all names that each column can be accessed with (COL, TABLE.COL or ALIAS.COL),
+	 * except for names that are ambiguous.
+	 *
+	 * @param columnIndex index of column, starting at 0.
+	 * @return all names for column.
+	 */
+	public String[] getColumnKeys(int columnIndex)
+	{
+		return columnKeys[columnIndex];
+	}
+
+	@Override
+	public boolean next() throws SQLException
+	{
+		if (rightRows == null)
+			readRightRows();
+
+		while (true)
+		{
+			if (!leftRowsFinished)
+			{
+				if (leftRow != null && candidateRows != null)
+				{
+					while (candidateIndex < candidateRows.size())
+					{
+						int rightIndex = candidateRows.get(candidateIndex).intValue();
+						candidateIndex++;
+						JoinedRow joined = new JoinedRow(leftRow.left, rightRows.get(rightIndex).right);
+						if (joinClause == null || Boolean.TRUE.equals(joinClause.isTrue(joined)))
+						{
+							leftRowMatched = true;
+							if (rightRowMatched != null)
+								rightRowMatched[rightIndex] = true;
+							environment = joined;
+							return true;
+						}
+					}
+					candidateRows = null;
+					if ((!leftRowMatched) &&
+						(joinType == JoinType.LEFT_OUTER || joinType == JoinType.FULL_OUTER))
+					{
+						environment = leftRow;
+						return true;
+					}
+				}
+
+				if (leftReader.next())
+				{
+					leftRow = new JoinedRow(leftReader.getEnvironment(), null);
+					leftRowMatched = false;
+					candidateRows = findCandidateRows(leftRow);
+					candidateIndex = 0;
+				}
+				else
+				{
+					leftRowsFinished = true;
+					leftRow = null;
+				}
+			}
+			else
+			{
+				/*
+				 * After all left rows, add right rows that did not match any left row.
+				 */
+				while (rightRowMatched != null && unmatchedRightIndex < rightRows.size())
+				{
+					int rightIndex = unmatchedRightIndex;
+					unmatchedRightIndex++;
+					if (!rightRowMatched[rightIndex])
+					{
+						environment = rightRows.get(rightIndex);
+						return true;
+					}
+				}
+				environment = null;
+				return false;
+			}
+		}
+	}
+
+	private void readRightRows() throws SQLException
+	{
+		rightRows = new ArrayList<>();
+		if (leftKeyExpressions != null)
+			rightRowsByKey = new HashMap<>();
+		while (rightReader.next())
+		{
+			JoinedRow row = new JoinedRow(null, rightReader.getEnvironment());
+			Integer rowIndex = Integer.valueOf(rightRows.size());
+			rightRows.add(row);
+			if (rightRowsByKey != null)
+			{
+				List<Object> key = getHashKey(rightKeyExpressions, row);
+				if (key != null)
+				{
+					if (rightKeyClasses == null)
+					{
+						rightKeyClasses = new Class<?>[key.size()];
+						for (int i = 0; i < key.size(); i++)
+							rightKeyClasses[i] = getKeyClass(key.get(i));
+					}
+					if (hasKeyClasses(key))
+					{
+						rightRowsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(rowIndex);
+					}
+					else
+					{
+						/*
+						 * Values of different types may be equal after conversion,
+						 * so every right row must be checked.
+						 */
+						rightRowsByKey = null;
+						rightKeyClasses = null;
+					}
+				}
+			}
+		}
+		if (joinType == JoinType.RIGHT_OUTER || joinType == JoinType.FULL_OUTER)
+			rightRowMatched = new boolean[rightRows.size()];
+	}
+
+	private List<Integer> findCandidateRows(Map<String, Object> row) throws SQLException
+	{
+		if (rightRowsByKey == null)
+		{
+			/*
+			 * No equality condition, so every right row must be checked.
+			 */
+			return getAllRightRows();
+		}
+		List<Object> key = getHashKey(leftKeyExpressions, row);
+		if (key != null && rightKeyClasses != null && !hasKeyClasses(key))
+		{
+			/*
+			 * Values of a different type to the right table values,
+			 * such as a date and a string, can only be compared one by one.
+			 */
+			return getAllRightRows();
+		}
+		List<Integer> rows = (key != null) ? rightRowsByKey.get(key) : null;
+		if (rows == null)
+			rows = Collections.emptyList();
+		return rows;
+	}
+
+	private List<Integer> getAllRightRows()
+	{
+		if (allRightRows == null)
+		{
+			allRightRows = new ArrayList<>(rightRows.size());
+			for (int i = 0; i < rightRows.size(); i++)
+				allRightRows.add(Integer.valueOf(i));
+		}
+		return allRightRows;
+	}
+
+	/**
+	 * Check that values in a key have the same types as right table keys.
+	 */
+	private boolean hasKeyClasses(List<Object> key)
+	{
+		for (int i = 0; i < rightKeyClasses.length; i++)
+		{
+			if (getKeyClass(key.get(i)) != rightKeyClasses[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Numbers of all types have the same type in hash table keys,
+	 * other values only match values of the same type.
+	 */
+	private static Class<?> getKeyClass(Object value)
+	{
+		return (value instanceof Number) ? Number.class : value.getClass();
+	}
+
+	/**
+	 * Evaluate expressions for key of row in hash table.
+	 *
+	 * @return key, or null if any key value is NULL and cannot match anything.
+	 */
+	private List<Object> getHashKey(List<Expression> expressions,
+		Map<String, Object> row) throws SQLException
+	{
+		ArrayList<Object> key = new ArrayList<>(expressions.size());
+		for (Expression expression : expressions)
+		{
+			Object value = expression.eval(row);
+			if (value == null)
+				return null;
+
+			key.add(HashedValues.getHashValue(value));
+		}
+		return key;
+	}
+
+	@Override
+	public String[] getColumnNames() throws SQLException
+	{
+		return columnNames;
+	}
+
+	@Override
+	public void close() throws SQLException
+	{
+		try
+		{
+			leftReader.close();
+		}
+		finally
+		{
+			rightReader.close();
+		}
+	}
+
+	@Override
+	public Map<String, Object> getEnvironment() throws SQLException
+	{
+		return environment;
+	}
+
+	@Override
+	public String[] getColumnTypes() throws SQLException
+	{
+		String[] leftTypes = leftReader.getColumnTypes();
+		String[] rightTypes = rightReader.getColumnTypes();
+		String[] retval = Arrays.copyOf(leftTypes, leftTypes.length + rightTypes.length);
+		System.arraycopy(rightTypes, 0, retval, leftTypes.length, rightTypes.length);
+		return retval;
+	}
+
+	@Override
+	public int[] getColumnSizes() throws SQLException
+	{
+		int[] leftSizes = leftReader.getColumnSizes();
+		int[] rightSizes = rightReader.getColumnSizes();
+		int[] retval = Arrays.copyOf(leftSizes, leftSizes.length + rightSizes.length);
+		System.arraycopy(rightSizes, 0, retval, leftSizes.length, rightSizes.length);
+		return retval;
+	}
+
+	@Override
+	public String getTableAlias()
+	{
+		return null;
+	}
+}
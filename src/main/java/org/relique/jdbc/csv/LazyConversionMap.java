@@ -0,0 +1,94 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2001  Jonathan Ackerman
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Map of column values for one row read from a CSV file.
+ *
+ * Column values are kept as the strings read from the file and are
+ * only converted to the column data type when they are first read,
+ * so columns that a query does not use are never converted.
+ * All rows read from the same file share a single lookup table from
+ * column name (plain, prefixed with the table name, or prefixed with
+ * the table alias) to column index.
+ */
+class LazyConversionMap extends SlotMap
+{
+	/** Marks column values that have not yet been converted. */
+	private static final Object UNCONVERTED = new Object();
+
+	private String[] columnTypes;
+	private StringConverter.ColumnConverter[] columnConverters;
+	private String[] fieldValues;
+
+	public LazyConversionMap(Map<String, Integer> columnIndexes, String[] columnTypes,
+		StringConverter.ColumnConverter[] columnConverters, String[] fieldValues)
+	{
+		super(columnIndexes, fieldValues.length);
+		this.columnTypes = columnTypes;
+		this.columnConverters = columnConverters;
+		this.fieldValues = fieldValues;
+		Arrays.fill(this.values, UNCONVERTED);
+	}
+
+	/**
+	 * @param slot column index.
+	 * @return SQL data type name of column, or null for String.
+	 */
+	public String getColumnType(int slot)
+	{
+		return columnTypes[slot];
+	}
+
+	/**
+	 * @param slot column index.
+	 * @return converter from string to the data type of column.
+	 */
+	public StringConverter.ColumnConverter getColumnConverter(int slot)
+	{
+		return columnConverters[slot];
+	}
+
+	/**
+	 * @param slot column index.
+	 * @return true if column value has already been converted to its data type.
+	 */
+	public boolean isConverted(int slot)
+	{
+		return values[slot] != UNCONVERTED;
+	}
+
+	/**
+	 * @param slot column index.
+	 * @return column value as read from the file, before conversion.
+	 */
+	public String getFieldValue(int slot)
+	{
+		return fieldValues[slot];
+	}
+
+	@Override
+	public Object getSlot(int slot)
+	{
+		if (values[slot] == UNCONVERTED)
+			values[slot] = columnConverters[slot].convert(fieldValues[slot]);
+		return super.getSlot(slot);
+	}
+}
@@ -28,6 +28,13 @@ class LikeExpression extends LogicalExpression
 {
 	Expression arg1, arg2;
 	Expression escapeArg;
+
+	/**
+	 * Most recently used compiled pattern, so that a pattern that is the
+	 * same for every row is only looked up once.
+	 */
+	private volatile LikePattern likePattern = null;
+
 	public LikeExpression(Expression arg1, Expression arg2, Expression escapeArg)
 	{
 		this.arg1 = arg1;
@@ -55,7 +62,16 @@ class LikeExpression extends LogicalExpression
 
 		Boolean result = null;
 		if (left != null && right != null)
-			result = Boolean.valueOf(LikePattern.matches(right.toString(), escape, left.toString()));
+		{
+			String pattern = right.toString();
+			LikePattern compiled = likePattern;
+			if (compiled == null || !compiled.isPattern(pattern, escape))
+			{
+				compiled = LikePattern.compile(pattern, escape);
+				likePattern = compiled;
+			}
+			result = Boolean.valueOf(compiled.matches(left.toString()));
+		}
 		return result;
 	}
 	@Override
@@ -84,6 +100,11 @@ class LikeExpression extends LogicalExpression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return arg1.isDeterministic() && arg2.isDeterministic() && (escapeArg == null || escapeArg.isDeterministic());
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
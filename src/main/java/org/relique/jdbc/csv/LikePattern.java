@@ -15,96 +15,268 @@
  */
 package org.relique.jdbc.csv;
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 
 /**
  * Performs string matching for SQL LIKE patterns.
+ *
+ * Each LIKE pattern is compiled once into a matcher.  Patterns containing
+ * only % wildcards, such as 'abc%', '%abc' and '%abc%', are matched by
+ * comparing the literal parts of the pattern with the start, end and middle
+ * of the input string.  Patterns containing only _ wildcards are matched
+ * character by character.  Only patterns containing both wildcards are
+ * matched using a regular expression.
  */
 public class LikePattern
 {
 	public static final String DEFAULT_ESCAPE_STRING = "\\";
 
+	/** Maximum number of compiled patterns to keep. */
+	private static final int MAX_COMPILED_PATTERNS = 1000;
+
 	/**
-	 * Global lookup table of LIKE pattern to compiled regular expression.
+	 * Global lookup table of LIKE pattern to compiled pattern, with least
+	 * recently used patterns removed first.
 	 */
-	private static Hashtable<String, Pattern> compiledRegexs = new Hashtable<>();
+	private static LinkedHashMap<String, LikePattern> compiledPatterns = new LinkedHashMap<>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LikePattern> eldest)
+		{
+			return size() > MAX_COMPILED_PATTERNS;
+		}
+	};
+
+	private String likePattern;
+	private String escape;
 
 	/**
-	 * 
-	 * @param likePattern an SQL LIKE pattern including % and _ characters.
-	 * @param escape SQL ESCAPE character, or empty string for no escaping.
-	 * @param input string to be matched.
-	 * @return true if input string matches LIKE pattern.
+	 * Literal parts of pattern between % wildcards, or null if pattern
+	 * contains _ wildcards.
 	 */
-	public static boolean matches(String likePattern, String escape, CharSequence input)
+	private String[] literals;
+
+	/** Minimum length of matching strings, for patterns containing % wildcards. */
+	private int minLength;
+
+	/**
+	 * Pattern with any character at each _ wildcard, and positions of _
+	 * wildcards, for patterns without % wildcards.
+	 */
+	private String fixedLengthPattern;
+	private boolean[] isWildcard;
+
+	/** Regular expression for pattern, or null if it is not needed. */
+	private Pattern regex;
+
+	private LikePattern(String likePattern, String escape)
 	{
-		boolean retval;
-		int percentIndex = likePattern.indexOf('%');
-		int underscoreIndex = likePattern.indexOf('_');
-		if (percentIndex < 0 && underscoreIndex < 0)
+		this.likePattern = likePattern;
+		this.escape = escape;
+
+		if (likePattern.indexOf('%') < 0 && likePattern.indexOf('_') < 0)
 		{
 			/*
 			 * No wildcards in pattern so we can just compare strings.
 			 */
-			retval = likePattern.equals(input);
+			this.literals = new String[]{likePattern};
+			this.minLength = likePattern.length();
+			return;
 		}
-		else
+
+		/*
+		 * Split LIKE pattern into literal parts and wildcards, and
+		 * also convert it to a regular expression.
+		 */
+		List<String> literalParts = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		StringBuilder fixedLength = new StringBuilder();
+		List<Integer> wildcardPositions = new ArrayList<>();
+		boolean hasPercent = false;
+		boolean isEscaped = false;
+		StringBuilder regexBuilder = new StringBuilder();
+		StringTokenizer tokenizer = new StringTokenizer(likePattern, "%_" + escape, true);
+		while (tokenizer.hasMoreTokens())
 		{
-			Pattern p = compiledRegexs.get(likePattern);
-			if (p == null)
+			String token = tokenizer.nextToken();
+			if (token.equals(escape))
 			{
-				/*
-				 * First convert LIKE pattern to a regular expression.
-				 */
-				boolean isEscaped = false;
-				StringBuilder regex = new StringBuilder();
-				StringTokenizer tokenizer = new StringTokenizer(likePattern, "%_" + escape, true);
-				while (tokenizer.hasMoreTokens())
+				if (isEscaped)
 				{
-					String token = tokenizer.nextToken();
-					if (token.equals(escape))
-					{
-						if (isEscaped)
-						{
-							/*
-							 * Two escaped characters in a row result match a
-							 * single literal escape character.
-							 */
-							regex.append(Pattern.quote(token));
-						}
-						else
-						{
-							isEscaped = true;
-						}
-					}
-					else
-					{
-						if (isEscaped)
-							regex.append(Pattern.quote(token));
-						else if (token.equals("%"))
-							regex.append(".*");
-						else if (token.equals("_"))
-							regex.append(".");
-						else
-							regex.append(Pattern.quote(token));
-						isEscaped = false;
-					}
+					/*
+					 * Two escaped characters in a row result match a
+					 * single literal escape character.
+					 */
+					regexBuilder.append(Pattern.quote(token));
+					literal.append(token);
+					fixedLength.append(token);
 				}
+				else
+				{
+					isEscaped = true;
+				}
+			}
+			else
+			{
+				if (isEscaped)
+				{
+					regexBuilder.append(Pattern.quote(token));
+					literal.append(token);
+					fixedLength.append(token);
+				}
+				else if (token.equals("%"))
+				{
+					regexBuilder.append(".*");
+					literalParts.add(literal.toString());
+					literal.setLength(0);
+					hasPercent = true;
+				}
+				else if (token.equals("_"))
+				{
+					regexBuilder.append(".");
+					wildcardPositions.add(Integer.valueOf(fixedLength.length()));
+					fixedLength.append('_');
+				}
+				else
+				{
+					regexBuilder.append(Pattern.quote(token));
+					literal.append(token);
+					fixedLength.append(token);
+				}
+				isEscaped = false;
+			}
+		}
+		literalParts.add(literal.toString());
+
+		if (wildcardPositions.isEmpty())
+		{
+			this.literals = literalParts.toArray(new String[0]);
+			for (String part : this.literals)
+				this.minLength += part.length();
+		}
+		else
+		{
+			if (!hasPercent)
+			{
+				this.fixedLengthPattern = fixedLength.toString();
+				this.isWildcard = new boolean[fixedLengthPattern.length()];
+				for (Integer position : wildcardPositions)
+					this.isWildcard[position.intValue()] = true;
+			}
+
+			/*
+			 * DOTALL flag required so that dots in regular expression match
+			 * any newline character in input string.
+			 */
+			this.regex = Pattern.compile(regexBuilder.toString(), Pattern.DOTALL);
+		}
+	}
 
+	/**
+	 * Get compiled LIKE pattern, compiling it if it has not been used recently.
+	 * @param likePattern an SQL LIKE pattern including % and _ characters.
+	 * @param escape SQL ESCAPE character, or empty string for no escaping.
+	 * @return compiled pattern.
+	 */
+	public static LikePattern compile(String likePattern, String escape)
+	{
+		String key = escape.length() + escape + likePattern;
+		synchronized (compiledPatterns)
+		{
+			LikePattern compiled = compiledPatterns.get(key);
+			if (compiled == null)
+			{
+				compiled = new LikePattern(likePattern, escape);
+				compiledPatterns.put(key, compiled);
+			}
+			return compiled;
+		}
+	}
+
+	/**
+	 * 
+	 * @param likePattern an SQL LIKE pattern including % and _ characters.
+	 * @param escape SQL ESCAPE character, or empty string for no escaping.
+	 * @param input string to be matched.
+	 * @return true if input string matches LIKE pattern.
+	 */
+	public static boolean matches(String likePattern, String escape, CharSequence input)
+	{
+		return compile(likePattern, escape).matches(input);
+	}
+
+	/**
+	 * @return true if this is the compiled version of a LIKE pattern and ESCAPE character.
+	 */
+	public boolean isPattern(String likePattern, String escape)
+	{
+		return this.likePattern.equals(likePattern) && this.escape.equals(escape);
+	}
+
+	/**
+	 * @param input string to be matched.
+	 * @return true if input string matches this LIKE pattern.
+	 */
+	public boolean matches(CharSequence input)
+	{
+		String s = input.toString();
+		if (literals != null)
+			return matchesLiterals(s);
+		if (fixedLengthPattern != null)
+		{
+			if (s.length() != fixedLengthPattern.length())
+			{
 				/*
-				 * Cache compiled regular expression because we will probably be
-				 * using the same one again and again.
-				 *
-				 * DOTALL flag required so that dots in regular expression match
-				 * any newline character in input string.
+				 * A wildcard may match a character that is stored as two chars.
 				 */
-				p = Pattern.compile(regex.toString(), Pattern.DOTALL);
-				compiledRegexs.put(likePattern, p);
+				return s.length() > fixedLengthPattern.length() && regex.matcher(s).matches();
 			}
-			retval = p.matcher(input).matches();
+			for (int i = 0; i < s.length(); i++)
+			{
+				char c = s.charAt(i);
+				if (Character.isSurrogate(c))
+					return regex.matcher(s).matches();
+				if (c != fixedLengthPattern.charAt(i) && !isWildcard[i])
+					return false;
+			}
+			return true;
+		}
+		return regex.matcher(s).matches();
+	}
+
+	private boolean matchesLiterals(String s)
+	{
+		int last = literals.length - 1;
+		if (last == 0)
+			return s.equals(literals[0]);
+		if (s.length() < minLength)
+			return false;
+
+		/*
+		 * Pattern is 'abc%', '%abc', '%abc%' or more literals separated
+		 * by % wildcards.  Match the first and last literal at the start
+		 * and end of the string, and find each other literal in turn between them.
+		 */
+		String first = literals[0];
+		String end = literals[last];
+		if (!s.startsWith(first) || !s.endsWith(end))
+			return false;
+		int from = first.length();
+		int to = s.length() - end.length();
+		for (int i = 1; i < last; i++)
+		{
+			int index = s.indexOf(literals[i], from);
+			if (index < 0 || index + literals[i].length() > to)
+				return false;
+			from = index + literals[i].length();
 		}
-		return retval;
+		return true;
 	}
 }
@@ -63,6 +63,11 @@ class NotExpression extends LogicalExpression
 		return content.usedColumns(availableColumns);
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return content.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		return content.aggregateFunctions();
@@ -39,4 +39,9 @@ class NullConstant extends Expression
 	{
 		return List.of();
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
 }
@@ -44,4 +44,9 @@ class NumericConstant extends Expression
 	{
 		return List.of();
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
 }
@@ -33,4 +33,9 @@ class OrderByEntry extends Expression
 	{
 		return expression.toString() + " " + order;
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic();
+	}
 }
\ No newline at end of file
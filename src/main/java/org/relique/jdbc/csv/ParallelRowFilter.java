@@ -0,0 +1,367 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates the SQL WHERE clause for rows on several threads.
+ *
+ * Records are read in batches on the calling thread, so that records are
+ * read from the file in order, exactly as when reading without threads.
+ * Splitting records into fields, converting column values and evaluating
+ * the WHERE clause for each batch is then split across the threads of a
+ * fork-join pool owned by the driver, while the calling thread reads the
+ * following batch.  Rows are returned in the order they were read.
+ *
+ * Any exception reading or evaluating a row is only thrown when that row
+ * is reached, so that rows that are never fetched cannot cause an error.
+ */
+class ParallelRowFilter
+{
+	/**
+	 * Reads the next record from a table.
+	 */
+	interface RowSource
+	{
+		/**
+		 * @return next record, or null if there are no more records.
+		 * @throws SQLException if reading fails.
+		 */
+		Object nextRow() throws SQLException;
+	}
+
+	/**
+	 * Creates the row for a record, on any thread.
+	 */
+	interface RowParser
+	{
+		Map<String, Object> parseRow(Object record) throws SQLException;
+	}
+
+	/**
+	 * Checks whether a row matches the WHERE clause.
+	 */
+	interface RowMatcher
+	{
+		boolean matches(Map<String, Object> row) throws SQLException;
+	}
+
+	private static final int BATCH_SIZE = 1024;
+
+	/** Number of rows each thread evaluates at a time. */
+	private static final int TASK_SIZE = 64;
+
+	/** Threads shared by all queries using parallelScan, created when first needed. */
+	private static ForkJoinPool pool = null;
+
+	private static class Batch
+	{
+		Object[] records = new Object[BATCH_SIZE];
+		Map<String, Object>[] rows = new Map[BATCH_SIZE];
+		boolean[] matches = new boolean[BATCH_SIZE];
+		Exception[] errors = new Exception[BATCH_SIZE];
+		int size;
+
+		/** Exception reading the row after the last row in this batch. */
+		Exception readError;
+		boolean atEnd;
+		ForkJoinTask<Void> task;
+	}
+
+	private class MatchTask extends RecursiveAction
+	{
+		private Batch batch;
+		private int start;
+		private int end;
+
+		MatchTask(Batch batch, int start, int end)
+		{
+			this.batch = batch;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start > TASK_SIZE)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new MatchTask(batch, start, middle),
+					new MatchTask(batch, middle, end));
+				return;
+			}
+			for (int i = start; i < end; i++)
+			{
+				try
+				{
+					Object record = batch.records[i];
+					batch.records[i] = null;
+					if (parser != null)
+						batch.rows[i] = parser.parseRow(record);
+					else
+						batch.rows[i] = (Map<String, Object>)record;
+					batch.matches[i] = matcher.matches(batch.rows[i]);
+				}
+				catch (SQLException | RuntimeException e)
+				{
+					batch.errors[i] = e;
+				}
+			}
+		}
+	}
+
+	private RowSource source;
+	private RowParser parser;
+	private RowMatcher matcher;
+	private Batch currentBatch = null;
+	private Batch nextBatch = null;
+	private int currentIndex;
+
+	/**
+	 * @param source reads each record.
+	 * @param parser creates the row for each record, or null if source reads rows.
+	 * @param matcher checks whether each row matches.
+	 */
+	public ParallelRowFilter(RowSource source, RowParser parser, RowMatcher matcher)
+	{
+		this.source = source;
+		this.parser = parser;
+		this.matcher = matcher;
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+		{
+			/*
+			 * Use separate threads from the common pool, so that queries
+			 * do not wait for other tasks of the application.
+			 */
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), p ->
+			{
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setName("CsvJdbc row filter " + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * Check whether an expression can be evaluated on several threads at
+	 * the same time.  Only expressions known to keep no state between
+	 * evaluations are accepted, so functions such as RANDOM(), user-defined
+	 * functions and sub-queries are always evaluated on a single thread.
+	 * @param expression expression to check.
+	 * @return true if expression can be evaluated by several threads.
+	 */
+	public static boolean isThreadSafe(Expression expression)
+	{
+		if (expression == null ||
+			expression instanceof ColumnName ||
+			expression instanceof NumericConstant ||
+			expression instanceof StringConstant ||
+			expression instanceof NullConstant ||
+			expression instanceof Placeholder ||
+			expression instanceof SQLLineNumberFunction)
+		{
+			return true;
+		}
+		if (expression instanceof ParsedExpression)
+			return isThreadSafe(((ParsedExpression)expression).content);
+		if (expression instanceof QueryEnvEntry)
+			return isThreadSafe(((QueryEnvEntry)expression).getExpression());
+		if (expression instanceof AndExpression)
+			return isThreadSafe(((AndExpression)expression).left) && isThreadSafe(((AndExpression)expression).right);
+		if (expression instanceof OrExpression)
+			return isThreadSafe(((OrExpression)expression).left) && isThreadSafe(((OrExpression)expression).right);
+		if (expression instanceof NotExpression)
+			return isThreadSafe(((NotExpression)expression).content);
+		if (expression instanceof RelopExpression)
+			return isThreadSafe(((RelopExpression)expression).left) && isThreadSafe(((RelopExpression)expression).right);
+		if (expression instanceof BinaryOperation)
+			return isThreadSafe(((BinaryOperation)expression).left) && isThreadSafe(((BinaryOperation)expression).right);
+		if (expression instanceof BetweenExpression)
+		{
+			BetweenExpression between = (BetweenExpression)expression;
+			return isThreadSafe(between.obj) && isThreadSafe(between.left) && isThreadSafe(between.right);
+		}
+		if (expression instanceof IsNullExpression)
+			return isThreadSafe(((IsNullExpression)expression).arg);
+		if (expression instanceof LikeExpression)
+		{
+			LikeExpression like = (LikeExpression)expression;
+			return isThreadSafe(like.arg1) && isThreadSafe(like.arg2) && isThreadSafe(like.escapeArg);
+		}
+		if (expression instanceof InExpression)
+		{
+			InExpression in = (InExpression)expression;
+			return in.subQuery == null && isThreadSafe(in.obj) && isThreadSafe(in.inList);
+		}
+		if (expression instanceof SQLLowerFunction)
+			return isThreadSafe(((SQLLowerFunction)expression).expression);
+		if (expression instanceof SQLUpperFunction)
+			return isThreadSafe(((SQLUpperFunction)expression).expression);
+		if (expression instanceof SQLLengthFunction)
+			return isThreadSafe(((SQLLengthFunction)expression).expression);
+		if (expression instanceof SQLAbsFunction)
+			return isThreadSafe(((SQLAbsFunction)expression).expression);
+		if (expression instanceof SQLCalendarFunction)
+			return isThreadSafe(((SQLCalendarFunction)expression).expression);
+		if (expression instanceof SQLTrimFunction)
+			return isThreadSafe(((SQLTrimFunction)expression).expression) && isThreadSafe(((SQLTrimFunction)expression).trimChars);
+		if (expression instanceof SQLRoundFunction)
+			return isThreadSafe(((SQLRoundFunction)expression).expression) && isThreadSafe(((SQLRoundFunction)expression).decimals);
+		if (expression instanceof SQLNullIfFunction)
+			return isThreadSafe(((SQLNullIfFunction)expression).expression1) && isThreadSafe(((SQLNullIfFunction)expression).expression2);
+		if (expression instanceof SQLCoalesceFunction)
+			return isThreadSafe(((SQLCoalesceFunction)expression).expressions);
+		if (expression instanceof SQLSubstringFunction)
+		{
+			SQLSubstringFunction substring = (SQLSubstringFunction)expression;
+			return isThreadSafe(substring.expr) && isThreadSafe(substring.startIndex) && isThreadSafe(substring.len);
+		}
+		return false;
+	}
+
+	private static boolean isThreadSafe(List<Expression> expressions)
+	{
+		if (expressions != null)
+		{
+			for (Expression expression : expressions)
+			{
+				if (!isThreadSafe(expression))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Move to the next row read, whether or not it matches.
+	 * @return false if there are no more rows.
+	 * @throws SQLException if reading or evaluating the row failed.
+	 */
+	public boolean next() throws SQLException
+	{
+		if (currentBatch == null)
+		{
+			currentBatch = readBatch();
+			currentIndex = -1;
+		}
+		currentIndex++;
+		while (currentIndex == currentBatch.size)
+		{
+			if (currentBatch.readError != null)
+			{
+				Exception e = currentBatch.readError;
+				currentBatch.readError = null;
+				currentIndex--;
+				throwException(e);
+			}
+			if (currentBatch.atEnd)
+			{
+				currentIndex--;
+				return false;
+			}
+			currentBatch = (nextBatch != null) ? nextBatch : readBatch();
+			nextBatch = null;
+			currentIndex = 0;
+		}
+		if (currentIndex == 0)
+		{
+			/*
+			 * Read the next batch while this batch is being evaluated.
+			 */
+			if (!currentBatch.atEnd && currentBatch.readError == null)
+				nextBatch = readBatch();
+			currentBatch.task.join();
+		}
+
+		Exception e = currentBatch.errors[currentIndex];
+		if (e != null)
+			throwException(e);
+		return true;
+	}
+
+	private void throwException(Exception e) throws SQLException
+	{
+		if (e instanceof SQLException)
+			throw (SQLException)e;
+		throw (RuntimeException)e;
+	}
+
+	/**
+	 * @return current row.
+	 */
+	public Map<String, Object> getRow()
+	{
+		return currentBatch.rows[currentIndex];
+	}
+
+	/**
+	 * @return true if current row matches the WHERE clause.
+	 */
+	public boolean isMatch()
+	{
+		return currentBatch.matches[currentIndex];
+	}
+
+	/**
+	 * Wait for any rows still being evaluated.
+	 */
+	public void close()
+	{
+		if (nextBatch != null && nextBatch.task != null)
+			nextBatch.task.quietlyJoin();
+		nextBatch = null;
+		currentBatch = null;
+	}
+
+	private Batch readBatch()
+	{
+		Batch batch = new Batch();
+		try
+		{
+			while (batch.size < BATCH_SIZE)
+			{
+				Object record = source.nextRow();
+				if (record == null)
+				{
+					batch.atEnd = true;
+					break;
+				}
+				batch.records[batch.size++] = record;
+			}
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			batch.readError = e;
+		}
+		batch.task = getPool().submit(new MatchTask(batch, 0, batch.size));
+		return batch;
+	}
+}
@@ -79,6 +79,11 @@ class ParsedExpression extends LogicalExpression
 		return content.usedColumns(availableColumns);
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return content.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		return content.aggregateFunctions();
@@ -88,6 +93,10 @@ class ParsedExpression extends LogicalExpression
 	{
 		content.resetAggregateFunctions();
 	}
+	public Map<String, Object> getPlaceholders()
+	{
+		return placeholders;
+	}
 	public int getPlaceholdersCount()
 	{
 		return placeholders.size();
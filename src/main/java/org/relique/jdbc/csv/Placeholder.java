@@ -55,4 +55,9 @@ class Placeholder extends Expression
 	{
 		return List.of();
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
 }
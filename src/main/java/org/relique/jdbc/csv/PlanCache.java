@@ -0,0 +1,84 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed SQL statements of a connection, kept so that SQL statements
+ * executed again are not parsed again.
+ *
+ * Parsed statements contain the state of aggregate functions and
+ * sub-queries while a query is executed, so each parsed statement is
+ * taken out of the cache while it is used by a statement and is put back
+ * when the statement no longer needs it.
+ */
+class PlanCache
+{
+	private int maxEntries;
+
+	/** Parsed statements in order of use, least recently used first. */
+	private LinkedHashMap<String, SqlParser> parsers;
+
+	/**
+	 * Create cache.
+	 * @param maxEntries maximum number of parsed statements to keep.
+	 */
+	public PlanCache(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		this.parsers = new LinkedHashMap<>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SqlParser> eldest)
+			{
+				return size() > PlanCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Take a parsed statement out of the cache.
+	 * @param sql SQL statement.
+	 * @return parsed statement, or null if SQL statement is not in cache.
+	 */
+	public synchronized SqlParser take(String sql)
+	{
+		return parsers.remove(sql);
+	}
+
+	/**
+	 * Put a parsed statement back into the cache, after it has been used.
+	 * @param sql SQL statement.
+	 * @param parser parsed statement.
+	 */
+	public synchronized void put(String sql, SqlParser parser)
+	{
+		parsers.put(sql, parser);
+	}
+
+	/**
+	 * Remove all parsed statements.
+	 */
+	public synchronized void clear()
+	{
+		parsers.clear();
+	}
+}
@@ -59,4 +59,9 @@ class QueryEnvEntry extends Expression
 	{
 		expression.resetAggregateFunctions();
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic();
+	}
 }
@@ -0,0 +1,217 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Positions in a CSV file of every Nth row, so that rows skipped with an
+ * SQL OFFSET clause do not have to be read.
+ *
+ * The positions are found while the file is read and are saved in an
+ * index file next to the CSV file, so that they can be used by later
+ * queries.  The index file is ignored and replaced if the size or
+ * modification time of the CSV file changes, or if it was created with
+ * different properties for reading the file.
+ */
+class RowIndex
+{
+	/** File name suffix of index files. */
+	public static final String FILE_SUFFIX = ".idx";
+
+	private static final int MAGIC = 0x43534958;
+	private static final int VERSION = 1;
+
+	private File indexFile;
+	private long fileSize;
+	private long lastModified;
+	private String signature;
+	private int interval;
+
+	private int[] rows = new int[16];
+	private long[] offsets = new long[16];
+	private int[] lineNumbers = new int[16];
+	private int count = 0;
+	private boolean changed = false;
+
+	private RowIndex(File indexFile, long fileSize, long lastModified,
+		String signature, int interval)
+	{
+		this.indexFile = indexFile;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.signature = signature;
+		this.interval = interval;
+	}
+
+	/**
+	 * Open the row index for a CSV file, reading any saved positions.
+	 * @param fileName name of CSV file.
+	 * @param signature properties used to read the CSV file.
+	 * @param interval number of rows between saved positions.
+	 * @return row index for file.
+	 */
+	public static RowIndex open(String fileName, String signature, int interval)
+	{
+		File file = new File(fileName);
+		RowIndex rowIndex = new RowIndex(new File(fileName + FILE_SUFFIX),
+			file.length(), file.lastModified(), signature, interval);
+		if (rowIndex.indexFile.exists())
+		{
+			try
+			{
+				rowIndex.load();
+			}
+			catch (IOException e)
+			{
+				CsvDriver.writeLog("Ignoring row index " + rowIndex.indexFile + ": " + e);
+				rowIndex.count = 0;
+			}
+		}
+		return rowIndex;
+	}
+
+	private void load() throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+				in.readLong() != fileSize || in.readLong() != lastModified ||
+				!in.readUTF().equals(signature) || in.readInt() != interval)
+			{
+				/*
+				 * CSV file has changed since the index was saved.
+				 */
+				return;
+			}
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+				add(in.readInt(), in.readLong(), in.readInt());
+			changed = false;
+		}
+	}
+
+	/**
+	 * Save positions in index file, if any new positions were added.
+	 */
+	public void save()
+	{
+		if (!changed)
+			return;
+		changed = false;
+		File tempFile = null;
+		try
+		{
+			tempFile = File.createTempFile("csvjdbc", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(fileSize);
+				out.writeLong(lastModified);
+				out.writeUTF(signature);
+				out.writeInt(interval);
+				out.writeInt(count);
+				for (int i = 0; i < count; i++)
+				{
+					out.writeInt(rows[i]);
+					out.writeLong(offsets[i]);
+					out.writeInt(lineNumbers[i]);
+				}
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			tempFile = null;
+		}
+		catch (IOException | SecurityException e)
+		{
+			/*
+			 * Index files are optional, so continue without one if the
+			 * directory is not writable.
+			 */
+			CsvDriver.writeLog("Cannot save row index " + indexFile + ": " + e);
+		}
+		finally
+		{
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Remember position of a row, if it is the first row of an interval
+	 * and is after all rows already in the index.
+	 * @param row row number, starting from 0 for the first row after the header.
+	 * @param offset byte position of row in file.
+	 * @param lineNumber number of lines read before row.
+	 */
+	public void add(int row, long offset, int lineNumber)
+	{
+		if (row <= 0 || row % interval != 0 || (count > 0 && row <= rows[count - 1]))
+			return;
+		if (count == rows.length)
+		{
+			rows = Arrays.copyOf(rows, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+			lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+		}
+		rows[count] = row;
+		offsets[count] = offset;
+		lineNumbers[count] = lineNumber;
+		count++;
+		changed = true;
+	}
+
+	/**
+	 * Find the last saved position at or before a row.
+	 * @param row row number.
+	 * @return index of position, or -1 if there is no saved position before row.
+	 */
+	public int find(int row)
+	{
+		int i = Arrays.binarySearch(rows, 0, count, row);
+		if (i < 0)
+			i = -i - 2;
+		return i;
+	}
+
+	public int getRow(int i)
+	{
+		return rows[i];
+	}
+
+	public long getOffset(int i)
+	{
+		return offsets[i];
+	}
+
+	public int getLineNumber(int i)
+	{
+		return lineNumbers[i];
+	}
+}
@@ -97,6 +97,11 @@ class SQLAbsFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
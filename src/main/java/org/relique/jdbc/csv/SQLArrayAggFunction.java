@@ -25,8 +25,6 @@ public class SQLArrayAggFunction extends AggregateFunction
 {
 	final boolean isDistinct;
 	final Expression expression;
-	final ArrayList<Object> aggregateValues = new ArrayList<>();
-	final LinkedHashSet<Object> distinctAggregateValues = new LinkedHashSet<>();
 
 	public SQLArrayAggFunction(boolean isDistinct, Expression expression)
 	{
@@ -34,42 +32,6 @@ public class SQLArrayAggFunction extends AggregateFunction
 		this.expression = expression;
 	}
 
-	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
-	{
-		List<Object> values = new ArrayList<>();
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		if (o != null)
-		{
-			List groupRows = (List)o;
-			for (int i = 0; i < groupRows.size(); i++)
-			{
-				o = expression.eval((Map)groupRows.get(i));
-				if (o != null)
-				{
-					values.add(o);
-				}
-			}
-		}
-		else
-		{
-			Iterator<Object> it = aggregateValues.iterator();
-			while (it.hasNext())
-			{
-				values.add(it.next());
-			}
-			it = distinctAggregateValues.iterator();
-			while (it.hasNext())
-			{
-				values.add(it.next());
-			}
-		}
-		StringConverter converter = (StringConverter)env.get(StringConverter.COLUMN_NAME);
-		CsvStatement statement = (CsvStatement)env.get(CsvStatement.STATEMENT_COLUMN_NAME);
-		return new SqlArray(values, converter, statement.getConnection());
-
-	}
-
 	@Override
 	public List<String> usedColumns(Set<String> availableColumns)
 	{
@@ -91,26 +53,32 @@ public class SQLArrayAggFunction extends AggregateFunction
 	}
 
 	@Override
-	public void resetAggregateFunctions()
-	{
-		distinctAggregateValues.clear();
-		aggregateValues.clear();
-	}
-
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
+	public Accumulator createAccumulator()
 	{
-		/*
-		 * Only consider non-null values.
-		 */
-		Object o = expression.eval(env);
-		if (o != null)
+		return new Accumulator()
 		{
-			if (isDistinct)
-				distinctAggregateValues.add(o);
-			else
-				aggregateValues.add(o);
-		}
+			final Collection<Object> aggregateValues = isDistinct ? new LinkedHashSet<>() : new ArrayList<>();
+
+			@Override
+			public void processRow(Map<String, Object> env) throws SQLException
+			{
+				/*
+				 * Only consider non-null values.
+				 */
+				Object o = expression.eval(env);
+				if (o != null)
+					aggregateValues.add(o);
+			}
+
+			@Override
+			public Object getValue(Map<String, Object> env) throws SQLException
+			{
+				List<Object> values = new ArrayList<>(aggregateValues);
+				StringConverter converter = (StringConverter)env.get(StringConverter.COLUMN_NAME);
+				CsvStatement statement = (CsvStatement)env.get(CsvStatement.STATEMENT_COLUMN_NAME);
+				return new SqlArray(values, converter, statement.getConnection());
+			}
+		};
 	}
 
 	@Override
@@ -18,7 +18,6 @@
  */
 package org.relique.jdbc.csv;
 
-import java.sql.SQLException;
 import java.util.Map;
 
 class SQLAvgFunction extends SQLSumFunction
@@ -28,21 +27,28 @@ class SQLAvgFunction extends SQLSumFunction
 		super(isDistinct, expression);
 	}
 	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
+	public Accumulator createAccumulator()
 	{
-		Object o = super.eval(env);
-		if (o != null)
+		return new SumAccumulator()
 		{
-			double average = ((Number)o).doubleValue() / counter;
-			o = Double.valueOf(average);
-		}
-		return o;
+			@Override
+			public Object getValue(Map<String, Object> env)
+			{
+				Object o = super.getValue(env);
+				if (o != null)
+				{
+					double average = ((Number)o).doubleValue() / counter;
+					o = Double.valueOf(average);
+				}
+				return o;
+			}
+		};
 	}
 	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("AVG(");
-		if (distinctValues != null)
+		if (isDistinct)
 			sb.append("DISTINCT ");
 		sb.append(expression);
 		sb.append(")");
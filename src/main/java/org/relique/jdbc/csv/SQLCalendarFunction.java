@@ -99,6 +99,11 @@ class SQLCalendarFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -75,6 +75,16 @@ class SQLCoalesceFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		for (Expression expression : expressions)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		return true;
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
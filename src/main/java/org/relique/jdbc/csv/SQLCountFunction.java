@@ -27,71 +27,18 @@ import java.util.Set;
 
 class SQLCountFunction extends AggregateFunction
 {
-	HashSet<Object> distinctValues;
+	boolean isDistinct;
 	Expression expression;
-	int counter = 0;
 	public SQLCountFunction(boolean isDistinct, Expression expression)
 	{
-		if (isDistinct)
-			this.distinctValues = new HashSet<>();
+		this.isDistinct = isDistinct;
 		this.expression = expression;
 	}
 	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
-	{
-		Integer retval;
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		if (o != null)
-		{
-			/*
-			 * The count is the number of rows grouped together
-			 * by the GROUP BY clause.
-			 */
-			List groupRows = (List)o;
-			if (this.distinctValues != null)
-			{
-				HashSet<Object> unique = new HashSet<>();
-				for (int i = 0; i < groupRows.size(); i++)
-				{
-					o = expression.eval((Map)groupRows.get(i));
-					if (o != null)
-						unique.add(o);
-				}
-				retval = Integer.valueOf(unique.size());
-			}
-			else
-			{
-				int groupCounter = 0;
-				if (expression instanceof AsteriskExpression)
-				{
-					groupCounter = groupRows.size();
-				}
-				else
-				{
-					for (int i = 0; i < groupRows.size(); i++)
-					{
-						o = expression.eval((Map)groupRows.get(i));
-						if (o != null)
-							groupCounter++;
-					}
-				}
-				retval = Integer.valueOf(groupCounter);
-			}
-		}
-		else
-		{
-			if (this.distinctValues != null)
-				retval = Integer.valueOf(this.distinctValues.size());
-			else
-				retval = Integer.valueOf(counter);
-		}
-		return retval;
-	}
-	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("COUNT(");
-		if (distinctValues != null)
+		if (isDistinct)
 			sb.append("DISTINCT ");
 		sb.append(expression);
 		sb.append(")");
@@ -118,37 +65,48 @@ class SQLCountFunction extends AggregateFunction
 		return result;
 	}
 	@Override
-	public void resetAggregateFunctions()
-	{
-		if (this.distinctValues != null)
-			this.distinctValues.clear();
-		this.counter = 0;
-	}
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
+	public Accumulator createAccumulator()
 	{
-		if (expression instanceof AsteriskExpression)
+		return new Accumulator()
 		{
-			counter++;
-		}
-		else
-		{
-			/*
-			 * Only count non-null values.
-			 */
-			Object o = expression.eval(env);
-			if (o != null)
+			HashSet<Object> distinctValues = isDistinct ? new HashSet<>() : null;
+			int counter = 0;
+
+			@Override
+			public void processRow(Map<String, Object> env) throws SQLException
 			{
-				counter++;
-				if (distinctValues != null)
+				if (expression instanceof AsteriskExpression)
+				{
+					counter++;
+				}
+				else
 				{
 					/*
-					 * We want a count of DISTINCT values, so we have
-					 * to keep a list of unique values.
+					 * Only count non-null values.
 					 */
-					distinctValues.add(o);
+					Object o = expression.eval(env);
+					if (o != null)
+					{
+						counter++;
+						if (distinctValues != null)
+						{
+							/*
+							 * We want a count of DISTINCT values, so we have
+							 * to keep a list of unique values.
+							 */
+							distinctValues.add(o);
+						}
+					}
 				}
 			}
-		}
+
+			@Override
+			public Object getValue(Map<String, Object> env)
+			{
+				if (distinctValues != null)
+					return Integer.valueOf(distinctValues.size());
+				return Integer.valueOf(counter);
+			}
+		};
 	}
 }
@@ -52,6 +52,11 @@ class SQLLineNumberFunction extends Expression
 		return new LinkedList<>();
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		return new LinkedList<>();
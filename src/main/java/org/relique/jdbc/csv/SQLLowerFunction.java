@@ -52,6 +52,11 @@ class SQLLowerFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic();
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
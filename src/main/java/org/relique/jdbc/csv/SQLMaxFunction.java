@@ -28,38 +28,12 @@ class SQLMaxFunction extends AggregateFunction
 {
 	boolean isDistinct;
 	Expression expression;
-	Object max = null;
 	public SQLMaxFunction(boolean isDistinct, Expression expression)
 	{
 		this.isDistinct = isDistinct;
 		this.expression = expression;
 	}
 	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
-	{
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		if (o != null)
-		{
-			/*
-			 * Find the maximum from the rows grouped together
-			 * by the GROUP BY clause.
-			 */
-			List groupRows = (List)o;
-			Object maxInGroup = null;
-			for (int i = 0; i < groupRows.size(); i++)
-			{
-				o = expression.eval((Map)groupRows.get(i));
-				if (o != null)
-				{
-					if (maxInGroup == null || ((Comparable)maxInGroup).compareTo(o) < 0)
-						maxInGroup = o;
-				}
-			}
-			return maxInGroup;
-		}
-		return max;
-	}
-	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("MAX(");
@@ -89,21 +63,31 @@ class SQLMaxFunction extends AggregateFunction
 		return result;
 	}
 	@Override
-	public void resetAggregateFunctions()
+	public Accumulator createAccumulator()
 	{
-		this.max = null;
-	}
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
-	{
-		/*
-		 * Only consider non-null values.
-		 */
-		Object o = expression.eval(env);
-		if (o != null)
+		return new Accumulator()
 		{
-			if (max == null || ((Comparable)max).compareTo(o) < 0)
-				max = o;
-		}
+			Object max = null;
+
+			@Override
+			public void processRow(Map<String, Object> env) throws SQLException
+			{
+				/*
+				 * Only consider non-null values.
+				 */
+				Object o = expression.eval(env);
+				if (o != null)
+				{
+					if (max == null || ((Comparable)max).compareTo(o) < 0)
+						max = o;
+				}
+			}
+
+			@Override
+			public Object getValue(Map<String, Object> env)
+			{
+				return max;
+			}
+		};
 	}
 }
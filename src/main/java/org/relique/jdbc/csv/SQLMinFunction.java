@@ -28,38 +28,12 @@ class SQLMinFunction extends AggregateFunction
 {
 	boolean isDistinct;
 	Expression expression;
-	Object min = null;
 	public SQLMinFunction(boolean isDistinct, Expression expression)
 	{
 		this.isDistinct = isDistinct;
 		this.expression = expression;
 	}
 	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
-	{
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		if (o != null)
-		{
-			/*
-			 * Find the minimum from the rows grouped together
-			 * by the GROUP BY clause.
-			 */
-			List groupRows = (List)o;
-			Object minInGroup = null;
-			for (int i = 0; i < groupRows.size(); i++)
-			{
-				o = expression.eval((Map)groupRows.get(i));
-				if (o != null)
-				{
-					if (minInGroup == null || ((Comparable)minInGroup).compareTo(o) > 0)
-						minInGroup = o;
-				}
-			}
-			return minInGroup;
-		}
-		return min;
-	}
-	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("MIN(");
@@ -89,21 +63,31 @@ class SQLMinFunction extends AggregateFunction
 		return result;
 	}
 	@Override
-	public void resetAggregateFunctions()
+	public Accumulator createAccumulator()
 	{
-		this.min = null;
-	}
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
-	{
-		/*
-		 * Only consider non-null values.
-		 */
-		Object o = expression.eval(env);
-		if (o != null)
+		return new Accumulator()
 		{
-			if (min == null || ((Comparable)min).compareTo(o) > 0)
-				min = o;
-		}
+			Object min = null;
+
+			@Override
+			public void processRow(Map<String, Object> env) throws SQLException
+			{
+				/*
+				 * Only consider non-null values.
+				 */
+				Object o = expression.eval(env);
+				if (o != null)
+				{
+					if (min == null || ((Comparable)min).compareTo(o) > 0)
+						min = o;
+				}
+			}
+
+			@Override
+			public Object getValue(Map<String, Object> env)
+			{
+				return min;
+			}
+		};
 	}
 }
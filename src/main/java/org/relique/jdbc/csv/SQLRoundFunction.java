@@ -126,6 +126,11 @@ class SQLRoundFunction extends Expression
 		}
 		return result;
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic() && (decimals == null || decimals.isDeterministic());
+	}
 
 	@Override
 	public List<AggregateFunction> aggregateFunctions()
@@ -20,7 +20,7 @@ package org.relique.jdbc.csv;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,8 +32,6 @@ class SQLStringAggFunction extends AggregateFunction
 	boolean isDistinct;
 	Expression expression;
 	Expression delimiter;
-	ArrayList<Object> aggregateValues = new ArrayList<>();
-	LinkedHashSet<Object> distinctAggregateValues = new LinkedHashSet<>();
 	public SQLStringAggFunction(boolean isDistinct, Expression expression, Expression delimiter)
 	{
 		this.isDistinct = isDistinct;
@@ -41,49 +39,6 @@ class SQLStringAggFunction extends AggregateFunction
 		this.delimiter = delimiter;
 	}
 	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
-	{
-		Object stringAggregation = null;
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		Object o2 = delimiter.eval(env);
-		if (o != null)
-		{
-			StringBuffer sb = new StringBuffer();
-			List groupRows = (List)o;
-			for (int i = 0; i < groupRows.size(); i++)
-			{
-				o = expression.eval((Map)groupRows.get(i));
-				if (o != null)
-				{
-					if (sb.length() > 0 && o2 != null)
-						sb.append(o2);
-					sb.append(o);
-				}
-			}
-			stringAggregation = sb.toString();
-		}
-		else
-		{
-			StringBuffer sb = new StringBuffer();
-			Iterator<Object> it = aggregateValues.iterator();
-			while (it.hasNext())
-			{
-				if (sb.length() > 0 && o2 != null)
-					sb.append(o2);
-				sb.append(it.next().toString());
-			}
-			it = distinctAggregateValues.iterator();
-			while (it.hasNext())
-			{
-				if (sb.length() > 0 && o2 != null)
-					sb.append(o2);
-				sb.append(it.next().toString());
-			}
-			stringAggregation = sb.toString();
-		}
-		return stringAggregation;
-	}
-	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("STRING_AGG(");
@@ -117,24 +72,36 @@ class SQLStringAggFunction extends AggregateFunction
 		return result;
 	}
 	@Override
-	public void resetAggregateFunctions()
-	{
-		distinctAggregateValues.clear();
-		aggregateValues.clear();
-	}
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
+	public Accumulator createAccumulator()
 	{
-		/*
-		 * Only consider non-null values.
-		 */
-		Object o = expression.eval(env);
-		if (o != null)
+		return new Accumulator()
 		{
-			if (isDistinct)
-				distinctAggregateValues.add(o);
-			else
-				aggregateValues.add(o);
-		}
+			Collection<Object> aggregateValues = isDistinct ? new LinkedHashSet<>() : new ArrayList<>();
+
+			@Override
+			public void processRow(Map<String, Object> env) throws SQLException
+			{
+				/*
+				 * Only consider non-null values.
+				 */
+				Object o = expression.eval(env);
+				if (o != null)
+					aggregateValues.add(o);
+			}
+
+			@Override
+			public Object getValue(Map<String, Object> env) throws SQLException
+			{
+				Object o2 = delimiter.eval(env);
+				StringBuilder sb = new StringBuilder();
+				for (Object o : aggregateValues)
+				{
+					if (sb.length() > 0 && o2 != null)
+						sb.append(o2);
+					sb.append(o.toString());
+				}
+				return sb.toString();
+			}
+		};
 	}
-}
\ No newline at end of file
+}
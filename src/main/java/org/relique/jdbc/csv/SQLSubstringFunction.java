@@ -167,6 +167,11 @@ class SQLSubstringFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return expr.isDeterministic() && startIndex.isDeterministic() && (len == null || len.isDeterministic());
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
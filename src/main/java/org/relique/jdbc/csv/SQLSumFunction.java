@@ -28,121 +28,85 @@ import java.util.Set;
 
 class SQLSumFunction extends AggregateFunction
 {
-	HashSet<Object> distinctValues;
+	boolean isDistinct;
 	Expression expression;
-	BigDecimal sum = null;
-	int counter = 0;
 	public SQLSumFunction(boolean isDistinct, Expression expression)
 	{
-		if (isDistinct)
-			this.distinctValues = new HashSet<>();
+		this.isDistinct = isDistinct;
 		this.expression = expression;
 	}
-	@Override
-	public Object eval(Map<String, Object> env) throws SQLException
+
+	/**
+	 * Accumulates the sum and number of numeric values.
+	 */
+	class SumAccumulator implements Accumulator
 	{
-		Object retval = null;
-		Object o = env.get(GROUPING_COLUMN_NAME);
-		if (o != null)
+		HashSet<Object> distinctValues = isDistinct ? new HashSet<>() : null;
+		BigDecimal sum = null;
+		int counter = 0;
+
+		@Override
+		public void processRow(Map<String, Object> env) throws SQLException
 		{
 			/*
-			 * Find the sum of rows grouped together
-			 * by the GROUP BY clause.
+			 * Only consider non-null values.
 			 */
-			List groupRows = (List)o;
-			BigDecimal groupSum = null;
-			counter = 0;
-			if (this.distinctValues != null)
+			Object o = expression.eval(env);
+			if (o != null)
 			{
-				HashSet<Object> unique = new HashSet<>();
-				for (int i = 0; i < groupRows.size(); i++)
+				if (distinctValues != null)
 				{
-					o = expression.eval((Map)groupRows.get(i));
-					if (o != null)
-						unique.add(o);
+					/*
+					 * We want the sum of DISTINCT values, so we have
+					 * to keep a list of unique values.
+					 */
+					if (distinctValues.add(o))
+						add(o);
 				}
-				for (Object obj: unique)
-				{
-					if (groupSum == null)
-						groupSum = new BigDecimal(obj.toString());
-					else
-						groupSum = groupSum.add(new BigDecimal(obj.toString()));
-					counter++;
-				}
-			}
-			else
-			{
-				for (int i = 0; i < groupRows.size(); i++)
+				else
 				{
-					o = expression.eval((Map)groupRows.get(i));
-					if (o != null)
-					{
-						try
-						{
-							if (groupSum == null)
-								groupSum = new BigDecimal(o.toString());
-							else
-								groupSum = groupSum.add(new BigDecimal(o.toString()));
-							counter++;
-						}
-						catch (NumberFormatException e)
-						{
-						}
-					}
+					add(o);
 				}
 			}
+		}
+
+		private void add(Object o)
+		{
 			try
 			{
-				if (groupSum != null)
-					retval = Long.valueOf(groupSum.longValueExact());
+				if (sum == null)
+					sum = new BigDecimal(o.toString());
+				else
+					sum = sum.add(new BigDecimal(o.toString()));
+				counter++;
 			}
-			catch (ArithmeticException e)
+			catch (NumberFormatException e)
 			{
-				retval = Double.valueOf(groupSum.doubleValue());
 			}
-			return retval;
 		}
 
-		try
+		@Override
+		public Object getValue(Map<String, Object> env)
 		{
-			if (this.distinctValues != null)
-			{
-				BigDecimal groupSum = null;
-				for (Object obj: this.distinctValues)
-				{
-					if (groupSum == null)
-						groupSum = new BigDecimal(obj.toString());
-					else
-						groupSum = groupSum.add(new BigDecimal(obj.toString()));
-				}
-				counter = this.distinctValues.size();
-				try
-				{
-					if (groupSum != null)
-						retval = Long.valueOf(groupSum.longValueExact());
-				}
-				catch (ArithmeticException e)
-				{
-					retval = Double.valueOf(groupSum.doubleValue());
-				}
-			}
-			else
+			Object retval = null;
+			try
 			{
 				if (sum != null)
 					retval = Long.valueOf(sum.longValueExact());
 			}
+			catch (ArithmeticException e)
+			{
+				retval = Double.valueOf(sum.doubleValue());
+			}
+			return retval;
 		}
-		catch (ArithmeticException e)
-		{
-			retval = Double.valueOf(sum.doubleValue());
-		}
-		return retval;
 	}
+
 	@Override
 	public String toString()
 	{
 		StringBuilder sb = new StringBuilder("SUM(");
-		if (distinctValues != null)
+		if (isDistinct)
 			sb.append("DISTINCT ");
 		sb.append(expression);
 		sb.append(")");
@@ -168,41 +132,8 @@ class SQLSumFunction extends AggregateFunction
 		return result;
 	}
 	@Override
-	public void resetAggregateFunctions()
+	public Accumulator createAccumulator()
 	{
-		if (this.distinctValues != null)
-			this.distinctValues.clear();
-		this.sum = null;
-		this.counter = 0;
-	}
-	@Override
-	public void processRow(Map<String, Object> env) throws SQLException
-	{
-		/*
-		 * Only consider non-null values.
-		 */
-		Object o = expression.eval(env);
-		if (o != null)
-		{
-			try
-			{
-				if (sum == null)
-					sum = new BigDecimal(o.toString());
-				else
-					sum = sum.add(new BigDecimal(o.toString()));
-				counter++;
-			}
-			catch (NumberFormatException e)
-			{
-			}
-			if (distinctValues != null)
-			{
-				/*
-				 * We want the sum of DISTINCT values, so we have
-				 * to keep a list of unique values.
-				 */
-				distinctValues.add(o);
-			}
-		}
+		return new SumAccumulator();
 	}
 }
@@ -122,6 +122,11 @@ class SQLTrimFunction extends Expression
 		return result;
 	}
 	@Override
+	public boolean isDeterministic()
+	{
+		return expression.isDeterministic() && (trimChars == null || trimChars.isDeterministic());
+	}
+	@Override
 	public List<AggregateFunction> aggregateFunctions()
 	{
 		List<AggregateFunction> result = new LinkedList<>();
@@ -48,6 +48,11 @@ class SQLVersionFunction extends Expression
 	{
 		return List.of();
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		return true;
+	}
 
 	@Override
 	public List<AggregateFunction> aggregateFunctions()
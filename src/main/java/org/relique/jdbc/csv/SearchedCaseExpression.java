@@ -92,6 +92,23 @@ class SearchedCaseExpression extends Expression
 			result.addAll(elseExpression.usedColumns(availableColumns));
 		return result;
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		for (Expression expression : conditions)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		for (Expression expression : values)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		if (elseExpression != null && !elseExpression.isDeterministic())
+			return false;
+		return true;
+	}
 
 	@Override
 	public List<AggregateFunction> aggregateFunctions()
@@ -94,6 +94,25 @@ class SimpleCaseExpression extends Expression
 			result.addAll(elseExpression.usedColumns(availableColumns));
 		return result;
 	}
+	@Override
+	public boolean isDeterministic()
+	{
+		if (!caseExpression.isDeterministic())
+			return false;
+		for (Expression expression : switches)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		for (Expression expression : values)
+		{
+			if (!expression.isDeterministic())
+				return false;
+		}
+		if (elseExpression != null && !elseExpression.isDeterministic())
+			return false;
+		return true;
+	}
 
 	@Override
 	public List<AggregateFunction> aggregateFunctions()
@@ -0,0 +1,156 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2001  Jonathan Ackerman
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map of values for one row, with values stored in an array.
+ *
+ * The lookup table from key to array index (slot) is created once per
+ * query and shared by all rows, so that expressions such as column names
+ * can resolve their slot once and then read each row by index.
+ * Several keys may share the same slot.  Keys that are not in the lookup
+ * table are stored in a separate map.
+ */
+class SlotMap extends AbstractMap<String, Object>
+{
+	/** Marks slots that do not contain any value. */
+	private static final Object UNSET = new Object();
+
+	private Map<String, Integer> slots;
+	protected Object[] values;
+	private Map<String, Object> otherValues = null;
+
+	public SlotMap(Map<String, Integer> slots, int slotCount)
+	{
+		this.slots = slots;
+		this.values = new Object[slotCount];
+		Arrays.fill(this.values, UNSET);
+	}
+
+	/**
+	 * Get lookup table from key to slot, shared by all rows with the same layout.
+	 * @return lookup table.
+	 */
+	public Map<String, Integer> getSlots()
+	{
+		return slots;
+	}
+
+	public boolean isSlotSet(int slot)
+	{
+		return values[slot] != UNSET;
+	}
+
+	public Object getSlot(int slot)
+	{
+		Object value = values[slot];
+		if (value == UNSET)
+			return null;
+		return value;
+	}
+
+	public void setSlot(int slot, Object value)
+	{
+		values[slot] = value;
+	}
+
+	@Override
+	public Object get(Object key)
+	{
+		Integer slot = slots.get(key);
+		if (slot != null)
+			return getSlot(slot.intValue());
+		if (otherValues != null)
+			return otherValues.get(key);
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		Integer slot = slots.get(key);
+		if (slot != null)
+			return isSlotSet(slot.intValue());
+		return otherValues != null && otherValues.containsKey(key);
+	}
+
+	@Override
+	public Object put(String key, Object value)
+	{
+		Integer slot = slots.get(key);
+		if (slot != null)
+		{
+			Object previousValue = getSlot(slot.intValue());
+			values[slot.intValue()] = value;
+			return previousValue;
+		}
+		if (otherValues == null)
+			otherValues = new HashMap<>();
+		return otherValues.put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key)
+	{
+		Integer slot = slots.get(key);
+		if (slot != null)
+		{
+			Object previousValue = getSlot(slot.intValue());
+			values[slot.intValue()] = UNSET;
+			return previousValue;
+		}
+		if (otherValues != null)
+			return otherValues.remove(key);
+		return null;
+	}
+
+	@Override
+	public int size()
+	{
+		int size = 0;
+		for (Integer slot : slots.values())
+		{
+			if (isSlotSet(slot.intValue()))
+				size++;
+		}
+		if (otherValues != null)
+			size += otherValues.size();
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet()
+	{
+		HashMap<String, Object> allValues = new HashMap<>();
+		for (Map.Entry<String, Integer> entry : slots.entrySet())
+		{
+			int slot = entry.getValue().intValue();
+			if (isSlotSet(slot))
+				allValues.put(entry.getKey(), getSlot(slot));
+		}
+		if (otherValues != null)
+			allValues.putAll(otherValues);
+		return Collections.unmodifiableMap(allValues).entrySet();
+	}
+}
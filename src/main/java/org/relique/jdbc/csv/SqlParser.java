@@ -35,6 +35,7 @@ public class SqlParser
 	 */
 	private List<String> tableNames;
 	private List<String> tableAliases;
+	private List<ParsedTable> tableEntries;
 
 	/**
 	 * Description of the Field
@@ -96,6 +97,16 @@ public class SqlParser
 		return tableAliases;
 	}
 
+	/**
+	 * Gets the tables in the FROM clause, with the type and condition of any JOIN.
+	 *
+	 * @return The table entries
+	 */
+	List<ParsedTable> getTableEntries()
+	{
+		return tableEntries;
+	}
+
 	/**
 	 * Gets the columnNames attribute of the SqlParser object
 	 *
@@ -176,6 +187,7 @@ public class SqlParser
 
 		this.tableNames = new ArrayList<>();
 		this.tableAliases = new ArrayList<>();
+		this.tableEntries = parsedStatement.tableEntries;
 		for (ParsedTable parsedTable : parsedStatement.tableEntries)
 		{
 			if (parsedTable.isDerivedTable())
@@ -185,6 +197,19 @@ public class SqlParser
 				 */
 				throw new SQLException(CsvResources.getString("derivedTableNotSupported"));
 			}
+			LogicalExpression joinClause = parsedTable.getJoinClause();
+			if (joinClause != null)
+			{
+				/*
+				 * JOIN condition must be logical expression such as A.ID = B.ID.
+				 */
+				if (!(joinClause instanceof ParsedExpression &&
+					((ParsedExpression)joinClause).content instanceof LogicalExpression &&
+					joinClause.isValid()))
+				{
+					throw new SQLException(CsvResources.getString("joinNotLogical"));
+				}
+			}
 			tableNames.add(parsedTable.getTableName());
 			tableAliases.add(parsedTable.getTableAlias());
 		}
@@ -57,13 +57,17 @@ public class StringConverter
 	 */
 	public static final String COLUMN_NAME = "@STRINGCONVERTER";
 
+	/*
+	 * SimpleDateFormat and GregorianCalendar are not thread-safe, and rows may
+	 * be converted on several threads, so each thread uses its own copy.
+	 */
 	private String dateFormat;
-	private SimpleDateFormat simpleTimeFormat;
+	private ThreadLocal<SimpleDateFormat> simpleTimeFormat;
 	private String timeFormat;
-	private GregorianCalendar calendar;
+	private ThreadLocal<GregorianCalendar> calendar;
 	private Pattern timestampPattern;
-	private SimpleDateFormat timestampFormat;
-	private SimpleDateFormat simpleDateFormat;
+	private ThreadLocal<SimpleDateFormat> timestampFormat;
+	private ThreadLocal<SimpleDateFormat> simpleDateFormat;
 	private int currentYear;
 	private DecimalFormatSymbols decimalFormatSymbols;
 
@@ -72,6 +76,21 @@ public class StringConverter
 	DateTimeFormatter timeFormatter;
 	DateTimeFormatter timestampFormatter;
 
+	/**
+	 * Converts string values of a column to one SQL data type, so that the
+	 * data type of each column is only looked up once and not for every value.
+	 */
+	public interface ColumnConverter
+	{
+		Object convert(String stringRepresentation);
+	}
+
+	/** No conversion, for columns with type String or an unknown type. */
+	private static final ColumnConverter STRING_CONVERTER = str -> str;
+
+	/** Lookup from lower-case SQL type names to converter for that type. */
+	private Map<String, ColumnConverter> columnConverters;
+
 	public StringConverter(String dateformat, String timeformat, String timestampformat,
 		String timeZoneName, boolean useDateTimeFormatter)
 	{
@@ -133,11 +152,11 @@ public class StringConverter
 					if (locale != null)
 					{
 						DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
-						simpleDateFormat = new SimpleDateFormat(dateformat, symbols);
+						simpleDateFormat = perThread(new SimpleDateFormat(dateformat, symbols));
 					}
 					else
 					{
-						simpleDateFormat = new SimpleDateFormat(dateformat);
+						simpleDateFormat = perThread(new SimpleDateFormat(dateformat));
 					}
 				}
 			}
@@ -156,11 +175,11 @@ public class StringConverter
 			if (locale != null)
 			{
 				DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
-				simpleTimeFormat = new SimpleDateFormat(timeformat, symbols);
+				simpleTimeFormat = perThread(new SimpleDateFormat(timeformat, symbols));
 			}
 			else
 			{
-				simpleTimeFormat = new SimpleDateFormat(timeformat);
+				simpleTimeFormat = perThread(new SimpleDateFormat(timeformat));
 			}
 		}
 
@@ -173,26 +192,29 @@ public class StringConverter
 		else
 		{
 			TimeZone timeZone = TimeZone.getTimeZone(timeZoneName);
-			calendar = new GregorianCalendar();
-			calendar.setTimeInMillis(System.currentTimeMillis());
-			currentYear = calendar.get(Calendar.YEAR);
-			calendar.clear();
-			calendar.setTimeZone(timeZone);
+			GregorianCalendar gregorianCalendar = new GregorianCalendar();
+			gregorianCalendar.setTimeInMillis(System.currentTimeMillis());
+			currentYear = gregorianCalendar.get(Calendar.YEAR);
+			gregorianCalendar.clear();
+			gregorianCalendar.setTimeZone(timeZone);
+			calendar = ThreadLocal.withInitial(() -> (GregorianCalendar)gregorianCalendar.clone());
 			if (timestampformat != null && timestampformat.length() > 0)
 			{
 				/*
 				 * Use Java API for parsing dates and times.
 				 */
+				SimpleDateFormat format;
 				if (locale != null)
 				{
 					DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
-					timestampFormat = new SimpleDateFormat(timestampformat, symbols);
+					format = new SimpleDateFormat(timestampformat, symbols);
 				}
 				else
 				{
-					timestampFormat = new SimpleDateFormat(timestampformat);
+					format = new SimpleDateFormat(timestampformat);
 				}
-				timestampFormat.setTimeZone(timeZone);
+				format.setTimeZone(timeZone);
+				timestampFormat = perThread(format);
 			}
 			else
 			{
@@ -208,6 +230,31 @@ public class StringConverter
 		{
 			decimalFormatSymbols = new DecimalFormatSymbols(locale);
 		}
+
+		columnConverters = new HashMap<>();
+		columnConverters.put("string", STRING_CONVERTER);
+		columnConverters.put("boolean", this::parseBoolean);
+		columnConverters.put("byte", this::parseByte);
+		columnConverters.put("short", this::parseShort);
+		columnConverters.put("int", this::parseInt);
+		columnConverters.put("integer", this::parseInt);
+		columnConverters.put("long", this::parseLong);
+		columnConverters.put("float", this::parseFloat);
+		columnConverters.put("double", this::parseDouble);
+		columnConverters.put("bigdecimal", this::parseBigDecimal);
+		columnConverters.put("date", this::parseDate);
+		columnConverters.put("time", this::parseTime);
+		columnConverters.put("timestamp", this::parseTimestamp);
+		columnConverters.put("asciistream", this::parseAsciiStream);
+	}
+
+	/**
+	 * Give each thread its own copy of a date format, so that
+	 * values can be converted on several threads at the same time.
+	 */
+	private static ThreadLocal<SimpleDateFormat> perThread(SimpleDateFormat format)
+	{
+		return ThreadLocal.withInitial(() -> (SimpleDateFormat)format.clone());
 	}
 
 	private DateTimeFormatter createFormatter(String pattern, Locale locale, String timeZoneName)
@@ -488,7 +535,7 @@ public class StringConverter
 				}
 				if (simpleDateFormat != null)
 				{
-					java.util.Date parsedDate = simpleDateFormat.parse(str);
+					java.util.Date parsedDate = simpleDateFormat.get().parse(str);
 					long millis = parsedDate.getTime();
 					sqlResult = new Date(millis);
 					return sqlResult;
@@ -522,7 +569,7 @@ public class StringConverter
 			}
 			else if (simpleDateFormat != null)
 			{
-				formatted = simpleDateFormat.format(d);
+				formatted = simpleDateFormat.get().format(d);
 			}
 			else
 			{
@@ -591,7 +638,7 @@ public class StringConverter
 					{
 						str = "0" + str;
 					} 
-					java.util.Date parsedDate = simpleTimeFormat.parse(str);
+					java.util.Date parsedDate = simpleTimeFormat.get().parse(str);
 					long millis = parsedDate.getTime();
 					sqlResult = new Time(millis);
 				}
@@ -621,7 +668,7 @@ public class StringConverter
 			}
 			else
 			{
-				formatted = simpleTimeFormat.format(t);
+				formatted = simpleTimeFormat.get().format(t);
 			}
 		}
 		return formatted;
@@ -641,7 +688,7 @@ public class StringConverter
 				}
 				else if (timestampFormat != null)
 				{
-					java.util.Date date = timestampFormat.parse(str);
+					java.util.Date date = timestampFormat.get().parse(str);
 					result = new Timestamp(date.getTime());
 				}
 				else
@@ -655,8 +702,9 @@ public class StringConverter
 						int hours = Integer.parseInt(matcher.group(4));
 						int minutes = Integer.parseInt(matcher.group(5));
 						int seconds = Integer.parseInt(matcher.group(6));
-						calendar.set(year, month, date, hours, minutes, seconds);
-						result = new Timestamp(calendar.getTimeInMillis());
+						GregorianCalendar gregorianCalendar = calendar.get();
+						gregorianCalendar.set(year, month, date, hours, minutes, seconds);
+						result = new Timestamp(gregorianCalendar.getTimeInMillis());
 					}
 				}
 			}
@@ -685,17 +733,18 @@ public class StringConverter
 			}
 			else if (timestampFormat != null)
 			{
-				formatted = timestampFormat.format(timestamp);
+				formatted = timestampFormat.get().format(timestamp);
 			}
 			else
 			{
-				calendar.setTime(timestamp);
-				int year = calendar.get(Calendar.YEAR);
-				int month = calendar.get(Calendar.MONTH) + 1;
-				int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-				int hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
-				int minutes = calendar.get(Calendar.MINUTE);
-				int seconds = calendar.get(Calendar.SECOND);
+				GregorianCalendar gregorianCalendar = calendar.get();
+				gregorianCalendar.setTime(timestamp);
+				int year = gregorianCalendar.get(Calendar.YEAR);
+				int month = gregorianCalendar.get(Calendar.MONTH) + 1;
+				int dayOfMonth = gregorianCalendar.get(Calendar.DAY_OF_MONTH);
+				int hourOfDay = gregorianCalendar.get(Calendar.HOUR_OF_DAY);
+				int minutes = gregorianCalendar.get(Calendar.MINUTE);
+				int seconds = gregorianCalendar.get(Calendar.SECOND);
 				formatted = String.format("%04d-%02d-%02d %02d:%02d:%02d",
 					Integer.valueOf(year),
 					Integer.valueOf(month),
@@ -738,40 +787,44 @@ public class StringConverter
 	};
 
 	public Object convert(String sqlTypeName, String stringRepresentation)
+	{
+		return getColumnConverter(sqlTypeName).convert(stringRepresentation);
+	}
+
+	/**
+	 * Get converter for values of an SQL data type.
+	 * 
+	 * @param sqlTypeName
+	 *            name of SQL data type, or null.
+	 * @return converter, returning values unchanged for types String and
+	 *         null and for unknown types.
+	 */
+	public ColumnConverter getColumnConverter(String sqlTypeName)
 	{
 		/*
 		 * No need to do a conversion if desired type is also a string.
 		 */
 		if (sqlTypeName == null)
-			return stringRepresentation;
-		else if (sqlTypeName.equalsIgnoreCase("string"))
-			return stringRepresentation;
-		else if (sqlTypeName.equalsIgnoreCase("boolean"))
-			return parseBoolean(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("byte"))
-			return parseByte(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("short"))
-			return parseShort(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("int") || sqlTypeName.equalsIgnoreCase("integer"))
-			return parseInt(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("long"))
-			return parseLong(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("float"))
-			return parseFloat(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("double"))
-			return parseDouble(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("bigdecimal"))
-			return parseBigDecimal(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("date"))
-			return parseDate(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("time"))
-			return parseTime(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("timestamp"))
-			return parseTimestamp(stringRepresentation);
-		else if (sqlTypeName.equalsIgnoreCase("asciistream"))
-			return parseAsciiStream(stringRepresentation);
-		else
-			return stringRepresentation;
+			return STRING_CONVERTER;
+		ColumnConverter columnConverter = columnConverters.get(sqlTypeName.toLowerCase(Locale.US));
+		if (columnConverter == null)
+			columnConverter = STRING_CONVERTER;
+		return columnConverter;
+	}
+
+	/**
+	 * Get converter for values of each column.
+	 * 
+	 * @param sqlTypeNames
+	 *            name of SQL data type of each column.
+	 * @return converter for each column.
+	 */
+	public ColumnConverter[] getColumnConverters(String[] sqlTypeNames)
+	{
+		ColumnConverter[] retval = new ColumnConverter[sqlTypeNames.length];
+		for (int i = 0; i < retval.length; i++)
+			retval[i] = getColumnConverter(sqlTypeNames[i]);
+		return retval;
 	}
 
 	public Class<?> forSQLName(String sqlTypeName)
@@ -20,6 +20,10 @@ package org.relique.jdbc.csv;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +33,28 @@ class SubQueryExpression extends Expression
 {
 	private ParsedStatement parsedStatement;
 
+	/*
+	 * Results of a sub-query that does not use any columns from the parent
+	 * SQL statement are the same for every row of the parent, so they are
+	 * read once each time the parent statement is executed.
+	 */
+	private CsvStatement cachedStatement = null;
+	private int cachedExecutionCount;
+	private boolean isCorrelated;
+	private List<Object> cachedValues;
+	private HashedValues cachedValueSet;
+
+	/*
+	 * A sub-query such as EXISTS (SELECT 1 FROM B WHERE B.K = A.K) that only
+	 * uses columns from the parent SQL statement in equality comparisons
+	 * is read once too, and its values stored by the values of B.K.  Each row
+	 * of the parent then finds its values using A.K.  Each row of the sub-query
+	 * is stored as its B.K values followed by its value, by the hash values of B.K.
+	 */
+	private List<Expression> outerKeyExpressions;
+	private Map<List<Object>, List<Object[]>> valuesByKey;
+	private List<Set<Class<?>>> innerKeyClasses;
+
 	public SubQueryExpression(ParsedStatement parsedStatement)
 	{
 		this.parsedStatement = parsedStatement;
@@ -51,6 +77,39 @@ class SubQueryExpression extends Expression
 		return rowMatcherValues.get(0);
 	}
 
+	/**
+	 * Evaluate sub-query for SELECT ... WHERE X1 IN (SELECT X2 FROM ... ).
+	 *
+	 * @param env environment of row from parent SQL statement.
+	 * @param objValue value to find in sub-query results.
+	 * @return true if value is returned by sub-query.
+	 * @throws SQLException if sub-query fails.
+	 */
+	public boolean evalIn(Map<String, Object> env, Comparable objValue) throws SQLException
+	{
+		List<Object> values = getCachedValues(env);
+		if (values == null)
+			return evalList(env, new InExpressionSubQueryRowMatcher(env, objValue));
+
+		if (isCorrelated)
+		{
+			/*
+			 * Only the few values for this row of the parent need to be checked.
+			 */
+			InExpressionSubQueryRowMatcher rowMatcher = new InExpressionSubQueryRowMatcher(env, objValue);
+			for (Object value : values)
+			{
+				if (rowMatcher.matches(value))
+					return true;
+			}
+			return false;
+		}
+
+		if (cachedValueSet == null)
+			cachedValueSet = new HashedValues(values);
+		return cachedValueSet.contains(objValue, env);
+	}
+
 	public boolean evalList(Map<String, Object> env, SubQueryRowMatcher rowMatcher) throws SQLException
 	{
 		/*
@@ -62,6 +121,319 @@ class SubQueryExpression extends Expression
 		 */
 		boolean matches = false;
 
+		List<Object> values = getCachedValues(env);
+		if (values != null)
+		{
+			for (Object o : values)
+			{
+				if (rowMatcher.matches(o))
+					return true;
+			}
+			return false;
+		}
+
+		try (ResultSet resultSet = executeSubQuery(env))
+		{
+			/*
+			 * Go through sub-query ResultSet sequentially until we find a row
+			 * that causes outer/parent SQL statement to be evaluated to true or false.
+			 */
+			while (!matches && resultSet.next())
+			{
+				Object o = resultSet.getObject(1);
+				matches = rowMatcher.matches(o);
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Get all rows of sub-query, reading them the first time the sub-query is
+	 * evaluated each time the parent SQL statement is executed.
+	 *
+	 * @param env environment of row from parent SQL statement.
+	 * @return values of sub-query for this row of parent SQL statement, or null
+	 *         if sub-query must be executed again for this row.
+	 * @throws SQLException if sub-query fails.
+	 */
+	private List<Object> getCachedValues(Map<String, Object> env) throws SQLException
+	{
+		Expression expr = new ColumnName(CsvStatement.STATEMENT_COLUMN_NAME);
+		CsvStatement statement = (CsvStatement) expr.eval(env);
+
+		if (statement != cachedStatement || statement.getExecutionCount() != cachedExecutionCount)
+		{
+			cachedStatement = null;
+			cachedValues = null;
+			cachedValueSet = null;
+			outerKeyExpressions = null;
+			valuesByKey = null;
+			innerKeyClasses = null;
+
+			List<Object> values = null;
+			boolean correlated;
+			ParsedStatement decorrelatedStatement = null;
+			try (ResultSet resultSet = executeSubQuery(env))
+			{
+				List<String> usedColumns = parsedStatement.usedColumns(env.keySet());
+				correlated = !(resultSet instanceof CsvResultSet) ||
+					((CsvResultSet)resultSet).usesParentColumns(usedColumns);
+				if (correlated && resultSet instanceof CsvResultSet)
+					decorrelatedStatement = decorrelate((CsvResultSet)resultSet, env);
+				if (decorrelatedStatement == null)
+				{
+					/*
+					 * A correlated sub-query that cannot be read once is
+					 * executed again for each later row of the parent, but
+					 * the values already read are used for this row.
+					 */
+					values = new ArrayList<>();
+					while (resultSet.next())
+						values.add(resultSet.getObject(1));
+				}
+			}
+
+			if (decorrelatedStatement != null)
+				readValuesByKey(decorrelatedStatement, env);
+
+			cachedStatement = statement;
+			cachedExecutionCount = statement.getExecutionCount();
+			isCorrelated = correlated;
+			if (correlated)
+				return (decorrelatedStatement != null) ? getValuesForKey(env) : values;
+			cachedValues = values;
+		}
+
+		if (!isCorrelated)
+			return cachedValues;
+		if (outerKeyExpressions != null)
+			return getValuesForKey(env);
+		return null;
+	}
+
+	/**
+	 * Create a sub-query without any columns from the parent SQL statement,
+	 * returning the values of the sub-query and also the sub-query side of each
+	 * equality comparison with the parent.
+	 *
+	 * @param resultSet sub-query executed for one row of parent.
+	 * @param env environment of row from parent SQL statement.
+	 * @return sub-query to read once, or null if sub-query cannot be
+	 *         separated from the parent SQL statement.
+	 */
+	private ParsedStatement decorrelate(CsvResultSet resultSet, Map<String, Object> env)
+	{
+		if (parsedStatement.isDistinct || parsedStatement.limitExp != null ||
+			parsedStatement.offsetExp != null || parsedStatement.havingClause != null ||
+			parsedStatement.whereClause == null || parsedStatement.queryEntries.size() != 1 ||
+			(parsedStatement.groupByEntries != null && !parsedStatement.groupByEntries.isEmpty()) ||
+			!parsedStatement.aggregateFunctions().isEmpty())
+		{
+			return null;
+		}
+
+		Expression queryExpression = ((QueryEnvEntry)parsedStatement.queryEntries.get(0).content).getExpression();
+		if (queryExpression instanceof AsteriskExpression ||
+			!isSubQueryExpression(queryExpression, resultSet, env))
+		{
+			return null;
+		}
+
+		List<LogicalExpression> conditions = new ArrayList<>();
+		addConditions(parsedStatement.whereClause.content, conditions);
+
+		List<Expression> outerExpressions = new ArrayList<>();
+		List<Expression> innerExpressions = new ArrayList<>();
+		Expression innerCondition = null;
+		for (LogicalExpression condition : conditions)
+		{
+			if (isSubQueryExpression(condition, resultSet, env))
+			{
+				if (innerCondition == null)
+					innerCondition = condition;
+				else
+					innerCondition = new AndExpression(innerCondition, condition);
+			}
+			else if (condition instanceof RelopExpression && ((RelopExpression)condition).op.equals("="))
+			{
+				RelopExpression relop = (RelopExpression)condition;
+				if (isParentExpression(relop.left, resultSet, env) &&
+					isSubQueryExpression(relop.right, resultSet, env))
+				{
+					outerExpressions.add(relop.left);
+					innerExpressions.add(relop.right);
+				}
+				else if (isParentExpression(relop.right, resultSet, env) &&
+					isSubQueryExpression(relop.left, resultSet, env))
+				{
+					outerExpressions.add(relop.right);
+					innerExpressions.add(relop.left);
+				}
+				else
+				{
+					return null;
+				}
+			}
+			else
+			{
+				return null;
+			}
+		}
+		if (outerExpressions.isEmpty())
+			return null;
+
+		List<ParsedExpression> queryEntries = new ArrayList<>();
+		queryEntries.add(new ParsedExpression(new QueryEnvEntry("@VALUE", queryExpression)));
+		for (int i = 0; i < innerExpressions.size(); i++)
+			queryEntries.add(new ParsedExpression(new QueryEnvEntry("@KEY" + (i + 1), innerExpressions.get(i))));
+		ParsedExpression whereClause = (innerCondition != null) ? new ParsedExpression(innerCondition) : null;
+
+		this.outerKeyExpressions = outerExpressions;
+		return new ParsedStatement(queryEntries, false, parsedStatement.tableEntries,
+			whereClause, new ArrayList<>(), null, new ArrayList<>(), null, null);
+	}
+
+	private static void addConditions(Expression expression, List<LogicalExpression> conditions)
+	{
+		if (expression instanceof AndExpression)
+		{
+			addConditions(((AndExpression)expression).left, conditions);
+			addConditions(((AndExpression)expression).right, conditions);
+		}
+		else if (expression instanceof ParsedExpression)
+		{
+			addConditions(((ParsedExpression)expression).content, conditions);
+		}
+		else
+		{
+			conditions.add((LogicalExpression)expression);
+		}
+	}
+
+	/**
+	 * Check that an expression does not use any columns from the parent SQL statement.
+	 */
+	private static boolean isSubQueryExpression(Expression expression, CsvResultSet resultSet,
+		Map<String, Object> env)
+	{
+		return !resultSet.usesParentColumns(expression.usedColumns(env.keySet()));
+	}
+
+	/**
+	 * Check that an expression only uses columns from the parent SQL statement.
+	 */
+	private static boolean isParentExpression(Expression expression, CsvResultSet resultSet,
+		Map<String, Object> env)
+	{
+		if (expression instanceof SubQueryExpression || !expression.aggregateFunctions().isEmpty())
+			return false;
+		List<String> usedColumns = expression.usedColumns(env.keySet());
+		if (usedColumns.isEmpty())
+			return false;
+		for (String usedColumn : usedColumns)
+		{
+			if (!resultSet.usesParentColumns(List.of(usedColumn)))
+				return false;
+		}
+		return true;
+	}
+
+	private void readValuesByKey(ParsedStatement decorrelatedStatement,
+		Map<String, Object> env) throws SQLException
+	{
+		SqlParser sqlParser = new SqlParser();
+		sqlParser.setParsedStatement(decorrelatedStatement);
+
+		Expression expr = new ColumnName(CsvStatement.STATEMENT_COLUMN_NAME);
+		CsvStatement statement = (CsvStatement) expr.eval(env);
+
+		int nKeys = outerKeyExpressions.size();
+		valuesByKey = new HashMap<>();
+		innerKeyClasses = new ArrayList<>();
+		for (int i = 0; i < nKeys; i++)
+			innerKeyClasses.add(new HashSet<>());
+
+		try (ResultSet resultSet = statement.executeParsedQuery(sqlParser, env))
+		{
+			while (resultSet.next())
+			{
+				List<Object> key = new ArrayList<>(nKeys);
+				Object[] row = new Object[nKeys + 1];
+				for (int i = 0; i < nKeys; i++)
+				{
+					Object keyValue = resultSet.getObject(i + 2);
+					if (keyValue == null)
+					{
+						/*
+						 * NULL is never equal to anything in the parent.
+						 */
+						key = null;
+						break;
+					}
+					innerKeyClasses.get(i).add(getHashClass(keyValue));
+					key.add(HashedValues.getHashValue(keyValue));
+					row[i] = keyValue;
+				}
+				if (key != null)
+				{
+					row[nKeys] = resultSet.getObject(1);
+					valuesByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+				}
+			}
+		}
+	}
+
+	private List<Object> getValuesForKey(Map<String, Object> env) throws SQLException
+	{
+		int nKeys = outerKeyExpressions.size();
+		List<Object> key = new ArrayList<>(nKeys);
+		Object[] keyValues = new Object[nKeys];
+		for (int i = 0; i < nKeys; i++)
+		{
+			Object keyValue = outerKeyExpressions.get(i).eval(env);
+			if (keyValue == null)
+				return Collections.emptyList();
+
+			/*
+			 * Values of different types, such as a date and a string, can still
+			 * be equal, so execute the sub-query for this row if the types differ.
+			 */
+			Set<Class<?>> classes = innerKeyClasses.get(i);
+			if (classes.size() > 1 || (classes.size() == 1 && !classes.contains(getHashClass(keyValue))))
+				return null;
+			key.add(HashedValues.getHashValue(keyValue));
+			keyValues[i] = keyValue;
+		}
+		List<Object[]> rows = valuesByKey.get(key);
+		if (rows == null)
+			return Collections.emptyList();
+
+		/*
+		 * Values that are not equal can have the same hash value,
+		 * so check the keys of each row again.
+		 */
+		List<Object> values = new ArrayList<>(rows.size());
+		for (Object[] row : rows)
+		{
+			boolean isEqual = true;
+			for (int i = 0; i < nKeys && isEqual; i++)
+				isEqual = HashedValues.isEqual(row[i], keyValues[i], env);
+			if (isEqual)
+				values.add(row[nKeys]);
+		}
+		return values;
+	}
+
+	private static Class<?> getHashClass(Object value)
+	{
+		if (value instanceof Number)
+			return Number.class;
+		return value.getClass();
+	}
+
+	private ResultSet executeSubQuery(Map<String, Object> env) throws SQLException
+	{
 		/*
 		 * Clear query expressions so that any aggregate functions are calculated
 		 * independently each time this SQL statement is executed.
@@ -77,23 +449,13 @@ class SubQueryExpression extends Expression
 		Expression expr = new ColumnName(CsvStatement.STATEMENT_COLUMN_NAME);
 		CsvStatement statement = (CsvStatement) expr.eval(env);
 
-		try (ResultSet resultSet = statement.executeParsedQuery(sqlParser, env))
+		ResultSet resultSet = statement.executeParsedQuery(sqlParser, env);
+		if (resultSet.getMetaData().getColumnCount() != 1)
 		{
-			if (resultSet.getMetaData().getColumnCount() != 1)
-				throw new SQLException(CsvResources.getString("subqueryOneColumn"));
-
-			/*
-			 * Go through sub-query ResultSet sequentially until we find a row
-			 * that causes outer/parent SQL statement to be evaluated to true or false.
-			 */
-			while (!matches && resultSet.next())
-			{
-				Object o = resultSet.getObject(1);
-				matches = rowMatcher.matches(o);
-			}
+			resultSet.close();
+			throw new SQLException(CsvResources.getString("subqueryOneColumn"));
 		}
-
-		return matches;
+		return resultSet;
 	}
 	@Override
 	public String toString()
@@ -0,0 +1,116 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tables read by earlier queries of a connection, kept in memory so that
+ * small tables that are queried often are not read again from file.
+ *
+ * When the estimated memory used by all tables is more than the maximum
+ * size, the least recently used tables are removed.  A table is removed
+ * when the size or modification time of its file changes.
+ */
+class TableCache
+{
+	private long maxSize;
+	private long size = 0;
+
+	/** Tables in order of use, least recently used first. */
+	private LinkedHashMap<String, CachedTable> tables = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Create cache.
+	 * @param maxSize maximum estimated number of bytes of memory used by tables.
+	 */
+	public TableCache(long maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+
+	public long getMaxSize()
+	{
+		return maxSize;
+	}
+
+	private static String getKey(String fileName, String signature)
+	{
+		return fileName + "|" + signature;
+	}
+
+	/**
+	 * Get a table, if all its rows have already been read.
+	 * @param fileName name of CSV file.
+	 * @param signature properties used to read the CSV file.
+	 * @return table, or null if table is not in cache.
+	 */
+	public synchronized CachedTable get(String fileName, String signature)
+	{
+		String key = getKey(fileName, signature);
+		CachedTable table = tables.get(key);
+		if (table != null)
+		{
+			File file = new File(fileName);
+			if (file.length() != table.getFileSize() || file.lastModified() != table.getLastModified())
+			{
+				/*
+				 * File has changed since it was read.
+				 */
+				tables.remove(key);
+				size -= table.getSize();
+				table = null;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Add a table, after all its rows have been read.
+	 * @param table table to add.
+	 */
+	public synchronized void put(CachedTable table)
+	{
+		if (table.getSize() > maxSize)
+			return;
+		CachedTable previous = tables.put(getKey(table.getFileName(), table.getSignature()), table);
+		if (previous != null)
+			size -= previous.getSize();
+		size += table.getSize();
+
+		Iterator<Map.Entry<String, CachedTable>> it = tables.entrySet().iterator();
+		while (size > maxSize && it.hasNext())
+		{
+			CachedTable leastRecentlyUsed = it.next().getValue();
+			size -= leastRecentlyUsed.getSize();
+			it.remove();
+		}
+		CsvDriver.writeLog("Table cache: " + tables.size() + " tables, " + size + " bytes");
+	}
+
+	/**
+	 * Remove all tables.
+	 */
+	public synchronized void clear()
+	{
+		tables.clear();
+		size = 0;
+	}
+}
@@ -0,0 +1,374 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimum value, maximum value and number of NULL values of each column
+ * for each block of rows in a CSV file, so that blocks containing no rows
+ * matching the SQL WHERE clause can be skipped without being read.
+ *
+ * The values are found while the whole file is read and are saved in a
+ * file next to the CSV file, so that they can be used by later queries.
+ * The file is ignored and replaced if the size or modification time of
+ * the CSV file changes, or if it was created with different properties
+ * or column types for reading the file.
+ */
+class ZoneMap
+{
+	/** File name suffix of zone map files. */
+	public static final String FILE_SUFFIX = ".zmp";
+
+	private static final int MAGIC = 0x43535A4D;
+	private static final int VERSION = 1;
+
+	/**
+	 * Only the types of column values are read from zone map files.
+	 */
+	private static final ObjectInputFilter VALUE_FILTER = ObjectInputFilter.Config.createFilter(
+		"java.lang.*;java.math.*;java.sql.*;java.time.*;java.util.Date;!*");
+
+	/**
+	 * Values of one block of rows.
+	 */
+	private static class Block
+	{
+		long offset;
+		int lineNumber;
+		int rowCount;
+		Object[] minValues;
+		Object[] maxValues;
+		int[] nullCounts;
+	}
+
+	private File zoneMapFile;
+	private long fileSize;
+	private long lastModified;
+	private String signature;
+	private int interval;
+	private String[] columnTypes = null;
+
+	/** Columns with values that cannot be compared with each other. */
+	private boolean[] unusableColumns = null;
+	private List<Block> blocks = new ArrayList<>();
+	private long endOffset;
+	private int endLineNumber;
+	private boolean complete = false;
+	private boolean changed = false;
+
+	private ZoneMap(File zoneMapFile, long fileSize, long lastModified,
+		String signature, int interval)
+	{
+		this.zoneMapFile = zoneMapFile;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.signature = signature;
+		this.interval = interval;
+	}
+
+	/**
+	 * Open the zone map for a CSV file, reading any saved values.
+	 * @param fileName name of CSV file.
+	 * @param signature properties used to read the CSV file.
+	 * @param interval number of rows in each block.
+	 * @return zone map for file.
+	 */
+	public static ZoneMap open(String fileName, String signature, int interval)
+	{
+		File file = new File(fileName);
+		ZoneMap zoneMap = new ZoneMap(new File(fileName + FILE_SUFFIX),
+			file.length(), file.lastModified(), signature, interval);
+		if (zoneMap.zoneMapFile.exists())
+		{
+			try
+			{
+				zoneMap.load();
+			}
+			catch (IOException | ClassNotFoundException | ClassCastException e)
+			{
+				CsvDriver.writeLog("Ignoring zone map " + zoneMap.zoneMapFile + ": " + e);
+				zoneMap.clear();
+			}
+		}
+		return zoneMap;
+	}
+
+	private void load() throws IOException, ClassNotFoundException
+	{
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+			new FileInputStream(zoneMapFile))))
+		{
+			in.setObjectInputFilter(VALUE_FILTER);
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+				in.readLong() != fileSize || in.readLong() != lastModified ||
+				!in.readUTF().equals(signature) || in.readInt() != interval)
+			{
+				/*
+				 * CSV file has changed since the zone map was saved.
+				 */
+				return;
+			}
+			columnTypes = (String[])in.readObject();
+			unusableColumns = (boolean[])in.readObject();
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+			{
+				Block block = new Block();
+				block.offset = in.readLong();
+				block.lineNumber = in.readInt();
+				block.rowCount = in.readInt();
+				block.minValues = (Object[])in.readObject();
+				block.maxValues = (Object[])in.readObject();
+				block.nullCounts = (int[])in.readObject();
+				blocks.add(block);
+			}
+			endOffset = in.readLong();
+			endLineNumber = in.readInt();
+			complete = true;
+		}
+	}
+
+	/**
+	 * Save values in zone map file, if it was created by reading all rows
+	 * of the CSV file.
+	 */
+	public void save()
+	{
+		if (!complete || !changed)
+			return;
+		changed = false;
+		File tempFile = null;
+		try
+		{
+			tempFile = File.createTempFile("csvjdbc", ".tmp", zoneMapFile.getAbsoluteFile().getParentFile());
+			try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(fileSize);
+				out.writeLong(lastModified);
+				out.writeUTF(signature);
+				out.writeInt(interval);
+				out.writeObject(columnTypes);
+				out.writeObject(unusableColumns);
+				out.writeInt(blocks.size());
+				for (Block block : blocks)
+				{
+					out.writeLong(block.offset);
+					out.writeInt(block.lineNumber);
+					out.writeInt(block.rowCount);
+					out.writeObject(block.minValues);
+					out.writeObject(block.maxValues);
+					out.writeObject(block.nullCounts);
+				}
+				out.writeLong(endOffset);
+				out.writeInt(endLineNumber);
+			}
+			Files.move(tempFile.toPath(), zoneMapFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			tempFile = null;
+		}
+		catch (IOException | SecurityException e)
+		{
+			/*
+			 * Zone map files are optional, so continue without one if the
+			 * directory is not writable.
+			 */
+			CsvDriver.writeLog("Cannot save zone map " + zoneMapFile + ": " + e);
+		}
+		finally
+		{
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Remove all values, so that the zone map is created again.
+	 */
+	public void clear()
+	{
+		blocks.clear();
+		unusableColumns = null;
+		complete = false;
+		changed = false;
+	}
+
+	/**
+	 * Set the column types used to convert the values in the zone map,
+	 * discarding any saved values that were converted to other types.
+	 * @param columnTypes data type of each column.
+	 */
+	public void setColumnTypes(String[] columnTypes)
+	{
+		if (complete && !Arrays.equals(this.columnTypes, columnTypes))
+			clear();
+		this.columnTypes = columnTypes.clone();
+		if (unusableColumns == null)
+			unusableColumns = new boolean[columnTypes.length];
+	}
+
+	/**
+	 * @return true if the zone map contains values for all rows in the file.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * Start a new block of rows, when creating the zone map.
+	 * @param offset byte position in file of first row of block.
+	 * @param lineNumber number of lines before first row of block.
+	 */
+	public void addBlock(long offset, int lineNumber)
+	{
+		Block block = new Block();
+		block.offset = offset;
+		block.lineNumber = lineNumber;
+		block.minValues = new Object[columnTypes.length];
+		block.maxValues = new Object[columnTypes.length];
+		block.nullCounts = new int[columnTypes.length];
+		blocks.add(block);
+	}
+
+	/**
+	 * Add the values of a row to the last block, when creating the zone map.
+	 * @param values column values, converted to the column types.
+	 */
+	public void addRow(Object[] values)
+	{
+		Block block = blocks.get(blocks.size() - 1);
+		block.rowCount++;
+		for (int i = 0; i < values.length; i++)
+		{
+			Object value = values[i];
+			if (value == null)
+			{
+				block.nullCounts[i]++;
+			}
+			else if (!unusableColumns[i])
+			{
+				if (!(value instanceof Comparable))
+				{
+					unusableColumns[i] = true;
+				}
+				else if (block.minValues[i] == null)
+				{
+					block.minValues[i] = value;
+					block.maxValues[i] = value;
+				}
+				else if (block.minValues[i].getClass() != value.getClass())
+				{
+					unusableColumns[i] = true;
+				}
+				else
+				{
+					Comparable comparable = (Comparable)value;
+					if (comparable.compareTo(block.minValues[i]) < 0)
+						block.minValues[i] = value;
+					else if (comparable.compareTo(block.maxValues[i]) > 0)
+						block.maxValues[i] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the zone map as complete, when all rows of the file have been read.
+	 * @param offset byte position of end of file.
+	 * @param lineNumber number of lines in file.
+	 */
+	public void finish(long offset, int lineNumber)
+	{
+		endOffset = offset;
+		endLineNumber = lineNumber;
+		complete = true;
+		changed = true;
+	}
+
+	public int getBlockCount()
+	{
+		return blocks.size();
+	}
+
+	/**
+	 * @param block block number, or the number of blocks for the end of the file.
+	 * @return byte position in file of first row of block.
+	 */
+	public long getOffset(int block)
+	{
+		return (block < blocks.size()) ? blocks.get(block).offset : endOffset;
+	}
+
+	/**
+	 * @param block block number, or the number of blocks for the end of the file.
+	 * @return number of lines before first row of block.
+	 */
+	public int getLineNumber(int block)
+	{
+		return (block < blocks.size()) ? blocks.get(block).lineNumber : endLineNumber;
+	}
+
+	public int getRowCount(int block)
+	{
+		return blocks.get(block).rowCount;
+	}
+
+	/**
+	 * @param column column index.
+	 * @return true if minimum and maximum values are known for column.
+	 */
+	public boolean isUsableColumn(int column)
+	{
+		return column < unusableColumns.length && !unusableColumns[column];
+	}
+
+	public Object getMinValue(int block, int column)
+	{
+		return blocks.get(block).minValues[column];
+	}
+
+	public Object getMaxValue(int block, int column)
+	{
+		return blocks.get(block).maxValues[column];
+	}
+
+	public int getNullCount(int block, int column)
+	{
+		return blocks.get(block).nullCounts[column];
+	}
+}
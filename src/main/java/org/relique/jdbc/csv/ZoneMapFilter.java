@@ -0,0 +1,100 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the minimum and maximum column values of blocks of rows in a
+ * ZoneMap against the SQL WHERE clause, so that blocks containing no
+ * matching rows are skipped without being read.
+ *
+ * Only comparisons of a column with a constant or prepared statement
+ * parameter joined with AND are checked.  Rows from blocks that are not
+ * skipped are still checked against the whole WHERE clause.
+ */
+class ZoneMapFilter
+{
+	private List<ColumnCondition> conditions;
+	private Map<String, Object> env;
+
+	private ZoneMapFilter(List<ColumnCondition> conditions, Map<String, Object> env)
+	{
+		this.conditions = conditions;
+		this.env = env;
+	}
+
+	/**
+	 * Create filter for the rows read for a query.
+	 * @param whereClause WHERE clause of query.
+	 * @param reader reader for table.
+	 * @param converter converter used for column values.
+	 * @return filter, or null if no blocks can be skipped for this query.
+	 */
+	public static ZoneMapFilter create(LogicalExpression whereClause, CsvReader reader,
+		StringConverter converter)
+	{
+		Map<String, Object> env = new HashMap<>();
+		List<ColumnCondition> conditions = ColumnCondition.find(whereClause, reader, env);
+		if (conditions.isEmpty())
+			return null;
+		env.put(StringConverter.COLUMN_NAME, converter);
+		return new ZoneMapFilter(conditions, env);
+	}
+
+	/**
+	 * Check whether a block of rows may contain rows matching the WHERE clause.
+	 * @param zoneMap zone map of table.
+	 * @param block block number.
+	 * @return false if no rows in the block can match.
+	 */
+	public boolean mayMatch(ZoneMap zoneMap, int block)
+	{
+		for (ColumnCondition condition : conditions)
+		{
+			int column = condition.getColumn();
+			if (!zoneMap.isUsableColumn(column))
+				continue;
+			if (zoneMap.getNullCount(block, column) == zoneMap.getRowCount(block))
+			{
+				/*
+				 * Anything compared with NULL is false.
+				 */
+				return false;
+			}
+			Object minValue = zoneMap.getMinValue(block, column);
+			Object maxValue = zoneMap.getMaxValue(block, column);
+			if (!condition.isOrdered(minValue))
+				continue;
+			try
+			{
+				if (!condition.mayMatch((Comparable)minValue, (Comparable)maxValue, env))
+					return false;
+			}
+			catch (SQLException | RuntimeException e)
+			{
+				/*
+				 * Read the block, so that any error is reported for its rows.
+				 */
+			}
+		}
+		return true;
+	}
+}
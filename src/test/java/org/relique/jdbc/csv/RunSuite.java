@@ -28,6 +28,7 @@ import org.junit.platform.suite.api.Suite;
 	TestDbfDriver.class,
 	TestScrollableDriver.class,
 	TestFileSetInputStream.class,
+	TestLocalFileReader.class,
 	TestJoinedTables.class,
 	TestCryptoFilter.class,
 	TestPrepareStatement.class,
@@ -45,6 +46,14 @@ import org.junit.platform.suite.api.Suite;
 	TestFixedWidthFiles.class,
 	TestDoubleQuoting.class,
 	TestSubQuery.class,
+	TestJoin.class,
+	TestParallelScan.class,
+	TestZoneMap.class,
+	TestColumnIndex.class,
+	TestTableCache.class,
+	TestPlanCache.class,
+	TestLikePattern.class,
+	TestCsvRawReader.class,
 	TestClasspathResources.class,
 	TestTime.class
 })
@@ -0,0 +1,137 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Temporary directory of CSV files, for tests that change files or
+ * that write index files next to them, so cannot use src/testdata.
+ */
+public class TempDataDirectory
+{
+	private Path dir;
+
+	public TempDataDirectory() throws IOException
+	{
+		dir = Files.createTempDirectory("csvjdbc");
+	}
+
+	/**
+	 * @return JDBC URL for reading files in this directory.
+	 */
+	public String getUrl()
+	{
+		return "jdbc:relique:csv:" + dir;
+	}
+
+	/**
+	 * Write a file in this directory.  When a file is written again its
+	 * modification time always changes, even on file systems that only
+	 * store it to the nearest second.
+	 * @param fileName name of file.
+	 * @param contents contents of file, written as UTF-8.
+	 * @return path of file.
+	 * @throws IOException if writing fails.
+	 */
+	public Path writeFile(String fileName, String contents) throws IOException
+	{
+		Path path = dir.resolve(fileName);
+		File file = path.toFile();
+		long lastModified = file.lastModified();
+		Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+		if (lastModified != 0)
+			file.setLastModified(lastModified + 10000);
+		return path;
+	}
+
+	/**
+	 * Delete this directory and all files in it.
+	 * @throws IOException if deleting fails.
+	 */
+	public void delete() throws IOException
+	{
+		for (File file : dir.toFile().listFiles())
+			file.delete();
+		Files.delete(dir);
+	}
+
+	/**
+	 * Read all rows of a query.
+	 * @param props connection properties.
+	 * @param sql SQL query.
+	 * @return each row as its column values, each followed by a comma.
+	 * @throws SQLException if query fails.
+	 */
+	public List<String> readRows(Properties props, String sql) throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection(getUrl(), props))
+		{
+			return readRows(conn, sql);
+		}
+	}
+
+	/**
+	 * Read all rows of a query.
+	 * @param conn connection to execute query on.
+	 * @param sql SQL query.
+	 * @return each row as its column values, each followed by a comma.
+	 * @throws SQLException if query fails.
+	 */
+	public static List<String> readRows(Connection conn, String sql) throws SQLException
+	{
+		try (Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery(sql))
+		{
+			return readRows(results);
+		}
+	}
+
+	/**
+	 * Read all remaining rows of a ResultSet.
+	 * @param results ResultSet to read.
+	 * @return each row as its column values, each followed by a comma.
+	 * @throws SQLException if reading fails.
+	 */
+	public static List<String> readRows(ResultSet results) throws SQLException
+	{
+		List<String> rows = new ArrayList<>();
+		int columnCount = results.getMetaData().getColumnCount();
+		while (results.next())
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 1; i <= columnCount; i++)
+				sb.append(results.getString(i)).append(',');
+			rows.add(sb.toString());
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the indexColumns property in the CsvJdbc driver.
+ */
+public class TestColumnIndex
+{
+	private static final String[] QUERIES = {
+		"SELECT ID, LINE_NUMBER() FROM customers WHERE ID = 777",
+		"SELECT ID, LINE_NUMBER() FROM customers WHERE ID IN (3, 999, 500, 3, NULL)",
+		"SELECT ID, LINE_NUMBER() FROM customers WHERE ID BETWEEN 120 AND 130 AND NAME <> 'N5'",
+		"SELECT ID, NAME FROM customers WHERE 990 < ID",
+		"SELECT ID FROM customers WHERE ID <= 4 OR ID = 1000",
+		"SELECT ID, LINE_NUMBER() FROM customers WHERE NAME = 'N7' AND ID > 900",
+		"SELECT ID, LINE_NUMBER() FROM customers WHERE VAL = 19",
+		"SELECT ID FROM customers WHERE VAL < 2 AND ID < 400",
+		"SELECT ID FROM customers WHERE ID = 5000",
+		"SELECT COUNT(*), MAX(ID) FROM customers WHERE ID >= 333",
+		"SELECT ID FROM customers WHERE ID = 12 ORDER BY NAME"
+	};
+
+	private TempDataDirectory dir;
+	private Path csvFile;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	@BeforeEach
+	public void createFile() throws IOException
+	{
+		/*
+		 * Rows are not in ID order, and column VAL is empty in some rows.
+		 */
+		dir = new TempDataDirectory();
+		StringBuilder sb = new StringBuilder("ID,NAME,VAL\n");
+		for (int i = 1; i <= 1000; i++)
+		{
+			int id = (i * 7) % 1000 + 1;
+			sb.append(id).append(",N").append(id % 10).append(',');
+			if (id % 3 != 0)
+				sb.append(id % 20);
+			sb.append('\n');
+		}
+		csvFile = dir.writeFile("customers.csv", sb.toString());
+	}
+
+	@AfterEach
+	public void deleteFile() throws IOException
+	{
+		dir.delete();
+	}
+
+	private Properties getProperties(String indexColumns)
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,Integer");
+		if (indexColumns != null)
+			props.put("indexColumns", indexColumns);
+		return props;
+	}
+
+	@Test
+	public void testWhereClause() throws SQLException
+	{
+		File idIndexFile = new File(csvFile + ".ID" + ColumnIndex.FILE_SUFFIX);
+		File valIndexFile = new File(csvFile + ".VAL" + ColumnIndex.FILE_SUFFIX);
+
+		List<List<String>> expected = new ArrayList<>();
+		for (String sql : QUERIES)
+			expected.add(dir.readRows(getProperties(null), sql));
+		assertEquals(List.of("777,968,"), expected.get(0), "Incorrect row");
+		assertEquals(3, expected.get(1).size(), "Incorrect number of rows");
+		assertFalse(idIndexFile.exists(), "Index should not be saved");
+
+		/*
+		 * Indexes are saved by the first query with a condition on the
+		 * column and used by the following queries.
+		 */
+		for (int i = 0; i < QUERIES.length; i++)
+		{
+			assertEquals(expected.get(i), dir.readRows(getProperties("id, Name,VAL"), QUERIES[i]), QUERIES[i]);
+			assertTrue(idIndexFile.exists(), "Index not saved");
+		}
+		assertTrue(valIndexFile.exists(), "Index not saved");
+		long lastModified = idIndexFile.lastModified();
+		for (int i = 0; i < QUERIES.length; i++)
+			assertEquals(expected.get(i), dir.readRows(getProperties("id, Name,VAL"), QUERIES[i]), QUERIES[i]);
+		assertEquals(lastModified, idIndexFile.lastModified(), "Index should not be saved again");
+
+		Properties props = getProperties("ID,VAL");
+		props.put("parallelScan", "true");
+		props.put("zoneMapInterval", "100");
+		for (int i = 0; i < QUERIES.length; i++)
+			assertEquals(expected.get(i), dir.readRows(props, QUERIES[i]), QUERIES[i]);
+		for (int i = 0; i < QUERIES.length; i++)
+			assertEquals(expected.get(i), dir.readRows(props, QUERIES[i]), QUERIES[i]);
+	}
+
+	@Test
+	public void testPreparedStatement() throws SQLException
+	{
+		Properties props = getProperties(null);
+		props.put("indexColumns.customers", "ID");
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(), props);
+			PreparedStatement stmt = conn.prepareStatement(
+				"SELECT ID, NAME, LINE_NUMBER() FROM customers WHERE ID = ?"))
+		{
+			for (int id = 1; id <= 1000; id += 37)
+			{
+				stmt.setInt(1, id);
+				try (ResultSet results = stmt.executeQuery())
+				{
+					assertTrue(results.next());
+					assertEquals(id, results.getInt(1), "Incorrect ID value");
+					assertEquals("N" + (id % 10), results.getString(2), "Incorrect NAME value");
+					int lineNumber = results.getInt(3);
+					assertEquals(id, (lineNumber * 7) % 1000 + 1, "Incorrect line number");
+					assertFalse(results.next());
+				}
+			}
+		}
+		assertTrue(new File(csvFile + ".ID" + ColumnIndex.FILE_SUFFIX).exists(), "Index not saved");
+	}
+
+	@Test
+	public void testNoCondition() throws SQLException
+	{
+		assertEquals(List.of("1000,"), dir.readRows(getProperties("ID"), "SELECT COUNT(*) FROM customers"));
+		assertEquals(List.of("500,"), dir.readRows(getProperties("ID"),
+			"SELECT COUNT(*) FROM customers WHERE NAME IN ('N1', 'N3', 'N5', 'N7', 'N9')"));
+		assertFalse(new File(csvFile + ".ID" + ColumnIndex.FILE_SUFFIX).exists(),
+			"Index should only be created for a condition on the column");
+	}
+
+	@Test
+	public void testIndexCached() throws SQLException
+	{
+		File idIndexFile = new File(csvFile + ".ID" + ColumnIndex.FILE_SUFFIX);
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(), getProperties("ID")))
+		{
+			for (int id = 1; id <= 1000; id += 111)
+			{
+				try (ResultSet results = conn.createStatement().executeQuery(
+					"SELECT NAME FROM customers WHERE ID = " + id))
+				{
+					assertTrue(results.next());
+					assertEquals("N" + (id % 10), results.getString(1), "Incorrect NAME value");
+					assertFalse(results.next());
+				}
+
+				/*
+				 * Index is saved by first query, and following queries
+				 * use the index kept by the connection instead of the file.
+				 */
+				if (id == 1)
+					assertTrue(idIndexFile.delete(), "Index not saved");
+				else
+					assertFalse(idIndexFile.exists(), "Index should not be created again");
+			}
+		}
+	}
+
+	@Test
+	public void testFileChanged() throws SQLException, IOException
+	{
+		String sql = "SELECT ID, NAME FROM customers WHERE ID = 10";
+		assertEquals(List.of("10,N0,"), dir.readRows(getProperties("ID"), sql));
+		assertEquals(List.of("10,N0,"), dir.readRows(getProperties("ID"), sql));
+
+		dir.writeFile("customers.csv", "ID,NAME,VAL\n5,Five,5\n10,Ten,10\n");
+		assertEquals(List.of("10,Ten,"), dir.readRows(getProperties("ID"), sql));
+		assertEquals(List.of("10,Ten,"), dir.readRows(getProperties("ID"), sql));
+	}
+
+	private ColumnIndex createIndex(String fileName, String columnName)
+	{
+		ColumnIndex index = ColumnIndex.open(fileName, columnName, "signature");
+		index.setColumnType("Integer");
+		for (int i = 0; i < 1000; i++)
+			index.addRow(i, i * 10L, i + 2, Integer.valueOf(i));
+		index.finish(1000, 10000L, 1001);
+		return index;
+	}
+
+	@Test
+	public void testIndexCacheSize()
+	{
+		String fileName = csvFile.toString();
+		ColumnIndex idIndex = createIndex(fileName, "ID");
+		ColumnIndex valIndex = createIndex(fileName, "VAL");
+
+		/*
+		 * Cache only has memory for one of the indexes.
+		 */
+		ColumnIndexCache cache = new ColumnIndexCache(idIndex.getSize() + valIndex.getSize() - 1);
+		cache.put(idIndex);
+		assertSame(idIndex, cache.get(fileName, "ID", "signature", "Integer"));
+		cache.put(valIndex);
+		assertSame(valIndex, cache.get(fileName, "VAL", "signature", "Integer"));
+		assertNull(cache.get(fileName, "ID", "signature", "Integer"), "Least recently used index not removed");
+	}
+}
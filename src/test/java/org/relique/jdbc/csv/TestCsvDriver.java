@@ -38,6 +38,7 @@ import java.io.UnsupportedEncodingException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -2049,6 +2050,85 @@ public class TestCsvDriver
 		}
 	}
 
+	@Test
+	public void testFromIndexedTableWhereFileName() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("fileExtension", ".txt");
+		props.put("fileTailPattern", "-([0-9]{3})-([0-9]{8})");
+		props.put("fileTailParts", "location,file_date");
+		props.put("indexedFiles", "True");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+
+			ResultSet results = stmt
+				.executeQuery("SELECT location,station,file_date FROM test WHERE file_date = '20081113' AND Station = '007'"))
+		{
+			for (int i = 0; i < 48; i++)
+			{
+				assertTrue(results.next());
+				assertEquals("20081113", results.getString("file_date"), "Incorrect file_date");
+				assertEquals(String.format("%03d", i / 12 + 1), results.getString("location"), "Incorrect location");
+			}
+			assertFalse(results.next());
+			assertTrue(results.first());
+			assertEquals("001", results.getString("location"), "Incorrect location");
+			assertTrue(results.last());
+			assertEquals(48, results.getRow(), "Incorrect row count");
+		}
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("SELECT location,station,datum,file_date FROM test WHERE file_date = '19990101'"))
+		{
+			ResultSetMetaData metadata = results.getMetaData();
+			assertEquals("location", metadata.getColumnName(1), "Incorrect Column Name 1");
+			assertEquals("Station", metadata.getColumnName(2), "Incorrect Column Name 2");
+			assertFalse(results.next());
+		}
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("SELECT COUNT(*) FROM test WHERE file_date = '20081114' OR Station = '007'"))
+		{
+			assertTrue(results.next());
+			assertEquals(144, results.getInt(1), "Incorrect count");
+		}
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM test T " +
+				"WHERE T.location = ? AND file_date > ?"))
+		{
+			stmt.setString(1, "002");
+			stmt.setString(2, "20081112");
+			try (ResultSet results = stmt.executeQuery())
+			{
+				assertTrue(results.next());
+				assertEquals(24, results.getInt(1), "Incorrect count");
+			}
+			stmt.setString(1, "004");
+			stmt.setString(2, "20081113");
+			try (ResultSet results = stmt.executeQuery())
+			{
+				assertTrue(results.next());
+				assertEquals(12, results.getInt(1), "Incorrect count");
+			}
+		}
+	}
+
 	@Test
 	public void testNoPatternGroupFromIndexedTable() throws SQLException
 	{
@@ -5377,6 +5457,103 @@ public class TestCsvDriver
 		}
 	}
 
+	private static int countedCalls = 0;
+
+	public static int countCalls(int i)
+	{
+		countedCalls++;
+		return i;
+	}
+
+	@Test
+	public void testQueryExpressionEvaluatedOnce() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer");
+		props.put("function.COUNTCALLS", "org.relique.jdbc.csv.TestCsvDriver.countCalls(int)");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT COUNTCALLS(C1) AS X, C1 AS X FROM numeric"))
+		{
+			countedCalls = 0;
+			assertTrue(results.next());
+			assertEquals(99, results.getInt(1), "Incorrect value");
+			assertEquals("99", results.getString("x"), "Incorrect value");
+			assertEquals(Integer.valueOf(99), results.getObject(1), "Incorrect value");
+			assertTrue(results.next());
+			assertEquals(-22, results.getInt("X"), "Incorrect value");
+			assertEquals(-22, results.getLong(1), "Incorrect value");
+			assertFalse(results.next());
+			assertEquals(2, countedCalls, "Function evaluated more than once per row");
+		}
+	}
+
+	@Test
+	public void testInListLargeLongs() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Long,Long");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement())
+		{
+			/*
+			 * Long values that are the same when converted to a double must not match.
+			 */
+			try (ResultSet results = stmt.executeQuery("SELECT A FROM large_numbers WHERE A IN (9007199254740992)"))
+			{
+				assertFalse(results.next());
+			}
+			try (ResultSet results = stmt.executeQuery("SELECT A FROM large_numbers WHERE A IN (9007199254740993, 5.0)"))
+			{
+				assertTrue(results.next());
+				assertEquals(9007199254740993L, results.getLong(1), "Incorrect value");
+				assertTrue(results.next());
+				assertEquals(5L, results.getLong(1), "Incorrect value");
+				assertFalse(results.next());
+			}
+		}
+	}
+
+	@Test
+	public void testPrimitiveGetters() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Byte,Short,Integer,Long,Float,Double,String");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT C1, C2, C3, C4, C5, C6, C7, C3 + 1 AS N FROM numeric"))
+		{
+			assertTrue(results.next());
+			assertEquals(99, results.getByte(1), "Incorrect value");
+			assertEquals(-1010, results.getShort(2), "Incorrect value");
+			assertEquals(300100, results.getInt(3), "Incorrect value");
+			assertFalse(results.wasNull());
+			assertEquals(300100L, results.getLong(3), "Incorrect value");
+			assertEquals(-4400L, results.getLong(4), "Incorrect value");
+			assertEquals(3.14f, results.getFloat(5), "Incorrect value");
+			assertEquals(2.94e+12, results.getDouble(6), "Incorrect value");
+			assertEquals(8.65e-6, results.getDouble(7), "Incorrect value");
+			assertEquals(0, results.getInt(7), "Incorrect value");
+			assertFalse(results.wasNull());
+			assertEquals(300101, results.getInt("N"), "Incorrect value");
+			assertEquals(Integer.valueOf(300100), results.getObject(3), "Incorrect value");
+			assertEquals(300100, results.getInt(3), "Incorrect value");
+
+			assertTrue(results.next());
+			assertEquals(2147483647, results.getInt(3), "Incorrect value");
+			assertEquals(0, results.getInt(4), "Incorrect value");
+			assertFalse(results.wasNull());
+			assertEquals(990000000000L, results.getLong(4), "Incorrect value");
+			assertEquals(0.0, results.getDouble(5), "Incorrect value");
+			assertEquals(10, results.getInt(7), "Incorrect value");
+			assertEquals(10L, results.getLong("C7"), "Incorrect value");
+			assertFalse(results.next());
+		}
+	}
+
 	@Test
 	public void testVarargsUserSqlFunction() throws SQLException
 	{
@@ -0,0 +1,161 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests splitting lines of CSV files into column values.
+ */
+public class TestCsvRawReader
+{
+	private CsvRawReader createReader(String text, String separator, String quoteStyle,
+		boolean trimValues, String missingValue) throws IOException, SQLException
+	{
+		return new CsvRawReader(new LineNumberReader(new StringReader(text)), "test", null,
+			separator, false, false, Character.valueOf('"'), null, null, true, trimValues,
+			0, false, missingValue, false, 0, quoteStyle, null);
+	}
+
+	private List<List<String>> readRows(CsvRawReader reader) throws SQLException
+	{
+		List<List<String>> rows = new ArrayList<>();
+		while (reader.next())
+			rows.add(Arrays.asList(reader.getFieldValues()));
+		return rows;
+	}
+
+	@Test
+	public void testQuotedNewline() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader("A,B\n\"x\ny\",2\n\"\n\",\"p\n\nq\"\n3,4\n",
+			",", "SQL", false, null);
+		assertTrue(reader.next());
+		assertEquals(List.of("x\ny", "2"), Arrays.asList(reader.getFieldValues()));
+		assertEquals(3, reader.getLineNumber(), "Incorrect line number");
+		assertTrue(reader.next());
+		assertEquals(List.of("\n", "p\n\nq"), Arrays.asList(reader.getFieldValues()));
+		assertEquals(7, reader.getLineNumber(), "Incorrect line number");
+		assertTrue(reader.next());
+		assertEquals(List.of("3", "4"), Arrays.asList(reader.getFieldValues()));
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testQuotedCarriageReturnNewline() throws IOException, SQLException
+	{
+		/*
+		 * Line endings inside quotes are always returned as a single newline.
+		 */
+		CsvRawReader reader = createReader("A,B\r\n\"x\r\ny\",\"1\r\n\r\n2\"\r\n3,4\r\n",
+			",", "SQL", false, null);
+		assertEquals(List.of(List.of("x\ny", "1\n\n2"), List.of("3", "4")), readRows(reader));
+	}
+
+	@Test
+	public void testDoubledQuotes() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader("A,B\n\"a\"\"b\nc\"\"\",x\"y\n\"\"\"\",\"\"\n",
+			",", "SQL", false, null);
+		assertEquals(List.of(List.of("a\"b\nc\"", "x\"y"), List.of("\"", "")), readRows(reader));
+	}
+
+	@Test
+	public void testCStyleEscapes() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader(
+			"A,B\n\"a\\\"b\",\"c\\\\d\"\nx\\,y,\"p \\\"q\nr\\\" s\"\n",
+			",", "C", false, null);
+		assertEquals(List.of(List.of("a\"b", "c\\d"), List.of("x,y", "p \"q\nr\" s")),
+			readRows(reader));
+	}
+
+	@Test
+	public void testTrimValues() throws IOException, SQLException
+	{
+		String text = "A,B,C\n  a  , \"  b  \"  ,c \n\" x\n\"  ,  ,\n";
+		CsvRawReader reader = createReader(text, ",", "SQL", true, null);
+		assertEquals(List.of(List.of("a", "  b  ", "c"), List.of(" x\n", "", "")), readRows(reader));
+
+		reader = createReader("A,B,C\n  a  ,\"  b  \",c \n\" x\n\",  ,\n", ",", "SQL", false, null);
+		assertEquals(List.of(List.of("  a  ", "  b  ", "c "), List.of(" x\n", "  ", "")),
+			readRows(reader));
+
+		/*
+		 * Spaces after a quoted value are only skipped when trimming values.
+		 */
+		reader = createReader(text, ",", "SQL", false, null);
+		try
+		{
+			readRows(reader);
+			fail("Should raise a java.sql.SQLException");
+		}
+		catch (SQLException e)
+		{
+			assertTrue(e.getMessage().startsWith(CsvResources.getString("expectedSeparator")));
+		}
+	}
+
+	@Test
+	public void testMissingValueMultiLine() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader("A,B,C\n1,\"p\nq\"\n\"x\ny\"\n2,3,4\n",
+			",", "SQL", false, "NA");
+		assertEquals(List.of(List.of("1", "p\nq", "NA"), List.of("x\ny", "NA", "NA"),
+			List.of("2", "3", "4")), readRows(reader));
+	}
+
+	@Test
+	public void testMultiCharacterSeparator() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader("A||B\n\"x||\ny\"||2\n\"|\n\"||\"||\"\n||\n",
+			"||", "SQL", false, null);
+		assertEquals(List.of(List.of("x||\ny", "2"), List.of("|\n", "||"), List.of("", "")),
+			readRows(reader));
+	}
+
+	@Test
+	public void testEndOfFileInQuotes() throws IOException, SQLException
+	{
+		CsvRawReader reader = createReader("A,B\n1,2\n\"x\ny,3\n", ",", "SQL", false, null);
+		assertTrue(reader.next());
+		try
+		{
+			reader.next();
+			fail("Should raise a java.sql.SQLException");
+		}
+		catch (SQLException e)
+		{
+			assertEquals(CsvResources.getString("eofInQuotes") + ": 3", e.getMessage());
+		}
+	}
+}
@@ -19,6 +19,7 @@
 
 package org.relique.jdbc.csv;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -28,8 +29,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -308,4 +318,147 @@ public class TestFileSetInputStream
 			assertEquals("011020182,\"4 value containing \"\"quotes\"\"\",four", line);
 		}
 	}
+
+	private byte[] readFileSet(String fileNamePattern, String[] fieldsInName,
+		boolean prepend, boolean headerless, boolean parallel) throws IOException
+	{
+		try (FileSetInputStream in = new FileSetInputStream(filePath,
+			fileNamePattern, fieldsInName, ",", Character.valueOf('"'), "SQL",
+			prepend, headerless, null, 0, null, parallel, null))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void testFileSetInputStreamParallel() throws IOException
+	{
+		String[] patterns = {"test-([0-9]{3})-([0-9]{8}).txt",
+			"headerless-([0-9]{3})-([0-9]{8}).txt",
+			"petr-([0-9]{3})-([0-9]{3}).csv",
+			"Hutchenson_(\\d+).txt",
+			"empty-([0-9]+).txt"};
+		String[][] fieldsInName = {{"location", "file_date"},
+			{"location", "file_date"},
+			{"part1", "part2"},
+			{"Date"},
+			{"EMPTY_ID"}};
+
+		// Reading files on several threads must give exactly the same bytes
+		for (int i = 0; i < patterns.length; i++)
+		{
+			for (int j = 0; j < 4; j++)
+			{
+				boolean prepend = (j & 1) != 0;
+				boolean headerless = (j & 2) != 0;
+				byte[] expected = readFileSet(patterns[i], fieldsInName[i], prepend, headerless, false);
+				byte[] actual = readFileSet(patterns[i], fieldsInName[i], prepend, headerless, true);
+				assertArrayEquals(expected, actual, patterns[i] + " prepend=" + prepend + " headerless=" + headerless);
+			}
+		}
+	}
+
+	@Test
+	public void testFileSetInputStreamParallelStreams() throws IOException,
+		InterruptedException, ExecutionException
+	{
+		String pattern = "test-([0-9]{3})-([0-9]{8}).txt";
+		String[] fieldsInName = {"location", "file_date"};
+		byte[] expected = readFileSet(pattern, fieldsInName, false, false, false);
+
+		// Streams read at the same time share the threads reading files ahead
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++)
+				results.add(executor.submit(() -> readFileSet(pattern, fieldsInName, false, false, true)));
+			for (Future<byte[]> result : results)
+				assertArrayEquals(expected, result.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFileSetInputStreamParallelLargeFiles() throws IOException
+	{
+		Path dir = Files.createTempDirectory("csvjdbc");
+		try
+		{
+			// Files larger than the blocks read on other threads
+			for (int i = 1; i <= 3; i++)
+			{
+				StringBuilder sb = new StringBuilder("ID,NAME\n");
+				for (int j = 0; j < 50000; j++)
+					sb.append(j).append(",\"name ").append(j).append("\"\n");
+				Files.write(dir.resolve("large-" + i + ".csv"), sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			String dirName = dir.toString() + File.separator;
+			byte[][] bytes = new byte[2][];
+			for (int i = 0; i < bytes.length; i++)
+			{
+				try (FileSetInputStream in = new FileSetInputStream(dirName,
+					"large-([0-9]+).csv", new String[] {"PART"}, ",", Character.valueOf('"'), "SQL",
+					false, false, null, 0, null, i == 1, null))
+				{
+					bytes[i] = in.readAllBytes();
+				}
+			}
+			assertTrue(bytes[0].length > 2 * 1000000);
+			assertArrayEquals(bytes[0], bytes[1]);
+		}
+		finally
+		{
+			for (File file : dir.toFile().listFiles())
+				file.delete();
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void testFileSetInputStreamParallelClose() throws IOException
+	{
+		try (FileSetInputStream in = new FileSetInputStream(filePath,
+					"test-([0-9]{3})-([0-9]{8}).txt", new String[] {
+					"location", "file_date"}, ",", Character.valueOf('"'), "SQL", false, false, null, 0, null, true, null))
+		{
+			in.read();
+			in.read();
+			in.close();
+			try
+			{
+				in.read();
+				fail("expected exception java.io.IOException");
+			}
+			catch (IOException e)
+			{
+				assertTrue(("" + e).contains("IOException"));
+			}
+		}
+	}
+
+	@Test
+	public void testFileSetInputStreamFileFilter() throws IOException
+	{
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileSetInputStream(filePath,
+						"test-([0-9]{3})-([0-9]{8}).txt", new String[] {
+						"location", "file_date"}, ",", Character.valueOf('"'), "SQL", false, false, null, 0, null,
+						false, values -> values[0].equals("003") && !values[1].equals("20081112")))))
+		{
+			// Only lines from files with matching file names are read
+			String line = in.readLine();
+			assertEquals("Datum,Tijd,Station,AI007.000,AI007.001,location,file_date", line);
+			int lineCount = 0;
+			while ((line = in.readLine()) != null)
+			{
+				assertTrue(line.endsWith(",003,20081113") || line.endsWith(",003,20081114"), line);
+				lineCount++;
+			}
+			assertEquals(24, lineCount);
+		}
+	}
 }
@@ -702,4 +702,18 @@ public class TestGroupBy
 			assertFalse(results.next());
 		}
 	}
+
+	@Test
+	public void testGroupByHavingStringAggDistinct() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			 Statement stmt = conn.createStatement();
+			 ResultSet results = stmt.executeQuery("select Job, STRING_AGG(DISTINCT Job, ';') from sample4 GROUP BY Job HAVING COUNT(*) > 1"))
+		{
+			assertTrue(results.next());
+			assertEquals("Project Manager", results.getString(1), "The Job is wrong");
+			assertEquals("Project Manager", results.getString(2), "The STRING_AGG is wrong");
+			assertFalse(results.next());
+		}
+	}
 }
@@ -0,0 +1,322 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014 Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for SQL JOIN between tables.
+ */
+public class TestJoin
+{
+	private static String filePath;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		filePath = ".." + File.separator + "src" + File.separator + "testdata";
+		if (!new File(filePath).isDirectory())
+			filePath = "src" + File.separator + "testdata";
+		assertTrue(new File(filePath).isDirectory(), "Sample files directory not found: " + filePath);
+
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	@Test
+	public void testInnerJoin() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT a.ID, a.Name, b.Job FROM sample4 a " +
+				"INNER JOIN sample5 b ON a.ID = b.ID"))
+		{
+			assertTrue(results.next());
+			assertEquals("01", results.getString(1), "Incorrect ID");
+			assertEquals("Juan Pablo Morales", results.getString(2), "Incorrect Name");
+			assertEquals("Project Manager", results.getString(3), "Incorrect Job");
+			assertTrue(results.next());
+			assertEquals("02", results.getString(1), "Incorrect ID");
+			assertEquals("Finance Manager", results.getString(3), "Incorrect Job");
+			assertTrue(results.next());
+			assertEquals("03", results.getString(1), "Incorrect ID");
+			assertTrue(results.next());
+			assertEquals("04", results.getString(1), "Incorrect ID");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testJoinWithTableNames() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT sample5.Name FROM sample4 " +
+				"JOIN sample5 ON sample5.ID = sample4.ID AND sample5.Job = sample4.Job " +
+				"ORDER BY sample5.Name"))
+		{
+			assertTrue(results.next());
+			assertEquals("Felipe Grajales", results.getString(1), "Incorrect Name");
+			assertTrue(results.next());
+			assertEquals("Juan Pablo Morales", results.getString(1), "Incorrect Name");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testLeftOuterJoin() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT b.ID, a.Name FROM sample5 b " +
+				"LEFT OUTER JOIN sample4 a ON b.ID = a.ID WHERE b.ID < '06'"))
+		{
+			assertTrue(results.next());
+			assertEquals("01", results.getString(1), "Incorrect ID");
+			assertEquals("Juan Pablo Morales", results.getString(2), "Incorrect Name");
+			assertTrue(results.next());
+			assertEquals("02", results.getString(1), "Incorrect ID");
+			assertTrue(results.next());
+			assertEquals("03", results.getString(1), "Incorrect ID");
+			assertTrue(results.next());
+			assertEquals("04", results.getString(1), "Incorrect ID");
+			assertTrue(results.next());
+			assertEquals("05", results.getString(1), "Incorrect ID");
+			assertNull(results.getString(2), "Incorrect Name");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testRightOuterJoin() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT a.Name, b.ID FROM sample4 a " +
+				"RIGHT JOIN sample5 b ON a.ID = b.ID"))
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				assertTrue(results.next());
+				assertEquals("0" + (i + 1), results.getString(2), "Incorrect ID");
+			}
+
+			/*
+			 * Rows with no match in left table come last.
+			 */
+			assertTrue(results.next());
+			assertNull(results.getString(1), "Incorrect Name");
+			assertEquals("41", results.getString(2), "Incorrect ID");
+			for (int i = 0; i < 5; i++)
+			{
+				assertTrue(results.next());
+				assertNull(results.getString(1), "Incorrect Name");
+				assertEquals("0" + (i + 5), results.getString(2), "Incorrect ID");
+			}
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testNonEqualityJoin() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT COUNT(*) FROM sample4 a " +
+				"JOIN sample4 b ON a.ID < b.ID"))
+		{
+			assertTrue(results.next());
+			assertEquals(6, results.getInt(1), "Incorrect count");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testJoinDifferentTypes() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes.calendar", "String,Date,String,String");
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT a.Subject, b.Subject FROM calendar a " +
+				"INNER JOIN calendar b ON a.Start_Date = b.End_Date ORDER BY a.Subject, b.Subject"))
+		{
+			assertTrue(results.next());
+			assertEquals("Networks", results.getString(1), "Incorrect Subject");
+			assertEquals("Networks", results.getString(2), "Incorrect Subject");
+			assertTrue(results.next());
+			assertEquals("Networks", results.getString(1), "Incorrect Subject");
+			assertEquals("Q&A", results.getString(2), "Incorrect Subject");
+			assertTrue(results.next());
+			assertEquals("Q&A", results.getString(1), "Incorrect Subject");
+			assertEquals("Networks", results.getString(2), "Incorrect Subject");
+			assertTrue(results.next());
+			assertEquals("Q&A", results.getString(1), "Incorrect Subject");
+			assertEquals("Q&A", results.getString(2), "Incorrect Subject");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testCrossJoin() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT COUNT(*) FROM sample4 a CROSS JOIN sample5 b"))
+		{
+			assertTrue(results.next());
+			assertEquals(40, results.getInt(1), "Incorrect count");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testThreeTables() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT a.ID, c.Name FROM sample4 a " +
+				"JOIN sample5 b ON a.ID = b.ID JOIN sample4 c ON b.Job = c.Job " +
+				"WHERE a.ID = '02'"))
+		{
+			assertTrue(results.next());
+			assertEquals("02", results.getString(1), "Incorrect ID");
+			assertEquals("Maria Cristina Lucero", results.getString(2), "Incorrect Name");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testSelectAsterisk() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT * FROM sample4 a " +
+				"JOIN sample5 b ON a.Name = b.Name WHERE b.ID = '03'"))
+		{
+			ResultSetMetaData metadata = results.getMetaData();
+			assertEquals(8, metadata.getColumnCount(), "Incorrect column count");
+			assertEquals("ID", metadata.getColumnName(1), "Incorrect column name");
+			assertEquals("ID", metadata.getColumnName(4), "Incorrect column name");
+			assertTrue(results.next());
+			assertEquals("03", results.getString(1), "Incorrect ID");
+			assertEquals("Finance Manager", results.getString(3), "Incorrect Job");
+			assertEquals("03", results.getString(4), "Incorrect ID");
+			assertEquals("Project Manager", results.getString(6), "Incorrect Job");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testSelectTableAsterisk() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT b.* FROM sample4 a " +
+				"JOIN sample5 b ON a.ID = b.ID WHERE a.ID = '04'"))
+		{
+			assertEquals(5, results.getMetaData().getColumnCount(), "Incorrect column count");
+			assertTrue(results.next());
+			assertEquals("04", results.getString(1), "Incorrect ID");
+			assertEquals("Felipe Grajales", results.getString(2), "Incorrect Name");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testJoinInvalidColumn() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement())
+		{
+			stmt.executeQuery("SELECT a.ID, b.XYZ FROM sample4 a JOIN sample5 b ON a.ID = b.ID");
+			fail("Should raise a java.sqlSQLException");
+		}
+		catch (SQLException e)
+		{
+			assertEquals("java.sql.SQLException: " + CsvResources.getString("invalidColumnName") + ": B.XYZ", "" + e);
+		}
+	}
+
+	@Test
+	public void testJoinAmbiguousColumn() throws SQLException
+	{
+		String[] queries = {
+			"SELECT ID FROM sample4 a JOIN sample5 b ON a.ID = b.ID",
+			"SELECT a.ID FROM sample4 a JOIN sample5 b ON a.ID = b.ID WHERE Job = 'Piloto'",
+			"SELECT a.ID FROM sample4 a JOIN sample5 b ON a.ID = b.ID ORDER BY Job",
+			"SELECT a.ID FROM sample4 a JOIN sample5 b ON ID = b.ID"
+		};
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement())
+		{
+			for (String query : queries)
+			{
+				try
+				{
+					stmt.executeQuery(query);
+					fail("Should raise a java.sqlSQLException: " + query);
+				}
+				catch (SQLException e)
+				{
+					assertTrue(e.getMessage().startsWith(CsvResources.getString("ambiguousColumnName") + ": "),
+						"Incorrect exception: " + e);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testJoinUnqualifiedColumn() throws SQLException
+	{
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT a.Name, Start FROM sample4 a " +
+				"JOIN sample5 b ON a.ID = b.ID WHERE timeoffset = '1235'"))
+		{
+			assertTrue(results.next());
+			assertEquals("Juan Pablo Morales", results.getString(1), "Incorrect Name");
+			assertEquals("2001-01-02 12:30:00", results.getString(2), "Incorrect Start");
+			assertFalse(results.next());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests matching of SQL LIKE patterns.
+ */
+public class TestLikePattern
+{
+	private static final String ESCAPE = LikePattern.DEFAULT_ESCAPE_STRING;
+
+	@Test
+	public void testExact()
+	{
+		assertTrue(LikePattern.matches("abc", ESCAPE, "abc"));
+		assertFalse(LikePattern.matches("abc", ESCAPE, "abcd"));
+		assertFalse(LikePattern.matches("abc", ESCAPE, "ABC"));
+		assertTrue(LikePattern.matches("100\\%", ESCAPE, "100%"));
+		assertFalse(LikePattern.matches("100\\%", ESCAPE, "1000"));
+		assertTrue(LikePattern.matches("", ESCAPE, ""));
+	}
+
+	@Test
+	public void testPercent()
+	{
+		assertTrue(LikePattern.matches("abc%", ESCAPE, "abc"));
+		assertTrue(LikePattern.matches("abc%", ESCAPE, "abcdef"));
+		assertFalse(LikePattern.matches("abc%", ESCAPE, "xabc"));
+
+		assertTrue(LikePattern.matches("%abc", ESCAPE, "xyzabc"));
+		assertFalse(LikePattern.matches("%abc", ESCAPE, "abcx"));
+
+		assertTrue(LikePattern.matches("%abc%", ESCAPE, "abc"));
+		assertTrue(LikePattern.matches("%abc%", ESCAPE, "xxabcxx"));
+		assertFalse(LikePattern.matches("%abc%", ESCAPE, "xxabxcxx"));
+
+		assertTrue(LikePattern.matches("%", ESCAPE, ""));
+		assertTrue(LikePattern.matches("%%", ESCAPE, "a\nb"));
+
+		assertTrue(LikePattern.matches("ab%ba", ESCAPE, "abba"));
+		assertFalse(LikePattern.matches("ab%ba", ESCAPE, "aba"));
+		assertTrue(LikePattern.matches("a%b%c", ESCAPE, "a-b-b-c"));
+		assertFalse(LikePattern.matches("a%bc%c", ESCAPE, "abc"));
+		assertTrue(LikePattern.matches("%a\\%b%", ESCAPE, "xa%by"));
+		assertFalse(LikePattern.matches("%a\\%b%", ESCAPE, "xaxby"));
+	}
+
+	@Test
+	public void testUnderscore()
+	{
+		assertTrue(LikePattern.matches("a_c", ESCAPE, "abc"));
+		assertTrue(LikePattern.matches("a_c", ESCAPE, "a\nc"));
+		assertFalse(LikePattern.matches("a_c", ESCAPE, "ac"));
+		assertFalse(LikePattern.matches("a_c", ESCAPE, "abbc"));
+		assertFalse(LikePattern.matches("a_c", ESCAPE, "abd"));
+		assertTrue(LikePattern.matches("a_c", ESCAPE, "a😀c"));
+		assertTrue(LikePattern.matches("a\\_c", ESCAPE, "a_c"));
+		assertFalse(LikePattern.matches("a\\_c", ESCAPE, "abc"));
+
+		assertTrue(LikePattern.matches("a_c%", ESCAPE, "abcdef"));
+		assertFalse(LikePattern.matches("%a_c", ESCAPE, "abcdef"));
+	}
+
+	@Test
+	public void testEscape()
+	{
+		assertTrue(LikePattern.matches("a#%%", "#", "a%bc"));
+		assertFalse(LikePattern.matches("a#%%", "#", "abc"));
+		assertTrue(LikePattern.matches("a\\%", "", "a\\bc"));
+		assertFalse(LikePattern.matches("a\\%", ESCAPE, "a\\bc"));
+	}
+
+	@Test
+	public void testCompiledOnce()
+	{
+		LikePattern compiled = LikePattern.compile("%compiled once%", ESCAPE);
+		assertSame(compiled, LikePattern.compile("%compiled once%", ESCAPE));
+		assertTrue(compiled.isPattern("%compiled once%", ESCAPE));
+		assertFalse(compiled.isPattern("%compiled once%", "#"));
+	}
+}
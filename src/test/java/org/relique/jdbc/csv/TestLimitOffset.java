@@ -24,11 +24,17 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.junit.jupiter.api.BeforeAll;
@@ -154,6 +160,51 @@ public class TestLimitOffset
 		}
 	}
 
+	@Test
+	public void testLimitOffsetOrderByEqualValues() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,String,Date,Time");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("select id from sample5 order by job limit 3 offset 1"))
+		{
+			assertTrue(results.next());
+			assertEquals(6, results.getInt("ID"), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(7, results.getInt("ID"), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(8, results.getInt("ID"), "The ID is wrong");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testMaxRowsOrderBy() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,String,Date,Time");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement())
+		{
+			stmt.setMaxRows(2);
+			try (ResultSet results = stmt.executeQuery("select id from sample5 order by job desc"))
+			{
+				assertTrue(results.next());
+				assertEquals(1, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(3, results.getInt("ID"), "The ID is wrong");
+				assertFalse(results.next());
+			}
+		}
+	}
+
 	@Test
 	public void testOffsetRows() throws SQLException
 	{
@@ -262,4 +313,79 @@ public class TestLimitOffset
 			}
 		}
 	}
+
+	private List<String> readOffsetRows(Path dir, String rowIndexInterval, int offset) throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String");
+		props.put("rowIndexInterval", rowIndexInterval);
+
+		List<String> rows = new ArrayList<>();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + dir, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt.executeQuery("SELECT ID, NAME, LINE_NUMBER() AS LN FROM numbers LIMIT 1000 OFFSET " + offset))
+		{
+			while (results.next())
+				rows.add(results.getInt(1) + "," + results.getString(2) + "," + results.getInt(3));
+		}
+		return rows;
+	}
+
+	@Test
+	public void testOffsetWithRowIndex() throws SQLException, IOException
+	{
+		Path dir = Files.createTempDirectory("csvjdbc");
+		Path csvFile = dir.resolve("numbers.csv");
+		File indexFile = new File(csvFile + RowIndex.FILE_SUFFIX);
+		try
+		{
+			StringBuilder sb = new StringBuilder("ID,NAME\n");
+			for (int i = 1; i <= 100; i++)
+			{
+				if (i == 20)
+					sb.append(i).append(",\"two\nlines\"\n");
+				else
+					sb.append(i).append(",N").append(i).append("\n");
+			}
+			Files.write(csvFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+			List<String> expected = readOffsetRows(dir, "0", 60);
+			assertEquals(40, expected.size(), "Incorrect number of rows");
+			assertEquals("61,N61,61", expected.get(0), "Incorrect first row");
+			assertFalse(indexFile.exists(), "Row index should not be saved");
+
+			/*
+			 * Index is saved by first query and used by the following queries.
+			 */
+			assertEquals(expected, readOffsetRows(dir, "7", 60));
+			assertTrue(indexFile.exists(), "Row index not saved");
+			long lastModified = indexFile.lastModified();
+			assertEquals(expected, readOffsetRows(dir, "7", 60));
+			assertEquals(expected.subList(30, 40), readOffsetRows(dir, "7", 90));
+			assertEquals(expected.subList(1, 40), readOffsetRows(dir, "7", 61));
+			assertEquals(0, readOffsetRows(dir, "7", 150).size(), "Incorrect number of rows");
+			assertEquals(lastModified, indexFile.lastModified(), "Row index should not be saved again");
+
+			List<String> fromStart = readOffsetRows(dir, "0", 10);
+			assertEquals(fromStart, readOffsetRows(dir, "7", 10));
+			assertEquals("20,two\nlines,20", fromStart.get(9), "Incorrect row with two lines");
+
+			/*
+			 * Index is replaced when the file changes.
+			 */
+			Files.write(csvFile, sb.toString().replaceAll(",N(\\d)", ",Name$1").getBytes(StandardCharsets.UTF_8));
+			List<String> changed = readOffsetRows(dir, "7", 60);
+			assertEquals(40, changed.size(), "Incorrect number of rows");
+			assertEquals("61,Name61,61", changed.get(0), "Incorrect first row");
+			assertEquals(changed, readOffsetRows(dir, "7", 60));
+		}
+		finally
+		{
+			indexFile.delete();
+			Files.delete(csvFile);
+			Files.delete(dir);
+		}
+	}
 }
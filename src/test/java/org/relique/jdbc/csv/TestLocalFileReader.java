@@ -0,0 +1,243 @@
+/*
+ *  CsvJdbc - a JDBC driver for CSV files
+ *  Copyright (C) 2014  Simon Chenery
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.relique.io.LocalFileReader;
+
+/**
+ * This class tests reading lines from local files, with and without
+ * mapping them into memory.
+ */
+public class TestLocalFileReader
+{
+	private static String filePath;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		filePath = ".." + File.separator + "src" + File.separator + "testdata";
+		if (!new File(filePath).isDirectory())
+			filePath = "src" + File.separator + "testdata";
+		assertTrue(new File(filePath).isDirectory(), "Sample files directory not found: " + filePath);
+		filePath = filePath + File.separator;
+	}
+
+	@Test
+	public void testSupportedCharsets()
+	{
+		assertTrue(LocalFileReader.isSupportedCharset("UTF-8"));
+		assertTrue(LocalFileReader.isSupportedCharset("ISO-8859-1"));
+		assertTrue(LocalFileReader.isSupportedCharset("US-ASCII"));
+		assertFalse(LocalFileReader.isSupportedCharset("UTF-16LE"));
+		assertFalse(LocalFileReader.isSupportedCharset("no-such-charset"));
+	}
+
+	@Test
+	public void testSameLinesAsLineNumberReader() throws IOException
+	{
+		String[] charsets = {"UTF-8", "ISO-8859-1"};
+		File[] files = new File(filePath).listFiles((dir, name) -> name.endsWith(".csv") || name.endsWith(".txt"));
+		for (File file : files)
+		{
+			for (String charset : charsets)
+			{
+				for (boolean memoryMapped : new boolean[]{false, true})
+				{
+					String message = file.getName() + " " + charset + " " + memoryMapped;
+					try (LineNumberReader expected = new LineNumberReader(new InputStreamReader(
+							new FileInputStream(file), charset));
+						LocalFileReader actual = new LocalFileReader(file.getPath(), charset, memoryMapped))
+					{
+						String line;
+						do
+						{
+							line = expected.readLine();
+							assertEquals(line, actual.readLine(), message);
+							assertEquals(expected.getLineNumber(), actual.getLineNumber(), message);
+						}
+						while (line != null);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testReadChars() throws IOException
+	{
+		try (LocalFileReader in = new LocalFileReader(filePath + "utf8_bom.csv", "UTF-8", false))
+		{
+			in.mark(1);
+			assertEquals(0xFEFF, in.read());
+			in.reset();
+			assertEquals(0xFEFF, in.read());
+			String line = in.readLine();
+			assertTrue(line.length() > 0);
+			assertEquals(1, in.getLineNumber());
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException
+	{
+		for (boolean memoryMapped : new boolean[]{false, true})
+		{
+			try (LocalFileReader in = new LocalFileReader(filePath + "sample.csv", null, memoryMapped))
+			{
+				in.readLine();
+				in.close();
+				try
+				{
+					in.readLine();
+					fail("expected exception java.io.IOException");
+				}
+				catch (IOException e)
+				{
+					assertTrue(("" + e).contains("IOException"));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException
+	{
+		File file = File.createTempFile("csvjdbc", ".csv");
+		try
+		{
+			for (boolean memoryMapped : new boolean[]{false, true})
+			{
+				try (LocalFileReader in = new LocalFileReader(file.getPath(), "UTF-8", memoryMapped))
+				{
+					assertNull(in.readLine());
+					assertEquals(-1, in.read());
+					assertEquals(0, in.getLineNumber());
+				}
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testTruncatedFile() throws IOException
+	{
+		File file = File.createTempFile("csvjdbc", ".csv");
+		try
+		{
+			for (boolean memoryMapped : new boolean[]{false, true})
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < 100000; i++)
+					sb.append("line ").append(i).append("\n");
+				Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+				try (LocalFileReader in = new LocalFileReader(file.getPath(), "UTF-8", memoryMapped))
+				{
+					assertEquals("line 0", in.readLine());
+					try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+					{
+						out.setLength(10);
+					}
+					try
+					{
+						while (in.readLine() != null)
+							;
+						fail("expected exception java.io.IOException");
+					}
+					catch (IOException e)
+					{
+						assertEquals("java.io.IOException: " + CsvResources.getString("fileTruncated"), "" + e);
+					}
+				}
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testTruncatedFileQuery() throws IOException, SQLException
+	{
+		Path dir = Files.createTempDirectory("csvjdbc");
+		File file = dir.resolve("truncated.csv").toFile();
+		try
+		{
+			StringBuilder sb = new StringBuilder("ID\n");
+			for (int i = 0; i < 100000; i++)
+				sb.append(i).append("\n");
+			Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+			Properties props = new Properties();
+			props.put("charset", "UTF-8");
+			try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + dir, props);
+				Statement stmt = conn.createStatement();
+				ResultSet results = stmt.executeQuery("SELECT * FROM truncated"))
+			{
+				assertTrue(results.next());
+				try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+				{
+					out.setLength(10);
+				}
+				try
+				{
+					while (results.next())
+						;
+					fail("expected exception java.sql.SQLException");
+				}
+				catch (SQLException e)
+				{
+					assertTrue(e.getMessage().contains(CsvResources.getString("fileTruncated")));
+				}
+			}
+		}
+		finally
+		{
+			file.delete();
+			Files.delete(dir);
+		}
+	}
+}
@@ -24,6 +24,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -483,4 +486,91 @@ public class TestOrderBy
 			assertFalse(results.next());
 		}
 	}
+
+	@Test
+	public void testOrderBySortBufferRows() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Int,String,String,Timestamp");
+		props.put("sortBufferRows", "3");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("SELECT ID, Start FROM sample5 ORDER BY Job DESC, Start"))
+		{
+			assertTrue(results.next());
+			assertEquals(1, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(3, results.getInt(1), "The ID is wrong");
+			assertEquals("2003-03-02 12:30:00.0", results.getTimestamp(2).toString(), "The Start is wrong");
+			assertTrue(results.next());
+			assertEquals(4, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(41, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(5, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(6, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(7, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(8, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(9, results.getInt(1), "The ID is wrong");
+			assertTrue(results.next());
+			assertEquals(2, results.getInt(1), "The ID is wrong");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testOrderBySortBufferRowsUnwritable() throws SQLException, IOException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Int,AsciiStream,String,Timestamp,Int");
+		props.put("sortBufferRows", "3");
+
+		/*
+		 * Streams cannot be written to sort files, so rows are sorted in memory.
+		 */
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("SELECT ID, Name FROM sample5 WHERE Name IS NOT NULL ORDER BY timeoffset, ID"))
+		{
+			int[] expectedIds = {6, 7, 8, 4, 5, 9, 41, 1, 2, 3};
+			for (int expectedId : expectedIds)
+			{
+				assertTrue(results.next());
+				assertEquals(expectedId, results.getInt(1), "The ID is wrong");
+			}
+			assertFalse(results.next());
+		}
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet results = stmt
+				.executeQuery("SELECT * FROM sample5 ORDER BY timeoffset DESC, ID"))
+		{
+			assertTrue(results.next());
+			assertEquals(3, results.getInt(1), "The ID is wrong");
+			assertEquals("Maria Cristina Lucero",
+				new String(((InputStream)results.getObject(2)).readAllBytes(), StandardCharsets.US_ASCII),
+				"The Name is wrong");
+			assertEquals("Project Manager", results.getString(3), "The Job is wrong");
+			assertEquals("2003-03-02 12:30:00.0", results.getTimestamp(4).toString(), "The Start is wrong");
+			assertEquals(1245, results.getInt(5), "The timeoffset is wrong");
+			int count = 1;
+			while (results.next())
+				count++;
+			assertEquals(10, count, "Incorrect row count");
+		}
+	}
 }
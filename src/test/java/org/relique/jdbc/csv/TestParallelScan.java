@@ -0,0 +1,311 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the parallelScan property in the CsvJdbc driver.
+ */
+public class TestParallelScan
+{
+	private static String filePath;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		filePath = ".." + File.separator + "src" + File.separator + "testdata";
+		if (!new File(filePath).isDirectory())
+			filePath = "src" + File.separator + "testdata";
+		assertTrue(new File(filePath).isDirectory(), "Sample files directory not found: " + filePath);
+
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	@Test
+	public void testWhereClause() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("columnTypes", "Int,String");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT ID, LINE_NUMBER() AS N FROM speedtest_decypher " +
+				"WHERE (ID > 6000 AND ID < 6004) OR ID > 19997"))
+		{
+			for (int i = 6001; i < 6004; i++)
+			{
+				assertTrue(results.next());
+				assertEquals(i, results.getInt(1), "Incorrect ID value");
+				assertEquals(i, results.getInt(2), "Incorrect N value");
+			}
+			assertTrue(results.next());
+			assertEquals(19998, results.getInt(1), "Incorrect ID value");
+			assertTrue(results.next());
+			assertEquals(19999, results.getInt(1), "Incorrect ID value");
+			assertEquals(19999, results.getInt(2), "Incorrect N value");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testLimitOffset() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("columnTypes", "Int,String");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT ID, LINE_NUMBER() FROM speedtest_decypher " +
+				"WHERE ID > 10 LIMIT 3 OFFSET 1500"))
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				assertTrue(results.next());
+				assertEquals(1511 + i, results.getInt(1), "Incorrect ID value");
+				assertEquals(1511 + i, results.getInt(2), "Incorrect LINE_NUMBER value");
+			}
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testOrderBy() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("columnTypes", "Int,String");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT ID FROM speedtest_decypher " +
+				"WHERE ID BETWEEN 1000 AND 3000 ORDER BY ID DESC LIMIT 2 OFFSET 1"))
+		{
+			assertTrue(results.next());
+			assertEquals(2999, results.getInt(1), "Incorrect ID value");
+			assertTrue(results.next());
+			assertEquals(2998, results.getInt(1), "Incorrect ID value");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testAggregateFunctions() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("columnTypes", "Int,String");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT COUNT(*), SUM(ID) FROM speedtest_decypher " +
+				"WHERE ID <= 10000 AND REMARK LIKE '%best%'"))
+		{
+			assertTrue(results.next());
+			assertEquals(10000, results.getInt(1), "Incorrect COUNT value");
+			assertEquals(50005000L, results.getLong(2), "Incorrect SUM value");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testWrongColumnCount() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT * FROM wrong_column_count WHERE LINE_NUMBER() > 0"))
+		{
+			try
+			{
+				while (results.next())
+				{
+				}
+				fail("Should raise a java.sqlSQLException");
+			}
+			catch (SQLException e)
+			{
+				assertTrue(e.getMessage().contains(CsvResources.getString("wrongColumnCount")));
+				assertTrue(e.getMessage().contains("137"));
+			}
+		}
+	}
+
+	/**
+	 * Read all rows of a query, as text, followed by any error.
+	 */
+	private List<String> readRows(Properties props, String sql) throws SQLException
+	{
+		List<String> rows = new ArrayList<>();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery(sql))
+		{
+			int columnCount = results.getMetaData().getColumnCount();
+			while (results.next())
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 1; i <= columnCount; i++)
+					sb.append(results.getString(i)).append('|');
+				rows.add(sb.toString());
+			}
+		}
+		catch (SQLException e)
+		{
+			rows.add(e.toString());
+		}
+		return rows;
+	}
+
+	private void assertSameRows(Properties props, String sql) throws SQLException
+	{
+		List<String> expected = readRows(props, sql);
+		Properties parallelProps = new Properties();
+		parallelProps.putAll(props);
+		parallelProps.put("parallelScan", "true");
+		assertEquals(expected, readRows(parallelProps, sql), "Incorrect rows for " + sql);
+	}
+
+	@Test
+	public void testQuotedValues() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("trimValues", "true");
+		assertSameRows(props, "SELECT *, LINE_NUMBER() FROM parallel_quoted WHERE ID <> '1'");
+
+		props.put("quoteStyle", "C");
+		assertSameRows(props, "SELECT *, LINE_NUMBER() FROM parallel_quoted WHERE ID <> '1'");
+
+		/*
+		 * Record with whitespace after closing quote cannot be parsed.
+		 */
+		props.put("trimValues", "false");
+		assertSameRows(props, "SELECT *, LINE_NUMBER() FROM parallel_quoted WHERE ID <> '1'");
+
+		props = new Properties();
+		props.put("separator", ";");
+		assertSameRows(props, "SELECT * FROM badquoted WHERE F1 <> '011'");
+
+		props.put("quotechar", "'");
+		props.put("quoteStyle", "C");
+		assertSameRows(props, "SELECT F1 FROM doublequoted WHERE F2 <> 'F'");
+
+		props = new Properties();
+		props.put("fileExtension", ".txt");
+		assertSameRows(props, "SELECT * FROM uses_quotes WHERE COLUMN1 <> '1'");
+		assertSameRows(props, "SELECT * FROM witheol WHERE KEY <> '1'");
+
+		props.put("suppressHeaders", "true");
+		assertSameRows(props, "SELECT * FROM embassies WHERE COLUMN1 <> 'France'");
+	}
+
+	@Test
+	public void testQuotedValuesSplit() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("trimValues", "true");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT NAME, NOTE FROM parallel_quoted " +
+				"WHERE ID IN ('4', '5', '7', '10')"))
+		{
+			assertTrue(results.next());
+			assertEquals("doubled \" quote at end \"\nstill quoted", results.getString(1), "Incorrect NAME value");
+			assertEquals("z", results.getString(2), "Incorrect NOTE value");
+			assertTrue(results.next());
+			assertEquals("three\nlines, with \"quotes\"\n", results.getString(1), "Incorrect NAME value");
+			assertTrue(results.next());
+			assertEquals("space after quote", results.getString(1), "Incorrect NAME value");
+			assertTrue(results.next());
+			assertEquals("ends with separator,\n", results.getString(1), "Incorrect NAME value");
+			assertEquals("t", results.getString(2), "Incorrect NOTE value");
+			assertFalse(results.next());
+		}
+	}
+
+	@Test
+	public void testIndexedFiles() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("parallelScan", "true");
+		props.put("fileExtension", ".txt");
+		props.put("fileTailPattern", "-([0-9]{3})-([0-9]{8})");
+		props.put("fileTailParts", "location,file_date");
+		props.put("indexedFiles", "True");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT file_date, COUNT(*) AS N, MAX(location) AS L " +
+				"FROM test WHERE Station = '007' GROUP BY file_date ORDER BY file_date"))
+		{
+			String[] fileDates = {"20081112", "20081113"};
+			for (String fileDate : fileDates)
+			{
+				assertTrue(results.next());
+				assertEquals(fileDate, results.getString("file_date"));
+				assertEquals(48, results.getInt("N"));
+				assertEquals("004", results.getString("L"));
+			}
+			assertFalse(results.next());
+		}
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			Statement stmt = conn.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT LINE_NUMBER() AS N, location, file_date FROM test"))
+		{
+			for (int i = 1; i <= 144; i++)
+			{
+				assertTrue(results.next());
+				assertEquals(i, results.getInt("N"));
+				assertEquals(String.format("%03d", (i - 1) / 36 + 1), results.getString("location"));
+			}
+			assertFalse(results.next());
+		}
+	}
+}
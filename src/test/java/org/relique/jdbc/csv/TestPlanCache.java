@@ -0,0 +1,231 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the planCacheSize property in the CsvJdbc driver.
+ */
+public class TestPlanCache
+{
+	private static final String[] QUERIES = {
+		"SELECT * FROM scores ORDER BY 2 DESC, 1",
+		"SELECT NAME, COUNT(*), SUM(SCORE) FROM scores GROUP BY NAME ORDER BY 1",
+		"SELECT COUNT(*), MAX(SCORE) FROM scores WHERE SCORE > 70",
+		"SELECT DISTINCT NAME FROM scores ORDER BY NAME",
+		"SELECT NAME FROM scores WHERE SCORE = (SELECT MAX(SCORE) FROM scores)",
+		"SELECT NAME, SCORE FROM scores S WHERE EXISTS (SELECT T.NAME FROM scores T WHERE T.SCORE = S.SCORE + 2) ORDER BY SCORE"
+	};
+
+	private static String filePath;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		filePath = ".." + File.separator + "src" + File.separator + "testdata";
+		if (!new File(filePath).isDirectory())
+			filePath = "src" + File.separator + "testdata";
+		assertTrue(new File(filePath).isDirectory(), "Sample files directory not found: " + filePath);
+
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	private Properties getProperties(String planCacheSize)
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "String,Integer");
+		if (planCacheSize != null)
+			props.put("planCacheSize", planCacheSize);
+		return props;
+	}
+
+	private List<String> readRows(ResultSet results) throws SQLException
+	{
+		return TempDataDirectory.readRows(results);
+	}
+
+	@Test
+	public void testQueries() throws SQLException
+	{
+		List<List<String>> expected = new ArrayList<>();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath,
+			getProperties(null));
+			Statement stmt = conn.createStatement())
+		{
+			for (String sql : QUERIES)
+				expected.add(readRows(stmt.executeQuery(sql)));
+		}
+		assertEquals(List.of("Daniel,3,150,", "Maria,3,47,", "Mark,3,230,"), expected.get(1), "Incorrect rows");
+		assertEquals(List.of("Daniel,"), expected.get(4), "Incorrect rows");
+		assertEquals(List.of("Mark,77,"), expected.get(5), "Incorrect rows");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath,
+			getProperties("3")))
+		{
+			for (int repeat = 0; repeat < 3; repeat++)
+			{
+				try (Statement stmt = conn.createStatement())
+				{
+					for (int i = 0; i < QUERIES.length; i++)
+					{
+						assertEquals(expected.get(i), readRows(stmt.executeQuery(QUERIES[i])), QUERIES[i]);
+						assertEquals(expected.get(i), readRows(stmt.executeQuery(QUERIES[i])), QUERIES[i]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameQueryOpenTwice() throws SQLException
+	{
+		String sql = "SELECT NAME, SUM(SCORE) FROM scores GROUP BY NAME ORDER BY NAME";
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath,
+			getProperties("10"));
+			Statement stmt1 = conn.createStatement();
+			Statement stmt2 = conn.createStatement())
+		{
+			readRows(stmt1.executeQuery(sql));
+			ResultSet results1 = stmt1.executeQuery(sql);
+			ResultSet results2 = stmt2.executeQuery(sql);
+			assertTrue(results1.next());
+			assertTrue(results2.next());
+			assertEquals(150, results1.getInt(2));
+			assertEquals(150, results2.getInt(2));
+			assertEquals(List.of("Maria,47,", "Mark,230,"), readRows(results1));
+			assertEquals(List.of("Maria,47,", "Mark,230,"), readRows(results2));
+		}
+	}
+
+	@Test
+	public void testParsedStatementKept() throws SQLException
+	{
+		String sql = "SELECT SCORE FROM scores WHERE NAME = 'Mark'";
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath,
+			getProperties("10")))
+		{
+			PlanCache planCache = ((CsvConnection)conn).getPlanCache();
+			try (Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+				ResultSet.CONCUR_READ_ONLY))
+			{
+				ResultSet results = stmt.executeQuery(sql);
+				assertEquals(List.of("79,", "77,", "74,"), readRows(results));
+
+				/*
+				 * A scrollable ResultSet can go back to earlier rows,
+				 * so keeps the parsed statement until it is closed.
+				 */
+				assertNull(planCache.take(sql), "Parsed statement should be in use");
+				results.close();
+				SqlParser parser = planCache.take(sql);
+				assertNotNull(parser, "Parsed statement not released when ResultSet closed");
+				planCache.put(sql, parser);
+			}
+			try (Statement stmt = conn.createStatement();
+				ResultSet results = stmt.executeQuery(sql))
+			{
+				assertTrue(results.next());
+				assertNull(planCache.take(sql), "Parsed statement should be in use");
+				assertTrue(results.next());
+				assertTrue(results.next());
+				assertFalse(results.next());
+				assertNotNull(planCache.take(sql), "Parsed statement not released after last row");
+			}
+			try (Statement stmt = conn.createStatement())
+			{
+				assertEquals(List.of("79,", "77,", "74,"), readRows(stmt.executeQuery(sql)));
+			}
+			SqlParser parser = planCache.take(sql);
+			assertNotNull(parser, "Parsed statement not kept");
+			planCache.put(sql, parser);
+			try (Statement stmt = conn.createStatement())
+			{
+				assertEquals(List.of("79,", "77,", "74,"), readRows(stmt.executeQuery(sql)));
+			}
+			assertEquals(parser, planCache.take(sql), "Parsed statement not reused");
+		}
+	}
+
+	@Test
+	public void testHeaderChanged() throws SQLException, IOException
+	{
+		String sql = "SELECT * FROM sales ORDER BY 1";
+		Properties props = getProperties("10");
+		props.put("columnTypes", "Integer,String,Integer");
+		TempDataDirectory dir = new TempDataDirectory();
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(), props);
+			Statement stmt = conn.createStatement())
+		{
+			dir.writeFile("sales.csv", "ID,REGION,AMOUNT\n1,North,10\n2,South,30\n4,East,5\n");
+			List<String> rows = readRows(stmt.executeQuery(sql));
+			assertEquals("1,North,10,", rows.get(0), "Incorrect first row");
+			dir.writeFile("sales.csv", "AMOUNT,REGION,ID\n10,North,1\n5,East,4\n");
+			rows = readRows(stmt.executeQuery(sql));
+			assertEquals(List.of("5,East,4,", "10,North,1,"), rows, "Incorrect rows");
+		}
+		finally
+		{
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedRemoved()
+	{
+		PlanCache planCache = new PlanCache(2);
+		SqlParser parser1 = new SqlParser();
+		SqlParser parser2 = new SqlParser();
+		SqlParser parser3 = new SqlParser();
+		planCache.put("1", parser1);
+		planCache.put("2", parser2);
+		planCache.put("3", parser3);
+		assertNull(planCache.take("1"));
+		assertEquals(parser2, planCache.take("2"));
+		assertEquals(parser3, planCache.take("3"));
+		assertNull(planCache.take("3"));
+	}
+}
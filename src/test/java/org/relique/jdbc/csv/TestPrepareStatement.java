@@ -496,5 +496,92 @@ public class TestPrepareStatement
 		}
 	}
 
+	@Test
+	public void testAggregateExecutedTwice() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,String,Date,Time");
+		String queryString = "select count(*), sum(id) from sample5 where id > ?";
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			 PreparedStatement prepstmt = conn.prepareStatement(queryString))
+		{
+			prepstmt.setInt(1, 7);
+			try (ResultSet results = prepstmt.executeQuery())
+			{
+				assertTrue(results.next());
+				int count = results.getInt(1);
+				int sum = results.getInt(2);
+				assertTrue(count > 0);
+
+				/*
+				 * Aggregate functions must start again from zero each time.
+				 */
+				try (ResultSet results2 = prepstmt.executeQuery())
+				{
+					assertTrue(results2.next());
+					assertEquals(count, results2.getInt(1), "Incorrect count");
+					assertEquals(sum, results2.getInt(2), "Incorrect sum");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInListParameters() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,String,Timestamp,Integer");
+		String queryString = "select ID from sample5 where ID in (?, ?, 3, ?)";
 
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			 PreparedStatement prepstmt = conn.prepareStatement(queryString))
+		{
+			prepstmt.setInt(1, 41);
+			prepstmt.setLong(2, 2);
+			prepstmt.setDouble(3, 9.0);
+			try (ResultSet results = prepstmt.executeQuery())
+			{
+				assertTrue(results.next());
+				assertEquals(41, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(2, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(3, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(9, results.getInt("ID"), "The ID is wrong");
+				assertFalse(results.next());
+			}
+
+			/*
+			 * IN list must use the new parameter values.
+			 */
+			prepstmt.setInt(1, 5);
+			prepstmt.setString(2, "6");
+			prepstmt.setObject(3, null);
+			try (ResultSet results = prepstmt.executeQuery())
+			{
+				assertTrue(results.next());
+				assertEquals(3, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(5, results.getInt("ID"), "The ID is wrong");
+				assertFalse(results.next());
+			}
+		}
+
+		queryString = "select ID from sample5 where Start in ('2001-01-02 12:30:00', ?)";
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+			 PreparedStatement prepstmt = conn.prepareStatement(queryString))
+		{
+			prepstmt.setString(1, "2003-03-02 12:30:00");
+			try (ResultSet results = prepstmt.executeQuery())
+			{
+				assertTrue(results.next());
+				assertEquals(1, results.getInt("ID"), "The ID is wrong");
+				assertTrue(results.next());
+				assertEquals(3, results.getInt("ID"), "The ID is wrong");
+				assertFalse(results.next());
+			}
+		}
+	}
 }
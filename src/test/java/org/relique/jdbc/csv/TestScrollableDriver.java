@@ -25,14 +25,21 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.relique.io.TableReader;
 
 /**
  * This class is used to test the CsvJdbc Scrollable driver.
@@ -1022,4 +1029,141 @@ public class TestScrollableDriver
 			}
 		}
 	}
+
+	@Test
+	public void testLazyScrollBuffer() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("lazyScrollBuffer", "true");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			ResultSet results = stmt.executeQuery("SELECT ID, LINE_NUMBER() AS N FROM sample WHERE ID <> 'A123'"))
+		{
+			assertTrue(results.next());
+			assertEquals("Q123", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.next());
+			assertEquals("B234", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.next());
+			assertEquals("C456", results.getString("ID"), "Incorrect ID Value");
+			assertEquals(3, results.getRow(), "incorrect row #");
+
+			/*
+			 * Scrolling backwards re-reads the rows that were not buffered.
+			 */
+			assertTrue(results.previous());
+			assertEquals("B234", results.getString("ID"), "Incorrect ID Value");
+			assertEquals(3, results.getInt("N"), "Incorrect line number");
+			assertEquals(2, results.getRow(), "incorrect row #");
+
+			assertTrue(results.next());
+			assertEquals("C456", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.next());
+			assertEquals("D789", results.getString("ID"), "Incorrect ID Value");
+			assertEquals(5, results.getInt("N"), "Incorrect line number");
+
+			assertTrue(results.absolute(1));
+			assertEquals("Q123", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.last());
+			assertEquals("X234", results.getString("ID"), "Incorrect ID Value");
+			assertEquals(5, results.getRow(), "incorrect row #");
+		}
+	}
+
+	@Test
+	public void testLazyScrollBufferAfterLast() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("lazyScrollBuffer", "true");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			ResultSet results = stmt.executeQuery("SELECT ID FROM sample LIMIT 3 OFFSET 1"))
+		{
+			assertTrue(results.next());
+			assertEquals("A123", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.next());
+			assertTrue(results.next());
+			assertEquals("C456", results.getString("ID"), "Incorrect ID Value");
+			assertFalse(results.next());
+			assertTrue(results.isAfterLast());
+
+			assertTrue(results.previous());
+			assertEquals("C456", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.first());
+			assertEquals("A123", results.getString("ID"), "Incorrect ID Value");
+			assertTrue(results.isFirst());
+		}
+	}
+
+	@Test
+	public void testLazyScrollBufferRandom() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("lazyScrollBuffer", "true");
+
+		/*
+		 * Rows are buffered as they are read, as reading the file again
+		 * would give different results for RANDOM().
+		 */
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:"
+				+ filePath, props);
+
+			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			ResultSet results = stmt.executeQuery("SELECT ID FROM sample5 WHERE RANDOM() < 0.5"))
+		{
+			List<String> ids = new ArrayList<>();
+			while (results.next())
+				ids.add(results.getString("ID"));
+
+			for (int i = ids.size() - 1; i >= 0; i--)
+			{
+				assertTrue(results.previous());
+				assertEquals(ids.get(i), results.getString("ID"), "Incorrect ID Value");
+			}
+			assertFalse(results.previous());
+		}
+	}
+
+	/**
+	 * TableReader that can only read each table once.
+	 */
+	public static class ReadOnceTableReader extends TableReaderTester implements TableReader
+	{
+		private Set<String> tablesRead = new HashSet<>();
+
+		@Override
+		public Reader getReader(Statement statement, String tableName) throws SQLException
+		{
+			if (!tablesRead.add(tableName.toUpperCase()))
+				throw new SQLException("Table already read: " + tableName);
+			return super.getReader(statement, tableName);
+		}
+	}
+
+	@Test
+	public void testLazyScrollBufferTableReader() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("lazyScrollBuffer", "true");
+
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:class:"
+				+ ReadOnceTableReader.class.getName(), props);
+
+			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			ResultSet results = stmt.executeQuery("SELECT CODE FROM airline"))
+		{
+			assertTrue(results.next());
+			assertTrue(results.next());
+			assertEquals("BA", results.getString("CODE"), "Incorrect CODE Value");
+			assertTrue(results.previous());
+			assertEquals("LH", results.getString("CODE"), "Incorrect CODE Value");
+			assertTrue(results.last());
+			assertEquals("AF", results.getString("CODE"), "Incorrect CODE Value");
+		}
+	}
 }
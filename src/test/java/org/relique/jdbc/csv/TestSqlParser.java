@@ -19,11 +19,13 @@
 package org.relique.jdbc.csv;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.StringReader;
+import java.math.BigDecimal;
 import java.sql.Date;
 import java.sql.SQLException;
 import java.sql.Time;
@@ -734,6 +736,101 @@ public class TestSqlParser
 		assertEquals(o.toString(), "-123456789123");
 	}
 
+	@Test
+	public void testEvaluateNumericOperationLimits() throws ParseException, SQLException
+	{
+		ExpressionParser cs;
+		cs = new ExpressionParser(new StringReader("A*B AS result"));
+		cs.parseQueryEnvEntry();
+		Map<String, Object> env = new HashMap<>();
+		env.put("A", Integer.valueOf(46340));
+		env.put("B", Integer.valueOf(46340));
+		assertEquals(Integer.valueOf(2147395600), cs.eval(env));
+
+		env.put("A", Long.valueOf(Long.MAX_VALUE / 2));
+		env.put("B", Short.valueOf("2"));
+		assertEquals(Long.valueOf(Long.MAX_VALUE - 1), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A-B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Long.valueOf(Long.MIN_VALUE + 1));
+		env.put("B", Integer.valueOf(1));
+		assertEquals(Long.valueOf(Long.MIN_VALUE), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A+B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Double.valueOf(0.1));
+		env.put("B", Double.valueOf(0.2));
+		assertEquals(Double.valueOf(0.3), cs.eval(env));
+
+		env.put("A", Byte.valueOf("7"));
+		env.put("B", Integer.valueOf(3));
+		assertEquals(Double.valueOf(10), cs.eval(env));
+
+		env.put("A", new BigDecimal("1.25"));
+		env.put("B", Long.valueOf(2));
+		assertEquals(Double.valueOf(3.25), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A/B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Long.valueOf(7));
+		env.put("B", Integer.valueOf(0));
+		try
+		{
+			cs.eval(env);
+			fail("Should raise a java.sql.SQLException");
+		}
+		catch (SQLException e)
+		{
+		}
+	}
+
+	@Test
+	public void testEvaluateIntegerOverflow() throws ParseException, SQLException
+	{
+		ExpressionParser cs;
+		cs = new ExpressionParser(new StringReader("A+B AS result"));
+		cs.parseQueryEnvEntry();
+		Map<String, Object> env = new HashMap<>();
+		env.put("A", Integer.valueOf(Integer.MAX_VALUE));
+		env.put("B", Integer.valueOf(1));
+		assertEquals(Long.valueOf(2147483648L), cs.eval(env));
+
+		env.put("A", Short.valueOf(Short.MIN_VALUE));
+		env.put("B", Integer.valueOf(Integer.MIN_VALUE));
+		assertEquals(Long.valueOf(-2147516416L), cs.eval(env));
+
+		env.put("A", Long.valueOf(Long.MAX_VALUE));
+		env.put("B", Integer.valueOf(1));
+		assertEquals(new BigDecimal("9223372036854775808"), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A*B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Integer.valueOf(65536));
+		env.put("B", Integer.valueOf(65536));
+		assertEquals(Long.valueOf(4294967296L), cs.eval(env));
+
+		env.put("A", Long.valueOf(Long.MIN_VALUE));
+		env.put("B", Integer.valueOf(-1));
+		assertEquals(new BigDecimal("9223372036854775808"), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A/B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Long.valueOf(Long.MIN_VALUE));
+		env.put("B", Integer.valueOf(-1));
+		assertEquals(new BigDecimal("9223372036854775808"), cs.eval(env));
+
+		cs = new ExpressionParser(new StringReader("A||B AS result"));
+		cs.parseQueryEnvEntry();
+		env.put("A", Integer.valueOf(12));
+		env.put("B", Long.valueOf(34));
+		assertEquals("1234", cs.eval(env));
+
+		env.put("A", Double.valueOf(1.5));
+		env.put("B", Integer.valueOf(2));
+		assertEquals("1.52", cs.eval(env));
+	}
+
 	@Test
 	public void testEvaluateDateOperations() throws ParseException, SQLException
 	{
@@ -1041,6 +1138,20 @@ public class TestSqlParser
 		assertTrue(subquery.endsWith(")"), "Incorrect Subquery");
 	}
 
+	@Test
+	public void testIsDeterministic() throws ParseException, SQLException
+	{
+		SqlParser parser = new SqlParser();
+		parser.parse("SELECT * FROM sample WHERE UPPER(Name) LIKE 'A%' AND ID IN (1, 2) AND Amount BETWEEN ? AND 5");
+		assertTrue(parser.getWhereClause().isDeterministic());
+
+		parser.parse("SELECT * FROM sample WHERE CASE WHEN ID > 1 THEN RANDOM() ELSE 0 END > 0.5");
+		assertFalse(parser.getWhereClause().isDeterministic());
+
+		parser.parse("SELECT * FROM sample WHERE ID IN (SELECT ID FROM t2)");
+		assertFalse(parser.getWhereClause().isDeterministic());
+	}
+
 	@Test
 	public void testWhereDiacritics() throws SQLException, ParseException
 	{
@@ -28,6 +28,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -323,4 +324,63 @@ public class TestStringConverter
 		String gotFormatted = sc.formatTimestamp(gotTimestamp);
 		assertEquals("29.11.2020 06:02:00", gotFormatted);
 	}
+
+	@Test
+	public void testConvertOnSeveralThreads() throws InterruptedException
+	{
+		StringConverter sc = new StringConverter("dd-MMM-yyyy", "HH:mm:ss", "yyyy-MM-dd HH:mm:ss",
+			"UTC", Locale.US, false);
+		StringConverter sc2 = new StringConverter("yyyy-mm-dd", "HH:mm:ss", null, "UTC", false);
+
+		/*
+		 * Each thread uses its own date formats, so results are not mixed up.
+		 */
+		AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++)
+		{
+			int day = i + 1;
+			threads[i] = new Thread(() ->
+			{
+				String date = String.format("%02d-Mar-2021", Integer.valueOf(day));
+				String timestamp = String.format("2021-03-%02d 10:%02d:00", Integer.valueOf(day), Integer.valueOf(day));
+				String time = String.format("10:%02d:00", Integer.valueOf(day));
+				for (int j = 0; j < 2000; j++)
+				{
+					if (!date.equals(sc.formatDate(sc.parseDate(date))) ||
+						!timestamp.equals(sc.formatTimestamp(sc.parseTimestamp(timestamp))) ||
+						!timestamp.equals(sc2.formatTimestamp(sc2.parseTimestamp(timestamp))) ||
+						!time.equals(sc.formatTime(sc.parseTime(time))))
+					{
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(0, failures.get(), "Incorrect conversions");
+	}
+
+	@Test
+	public void testColumnConverters()
+	{
+		StringConverter sc = new StringConverter("yyyy-mm-dd", "HH:mm:ss", null, "UTC", false);
+
+		StringConverter.ColumnConverter[] converters = sc.getColumnConverters(new String[]{
+			"Integer", "int", "DOUBLE", "BigDecimal", "Date", "String", "Unknown", null});
+		assertEquals(Integer.valueOf(42), converters[0].convert("42"));
+		assertEquals(Integer.valueOf(-7), converters[1].convert("-7"));
+		assertEquals(Double.valueOf(1.5), converters[2].convert("1.5"));
+		assertEquals(new java.math.BigDecimal("12.50"), converters[3].convert("12.50"));
+		assertEquals(java.sql.Date.valueOf("2021-03-04"), converters[4].convert("2021-03-04"));
+		assertEquals("abc", converters[5].convert("abc"));
+		assertEquals("abc", converters[6].convert("abc"));
+		assertEquals("abc", converters[7].convert("abc"));
+		assertEquals(null, converters[0].convert("abc"));
+
+		assertEquals(sc.convert("Integer", "42"), converters[0].convert("42"));
+		assertEquals(sc.convert("boolean", "true"), Boolean.TRUE);
+	}
 }
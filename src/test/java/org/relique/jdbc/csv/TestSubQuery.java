@@ -25,15 +25,20 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.relique.io.TableReader;
 
 public class TestSubQuery
 {
@@ -342,6 +347,60 @@ public class TestSubQuery
 		}
 	}
 
+	@Test
+	public void testInSubQueryNumericTypes() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes.sample4", "Double,String,String");
+		props.put("columnTypes.sample5", "Integer,String");
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select NAME from sample5 where ID in (select ID + 1 from sample4)"))
+		{
+			assertTrue(rs1.next());
+			assertEquals("Mauricio Hernandez", rs1.getString(1), "The NAME is wrong");
+			assertTrue(rs1.next());
+			assertEquals("Maria Cristina Lucero", rs1.getString(1), "The NAME is wrong");
+			assertTrue(rs1.next());
+			assertEquals("Felipe Grajales", rs1.getString(1), "The NAME is wrong");
+			assertTrue(rs1.next());
+			assertEquals("Melquisedec Rojas Castillo", rs1.getString(1), "The NAME is wrong");
+			assertFalse(rs1.next());
+		}
+	}
+
+	@Test
+	public void testSubQueryExecutedTwice() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String");
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			PreparedStatement stmt = conn.prepareStatement("select NAME from sample5 " +
+				"where ID > ? and ID in (select ID from sample4)"))
+		{
+			stmt.setInt(1, 2);
+			try (ResultSet rs1 = stmt.executeQuery())
+			{
+				assertTrue(rs1.next());
+				assertEquals("Maria Cristina Lucero", rs1.getString(1), "The NAME is wrong");
+				assertTrue(rs1.next());
+				assertEquals("Felipe Grajales", rs1.getString(1), "The NAME is wrong");
+				assertFalse(rs1.next());
+			}
+
+			stmt.setInt(1, 3);
+			try (ResultSet rs2 = stmt.executeQuery())
+			{
+				assertTrue(rs2.next());
+				assertEquals("Felipe Grajales", rs2.getString(1), "The NAME is wrong");
+				assertFalse(rs2.next());
+			}
+		}
+	}
+
 	@Test
 	public void testInSubQueryNoMatch() throws SQLException
 	{
@@ -396,6 +455,135 @@ public class TestSubQuery
 		}
 	}
 
+	@Test
+	public void testInSubQueryLargeLongs() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Long,Long");
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select A from large_numbers where A in " +
+				"(select C from large_numbers)"))
+		{
+			/*
+			 * 9007199254740993 must not match 9007199254740992, although
+			 * both are the same when converted to a double.
+			 */
+			assertTrue(rs1.next());
+			assertEquals(5L, rs1.getLong(1), "The A is wrong");
+			assertFalse(rs1.next());
+		}
+	}
+
+	@Test
+	public void testCorrelatedSubQueryLargeLongs() throws SQLException
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Long,Long");
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select A from large_numbers t where exists " +
+				"(select C from large_numbers u where u.C = t.A)"))
+		{
+			assertTrue(rs1.next());
+			assertEquals(5L, rs1.getLong(1), "The A is wrong");
+			assertFalse(rs1.next());
+		}
+	}
+
+	@Test
+	public void testCorrelatedInSubQuery() throws SQLException
+	{
+		Properties props = new Properties();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select ID from sample5 s5 where Job in " +
+				"(select Job from sample4 s4 where s4.ID = s5.ID and s4.Name <> 'Felipe Grajales')"))
+		{
+			assertTrue(rs1.next());
+			assertEquals("01", rs1.getString(1), "The ID is wrong");
+			assertFalse(rs1.next());
+		}
+	}
+
+	@Test
+	public void testNotExistsSubQueryWithCondition() throws SQLException
+	{
+		Properties props = new Properties();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:" + filePath, props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select ID from sample5 s5 where not exists " +
+				"(select 1 from sample4 s4 where s5.ID = s4.ID and s4.Job = 'Project Manager')"))
+		{
+			assertTrue(rs1.next());
+			assertEquals("41", rs1.getString(1), "The ID is wrong");
+			assertTrue(rs1.next());
+			assertEquals("03", rs1.getString(1), "The ID is wrong");
+			for (int i = 5; i <= 9; i++)
+			{
+				assertTrue(rs1.next());
+				assertEquals("0" + i, rs1.getString(1), "The ID is wrong");
+			}
+			assertFalse(rs1.next());
+		}
+	}
+
+	/**
+	 * TableReader that counts how many times each table is read.
+	 */
+	public static class CountingTableReader extends TableReaderTester implements TableReader
+	{
+		private Map<String, Integer> readCounts = new HashMap<>();
+
+		@Override
+		public Reader getReader(Statement statement, String tableName) throws SQLException
+		{
+			readCounts.merge(tableName.toUpperCase(), 1, Integer::sum);
+			return super.getReader(statement, tableName);
+		}
+
+		public int getReadCount(String tableName)
+		{
+			return readCounts.getOrDefault(tableName, 0);
+		}
+	}
+
+	@Test
+	public void testCorrelatedSubQueryReadOncePerRow() throws SQLException
+	{
+		Properties props = new Properties();
+		try (Connection conn = DriverManager.getConnection("jdbc:relique:csv:class:"
+				+ CountingTableReader.class.getName(), props);
+
+			Statement stmt = conn.createStatement();
+
+			ResultSet rs1 = stmt.executeQuery("select CODE from airline a where exists " +
+				"(select 1 from airport p where p.CODE > a.CODE)"))
+		{
+			assertTrue(rs1.next());
+			assertEquals("LH", rs1.getString(1), "The CODE is wrong");
+			assertTrue(rs1.next());
+			assertEquals("BA", rs1.getString(1), "The CODE is wrong");
+			assertTrue(rs1.next());
+			assertEquals("AF", rs1.getString(1), "The CODE is wrong");
+			assertFalse(rs1.next());
+
+			/*
+			 * Sub-query cannot be read once, so is read once for each row.
+			 */
+			CountingTableReader tableReader = (CountingTableReader)((CsvConnection)conn).getTableReader();
+			assertEquals(3, tableReader.getReadCount("AIRPORT"), "Incorrect read count");
+		}
+	}
+
 	@Test
 	public void testDerivedTable() throws SQLException
 	{
@@ -0,0 +1,230 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the tableCacheSize property in the CsvJdbc driver.
+ */
+public class TestTableCache
+{
+	private static final String[] QUERIES = {
+		"SELECT * FROM items",
+		"SELECT ID, LINE_NUMBER() FROM items WHERE ID BETWEEN 120 AND 130",
+		"SELECT I.ID, I.NAME FROM items I WHERE items.ID > 990",
+		"SELECT ID, LINE_NUMBER() FROM items LIMIT 3 OFFSET 500",
+		"SELECT ID, LINE_NUMBER() FROM items LIMIT 3 OFFSET 5000",
+		"SELECT NAME, COUNT(*) FROM items GROUP BY NAME ORDER BY NAME",
+		"SELECT ID, PRICE FROM items WHERE PRICE > 97 ORDER BY PRICE DESC, ID",
+		"SELECT A.ID, B.ID FROM items A JOIN items B ON A.ID = B.ID + 1 WHERE A.ID < 4"
+	};
+
+	private TempDataDirectory dir;
+	private Path csvFile;
+
+	@BeforeAll
+	public static void setUp()
+	{
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	@BeforeEach
+	public void createFile() throws IOException
+	{
+		dir = new TempDataDirectory();
+		StringBuilder sb = new StringBuilder("# comment\n\nID,NAME,PRICE\n");
+		for (int i = 1; i <= 1000; i++)
+		{
+			sb.append(i).append(",N").append(i % 10).append(',').append(i % 100);
+			if (i % 250 == 0)
+				sb.append(",extra");
+			sb.append('\n');
+		}
+		csvFile = dir.writeFile("items.csv", sb.toString());
+	}
+
+	@AfterEach
+	public void deleteFile() throws IOException
+	{
+		dir.delete();
+	}
+
+	private void writeFile(String contents) throws IOException
+	{
+		dir.writeFile("items.csv", contents);
+	}
+
+	private Properties getProperties(String tableCacheSize)
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,String,Integer");
+		props.put("commentChar", "#");
+		props.put("ignoreNonParseableLines", "true");
+		if (tableCacheSize != null)
+			props.put("tableCacheSize", tableCacheSize);
+		return props;
+	}
+
+	@Test
+	public void testQueries() throws SQLException
+	{
+		List<List<String>> expected = new ArrayList<>();
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(),
+			getProperties(null)))
+		{
+			for (String sql : QUERIES)
+				expected.add(TempDataDirectory.readRows(conn, sql));
+		}
+		assertEquals(996, expected.get(0).size(), "Incorrect number of rows");
+		assertEquals(List.of("503,501,", "504,502,", "505,503,"), expected.get(3), "Incorrect rows");
+
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(),
+			getProperties("1000")))
+		{
+			for (int repeat = 0; repeat < 3; repeat++)
+			{
+				for (int i = 0; i < QUERIES.length; i++)
+					assertEquals(expected.get(i), TempDataDirectory.readRows(conn, QUERIES[i]), QUERIES[i]);
+			}
+		}
+
+		/*
+		 * Rows are cached and read from the cache the same way when the
+		 * WHERE clause is evaluated on several threads.
+		 */
+		Properties props = getProperties("1000");
+		props.put("parallelScan", "true");
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(), props))
+		{
+			for (int repeat = 0; repeat < 2; repeat++)
+			{
+				for (int i = 0; i < QUERIES.length; i++)
+					assertEquals(expected.get(i), TempDataDirectory.readRows(conn, QUERIES[i]), QUERIES[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testCachedRowsUsed() throws SQLException, IOException
+	{
+		String sql = "SELECT NAME FROM items WHERE ID = 7";
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(),
+			getProperties("1000")))
+		{
+			assertEquals(List.of("N7,"), TempDataDirectory.readRows(conn, sql));
+
+			/*
+			 * Changing the file without changing its size or modification
+			 * time is not noticed, showing that the rows are read from memory.
+			 */
+			long lastModified = csvFile.toFile().lastModified();
+			String contents = Files.readString(csvFile).replace("\n7,N7,", "\n7,X7,");
+			writeFile(contents);
+			csvFile.toFile().setLastModified(lastModified);
+			assertEquals(List.of("N7,"), TempDataDirectory.readRows(conn, sql));
+
+			/*
+			 * Rows are read again from the file after it changes.
+			 */
+			csvFile.toFile().setLastModified(lastModified - 10000);
+			assertEquals(List.of("X7,"), TempDataDirectory.readRows(conn, sql));
+			writeFile(contents + "1001,Y,1\n");
+			assertEquals(List.of("1001,"), TempDataDirectory.readRows(conn, "SELECT ID FROM items WHERE NAME = 'Y'"));
+		}
+	}
+
+	@Test
+	public void testPartialReadNotCached() throws SQLException, IOException
+	{
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(),
+			getProperties("1000")))
+		{
+			assertEquals(List.of("1,"), TempDataDirectory.readRows(conn, "SELECT ID FROM items LIMIT 1"));
+
+			long lastModified = csvFile.toFile().lastModified();
+			writeFile(Files.readString(csvFile).replace("\n1,N1,", "\n1,X1,"));
+			csvFile.toFile().setLastModified(lastModified);
+			assertEquals(List.of("X1,"), TempDataDirectory.readRows(conn, "SELECT NAME FROM items WHERE ID = 1"));
+		}
+	}
+
+	@Test
+	public void testTableTooLarge() throws SQLException, IOException
+	{
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(),
+			getProperties("1")))
+		{
+			assertEquals(List.of("N1,"), TempDataDirectory.readRows(conn, "SELECT NAME FROM items WHERE ID = 1"));
+
+			long lastModified = csvFile.toFile().lastModified();
+			writeFile(Files.readString(csvFile).replace("\n1,N1,", "\n1,X1,"));
+			csvFile.toFile().setLastModified(lastModified);
+			assertEquals(List.of("X1,"), TempDataDirectory.readRows(conn, "SELECT NAME FROM items WHERE ID = 1"));
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedRemoved()
+	{
+		TableCache cache = new TableCache(25000);
+		List<CachedTable> tables = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+		{
+			String fileName = csvFile.toString();
+			CachedTable table = new CachedTable(fileName, "S" + i, csvFile.toFile().length(),
+				csvFile.toFile().lastModified(), new String[]{"A"}, new int[]{20}, 1);
+			for (int j = 0; j < 150; j++)
+				table.addRow(new String[]{"Value" + j}, j + 2);
+			table.finish(152);
+			tables.add(table);
+		}
+		cache.put(tables.get(0));
+		cache.put(tables.get(1));
+		assertEquals(tables.get(0), cache.get(csvFile.toString(), "S0"));
+		cache.put(tables.get(2));
+		assertEquals(tables.get(0), cache.get(csvFile.toString(), "S0"));
+		assertEquals(null, cache.get(csvFile.toString(), "S1"));
+		assertEquals(tables.get(2), cache.get(csvFile.toString(), "S2"));
+	}
+}
@@ -0,0 +1,165 @@
+/*
+CsvJdbc - a JDBC driver for CSV files
+Copyright (C) 2014  Simon Chenery
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.relique.jdbc.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests the zoneMapInterval property in the CsvJdbc driver.
+ */
+public class TestZoneMap
+{
+	private static final String[] QUERIES = {
+		"SELECT ID, LINE_NUMBER() FROM events WHERE ID BETWEEN 120 AND 130",
+		"SELECT ID, LINE_NUMBER() FROM events WHERE TS >= '2020-01-01 08:00:00' AND ID < 520",
+		"SELECT ID, NAME FROM events WHERE 950 < ID",
+		"SELECT ID, LINE_NUMBER() FROM events WHERE ID = 777 OR ID = 3",
+		"SELECT ID, LINE_NUMBER() FROM events WHERE ID = 777 AND NAME <> 'X'",
+		"SELECT ID, LINE_NUMBER() FROM events WHERE VAL > 10",
+		"SELECT ID FROM events WHERE VAL IS NULL AND ID < 200",
+		"SELECT ID FROM events WHERE ID > 2000",
+		"SELECT COUNT(*), MIN(ID) FROM events WHERE ID >= 333",
+		"SELECT ID, LINE_NUMBER() FROM events WHERE NAME = 'N7'"
+	};
+
+	private static TempDataDirectory dir;
+	private static Path csvFile;
+
+	@BeforeAll
+	public static void setUp() throws IOException
+	{
+		/*
+		 * Timestamps increase with ID, and column VAL is empty in the
+		 * first 300 rows.
+		 */
+		dir = new TempDataDirectory();
+		StringBuilder sb = new StringBuilder("ID,TS,NAME,VAL\n");
+		for (int i = 1; i <= 1000; i++)
+		{
+			sb.append(i).append(",2020-01-01 ");
+			sb.append(String.format("%02d:%02d:00", i / 60, i % 60));
+			sb.append(",N").append(i % 10).append(',');
+			if (i > 300)
+				sb.append(i % 20);
+			sb.append('\n');
+		}
+		csvFile = dir.writeFile("events.csv", sb.toString());
+
+		// load CSV driver
+		try
+		{
+			Class.forName("org.relique.jdbc.csv.CsvDriver");
+		}
+		catch (ClassNotFoundException e)
+		{
+			fail("Driver is not in the CLASSPATH -> " + e);
+		}
+	}
+
+	@AfterAll
+	public static void tearDown() throws IOException
+	{
+		dir.delete();
+	}
+
+	private Properties getProperties(String zoneMapInterval)
+	{
+		Properties props = new Properties();
+		props.put("columnTypes", "Integer,Timestamp,String,Integer");
+		props.put("zoneMapInterval", zoneMapInterval);
+		return props;
+	}
+
+	@Test
+	public void testWhereClause() throws SQLException
+	{
+		File zoneMapFile = new File(csvFile + ZoneMap.FILE_SUFFIX);
+		zoneMapFile.delete();
+
+		List<List<String>> expected = new ArrayList<>();
+		for (String sql : QUERIES)
+			expected.add(dir.readRows(getProperties("0"), sql));
+		assertFalse(zoneMapFile.exists(), "Zone map should not be saved");
+		assertEquals(11, expected.get(0).size(), "Incorrect number of rows");
+		assertEquals("120,120,", expected.get(0).get(0), "Incorrect first row");
+
+		/*
+		 * Zone map is saved by first query and used by the following queries.
+		 */
+		for (int i = 0; i < QUERIES.length; i++)
+		{
+			assertEquals(expected.get(i), dir.readRows(getProperties("64"), QUERIES[i]), QUERIES[i]);
+			assertTrue(zoneMapFile.exists(), "Zone map not saved");
+		}
+		long lastModified = zoneMapFile.lastModified();
+		for (int i = 0; i < QUERIES.length; i++)
+			assertEquals(expected.get(i), dir.readRows(getProperties("64"), QUERIES[i]), QUERIES[i]);
+		assertEquals(lastModified, zoneMapFile.lastModified(), "Zone map should not be saved again");
+
+		Properties props = getProperties("64");
+		props.put("parallelScan", "true");
+		for (int i = 0; i < QUERIES.length; i++)
+			assertEquals(expected.get(i), dir.readRows(props, QUERIES[i]), QUERIES[i]);
+	}
+
+	@Test
+	public void testPreparedStatement() throws SQLException
+	{
+		Properties props = getProperties("100");
+		try (Connection conn = DriverManager.getConnection(dir.getUrl(), props);
+			PreparedStatement stmt = conn.prepareStatement(
+				"SELECT ID, LINE_NUMBER() FROM events WHERE ID > ? AND ID <= ?"))
+		{
+			for (int n = 0; n < 1000; n += 150)
+			{
+				stmt.setInt(1, n);
+				stmt.setInt(2, n + 5);
+				try (ResultSet results = stmt.executeQuery())
+				{
+					for (int i = n + 1; i <= Math.min(n + 5, 1000); i++)
+					{
+						assertTrue(results.next());
+						assertEquals(i, results.getInt(1), "Incorrect ID value");
+						assertEquals(i, results.getInt(2), "Incorrect line number");
+					}
+					assertFalse(results.next());
+				}
+			}
+		}
+	}
+}